@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.datastax.driver.core;
+
+import com.google.common.collect.ImmutableList;
+
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link Cluster} of simulated hosts, for benchmarking policies without connecting to Cassandra.
+ * <p/>
+ * This lives in the driver's package, as hosts and token metadata can only be created from there. Hosts are spread
+ * evenly over the data centers {@code dc1, dc2, ...}, each owning one evenly-spaced Murmur3 token, and the
+ * {@value #KEYSPACE} keyspace is replicated to every data center with {@code NetworkTopologyStrategy}. The cluster is
+ * never initialized, so it never connects to anything.
+ */
+public class SimulatedCluster extends Cluster {
+
+    public static final String KEYSPACE = "benchmark";
+
+    private final List<Host> hosts;
+
+    public SimulatedCluster(int hosts, int dataCenters, int replicationFactor) {
+        this(hosts, dataCenters, replicationFactor, Configuration.builder().build());
+    }
+
+    public SimulatedCluster(int hosts, int dataCenters, int replicationFactor, Configuration configuration) {
+        super("simulated", ImmutableList.of(new InetSocketAddress("127.0.0.1", ProtocolOptions.DEFAULT_PORT)),
+                configuration);
+
+        // the metadata is normally created when the cluster is initialized
+        manager.metadata = new Metadata(manager);
+
+        final Token.Factory tokenFactory = Token.getFactory("Murmur3Partitioner");
+        final BigInteger step = BigInteger.ONE.shiftLeft(64).divide(BigInteger.valueOf(hosts));
+        final Map<Host, Set<Token>> tokens = new HashMap<>();
+        final List<Host> created = new ArrayList<>(hosts);
+
+        for (int i = 0; i < hosts; i++) {
+            final Host host = manager.metadata.add(
+                    new InetSocketAddress("10." + (i % dataCenters) + "." + (i / 256) + "." + (i % 256),
+                            ProtocolOptions.DEFAULT_PORT));
+            host.setLocationInfo(dataCenter(i % dataCenters), "rack1");
+            host.setUp();
+
+            final long token = BigInteger.valueOf(Long.MIN_VALUE).add(step.multiply(BigInteger.valueOf(i))).longValue();
+            tokens.put(host, Collections.singleton(tokenFactory.fromString(Long.toString(token))));
+            created.add(host);
+        }
+
+        final Map<String, String> replication = new HashMap<>();
+        replication.put("class", "NetworkTopologyStrategy");
+        for (int dc = 0; dc < dataCenters; dc++) {
+            replication.put(dataCenter(dc), Integer.toString(replicationFactor));
+        }
+        manager.metadata.keyspaces.put(KEYSPACE, new KeyspaceMetadata(KEYSPACE, true, replication));
+        manager.metadata.rebuildTokenMap(tokenFactory, tokens);
+
+        this.hosts = Collections.unmodifiableList(created);
+    }
+
+    public static String dataCenter(int index) {
+        return "dc" + (index + 1);
+    }
+
+    public List<Host> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * Returns the simulated metadata, without initializing the cluster.
+     */
+    @Override
+    public Metadata getMetadata() {
+        return manager.metadata;
+    }
+}
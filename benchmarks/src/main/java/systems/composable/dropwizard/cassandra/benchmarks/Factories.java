@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.dropwizard.jackson.Jackson;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Builds factories from YAML, exactly as they are configured in an application's configuration file.
+ */
+final class Factories {
+
+    private static final ObjectMapper MAPPER = Jackson.newObjectMapper(new YAMLFactory());
+
+    private Factories() {
+    }
+
+    static <T> T parse(String yaml, Class<T> factoryClass) {
+        try {
+            return MAPPER.readValue(yaml, factoryClass);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Invalid " + factoryClass.getSimpleName() + " configuration: " + yaml, e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.benchmarks;
+
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.SimulatedCluster;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import systems.composable.dropwizard.cassandra.loadbalancing.LeastInFlightPolicy;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of building query plans with the {@link LeastInFlightPolicy}, compared to the data center
+ * aware round robin policy it wraps, when many threads build query plans at once.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class LeastInFlightPolicyBenchmark {
+
+    @Param({"3", "30", "300"})
+    public int hosts;
+
+    @Param({"dcAwareRoundRobin", "leastInFlight"})
+    public String policy;
+
+    @Param({"false", "true"})
+    public boolean tokenAware;
+
+    private SimulatedCluster cluster;
+    private LoadBalancingPolicy loadBalancingPolicy;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cluster = new SimulatedCluster(hosts, 1, 3);
+
+        LoadBalancingPolicy built = DCAwareRoundRobinPolicy.builder().withLocalDc(SimulatedCluster.dataCenter(0)).build();
+        if ("leastInFlight".equals(policy)) {
+            final LeastInFlightPolicy leastInFlight = new LeastInFlightPolicy(built, 10, TimeUnit.MILLISECONDS);
+            leastInFlight.setSession(new SimulatedSession(cluster, host -> ThreadLocalRandom.current().nextInt(128)));
+            built = leastInFlight;
+        }
+        if (tokenAware) {
+            built = new TokenAwarePolicy(built);
+        }
+
+        loadBalancingPolicy = built;
+        loadBalancingPolicy.init(cluster, cluster.getHosts());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        loadBalancingPolicy.close();
+        cluster.close();
+    }
+
+    @Benchmark
+    public Host newQueryPlan(Statements statements) {
+        return loadBalancingPolicy.newQueryPlan(SimulatedCluster.KEYSPACE, statements.next()).next();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.benchmarks;
+
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.SimulatedCluster;
+import com.datastax.driver.core.policies.ChainableLoadBalancingPolicy;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import systems.composable.dropwizard.cassandra.loadbalancing.LeastInFlightPolicy;
+import systems.composable.dropwizard.cassandra.loadbalancing.LoadBalancingPolicyFactory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Measures the cost of building query plans with the policies built by each {@link LoadBalancingPolicyFactory}, for
+ * clusters of 3 to 300 hosts spread over two data centers.
+ * <p/>
+ * {@link #firstHost} reflects the common case, where the first host in the plan answers the query, while
+ * {@link #wholePlan} walks every host in the plan. Run with {@code -prof gc} to see allocations per query plan.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadBalancingPolicyBenchmark {
+
+    private static final String DC_AWARE = "{type: dcAwareRoundRobin, localDC: dc1}";
+
+    private static final Map<String, String> CONFIGURATIONS = ImmutableMap.<String, String>builder()
+            .put("roundRobin", "{type: roundRobin}")
+            .put("dcAwareRoundRobin", DC_AWARE)
+            .put("tokenAware", "{type: tokenAware, subPolicy: " + DC_AWARE + "}")
+            .put("latencyAware", "{type: latencyAware, subPolicy: " + DC_AWARE + "}")
+            .put("errorAware", "{type: errorAware, subPolicy: " + DC_AWARE + "}")
+            .put("whiteList", "{type: whiteList, whiteList: [%s], subPolicy: " + DC_AWARE + "}")
+            .put("leastInFlight", "{type: leastInFlight, subPolicy: " + DC_AWARE + "}")
+            .build();
+
+    @Param({"3", "30", "300"})
+    public int hosts;
+
+    @Param({"roundRobin", "dcAwareRoundRobin", "tokenAware", "latencyAware", "errorAware", "whiteList", "leastInFlight"})
+    public String policy;
+
+    private SimulatedCluster cluster;
+    private LoadBalancingPolicy loadBalancingPolicy;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cluster = new SimulatedCluster(hosts, 2, 3);
+
+        final String whiteList = cluster.getHosts().stream()
+                .map(host -> "'" + host.getAddress().getHostAddress() + ":" + host.getSocketAddress().getPort() + "'")
+                .collect(Collectors.joining(", "));
+        final String yaml = String.format(CONFIGURATIONS.get(policy), whiteList);
+        loadBalancingPolicy = Factories.parse(yaml, LoadBalancingPolicyFactory.class).build();
+
+        for (LoadBalancingPolicy p = loadBalancingPolicy; p != null; ) {
+            if (p instanceof LeastInFlightPolicy) {
+                ((LeastInFlightPolicy) p).setSession(
+                        new SimulatedSession(cluster, host -> ThreadLocalRandom.current().nextInt(128)));
+            }
+            p = (p instanceof ChainableLoadBalancingPolicy) ? ((ChainableLoadBalancingPolicy) p).getChildPolicy() : null;
+        }
+
+        loadBalancingPolicy.init(cluster, cluster.getHosts());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        loadBalancingPolicy.close();
+        cluster.close();
+    }
+
+    @Benchmark
+    public Host firstHost(Statements statements) {
+        return loadBalancingPolicy.newQueryPlan(SimulatedCluster.KEYSPACE, statements.next()).next();
+    }
+
+    @Benchmark
+    public void wholePlan(Statements statements, Blackhole blackhole) {
+        final Iterator<Host> plan = loadBalancingPolicy.newQueryPlan(SimulatedCluster.KEYSPACE, statements.next());
+        while (plan.hasNext()) {
+            blackhole.consume(plan.next());
+        }
+    }
+}
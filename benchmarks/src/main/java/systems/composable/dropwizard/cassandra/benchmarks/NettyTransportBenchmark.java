@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.benchmarks;
+
+import com.datastax.driver.core.NettyOptions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import systems.composable.dropwizard.cassandra.netty.NettyOptionsFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures round trips of frames to a local {@link StubServer}, over connections built from the {@link NettyOptions}
+ * of each configurable transport and buffer allocator, exactly as the driver builds its connections.
+ * <p/>
+ * The epoll transport falls back to NIO where it is unavailable, in which case both transports measure the same.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class NettyTransportBenchmark {
+
+    private static final Map<String, String> ALLOCATORS = ImmutableMap.<String, String>builder()
+            .put("pooledDirect", "{pooled: true, preferDirect: true}")
+            .put("pooledHeap", "{pooled: true, preferDirect: false}")
+            .put("unpooledDirect", "{pooled: false, preferDirect: true}")
+            .put("unpooledHeap", "{pooled: false, preferDirect: false}")
+            .build();
+
+    @Param({"nio", "epoll"})
+    public String transport;
+
+    @Param({"pooledDirect", "pooledHeap", "unpooledDirect", "unpooledHeap"})
+    public String allocator;
+
+    @Param({"64", "4096", "65536"})
+    public int payloadBytes;
+
+    private StubServer server;
+    private NettyOptions nettyOptions;
+    private EventLoopGroup eventLoopGroup;
+    private Bootstrap bootstrap;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new StubServer();
+        nettyOptions = Factories.parse(
+                "{ioThreads: 4, transport: " + transport + ", allocator: " + ALLOCATORS.get(allocator) + "}",
+                NettyOptionsFactory.class).build();
+        eventLoopGroup = nettyOptions.eventLoopGroup(
+                new ThreadFactoryBuilder().setNameFormat("benchmark-io-worker-%d").build());
+
+        bootstrap = new Bootstrap()
+                .group(eventLoopGroup)
+                .channel(nettyOptions.channelClass())
+                .option(ChannelOption.TCP_NODELAY, true);
+        nettyOptions.afterBootstrapInitialized(bootstrap);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        nettyOptions.onClusterClose(eventLoopGroup);
+        server.close();
+    }
+
+    @Benchmark
+    public int roundTrip(Connection connection) throws Exception {
+        return connection.roundTrip(payloadBytes);
+    }
+
+    /**
+     * A connection of each benchmark thread, with a single frame in flight at a time, as with a driver connection
+     * carrying the requests of one thread.
+     */
+    @State(Scope.Thread)
+    public static class Connection {
+
+        private final byte[] payload = new byte[65536];
+
+        private Channel channel;
+        private volatile CompletableFuture<Integer> response;
+
+        @Setup(Level.Trial)
+        public void setUp(NettyTransportBenchmark benchmark) throws InterruptedException {
+            ThreadLocalRandom.current().nextBytes(payload);
+            channel = benchmark.bootstrap.clone()
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline().addLast(StubServer.frameDecoder(), new ResponseHandler());
+                        }
+                    })
+                    .connect(benchmark.server.address())
+                    .sync()
+                    .channel();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            channel.close().syncUninterruptibly();
+        }
+
+        int roundTrip(int payloadBytes) throws Exception {
+            final CompletableFuture<Integer> response = new CompletableFuture<>();
+            this.response = response;
+
+            final ByteBuf frame = channel.alloc().buffer(StubServer.HEADER_LENGTH + payloadBytes);
+            frame.writeByte(0x04).writeByte(0).writeShort(0).writeByte(0x07).writeInt(payloadBytes);
+            frame.writeBytes(payload, 0, payloadBytes);
+            channel.writeAndFlush(frame);
+
+            return response.get(10, TimeUnit.SECONDS);
+        }
+
+        private class ResponseHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+            @Override
+            protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+                response.complete(frame.readableBytes());
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                response.completeExceptionally(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.benchmarks;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.WriteType;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.datastax.driver.core.policies.RetryPolicy;
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import systems.composable.dropwizard.cassandra.retry.RetryPolicyFactory;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of a retry decision by the policies built by each {@link RetryPolicyFactory}, for each kind of
+ * failure a request may meet.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RetryPolicyBenchmark {
+
+    private static final Map<String, String> CONFIGURATIONS = ImmutableMap.<String, String>builder()
+            .put("default", "{type: default}")
+            .put("downgradingConsistency", "{type: downgradingConsistency}")
+            .put("fallthrough", "{type: fallthrough}")
+            .put("log", "{type: log, subPolicy: {type: default}}")
+            .put("budget", "{type: budget, subPolicy: {type: default}}")
+            .build();
+
+    @Param({"default", "downgradingConsistency", "fallthrough", "log", "budget"})
+    public String policy;
+
+    private RetryPolicy retryPolicy;
+    private DriverException requestError;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        retryPolicy = Factories.parse(CONFIGURATIONS.get(policy), RetryPolicyFactory.class).build();
+        requestError = new OperationTimedOutException(new InetSocketAddress("10.0.0.1", 9042));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        retryPolicy.close();
+    }
+
+    @Benchmark
+    public RetryPolicy.RetryDecision readTimeout(Statements statements) {
+        return retryPolicy.onReadTimeout(statements.next(), ConsistencyLevel.LOCAL_QUORUM, 2, 1, false, 0);
+    }
+
+    @Benchmark
+    public RetryPolicy.RetryDecision writeTimeout(Statements statements) {
+        return retryPolicy.onWriteTimeout(statements.next(), ConsistencyLevel.LOCAL_QUORUM, WriteType.BATCH_LOG, 2, 0, 0);
+    }
+
+    @Benchmark
+    public RetryPolicy.RetryDecision unavailable(Statements statements) {
+        return retryPolicy.onUnavailable(statements.next(), ConsistencyLevel.LOCAL_QUORUM, 2, 1, 0);
+    }
+
+    @Benchmark
+    public RetryPolicy.RetryDecision requestError(Statements statements) {
+        return retryPolicy.onRequestError(statements.next(), ConsistencyLevel.LOCAL_QUORUM, requestError, 0);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.benchmarks;
+
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimulatedCluster;
+import systems.composable.dropwizard.cassandra.ForwardingSession;
+import systems.composable.dropwizard.cassandra.SharedSession;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * A connected {@link SharedSession} of a {@link SimulatedCluster}, whose connection pools report a fixed number of
+ * requests in flight to each host.
+ */
+public class SimulatedSession extends SharedSession {
+
+    private final Session session;
+
+    public SimulatedSession(SimulatedCluster cluster, ToIntFunction<Host> inFlight) {
+        super(cluster, SimulatedCluster.KEYSPACE);
+
+        final Map<Host, Integer> inFlightQueries = new IdentityHashMap<>();
+        for (Host host : cluster.getHosts()) {
+            inFlightQueries.put(host, inFlight.applyAsInt(host));
+        }
+
+        this.session = new ForwardingSession(null) {
+            private final State state = new State() {
+                @Override
+                public Session getSession() {
+                    return session;
+                }
+
+                @Override
+                public Collection<Host> getConnectedHosts() {
+                    return inFlightQueries.keySet();
+                }
+
+                @Override
+                public int getOpenConnections(Host host) {
+                    return 1;
+                }
+
+                @Override
+                public int getTrashedConnections(Host host) {
+                    return 0;
+                }
+
+                @Override
+                public int getInFlightQueries(Host host) {
+                    return inFlightQueries.getOrDefault(host, 0);
+                }
+            };
+
+            @Override
+            public State getState() {
+                return state;
+            }
+        };
+    }
+
+    @Override
+    public Session get() {
+        return session;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+}
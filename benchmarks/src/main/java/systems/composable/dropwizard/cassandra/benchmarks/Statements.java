@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.benchmarks;
+
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Statements with random routing keys, cycled through by each benchmark thread.
+ */
+@State(Scope.Thread)
+public class Statements {
+
+    private static final int SIZE = 1024;
+
+    private final Statement[] statements = new Statement[SIZE];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            final ByteBuffer routingKey = ByteBuffer.allocate(8);
+            routingKey.putLong(0, random.nextLong());
+            statements[i] = new SimpleStatement("SELECT * FROM benchmark.users WHERE id = ?")
+                    .setRoutingKey(routingKey);
+        }
+    }
+
+    public Statement next() {
+        next = (next + 1) & (SIZE - 1);
+        return statements[next];
+    }
+}
@@ -19,6 +19,10 @@ import io.dropwizard.Configuration;
 import io.dropwizard.ConfiguredBundle;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import systems.composable.dropwizard.cassandra.cli.LoadCommand;
+import systems.composable.dropwizard.cassandra.cli.MigrateCommand;
+import systems.composable.dropwizard.cassandra.cli.StressCommand;
+import systems.composable.dropwizard.cassandra.streaming.StreamedRowsWriter;
 
 /**
  * A reusable bundle of Cassandra functionality that initializes {@link javax.ws.rs.core.Context}-annotated
@@ -78,23 +82,36 @@ import io.dropwizard.setup.Environment;
  * (see {@link CassandraFactory#getKeyspace()}).
  * If keyspace isn't specified in your configuration, then session will be opened with no
  * defined keyspace, so that you have to explicitly specify it in statements for tables/column&nbsp;families.
+ * <p/>
+ * Resources that should not block a server thread while a query runs can resume a suspended
+ * {@link javax.ws.rs.container.AsyncResponse} with the result of {@code session.executeAsync} using
+ * {@link systems.composable.dropwizard.cassandra.async.ResultSetFutures}.
  *
  */
 public abstract class CassandraBundle<T extends Configuration>
 		implements ConfiguredBundle<T>, CassandraConfiguration<T> {
 
 	/**
-	 * Initializes Cassandra in application bootstrap.
-	 * Does nothing for now.
+	 * Initializes Cassandra in application bootstrap: adds the {@link LoadCommand cassandra-load},
+	 * {@link MigrateCommand cassandra-migrate} and {@link StressCommand cassandra-stress} commands, which connect to
+	 * the configured cluster.
 	 *
 	 * @param bootstrap The application bootstrap
 	 */
 	@Override
-	public void initialize(Bootstrap<?> bootstrap) {}
+	@SuppressWarnings("unchecked")
+	public void initialize(Bootstrap<?> bootstrap) {
+		// the bundle is added to a bootstrap of the application's configuration, T
+		final Class<T> configurationClass = (Class<T>) bootstrap.getApplication().getConfigurationClass();
+		bootstrap.addCommand(new LoadCommand<>(this, configurationClass));
+		bootstrap.addCommand(new MigrateCommand<>(this, configurationClass));
+		bootstrap.addCommand(new StressCommand<>(this, configurationClass));
+	}
 
 	/**
 	 * Initializes the Cassandra environment: registers context binder for
-	 * {@link com.datastax.driver.core.Cluster} and {@link com.datastax.driver.core.Session} instances.
+	 * {@link com.datastax.driver.core.Cluster} and {@link com.datastax.driver.core.Session} instances,
+	 * and the {@link StreamedRowsWriter} for streaming result sets.
 	 *
 	 * @param configuration The configuration object
 	 * @param environment The application's Environment
@@ -102,5 +119,6 @@ public abstract class CassandraBundle<T extends Configuration>
 	@Override
 	public void run(T configuration, Environment environment) throws Exception {
 		environment.jersey().register(CassandraProvider.binder(getCassandraFactory(configuration), environment));
+		environment.jersey().register(new StreamedRowsWriter(environment.getObjectMapper()));
 	}
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Qualifies injected {@link com.datastax.driver.core.Cluster}, {@link com.datastax.driver.core.Session} and
+ * {@link systems.composable.dropwizard.cassandra.prepared.PreparedStatementCache} instances by the name their cluster
+ * is configured under in a {@link MultiCassandraBundle}.
+ */
+@Qualifier
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.PARAMETER, ElementType.METHOD})
+public @interface CassandraCluster {
+
+	/**
+	 * @return the name of the cluster, as configured in the {@link MultiCassandraBundle}.
+	 */
+	String value();
+}
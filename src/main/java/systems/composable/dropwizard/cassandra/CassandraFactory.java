@@ -19,26 +19,45 @@ package systems.composable.dropwizard.cassandra;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.health.HealthCheckRegistry;
 import com.datastax.driver.core.*;
+import com.datastax.driver.core.policies.ChainableLoadBalancingPolicy;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Strings;
 import io.dropwizard.setup.Environment;
 import io.dropwizard.util.Duration;
+import io.dropwizard.validation.ValidationMethod;
 import org.hibernate.validator.constraints.NotEmpty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import systems.composable.dropwizard.cassandra.auth.AuthProviderFactory;
+import systems.composable.dropwizard.cassandra.batching.WriteBatcherFactory;
+import systems.composable.dropwizard.cassandra.instrumentation.QueryMetricsFactory;
+import systems.composable.dropwizard.cassandra.netty.NettyOptionsFactory;
+import systems.composable.dropwizard.cassandra.netty.SharedNettyOptions;
 import systems.composable.dropwizard.cassandra.network.AddressTranslatorFactory;
+import systems.composable.dropwizard.cassandra.loadbalancing.LeastInFlightPolicy;
 import systems.composable.dropwizard.cassandra.loadbalancing.LoadBalancingPolicyFactory;
+import systems.composable.dropwizard.cassandra.pooling.AdaptivePoolingController;
+import systems.composable.dropwizard.cassandra.pooling.PoolMetricsSession;
 import systems.composable.dropwizard.cassandra.pooling.PoolingOptionsFactory;
+import systems.composable.dropwizard.cassandra.pooling.PoolingOptionsTask;
+import systems.composable.dropwizard.cassandra.paging.PagingCursorsFactory;
+import systems.composable.dropwizard.cassandra.prepared.PreparedStatementCacheFactory;
 import systems.composable.dropwizard.cassandra.reconnection.ReconnectionPolicyFactory;
 import systems.composable.dropwizard.cassandra.retry.RetryPolicyFactory;
 import systems.composable.dropwizard.cassandra.speculativeexecution.SpeculativeExecutionPolicyFactory;
 import systems.composable.dropwizard.cassandra.ssl.SSLOptionsFactory;
+import systems.composable.dropwizard.cassandra.throttling.ThrottlerFactory;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
@@ -73,6 +92,16 @@ import static com.codahale.metrics.MetricRegistry.name;
  *         <td>Sets the maximum time to wait for the validation query to respond.</td>
  *     </tr>
  *     <tr>
+ *         <td>healthCheckInterval</td>
+ *         <td>10 seconds.</td>
+ *         <td>The time between background runs of the validation query, whose last result the health check reports.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>healthCheckStaleness</td>
+ *         <td>30 seconds.</td>
+ *         <td>The age after which the last validation query result is stale, and the cluster reported unhealthy.</td>
+ *     </tr>
+ *     <tr>
  *         <td>contactPoints</td>
  *         <td>No default. You must provide a list of contact points for the Cassandra driver.</td>
  *         <td>Each contact point can be a DNS record resolving to multiple hosts. In this case all of them will be added to the {@link Cluster}.</td>
@@ -138,6 +167,11 @@ import static com.codahale.metrics.MetricRegistry.name;
  *         <td>The {@link PoolingOptionsFactory pooling options} to use.</td>
  *     </tr>
  *     <tr>
+ *         <td>nettyOptions</td>
+ *         <td>No default.</td>
+ *         <td>The {@link NettyOptionsFactory Netty options} sizing the network layer of the cluster.</td>
+ *     </tr>
+ *     <tr>
  *         <td>metricsEnabled</td>
  *         <td>true</td>
  *         <td>Whether or not to enable metrics reporting.</td>
@@ -158,6 +192,39 @@ import static com.codahale.metrics.MetricRegistry.name;
  *         <td>No default.</td>
  *         <td>The {@link com.datastax.driver.core.policies.AddressTranslator} to use.</td>
  *     </tr>
+ *     <tr>
+ *         <td>preparedStatementCache</td>
+ *         <td>Up to 1000 statements.</td>
+ *         <td>The {@link PreparedStatementCacheFactory prepared statement cache} bound alongside injected sessions, which
+ *         also holds the statements prepared by the warm-up.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>pagingCursors</td>
+ *         <td>Cursors signed with a random key.</td>
+ *         <td>The {@link PagingCursorsFactory paging cursors} bound alongside injected sessions.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>queryMetrics</td>
+ *         <td>No default.</td>
+ *         <td>When set, injected sessions record {@link QueryMetricsFactory metrics per query shape}.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>warmUp</td>
+ *         <td>No default. The session is connected by its first use.</td>
+ *         <td>When set, the session is {@link WarmUpFactory warmed up} before the application starts.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>throttler</td>
+ *         <td>No default. Requests are not throttled.</td>
+ *         <td>When set, injected sessions {@link ThrottlerFactory limit the requests in flight}, queueing and then
+ *         rejecting requests beyond the limit.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>writeBatcher</td>
+ *         <td>No default. No write batcher is bound.</td>
+ *         <td>When set, a {@link WriteBatcherFactory write batcher}, coalescing writes into unlogged batches, is
+ *         bound alongside injected sessions.</td>
+ *     </tr>
  * </table>
  */
 public class CassandraFactory {
@@ -207,9 +274,32 @@ public class CassandraFactory {
     @Valid
     private Optional<PoolingOptionsFactory> poolingOptions = Optional.empty();
 
+    @Valid
+    private Optional<NettyOptionsFactory> nettyOptions = Optional.empty();
+
     @Valid
     private Optional<AddressTranslatorFactory> addressTranslator = Optional.empty();
 
+    @Valid
+    @NotNull
+    private PreparedStatementCacheFactory preparedStatementCache = new PreparedStatementCacheFactory();
+
+    @Valid
+    @NotNull
+    private PagingCursorsFactory pagingCursors = new PagingCursorsFactory();
+
+    @Valid
+    private Optional<QueryMetricsFactory> queryMetrics = Optional.empty();
+
+    @Valid
+    private Optional<WarmUpFactory> warmUp = Optional.empty();
+
+    @Valid
+    private Optional<ThrottlerFactory> throttler = Optional.empty();
+
+    @Valid
+    private Optional<WriteBatcherFactory> writeBatcher = Optional.empty();
+
     private boolean metricsEnabled = true;
     private boolean jmxEnabled = false;
 
@@ -219,6 +309,12 @@ public class CassandraFactory {
     @NotNull
     private Duration healthCheckTimeout = Duration.seconds(2);
 
+    @NotNull
+    private Duration healthCheckInterval = Duration.seconds(10);
+
+    @NotNull
+    private Duration healthCheckStaleness = Duration.seconds(30);
+
     @JsonProperty
     public String getClusterName() {
         return clusterName;
@@ -299,6 +395,11 @@ public class CassandraFactory {
         this.compression = compression;
     }
 
+    @JsonProperty
+    public Optional<Duration> getMaxSchemaAgreementWait() {
+        return maxSchemaAgreementWait;
+    }
+
     @JsonProperty
     public void setMaxSchemaAgreementWait(Optional<Duration> maxSchemaAgreementWait) {
         this.maxSchemaAgreementWait = maxSchemaAgreementWait;
@@ -384,6 +485,16 @@ public class CassandraFactory {
         this.poolingOptions = poolingOptions;
     }
 
+    @JsonProperty
+    public Optional<NettyOptionsFactory> getNettyOptions() {
+        return nettyOptions;
+    }
+
+    @JsonProperty
+    public void setNettyOptions(Optional<NettyOptionsFactory> nettyOptions) {
+        this.nettyOptions = nettyOptions;
+    }
+
     @JsonProperty
     public boolean isMetricsEnabled() {
         return metricsEnabled;
@@ -424,6 +535,32 @@ public class CassandraFactory {
         this.healthCheckTimeout = healthCheckTimeout;
     }
 
+    @JsonProperty
+    public Duration getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    @JsonProperty
+    public void setHealthCheckInterval(Duration healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    @JsonProperty
+    public Duration getHealthCheckStaleness() {
+        return healthCheckStaleness;
+    }
+
+    @JsonProperty
+    public void setHealthCheckStaleness(Duration healthCheckStaleness) {
+        this.healthCheckStaleness = healthCheckStaleness;
+    }
+
+    @ValidationMethod(message = "healthCheckStaleness must be longer than healthCheckInterval")
+    @JsonIgnore
+    public boolean isHealthCheckStalenessValid() {
+        return healthCheckStaleness.toNanoseconds() > healthCheckInterval.toNanoseconds();
+    }
+
     @JsonProperty
     public Optional<AddressTranslatorFactory> getAddressTranslator() {
         return addressTranslator;
@@ -434,6 +571,66 @@ public class CassandraFactory {
         this.addressTranslator = addressTranslator;
     }
 
+    @JsonProperty
+    public PreparedStatementCacheFactory getPreparedStatementCache() {
+        return preparedStatementCache;
+    }
+
+    @JsonProperty
+    public void setPreparedStatementCache(PreparedStatementCacheFactory preparedStatementCache) {
+        this.preparedStatementCache = preparedStatementCache;
+    }
+
+    @JsonProperty
+    public PagingCursorsFactory getPagingCursors() {
+        return pagingCursors;
+    }
+
+    @JsonProperty
+    public void setPagingCursors(PagingCursorsFactory pagingCursors) {
+        this.pagingCursors = pagingCursors;
+    }
+
+    @JsonProperty
+    public Optional<QueryMetricsFactory> getQueryMetrics() {
+        return queryMetrics;
+    }
+
+    @JsonProperty
+    public void setQueryMetrics(Optional<QueryMetricsFactory> queryMetrics) {
+        this.queryMetrics = queryMetrics;
+    }
+
+    @JsonProperty
+    public Optional<WarmUpFactory> getWarmUp() {
+        return warmUp;
+    }
+
+    @JsonProperty
+    public void setWarmUp(Optional<WarmUpFactory> warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    @JsonProperty
+    public Optional<ThrottlerFactory> getThrottler() {
+        return throttler;
+    }
+
+    @JsonProperty
+    public void setThrottler(Optional<ThrottlerFactory> throttler) {
+        this.throttler = throttler;
+    }
+
+    @JsonProperty
+    public Optional<WriteBatcherFactory> getWriteBatcher() {
+        return writeBatcher;
+    }
+
+    @JsonProperty
+    public void setWriteBatcher(Optional<WriteBatcherFactory> writeBatcher) {
+        this.writeBatcher = writeBatcher;
+    }
+
     /**
      * Builds a {@link Cluster} instance for the given {@link Environment}.
      * <p/>
@@ -444,12 +641,7 @@ public class CassandraFactory {
      * @return a fully configured and managed {@link Cluster}.
      */
     public Cluster build(Environment environment) {
-        final Cluster cluster = build(environment.metrics(), environment.healthChecks());
-
-        LOG.debug("Registering {} Cassandra cluster for lifecycle management", cluster.getClusterName());
-        environment.lifecycle().manage(new CassandraManager(cluster, getShutdownGracePeriod()));
-
-        return cluster;
+        return buildSession(environment).getCluster();
     }
 
     /**
@@ -463,7 +655,143 @@ public class CassandraFactory {
      * @return a fully configured {@link Cluster}.
      */
     public Cluster build(MetricRegistry metrics, HealthCheckRegistry healthChecks) {
+        return buildSession(metrics, healthChecks).getCluster();
+    }
+
+    /**
+     * Builds a {@link Cluster} instance for the given {@link Environment}, along with the {@link SharedSession}
+     * used by its health check.
+     * <p/>
+     * The {@code environment} will be used for lifecycle management, as well as metrics and
+     * health-checks. The health check runs its validation query in the background while the
+     * environment is running, and the session is warmed up as the environment starts if configured. If adaptive
+     * pooling is configured, its controller is managed and its admin task registered with the environment.
+     *
+     * @param environment the environment to manage the lifecycle, metrics and health-checks.
+     * @return the shared session of a fully configured and managed {@link Cluster}.
+     */
+    public SharedSession buildSession(Environment environment) {
+        return buildSession(environment, null);
+    }
 
+    /**
+     * Builds a {@link Cluster} instance for the given {@link Environment} with the given {@link NettyOptions}, unless
+     * Netty options are configured, along with the {@link SharedSession} used by its health check.
+     * <p/>
+     * This allows several clusters to share {@link SharedNettyOptions the same event loop and timer}.
+     *
+     * @param environment the environment to manage the lifecycle, metrics and health-checks.
+     * @param nettyOptions the default Netty options of the cluster, or {@code null} for the driver's defaults.
+     * @return the shared session of a fully configured and managed {@link Cluster}.
+     */
+    public SharedSession buildSession(Environment environment, NettyOptions nettyOptions) {
+        final SharedSession session = newSession(nettyOptions);
+        final Cluster cluster = session.getCluster();
+        final CassandraHealthCheck healthCheck = register(session, environment.metrics(), environment.healthChecks());
+
+        LOG.debug("Registering {} Cassandra cluster for lifecycle management", cluster.getClusterName());
+        final CassandraWarmUp warmUp = this.warmUp.map(w -> w.build(session, environment.metrics())).orElse(null);
+        environment.lifecycle().manage(new CassandraManager(cluster, getShutdownGracePeriod(), warmUp));
+        environment.lifecycle().manage(healthCheck);
+
+        poolingOptions.map(PoolingOptionsFactory::getAdaptive).ifPresent(adaptive -> {
+            LOG.debug("Registering {} Cassandra adaptive pooling", cluster.getClusterName());
+            final AdaptivePoolingController controller = adaptive.build(session,
+                    isMetricsEnabled() ? environment.metrics() : null);
+            environment.lifecycle().manage(controller);
+            environment.admin().addTask(new PoolingOptionsTask(controller));
+        });
+
+        return session;
+    }
+
+    /**
+     * Builds a {@link Cluster} instance, along with the {@link SharedSession} used by its health check.
+     * <p/>
+     * The {@link MetricRegistry} will be used to register client metrics, and the {@link
+     * HealthCheckRegistry} to register client health-checks.
+     *
+     * @param metrics the registry to register client metrics.
+     * @param healthChecks the registry to register client health-checks.
+     * @return the shared session of a fully configured {@link Cluster}.
+     */
+    public SharedSession buildSession(MetricRegistry metrics, HealthCheckRegistry healthChecks) {
+        final SharedSession session = newSession(null);
+        register(session, metrics, healthChecks);
+        return session;
+    }
+
+    /**
+     * Decorates the {@link SharedSession} of a cluster built by this factory, for handing out to applications.
+     * <p/>
+     * The session is decorated with the throttling and instrumentation configured for the cluster, if any, when it is
+     * first requested. When metrics are enabled, the session also records the time spent waiting to borrow connections and
+     * the requests rejected by busy pools. The health check and metrics of the cluster continue to use the
+     * undecorated session.
+     *
+     * @param session the shared session to decorate.
+     * @param metrics the registry to register the metrics of decorators.
+     * @return supplies the decorated session.
+     */
+    public Supplier<Session> decorateSession(SharedSession session, MetricRegistry metrics) {
+        final String clusterName = session.getCluster().getClusterName();
+        final List<UnaryOperator<Session>> decorators = new ArrayList<>();
+        if (metricsEnabled) {
+            decorators.add(s -> new PoolMetricsSession(s,
+                    metrics.histogram(CassandraMetricSet.poolMetricName(clusterName, "borrow-wait")),
+                    metrics.meter(CassandraMetricSet.poolMetricName(clusterName, "busy-rejections"))));
+        }
+        throttler.ifPresent(factory -> decorators.add(s -> factory.build(s, metrics)));
+        queryMetrics.ifPresent(factory -> decorators.add(s -> factory.build(s, metrics)));
+
+        if (decorators.isEmpty()) {
+            return session;
+        }
+        return session.decorated(s -> {
+            Session decorated = s;
+            for (UnaryOperator<Session> decorator : decorators) {
+                decorated = decorator.apply(decorated);
+            }
+            return decorated;
+        });
+    }
+
+    private CassandraHealthCheck register(SharedSession session, MetricRegistry metrics, HealthCheckRegistry healthChecks) {
+        final Cluster cluster = session.getCluster();
+
+        LOG.debug("Registering {} Cassandra health check", cluster.getClusterName());
+        CassandraHealthCheck healthCheck = new CassandraHealthCheck(session, validationQuery, healthCheckTimeout,
+                healthCheckInterval, healthCheckStaleness);
+        healthChecks.register(name("cassandra", cluster.getClusterName()), healthCheck);
+
+        if (isMetricsEnabled()) {
+            LOG.debug("Registering {} Cassandra metrics", cluster.getClusterName());
+            metrics.registerAll(new CassandraMetricSet(session));
+            new CassandraHostMetrics(session, metrics).register();
+        }
+
+        return healthCheck;
+    }
+
+    private SharedSession newSession(NettyOptions defaultNettyOptions) {
+        final SharedSession session = new SharedSession(buildCluster(defaultNettyOptions), keyspace,
+                preparedStatementCache);
+
+        // policies that balance load by the state of the session's connection pools
+        LoadBalancingPolicy policy = session.getCluster().getConfiguration().getPolicies().getLoadBalancingPolicy();
+        while (policy != null) {
+            if (policy instanceof LeastInFlightPolicy) {
+                ((LeastInFlightPolicy) policy).setSession(session);
+            }
+            policy = (policy instanceof ChainableLoadBalancingPolicy)
+                    ? ((ChainableLoadBalancingPolicy) policy).getChildPolicy()
+                    : null;
+        }
+
+        return session;
+    }
+
+    private Cluster buildCluster(NettyOptions defaultNettyOptions) {
         final Cluster.Builder builder = Cluster.builder();
 
         for (String contactPoint : contactPoints) {
@@ -486,6 +814,11 @@ public class CassandraFactory {
         poolingOptions.map(PoolingOptionsFactory::build).ifPresent(builder::withPoolingOptions);
         addressTranslator.map(AddressTranslatorFactory::build).ifPresent(builder::withAddressTranslator);
 
+        final NettyOptions netty = nettyOptions.map(NettyOptionsFactory::build).orElse(defaultNettyOptions);
+        if (netty != null) {
+            builder.withNettyOptions(netty);
+        }
+
         if (!metricsEnabled) {
             builder.withoutMetrics();
         }
@@ -498,17 +831,6 @@ public class CassandraFactory {
             builder.withClusterName(clusterName);
         }
 
-        Cluster cluster = builder.build();
-
-        LOG.debug("Registering {} Cassandra health check", cluster.getClusterName());
-        CassandraHealthCheck healthCheck = new CassandraHealthCheck(cluster, validationQuery, healthCheckTimeout);
-        healthChecks.register(name("cassandra", cluster.getClusterName()), healthCheck);
-
-        if (isMetricsEnabled()) {
-            LOG.debug("Registering {} Cassandra metrics", cluster.getClusterName());
-            metrics.registerAll(new CassandraMetricSet(cluster));
-        }
-
-        return cluster;
+        return builder.build();
     }
 }
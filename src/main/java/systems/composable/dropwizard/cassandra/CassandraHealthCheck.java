@@ -16,42 +16,125 @@
 
 package systems.composable.dropwizard.cassandra;
 
+import com.codahale.metrics.Clock;
 import com.codahale.metrics.health.HealthCheck;
-import com.datastax.driver.core.Cluster;
-import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.util.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * HealthCheck for a Cassandra Cluster.
  * <p/>
- * The health check returns healthy if the {@link CassandraFactory#validationQuery validationQuery} succeeds.
+ * The health check returns healthy if the {@link CassandraFactory#validationQuery validationQuery} succeeds, using
+ * the cluster's {@link SharedSession shared session} rather than opening a session of its own.
+ * <p/>
+ * Once {@link #start() started}, the validation query runs in the background every {@code interval} and checks
+ * report the last result, so polling the health check never adds load to the cluster or blocks the caller. A result
+ * older than {@code staleness} is reported as unhealthy. Until started, each check runs the validation query itself.
  */
-public class CassandraHealthCheck extends HealthCheck {
+public class CassandraHealthCheck extends HealthCheck implements Managed {
 
     private static final Logger LOG = LoggerFactory.getLogger(CassandraHealthCheck.class);
 
-    private final Session session;
+    private final SharedSession session;
     private final String validationQuery;
     private final Duration timeout;
+    private final Duration interval;
+    private final Duration staleness;
+    private final Clock clock;
+    private final Supplier<ScheduledExecutorService> executors;
+
+    private volatile ScheduledExecutorService executor;
+    private volatile CachedResult lastResult;
+
+    public CassandraHealthCheck(SharedSession session, String validationQuery, Duration timeout,
+                                Duration interval, Duration staleness) {
+        this(session, validationQuery, timeout, interval, staleness, Clock.defaultClock(),
+                () -> Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                        .setNameFormat("cassandra-health-check-" + session.getCluster().getClusterName() + "-%d")
+                        .setDaemon(true)
+                        .build()));
+    }
 
-    public CassandraHealthCheck(Cluster cluster, String validationQuery, Duration timeout) {
-        this.session = cluster.connect();
+    CassandraHealthCheck(SharedSession session, String validationQuery, Duration timeout,
+                         Duration interval, Duration staleness, Clock clock,
+                         Supplier<ScheduledExecutorService> executors) {
+        this.session = session;
         this.validationQuery = validationQuery;
         this.timeout = timeout;
+        this.interval = interval;
+        this.staleness = staleness;
+        this.clock = clock;
+        this.executors = executors;
+    }
+
+    @Override
+    public void start() throws Exception {
+        executor = executors.get();
+        executor.scheduleWithFixedDelay(this::refresh, 0, interval.toMilliseconds(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
     }
 
     @Override
     protected Result check() throws Exception {
+        if (executor == null) {
+            return validate();
+        }
+
+        final CachedResult result = lastResult;
+        if (result == null) {
+            return Result.unhealthy("Validation query has not completed yet");
+        }
+
+        final long age = clock.getTick() - result.tick;
+        if (age > staleness.toNanoseconds()) {
+            return Result.unhealthy("Validation query has not completed for "
+                    + TimeUnit.NANOSECONDS.toMillis(age) + "ms");
+        }
+        return result.result;
+    }
+
+    private void refresh() {
+        Result result;
         try {
-            session.executeAsync(validationQuery).get(timeout.toMilliseconds(), TimeUnit.MILLISECONDS);
+            result = validate();
+        } catch (Exception e) {
+            result = Result.unhealthy(e);
+        }
+        lastResult = new CachedResult(result, clock.getTick());
+    }
+
+    private Result validate() throws Exception {
+        try {
+            session.get().executeAsync(validationQuery).get(timeout.toMilliseconds(), TimeUnit.MILLISECONDS);
             return Result.healthy();
         } catch (Exception ex) {
             LOG.error("Unable to connect to Cassandra cluster [{}]", session.getCluster().getClusterName(), ex);
             throw ex;
         }
     }
+
+    private static class CachedResult {
+
+        private final Result result;
+        private final long tick;
+
+        CachedResult(Result result, long tick) {
+            this.result = result;
+            this.tick = tick;
+        }
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.LatencyTracker;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntBiFunction;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Registers per-host metrics for a cluster, adding and removing them as hosts join and leave the cluster.
+ * <p/>
+ * Metrics are named after the DataStax {@link Cluster} class, the cluster name and the host address, consistent with
+ * the {@link CassandraMetricSet cluster-wide metrics}:
+ *
+ * <b>Gauges:</b>
+ * <ul>
+ *     <li>com.datastax.core.Cluster.clusterName.hosts.address.in-flight</li>
+ *     <li>com.datastax.core.Cluster.clusterName.hosts.address.open-connections</li>
+ *     <li>com.datastax.core.Cluster.clusterName.hosts.address.trashed-connections</li>
+ * </ul>
+ *
+ * <b>Timers:</b>
+ * <ul>
+ *     <li>com.datastax.core.Cluster.clusterName.hosts.address.requests</li>
+ * </ul>
+ *
+ * The gauges report the state of the cluster's {@link SharedSession shared session}, and are zero until it connects.
+ * The driver's own cluster-wide metrics, which it only creates as the cluster initializes, are registered then too.
+ * Request latencies are measured by the driver from when the request is written to a connection.
+ */
+public class CassandraHostMetrics implements Host.StateListener, LatencyTracker {
+
+    private final SharedSession session;
+    private final MetricRegistry registry;
+    private final String prefix;
+    private final ConcurrentMap<Host, Timer> requests = new ConcurrentHashMap<>();
+
+    public CassandraHostMetrics(SharedSession session, MetricRegistry registry) {
+        this.session = session;
+        this.registry = registry;
+        this.prefix = name(Cluster.class, session.getCluster().getClusterName(), "hosts");
+    }
+
+    /**
+     * Registers these metrics with the cluster, so that they track its hosts.
+     */
+    public void register() {
+        final Cluster cluster = session.getCluster();
+        cluster.register((Host.StateListener) this);
+        cluster.register((LatencyTracker) this);
+    }
+
+    @Override
+    public void onRegister(Cluster cluster) {
+        // called when registered and again as the cluster initializes, which then reports each of its hosts to onAdd;
+        // reading its metadata here instead would initialize it, connecting as soon as the metrics are registered
+        CassandraMetricSet.driverMetrics(cluster).forEach((name, metric) -> {
+            if (!registry.getMetrics().containsKey(name)) {
+                registry.register(name, metric);
+            }
+        });
+    }
+
+    @Override
+    public void onUnregister(Cluster cluster) {
+        requests.keySet().forEach(this::onRemove);
+    }
+
+    @Override
+    public void onAdd(Host host) {
+        requests.computeIfAbsent(host, h -> {
+            final String hostName = hostName(h);
+            gauge(hostName, "in-flight", h, Session.State::getInFlightQueries);
+            gauge(hostName, "open-connections", h, Session.State::getOpenConnections);
+            gauge(hostName, "trashed-connections", h, Session.State::getTrashedConnections);
+            return registry.timer(name(prefix, hostName, "requests"));
+        });
+    }
+
+    @Override
+    public void onUp(Host host) {
+        onAdd(host);
+    }
+
+    @Override
+    public void onDown(Host host) {
+        // a host that is down remains part of the cluster, so keep reporting it
+    }
+
+    @Override
+    public void onRemove(Host host) {
+        if (requests.remove(host) != null) {
+            final String hostPrefix = name(prefix, hostName(host)) + ".";
+            registry.removeMatching((name, metric) -> name.startsWith(hostPrefix));
+        }
+    }
+
+    @Override
+    public void update(Host host, Statement statement, Exception exception, long newLatencyNanos) {
+        final Timer timer = requests.get(host);
+        if (timer != null) {
+            timer.update(newLatencyNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void gauge(String hostName, String metric, Host host, ToIntBiFunction<Session.State, Host> value) {
+        registry.register(name(prefix, hostName, metric),
+                (Gauge<Integer>) () -> session.isConnected() ? value.applyAsInt(session.get().getState(), host) : 0);
+    }
+
+    private static String hostName(Host host) {
+        return host.getAddress().getHostAddress().replace('.', '_').replace(':', '_');
+    }
+}
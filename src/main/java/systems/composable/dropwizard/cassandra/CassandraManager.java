@@ -29,6 +29,9 @@ import java.util.concurrent.TimeoutException;
 /**
  * Manages the lifecycle of the Cassandra Cluster instance, ensuring that it is appropriately
  * closed when the application terminates.
+ * <p/>
+ * If a {@link CassandraWarmUp warm-up} is given, it is run as the application starts, before
+ * the application accepts any requests.
  */
 public class CassandraManager implements Managed {
 
@@ -36,14 +39,23 @@ public class CassandraManager implements Managed {
 
     private final Cluster cluster;
     private final Duration shutdownGracePeriod;
+    private final CassandraWarmUp warmUp;
 
     public CassandraManager(Cluster cluster, Duration shutdownGracePeriod) {
+        this(cluster, shutdownGracePeriod, null);
+    }
+
+    public CassandraManager(Cluster cluster, Duration shutdownGracePeriod, CassandraWarmUp warmUp) {
         this.cluster = cluster;
         this.shutdownGracePeriod = shutdownGracePeriod;
+        this.warmUp = warmUp;
     }
 
     @Override
     public void start() throws Exception {
+        if (warmUp != null) {
+            warmUp.run();
+        }
     }
 
     @Override
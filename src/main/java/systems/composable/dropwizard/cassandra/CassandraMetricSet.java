@@ -16,9 +16,20 @@
 
 package systems.composable.dropwizard.cassandra;
 
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricSet;
 import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.Metrics;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.datastax.driver.core.policies.Policies;
 import com.google.common.collect.ImmutableMap;
 
 import java.util.Map;
@@ -53,21 +64,159 @@ import static com.codahale.metrics.MetricRegistry.name;
  * <ul>
  *     <li>com.datastax.core.Cluster.clusterName.requests</li>
  * </ul>
+ *
+ * Built with the cluster's {@link SharedSession shared session}, the load of the connection pools of each host
+ * distance is also exposed:
+ *
+ * <b>Gauges:</b>
+ * <ul>
+ *     <li>com.datastax.core.Cluster.clusterName.pooling.distance.in-flight - requests in flight to hosts at the
+ *     distance</li>
+ *     <li>com.datastax.core.Cluster.clusterName.pooling.distance.capacity - the requests that hosts at the distance can
+ *     take: {@code maxConnections * maxRequestsPerConnection} per host</li>
+ *     <li>com.datastax.core.Cluster.clusterName.pooling.distance.saturation - the requests in flight to the busiest host
+ *     at the distance, as a fraction of its capacity</li>
+ * </ul>
+ *
+ * <b>Histograms:</b>
+ * <ul>
+ *     <li>com.datastax.core.Cluster.clusterName.pooling.borrow-wait</li>
+ * </ul>
+ *
+ * <b>Meters:</b>
+ * <ul>
+ *     <li>com.datastax.core.Cluster.clusterName.pooling.busy-rejections</li>
+ * </ul>
+ *
+ * The borrow wait histogram and busy rejections meter are recorded by the
+ * {@link systems.composable.dropwizard.cassandra.pooling.PoolMetricsSession decorator} of the session handed out to
+ * applications.
+ * <p/>
+ * Policies configured on the cluster that implement {@link MetricSet} - such as the
+ * {@link systems.composable.dropwizard.cassandra.speculativeexecution.MeteredSpeculativeExecutionPolicy} and the
+ * {@link systems.composable.dropwizard.cassandra.retry.RetryBudgetPolicy} - have their metrics exposed under the same
+ * prefix.
+ * <p/>
+ * The driver only creates its metrics as the cluster initializes, so they are missing from a set built before then;
+ * {@link CassandraHostMetrics} registers them once it has. These metrics are a snapshot of the cluster-wide metrics;
+ * per-host metrics, which come and go with the hosts of the cluster, are registered by {@link CassandraHostMetrics}.
  */
 public class CassandraMetricSet implements MetricSet {
 
     private Map<String, Metric> metrics;
 
     public CassandraMetricSet(Cluster cluster) {
+        this(cluster, null);
+    }
+
+    public CassandraMetricSet(SharedSession session) {
+        this(session.getCluster(), session);
+    }
+
+    private CassandraMetricSet(Cluster cluster, SharedSession session) {
         final String clusterName = cluster.getClusterName();
-        Map<String, Metric> driverMetrics = cluster.getMetrics().getRegistry().getMetrics();
         ImmutableMap.Builder<String, Metric> builder = ImmutableMap.builder();
-        driverMetrics.forEach((k, v) -> builder.put(name(Cluster.class, clusterName, k), v));
+        driverMetrics(cluster).forEach(builder::put);
+
+        final Policies policies = cluster.getConfiguration().getPolicies();
+        addPolicyMetrics(builder, clusterName, policies.getSpeculativeExecutionPolicy());
+        addPolicyMetrics(builder, clusterName, policies.getRetryPolicy());
+        if (session != null) {
+            addPoolMetrics(builder, clusterName, session);
+        }
         metrics = builder.build();
     }
 
+    /**
+     * Returns the metrics of the driver, which only exist once the cluster has initialized, named after the cluster.
+     *
+     * @param cluster a cluster.
+     * @return the named metrics of the driver, or none if the cluster has not initialized yet.
+     */
+    static Map<String, Metric> driverMetrics(Cluster cluster) {
+        final Metrics metrics = cluster.getMetrics();
+        if (metrics == null) {
+            return ImmutableMap.of();
+        }
+        final ImmutableMap.Builder<String, Metric> builder = ImmutableMap.builder();
+        metrics.getRegistry().getMetrics()
+                .forEach((k, v) -> builder.put(name(Cluster.class, cluster.getClusterName(), k), v));
+        return builder.build();
+    }
+
+    /**
+     * @param clusterName the name of a cluster.
+     * @param metric      the name of a metric of the cluster's connection pools.
+     * @return the full name of the metric.
+     */
+    static String poolMetricName(String clusterName, String metric) {
+        return name(Cluster.class, clusterName, "pooling", metric);
+    }
+
+    private static void addPolicyMetrics(ImmutableMap.Builder<String, Metric> builder, String clusterName, Object policy) {
+        if (policy instanceof MetricSet) {
+            ((MetricSet) policy).getMetrics().forEach((k, v) -> builder.put(name(Cluster.class, clusterName, k), v));
+        }
+    }
+
+    private static void addPoolMetrics(ImmutableMap.Builder<String, Metric> builder, String clusterName,
+                                       SharedSession session) {
+        for (HostDistance distance : new HostDistance[] {HostDistance.LOCAL, HostDistance.REMOTE}) {
+            final String prefix = poolMetricName(clusterName, distance.name().toLowerCase());
+            builder.put(name(prefix, "in-flight"), (Gauge<Integer>) () -> PoolLoad.of(session, distance).inFlight);
+            builder.put(name(prefix, "capacity"), (Gauge<Long>) () -> PoolLoad.of(session, distance).capacity);
+            builder.put(name(prefix, "saturation"), (Gauge<Double>) () -> PoolLoad.of(session, distance).saturation);
+        }
+        builder.put(poolMetricName(clusterName, "borrow-wait"), new Histogram(new ExponentiallyDecayingReservoir()));
+        builder.put(poolMetricName(clusterName, "busy-rejections"), new Meter());
+    }
+
     @Override
     public Map<String, Metric> getMetrics() {
         return metrics;
     }
+
+    private static class PoolLoad {
+
+        private static final PoolLoad NONE = new PoolLoad(0, 0, 0);
+
+        private final int inFlight;
+        private final long capacity;
+        private final double saturation;
+
+        PoolLoad(int inFlight, long capacity, double saturation) {
+            this.inFlight = inFlight;
+            this.capacity = capacity;
+            this.saturation = saturation;
+        }
+
+        static PoolLoad of(SharedSession session, HostDistance distance) {
+            if (!session.isConnected()) {
+                return NONE;
+            }
+
+            final Cluster cluster = session.getCluster();
+            final LoadBalancingPolicy policy = cluster.getConfiguration().getPolicies().getLoadBalancingPolicy();
+            final PoolingOptions options = cluster.getConfiguration().getPoolingOptions();
+            final Session.State state = session.get().getState();
+
+            int hosts = 0;
+            int inFlight = 0;
+            int busiest = 0;
+            for (Host host : state.getConnectedHosts()) {
+                if (policy.distance(host) == distance) {
+                    final int hostInFlight = state.getInFlightQueries(host);
+                    hosts++;
+                    inFlight += hostInFlight;
+                    busiest = Math.max(busiest, hostInFlight);
+                }
+            }
+
+            final long hostCapacity = (long) options.getMaxConnectionsPerHost(distance)
+                    * options.getMaxRequestsPerConnection(distance);
+            return (hostCapacity <= 0)
+                    ? new PoolLoad(inFlight, 0, 0)
+                    : new PoolLoad(inFlight, hosts * hostCapacity, (double) busiest / hostCapacity);
+        }
+    }
 }
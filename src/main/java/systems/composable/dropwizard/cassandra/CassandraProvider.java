@@ -17,40 +17,93 @@ package systems.composable.dropwizard.cassandra;
 
 import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.dropwizard.setup.Environment;
+import org.glassfish.hk2.api.AnnotationLiteral;
 import org.glassfish.hk2.api.Factory;
+import org.glassfish.hk2.api.TypeLiteral;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.hk2.utilities.binding.ScopedBindingBuilder;
+import org.glassfish.hk2.utilities.binding.ServiceBindingBuilder;
 //import org.glassfish.jersey.process.internal.RequestScoped;
+import systems.composable.dropwizard.cassandra.batching.WriteBatcher;
+import systems.composable.dropwizard.cassandra.paging.PagingCursors;
+import systems.composable.dropwizard.cassandra.prepared.PreparedStatementCache;
 
 import javax.inject.Singleton;
+import java.lang.annotation.Annotation;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+import static com.codahale.metrics.MetricRegistry.name;
 
 /**
  * Provides logic for registering factories that provide and dispose injected instances for
- * {@link javax.ws.rs.core.Context}-annotated {@link Cluster} and {@link Session} classes.
+ * {@link javax.ws.rs.core.Context}-annotated {@link Cluster}, {@link Session},
+ * {@link PreparedStatementCache}, {@link PagingCursors} and, when configured, {@link WriteBatcher}
+ * classes, and for {@code ListenableFuture<Session>} and {@code CompletionStage<Session>} for
+ * resources that must not block while the session connects.
+ * <p/>
+ * When several clusters are bound, the instances of each are {@link CassandraCluster qualified} by
+ * the name of the cluster.
  *
  * @see CassandraBundle
+ * @see MultiCassandraBundle
  */
 class CassandraProvider {
 
 	/**
-	 * Encapsulates logic that binds {@link Cluster} and {@link Session} classes
-	 * via {@link javax.ws.rs.core.Context} annotation.
+	 * Encapsulates logic that binds {@link Cluster}, {@link Session}, {@link PreparedStatementCache}
+	 * and {@link PagingCursors} classes via {@link javax.ws.rs.core.Context} annotation, optionally qualified.
 	 */
 	public static class Binder extends AbstractBinder {
 
 		private final CassandraProvider cassandraProvider;
+		private final Annotation qualifier;
 
-		Binder(CassandraFactory cassandraFactory, Environment environment) {
-			cassandraProvider = new CassandraProvider(cassandraFactory, environment);
+		Binder(CassandraProvider cassandraProvider, Annotation qualifier) {
+			this.cassandraProvider = cassandraProvider;
+			this.qualifier = qualifier;
 		}
 
 		@Override
 		protected void configure() {
-			bindFactory(cassandraProvider.clusterFactory).to(Cluster.class).in(Singleton.class);
+			qualify(bindFactory(cassandraProvider.clusterFactory).to(Cluster.class)).in(Singleton.class);
 			// It is Singleton instead of RequestScoped, because
 			// [documentation](http://docs.datastax.com/en/drivers/java/3.1/com/datastax/driver/core/Session.html)
 			// recommends to use one Session instance per application
-			bindFactory(cassandraProvider.sessionFactory).to(Session.class).in(Singleton.class);
+			qualify(bindFactory(cassandraProvider.sessionFactory).to(Session.class)).in(Singleton.class);
+			// looked up each time, so that a lookup after the session failed to connect tries again
+			qualify(bindFactory(cassandraProvider.sessionFutureFactory)
+					.to(new TypeLiteral<ListenableFuture<Session>>() {}));
+			qualify(bindFactory(cassandraProvider.sessionStageFactory)
+					.to(new TypeLiteral<CompletionStage<Session>>() {}));
+			// prepares on the injected Session, so there is one cache per Session too
+			final ScopedBindingBuilder<PreparedStatementCache> cache =
+					bind(cassandraProvider.preparedStatementCache).to(PreparedStatementCache.class);
+			if (qualifier != null) {
+				cache.qualifiedBy(qualifier);
+			}
+			// pages through queries on the injected Session
+			final ScopedBindingBuilder<PagingCursors> cursors =
+					bind(cassandraProvider.pagingCursors).to(PagingCursors.class);
+			if (qualifier != null) {
+				cursors.qualifiedBy(qualifier);
+			}
+			if (cassandraProvider.writeBatcher != null) {
+				final ScopedBindingBuilder<WriteBatcher> batcher =
+						bind(cassandraProvider.writeBatcher).to(WriteBatcher.class);
+				if (qualifier != null) {
+					batcher.qualifiedBy(qualifier);
+				}
+			}
+		}
+
+		private <T> ServiceBindingBuilder<T> qualify(ServiceBindingBuilder<T> binding) {
+			return (qualifier == null) ? binding : binding.qualifiedBy(qualifier);
 		}
 	}
 
@@ -78,25 +131,20 @@ class CassandraProvider {
 
 	/**
 	 * A factory for injected {@link Session} instance.
+	 * The instance is the {@link SharedSession} of the cluster, which its health check also uses,
+	 * {@link CassandraFactory#decorateSession decorated} as configured.
 	 */
 	public static class SessionFactory implements Factory<Session> {
 
-		private final ClusterFactory clusterFactory;
-		private final String keyspace;
-		private Session session;
+		private final Supplier<Session> session;
 
-		SessionFactory(ClusterFactory clusterFactory, String keyspace) {
-			this.clusterFactory = clusterFactory;
-			this.keyspace = keyspace;
+		SessionFactory(Supplier<Session> session) {
+			this.session = session;
 		}
 
 		@Override
 		public Session provide() {
-			if (session == null) {
-				final Cluster cluster = clusterFactory.provide();
-				session = keyspace == null || keyspace.isEmpty() ? cluster.connect() : cluster.connect(keyspace);
-			}
-			return session;
+			return session.get();
 		}
 
 		@Override
@@ -105,15 +153,121 @@ class CassandraProvider {
 		}
 	}
 
+	/**
+	 * A factory for injected {@code ListenableFuture<Session>} instances, which complete with the
+	 * same session as injected {@link Session} instances once it has connected, without blocking.
+	 */
+	public static class SessionFutureFactory implements Factory<ListenableFuture<Session>> {
+
+		private final SharedSession sharedSession;
+		private final Supplier<Session> session;
+
+		SessionFutureFactory(SharedSession sharedSession, Supplier<Session> session) {
+			this.sharedSession = sharedSession;
+			this.session = session;
+		}
+
+		@Override
+		public ListenableFuture<Session> provide() {
+			// the shared session has connected by the time it is decorated, so this doesn't block
+			return Futures.transform(sharedSession.connectAsync(), (Session connected) -> session.get());
+		}
+
+		@Override
+		public void dispose(ListenableFuture<Session> future) {
+		}
+	}
+
+	/**
+	 * A factory for injected {@code CompletionStage<Session>} instances, which complete with the
+	 * same session as injected {@link Session} instances once it has connected, without blocking.
+	 */
+	public static class SessionStageFactory implements Factory<CompletionStage<Session>> {
+
+		private final SessionFutureFactory sessionFutureFactory;
+
+		SessionStageFactory(SessionFutureFactory sessionFutureFactory) {
+			this.sessionFutureFactory = sessionFutureFactory;
+		}
+
+		@Override
+		public CompletionStage<Session> provide() {
+			final CompletableFuture<Session> stage = new CompletableFuture<>();
+			Futures.addCallback(sessionFutureFactory.provide(), new FutureCallback<Session>() {
+				@Override
+				public void onSuccess(Session result) {
+					stage.complete(result);
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					stage.completeExceptionally(t);
+				}
+			});
+			return stage;
+		}
+
+		@Override
+		public void dispose(CompletionStage<Session> stage) {
+		}
+	}
+
 	static Binder binder(CassandraFactory cassandraFactory, Environment environment) {
-		return new Binder(cassandraFactory, environment);
+		final SharedSession session = cassandraFactory.buildSession(environment);
+		return new Binder(new CassandraProvider(cassandraFactory, session, environment), null);
+	}
+
+	static Binder binder(String name, CassandraFactory cassandraFactory, SharedSession session,
+						 Environment environment) {
+		final CassandraProvider cassandraProvider = new CassandraProvider(cassandraFactory, session, environment);
+		return new Binder(cassandraProvider, new CassandraClusterLiteral(name));
 	}
 
 	private final ClusterFactory clusterFactory;
 	private final SessionFactory sessionFactory;
+	private final SessionFutureFactory sessionFutureFactory;
+	private final SessionStageFactory sessionStageFactory;
+	private final PreparedStatementCache preparedStatementCache;
+	private final PagingCursors pagingCursors;
+	private final WriteBatcher writeBatcher;
 
-	CassandraProvider(CassandraFactory cassandraFactory, Environment environment) {
-		clusterFactory = new ClusterFactory(cassandraFactory.build(environment));
-		sessionFactory = new SessionFactory(clusterFactory, cassandraFactory.getKeyspace());
+	CassandraProvider(CassandraFactory cassandraFactory, SharedSession session, Environment environment) {
+		clusterFactory = new ClusterFactory(session.getCluster());
+		final Supplier<Session> decorated = cassandraFactory.decorateSession(session, environment.metrics());
+		sessionFactory = new SessionFactory(decorated);
+		sessionFutureFactory = new SessionFutureFactory(session, decorated);
+		sessionStageFactory = new SessionStageFactory(sessionFutureFactory);
+		preparedStatementCache = session.getPreparedStatementCache();
+		pagingCursors = cassandraFactory.getPagingCursors().build(decorated);
+		writeBatcher = cassandraFactory.getWriteBatcher()
+				.map(factory -> factory.build(decorated, environment.metrics(), session.getCluster().getClusterName()))
+				.orElse(null);
+		if (writeBatcher != null) {
+			// stopped before the cluster is closed, so that the writes waiting to be sent are sent
+			environment.lifecycle().manage(writeBatcher);
+		}
+
+		if (cassandraFactory.isMetricsEnabled()) {
+			final String clusterName = clusterFactory.provide().getClusterName();
+			environment.metrics().register(
+					name(Cluster.class, clusterName, "prepared-statements"), preparedStatementCache);
+		}
+	}
+
+	@SuppressWarnings("ClassExplicitlyAnnotation")
+	private static class CassandraClusterLiteral extends AnnotationLiteral<CassandraCluster> implements CassandraCluster {
+
+		private static final long serialVersionUID = 0;
+
+		private final String value;
+
+		CassandraClusterLiteral(String value) {
+			this.value = value;
+		}
+
+		@Override
+		public String value() {
+			return value;
+		}
 	}
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra;
+
+import com.codahale.metrics.Timer;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.dropwizard.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Warms up the {@link SharedSession} of a cluster, so that the first requests after the application starts don't pay
+ * for connecting to it.
+ * <p/>
+ * Warming up connects the session - which initializes the cluster, fetching its schema metadata, and opens the core
+ * connections of the pool to every host - then prepares the configured statements on every host and runs the
+ * configured number of warm-up queries, spread over the hosts by the load balancing policy. The whole warm-up is
+ * bounded by a timeout, after which the application starts regardless.
+ * <p/>
+ * Failures are logged rather than thrown: the application starts with a cold session, just as it would without
+ * warming up, and the health check reports the cluster's state.
+ */
+public class CassandraWarmUp {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CassandraWarmUp.class);
+
+    static final int MAX_IN_FLIGHT = 64;
+
+    private final SharedSession session;
+    private final List<String> statements;
+    private final String query;
+    private final int queries;
+    private final Duration timeout;
+    private final Timer timer;
+
+    /**
+     * @param session    the session to warm up.
+     * @param statements the statements to prepare.
+     * @param query      the query to run to warm up.
+     * @param queries    the number of times to run the query.
+     * @param timeout    the maximum time to spend warming up.
+     * @param timer      records the time spent warming up.
+     */
+    public CassandraWarmUp(SharedSession session, List<String> statements, String query, int queries,
+                           Duration timeout, Timer timer) {
+        this.session = session;
+        this.statements = ImmutableList.copyOf(statements);
+        this.query = query;
+        this.queries = queries;
+        this.timeout = timeout;
+        this.timer = timer;
+    }
+
+    /**
+     * Warms up the session, blocking until it is warm or the timeout has elapsed.
+     */
+    public void run() {
+        final Cluster cluster = session.getCluster();
+        final long deadline = System.nanoTime() + timeout.toNanoseconds();
+
+        LOG.info("Warming up Cassandra cluster: {}", cluster.getClusterName());
+        final Timer.Context context = timer.time();
+        try {
+            final Session connected = session.get();
+            logColdHosts(connected);
+
+            // prepared through the session's cache, so that the application finds them there
+            final List<ListenableFuture<?>> prepared = new ArrayList<>(statements.size());
+            for (String statement : statements) {
+                prepared.add(session.getPreparedStatementCache().prepareAsync(statement));
+            }
+            await(prepared, deadline);
+
+            final Statement warmUp = new SimpleStatement(query).setIdempotent(true);
+            for (int sent = 0; sent < queries; ) {
+                final int batch = Math.min(MAX_IN_FLIGHT, queries - sent);
+                final List<ListenableFuture<?>> results = new ArrayList<>(batch);
+                for (int i = 0; i < batch; i++) {
+                    results.add(connected.executeAsync(warmUp));
+                }
+                await(results, deadline);
+                sent += batch;
+            }
+        } catch (TimeoutException e) {
+            LOG.warn("Cassandra cluster {} did not warm up in {}", cluster.getClusterName(), timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while warming up Cassandra cluster: {}", cluster.getClusterName());
+        } catch (Exception e) {
+            LOG.warn("Unable to warm up Cassandra cluster: {}", cluster.getClusterName(), e);
+        } finally {
+            context.stop();
+        }
+    }
+
+    private static void await(List<ListenableFuture<?>> futures, long deadline)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        Futures.allAsList(futures).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private void logColdHosts(Session connected) {
+        final Cluster cluster = session.getCluster();
+        final LoadBalancingPolicy policy = cluster.getConfiguration().getPolicies().getLoadBalancingPolicy();
+        final int core = cluster.getConfiguration().getPoolingOptions().getCoreConnectionsPerHost(HostDistance.LOCAL);
+        final Session.State state = connected.getState();
+
+        for (Host host : cluster.getMetadata().getAllHosts()) {
+            final int open = state.getOpenConnections(host);
+            if (host.isUp() && policy.distance(host) == HostDistance.LOCAL && open < core) {
+                LOG.warn("Opened {} of {} core connections to {}", open, core, host);
+            }
+        }
+    }
+}
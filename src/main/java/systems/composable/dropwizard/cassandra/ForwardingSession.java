@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra;
+
+import com.datastax.driver.core.CloseFuture;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.Map;
+
+/**
+ * A {@link Session} that forwards to another session, for decorating the sessions handed out to applications.
+ * <p/>
+ * Every query - whether synchronous, asynchronous, or given as a query string - is executed through
+ * {@link #executeAsync(Statement)}, so decorators need only override that method to intercept all queries.
+ */
+public abstract class ForwardingSession implements Session {
+
+    protected final Session delegate;
+
+    protected ForwardingSession(Session delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String getLoggedKeyspace() {
+        return delegate.getLoggedKeyspace();
+    }
+
+    @Override
+    public Session init() {
+        delegate.init();
+        return this;
+    }
+
+    @Override
+    public ListenableFuture<Session> initAsync() {
+        return Futures.transform(delegate.initAsync(), (Session session) -> this);
+    }
+
+    @Override
+    public ResultSet execute(String query) {
+        return execute(new SimpleStatement(query));
+    }
+
+    @Override
+    public ResultSet execute(String query, Object... values) {
+        return execute(new SimpleStatement(query, values));
+    }
+
+    @Override
+    public ResultSet execute(String query, Map<String, Object> values) {
+        return execute(new SimpleStatement(query, values));
+    }
+
+    @Override
+    public ResultSet execute(Statement statement) {
+        return executeAsync(statement).getUninterruptibly();
+    }
+
+    @Override
+    public ResultSetFuture executeAsync(String query) {
+        return executeAsync(new SimpleStatement(query));
+    }
+
+    @Override
+    public ResultSetFuture executeAsync(String query, Object... values) {
+        return executeAsync(new SimpleStatement(query, values));
+    }
+
+    @Override
+    public ResultSetFuture executeAsync(String query, Map<String, Object> values) {
+        return executeAsync(new SimpleStatement(query, values));
+    }
+
+    @Override
+    public ResultSetFuture executeAsync(Statement statement) {
+        return delegate.executeAsync(statement);
+    }
+
+    @Override
+    public PreparedStatement prepare(String query) {
+        return delegate.prepare(query);
+    }
+
+    @Override
+    public PreparedStatement prepare(RegularStatement statement) {
+        return delegate.prepare(statement);
+    }
+
+    @Override
+    public ListenableFuture<PreparedStatement> prepareAsync(String query) {
+        return delegate.prepareAsync(query);
+    }
+
+    @Override
+    public ListenableFuture<PreparedStatement> prepareAsync(RegularStatement statement) {
+        return delegate.prepareAsync(statement);
+    }
+
+    @Override
+    public CloseFuture closeAsync() {
+        return delegate.closeAsync();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public Cluster getCluster() {
+        return delegate.getCluster();
+    }
+
+    @Override
+    public State getState() {
+        return delegate.getState();
+    }
+}
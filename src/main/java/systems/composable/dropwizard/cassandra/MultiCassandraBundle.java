@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra;
+
+import io.dropwizard.Configuration;
+import io.dropwizard.ConfiguredBundle;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+import systems.composable.dropwizard.cassandra.cli.LoadCommand;
+import systems.composable.dropwizard.cassandra.cli.MigrateCommand;
+import systems.composable.dropwizard.cassandra.cli.StressCommand;
+import systems.composable.dropwizard.cassandra.netty.SharedNettyOptions;
+import systems.composable.dropwizard.cassandra.streaming.StreamedRowsWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A reusable bundle of Cassandra functionality for applications connecting to several clusters, which initializes
+ * {@link CassandraCluster}-qualified {@link com.datastax.driver.core.Cluster},
+ * {@link com.datastax.driver.core.Session} and
+ * {@link systems.composable.dropwizard.cassandra.prepared.PreparedStatementCache} instances for each cluster.
+ * <p>The main usage is following:
+ * <ol>
+ * <li> In your main application class add the following code into your
+ * {@link io.dropwizard.Application#initialize(Bootstrap)} method:
+ * <pre>
+ * &#64;Override
+ * public void initialize(final Bootstrap&lt;MyAppConfiguration&gt; bootstrap) {
+ *   //...
+ *   bootstrap.addBundle(new MultiCassandraBundle&lt;MyAppConfiguration&gt;() {
+ *     &#64;Override
+ *     public Map&lt;String, CassandraFactory&gt; getCassandraFactories(MyAppConfiguration configuration) {
+ *       return configuration.getCassandraFactories();
+ *     }
+ *   });
+ *   //...
+ * }
+ * </pre>
+ * </li>
+ * <li>Now you may inject the instances of each cluster into your resources, by the name it is configured under:
+ * <pre>
+ * &#64;Path("/test")
+ * public class TestService {
+ *   &#64;Inject &#64;CassandraCluster("hot") Session hot;
+ *   &#64;Inject &#64;CassandraCluster("cold") Session cold;
+ *   //...
+ * }
+ * </pre>
+ * </li>
+ * </ol>
+ * Every cluster is configured, monitored and managed just as with the {@link CassandraBundle}, except that clusters
+ * without configured {@code nettyOptions} share a single Netty event loop group and timer, rather than each starting
+ * its own threads. The sessions of every cluster start connecting concurrently as the application starts, rather than
+ * on first use.
+ */
+public abstract class MultiCassandraBundle<T extends Configuration>
+		implements ConfiguredBundle<T>, MultiCassandraConfiguration<T> {
+
+	/**
+	 * Initializes Cassandra in application bootstrap: adds the {@link LoadCommand cassandra-load},
+	 * {@link MigrateCommand cassandra-migrate} and {@link StressCommand cassandra-stress} commands, which connect to
+	 * the configured cluster named with {@code --cluster}.
+	 *
+	 * @param bootstrap The application bootstrap
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public void initialize(Bootstrap<?> bootstrap) {
+		// the bundle is added to a bootstrap of the application's configuration, T
+		final Class<T> configurationClass = (Class<T>) bootstrap.getApplication().getConfigurationClass();
+		bootstrap.addCommand(LoadCommand.forClusters(this, configurationClass));
+		bootstrap.addCommand(MigrateCommand.forClusters(this, configurationClass));
+		bootstrap.addCommand(StressCommand.forClusters(this, configurationClass));
+	}
+
+	/**
+	 * Initializes the Cassandra environment: builds every configured cluster, and registers context
+	 * binders for the {@link com.datastax.driver.core.Cluster} and {@link com.datastax.driver.core.Session}
+	 * instances of each, and the {@link StreamedRowsWriter} for streaming result sets.
+	 *
+	 * @param configuration The configuration object
+	 * @param environment The application's Environment
+	 */
+	@Override
+	public void run(T configuration, Environment environment) throws Exception {
+		environment.jersey().register(new StreamedRowsWriter(environment.getObjectMapper()));
+
+		final SharedNettyOptions nettyOptions = new SharedNettyOptions();
+		final List<SharedSession> sessions = new ArrayList<>();
+
+		// managed before the clusters, so that every session is connecting before any of them warms up
+		environment.lifecycle().manage(new Managed() {
+			@Override
+			public void start() throws Exception {
+				sessions.forEach(SharedSession::connectAsync);
+			}
+
+			@Override
+			public void stop() throws Exception {
+			}
+		});
+
+		for (Map.Entry<String, CassandraFactory> cluster : getCassandraFactories(configuration).entrySet()) {
+			final SharedSession session = cluster.getValue().buildSession(environment, nettyOptions);
+			sessions.add(session);
+			environment.jersey().register(
+					CassandraProvider.binder(cluster.getKey(), cluster.getValue(), session, environment));
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.exceptions.DriverInternalError;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import systems.composable.dropwizard.cassandra.prepared.PreparedStatementCache;
+import systems.composable.dropwizard.cassandra.prepared.PreparedStatementCacheFactory;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * The single {@link Session} of a {@link Cluster}, shared by everything the bundle registers for that cluster - the
+ * health check and injected resources alike.
+ * <p/>
+ * The session is opened asynchronously on first use, with the keyspace defined in configuration (if any). However
+ * many threads request the session at once, it is only opened once: they all wait for, or are called back by, the same
+ * connection attempt. If that attempt fails, the next request for the session tries again.
+ * <p/>
+ * As the
+ * <a href="http://docs.datastax.com/en/drivers/java/3.1/com/datastax/driver/core/Session.html">driver documentation</a>
+ * recommends, one session should be used per application; each session holds its own connection pools to every host.
+ * Likewise, statements are prepared on it through a single {@link PreparedStatementCache}, so that a statement prepared
+ * while warming up the session is not prepared again by the resources using it.
+ */
+public class SharedSession implements Supplier<Session> {
+
+    private final Cluster cluster;
+    private final String keyspace;
+    private final AtomicReference<ListenableFuture<Session>> session = new AtomicReference<>();
+    private final PreparedStatementCache preparedStatementCache;
+
+    public SharedSession(Cluster cluster, String keyspace) {
+        this(cluster, keyspace, new PreparedStatementCacheFactory());
+    }
+
+    public SharedSession(Cluster cluster, String keyspace, PreparedStatementCacheFactory preparedStatementCache) {
+        this.cluster = cluster;
+        this.keyspace = keyspace;
+        // the cache only requests the session when the first statement is prepared
+        this.preparedStatementCache = preparedStatementCache.build(this);
+    }
+
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    public String getKeyspace() {
+        return keyspace;
+    }
+
+    /**
+     * @return the cache of the statements prepared on the shared session.
+     */
+    public PreparedStatementCache getPreparedStatementCache() {
+        return preparedStatementCache;
+    }
+
+    /**
+     * Returns the shared session, connecting it if this is the first request for it, and waiting for it to connect.
+     *
+     * @return the shared {@link Session}.
+     * @throws com.datastax.driver.core.exceptions.NoHostAvailableException if no host could be connected to.
+     */
+    @Override
+    public Session get() {
+        try {
+            return Uninterruptibles.getUninterruptibly(connectAsync());
+        } catch (ExecutionException e) {
+            throw propagateCause(e);
+        }
+    }
+
+    /**
+     * Returns the shared session without blocking, connecting it if this is the first request for it.
+     * <p/>
+     * Cancelling the returned future does not cancel the connection attempt, which other callers may be waiting for.
+     *
+     * @return a future on the shared {@link Session}, which completes once it has connected.
+     */
+    public ListenableFuture<Session> connectAsync() {
+        while (true) {
+            final ListenableFuture<Session> current = session.get();
+            if (current != null) {
+                return Futures.nonCancellationPropagating(current);
+            }
+
+            final SettableFuture<Session> connecting = SettableFuture.create();
+            if (session.compareAndSet(null, connecting)) {
+                connect(connecting);
+                return Futures.nonCancellationPropagating(connecting);
+            }
+        }
+    }
+
+    /**
+     * @return whether the shared session has been opened yet.
+     */
+    public boolean isConnected() {
+        final ListenableFuture<Session> current = session.get();
+        if (current == null || !current.isDone()) {
+            return false;
+        }
+        try {
+            Uninterruptibles.getUninterruptibly(current);
+            return true;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a view of the shared session which is decorated once, the first time it is requested.
+     *
+     * @param decorator decorates the shared session.
+     * @return supplies the decorated {@link Session}.
+     */
+    public Supplier<Session> decorated(UnaryOperator<Session> decorator) {
+        return new Supplier<Session>() {
+            private volatile Session decorated;
+
+            @Override
+            public Session get() {
+                Session result = decorated;
+                if (result == null) {
+                    synchronized (this) {
+                        result = decorated;
+                        if (result == null) {
+                            result = decorator.apply(SharedSession.this.get());
+                            decorated = result;
+                        }
+                    }
+                }
+                return result;
+            }
+        };
+    }
+
+    private void connect(SettableFuture<Session> connecting) {
+        Futures.addCallback(connecting, new FutureCallback<Session>() {
+            @Override
+            public void onSuccess(Session result) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                // let the next request for the session try again
+                session.compareAndSet(connecting, null);
+            }
+        });
+
+        try {
+            connecting.setFuture(Strings.isNullOrEmpty(keyspace)
+                    ? cluster.connectAsync()
+                    : cluster.connectAsync(keyspace));
+        } catch (RuntimeException e) {
+            connecting.setException(e);
+        }
+    }
+
+    // rethrows the cause of a failed connection, as Cluster.connect() does
+    private static RuntimeException propagateCause(ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof DriverException) {
+            throw ((DriverException) cause).copy();
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        throw new DriverInternalError("Unexpected exception thrown", cause);
+    }
+}
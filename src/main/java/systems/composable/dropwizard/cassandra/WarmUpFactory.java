@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Cluster;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * A factory for configuring and building {@link CassandraWarmUp} instances, which warm up the session of a cluster as
+ * the application starts.
+ * <p/>
+ * <b>Configuration Parameters:</b>
+ * <table>
+ *     <tr>
+ *         <td>Name</td>
+ *         <td>Default</td>
+ *         <td>Description</td>
+ *     </tr>
+ *     <tr>
+ *         <td>statements</td>
+ *         <td>None.</td>
+ *         <td>The statements to prepare on every host before the application starts.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>query</td>
+ *         <td>SELECT key FROM system.local</td>
+ *         <td>The query to run to warm up the connections to the cluster.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>queries</td>
+ *         <td>100</td>
+ *         <td>The number of times to run the warm-up query.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>timeout</td>
+ *         <td>30 seconds</td>
+ *         <td>The maximum time to spend warming up; after which, the application starts regardless.</td>
+ *     </tr>
+ * </table>
+ */
+public class WarmUpFactory {
+
+    @NotNull
+    private List<String> statements = new ArrayList<>();
+
+    @NotEmpty
+    private String query = "SELECT key FROM system.local";
+
+    @Min(0)
+    private int queries = 100;
+
+    @NotNull
+    private Duration timeout = Duration.seconds(30);
+
+    @JsonProperty
+    public List<String> getStatements() {
+        return statements;
+    }
+
+    @JsonProperty
+    public void setStatements(List<String> statements) {
+        this.statements = statements;
+    }
+
+    @JsonProperty
+    public String getQuery() {
+        return query;
+    }
+
+    @JsonProperty
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    @JsonProperty
+    public int getQueries() {
+        return queries;
+    }
+
+    @JsonProperty
+    public void setQueries(int queries) {
+        this.queries = queries;
+    }
+
+    @JsonProperty
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    @JsonProperty
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Builds a {@link CassandraWarmUp} for the given session, which records the time spent warming up as the
+     * {@code warm-up} timer of the cluster.
+     *
+     * @param session the session to warm up.
+     * @param metrics the registry to register the warm-up timer with.
+     * @return the warm-up of the session.
+     */
+    public CassandraWarmUp build(SharedSession session, MetricRegistry metrics) {
+        final String clusterName = session.getCluster().getClusterName();
+        return new CassandraWarmUp(session, statements, query, queries, timeout,
+                metrics.timer(name(Cluster.class, clusterName, "warm-up")));
+    }
+}
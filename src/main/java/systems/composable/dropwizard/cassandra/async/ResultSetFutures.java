@@ -0,0 +1,245 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.async;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.exceptions.BusyConnectionException;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.ReadTimeoutException;
+import com.datastax.driver.core.exceptions.UnavailableException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.dropwizard.util.Duration;
+import systems.composable.dropwizard.cassandra.throttling.RequestThrottledException;
+
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.ConnectionCallback;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Helpers for resources that execute queries asynchronously, resuming a suspended JAX-RS {@link AsyncResponse} when
+ * the query completes rather than blocking a server thread for as long as it runs:
+ * <pre>
+ * &#64;GET
+ * &#64;Path("/users")
+ * public void getUsers(&#64;Suspended AsyncResponse response) {
+ *     ResultSetFutures.resume(response, session.executeAsync("SELECT * FROM users"), this::toUsers, executor,
+ *             Duration.seconds(5));
+ * }
+ * </pre>
+ * Queries complete on the driver's I/O threads, which must never block: iterating past the rows of the first page of
+ * a result blocks until the next page is fetched, by those same threads. The result is therefore mapped, and the
+ * response resumed and written, on the given executor, such as one managed by the application's
+ * {@link io.dropwizard.lifecycle.setup.LifecycleEnvironment#executorService(String) lifecycle}.
+ * <p/>
+ * The query is cancelled if the response times out, or the client disconnects, before it completes. Failures that
+ * mean the cluster is overloaded or unavailable resume the response with a {@code 503 Service Unavailable}, and
+ * timeouts of the query, or of the response, with a {@code 504 Gateway Timeout}; other failures are left to the
+ * application's exception mappers.
+ */
+public final class ResultSetFutures {
+
+    private ResultSetFutures() {
+    }
+
+    /**
+     * Returns a stage that completes with the result of a query, on the driver I/O thread the query completes on.
+     * Cancelling the stage, or the {@link CompletionStage#toCompletableFuture() future} behind it, cancels the query.
+     * <p/>
+     * Stages that depend on it without an executor run on that thread too, so must not block; in particular, they
+     * must not read more than the {@link ResultSet#getAvailableWithoutFetching() rows available without fetching}.
+     * Use {@link #toCompletionStage(ResultSetFuture, Executor)} for stages that read whole results.
+     *
+     * @param future the future result of the query.
+     * @return a stage completing with the result, or the failure, of the query.
+     */
+    public static CompletionStage<ResultSet> toCompletionStage(ResultSetFuture future) {
+        return toCompletionStage(future, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Returns a stage that completes with the result of a query on the given executor. Cancelling the stage, or the
+     * {@link CompletionStage#toCompletableFuture() future} behind it, cancels the query.
+     *
+     * @param future the future result of the query.
+     * @param executor the executor to complete the stage on.
+     * @return a stage completing with the result, or the failure, of the query.
+     */
+    public static CompletionStage<ResultSet> toCompletionStage(ResultSetFuture future, Executor executor) {
+        final CompletableFuture<ResultSet> stage = new CompletableFuture<ResultSet>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                future.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet result) {
+                stage.complete(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                stage.completeExceptionally(t);
+            }
+        }, executor);
+        return stage;
+    }
+
+    /**
+     * Resumes a suspended response with the result of a query, mapped to the entity of the response.
+     *
+     * @param response the suspended response.
+     * @param future the future result of the query.
+     * @param mapper maps the result of the query to the entity of the response, and may read every page of it.
+     * @param executor the executor to map the result and resume the response on.
+     * @param timeout how long to wait for the query before resuming with a {@code 504 Gateway Timeout}.
+     * @param <T> the type of the entity.
+     */
+    public static <T> void resume(AsyncResponse response, ResultSetFuture future,
+                                  Function<? super ResultSet, T> mapper, Executor executor, Duration timeout) {
+        resume(response, toCompletionStage(future, executor).thenApply(mapper), future, executor, timeout);
+    }
+
+    /**
+     * Resumes a suspended response with the result of a query, mapped to the entity of the response, without a
+     * timeout other than those of the driver.
+     *
+     * @param response the suspended response.
+     * @param future the future result of the query.
+     * @param mapper maps the result of the query to the entity of the response, and may read every page of it.
+     * @param executor the executor to map the result and resume the response on.
+     * @param <T> the type of the entity.
+     */
+    public static <T> void resume(AsyncResponse response, ResultSetFuture future,
+                                  Function<? super ResultSet, T> mapper, Executor executor) {
+        resume(response, toCompletionStage(future, executor).thenApply(mapper), future, executor, null);
+    }
+
+    /**
+     * Resumes a suspended response with the entity a stage completes with. The stage is cancelled if the response
+     * times out, or the client disconnects, first; cancelling a stage returned by
+     * {@link #toCompletionStage(ResultSetFuture)} cancels its query, whereas cancelling a stage derived from it only
+     * cancels that stage.
+     *
+     * @param response the suspended response.
+     * @param stage the stage completing with the entity of the response.
+     * @param executor the executor to resume the response on.
+     * @param timeout how long to wait for the stage before resuming with a {@code 504 Gateway Timeout}.
+     * @param <T> the type of the entity.
+     */
+    public static <T> void resume(AsyncResponse response, CompletionStage<T> stage, Executor executor,
+                                  Duration timeout) {
+        resume(response, stage, stage.toCompletableFuture(), executor, timeout);
+    }
+
+    /**
+     * Maps a failed query to the exception a response is resumed with: a {@link ServiceUnavailableException} if the
+     * cluster is overloaded or unavailable, a {@link WebApplicationException} with a {@code 504 Gateway Timeout} status
+     * if the query timed out, or the failure itself otherwise.
+     *
+     * @param t the failure of a query, which may be wrapped in a {@link CompletionException}.
+     * @return the exception to resume a response with.
+     */
+    public static Throwable toResponseException(Throwable t) {
+        final Throwable cause = unwrap(t);
+        if (cause instanceof RequestThrottledException
+                || cause instanceof NoHostAvailableException
+                || cause instanceof UnavailableException
+                || cause instanceof OverloadedException
+                || cause instanceof BusyConnectionException) {
+            return new ServiceUnavailableException(cause.getMessage(), (Long) null, cause);
+        }
+        if (cause instanceof OperationTimedOutException
+                || cause instanceof ReadTimeoutException
+                || cause instanceof WriteTimeoutException) {
+            return new WebApplicationException(cause.getMessage(), cause, Response.Status.GATEWAY_TIMEOUT);
+        }
+        return cause;
+    }
+
+    private static <T> void resume(AsyncResponse response, CompletionStage<T> stage, Future<?> cancellable,
+                                   Executor executor, Duration timeout) {
+        final Cancellation cancellation = new Cancellation(cancellable);
+        response.register(cancellation);
+        if (timeout != null) {
+            response.setTimeoutHandler(suspended -> {
+                suspended.resume(new WebApplicationException("Timed out after " + timeout + " waiting for Cassandra",
+                        Response.Status.GATEWAY_TIMEOUT));
+                cancellable.cancel(true);
+            });
+            response.setTimeout(timeout.getQuantity(), timeout.getUnit());
+        }
+
+        // the response is written by the thread resuming it, which must not be a driver I/O thread
+        stage.whenCompleteAsync((entity, t) -> {
+            if (t == null) {
+                response.resume(entity);
+            } else {
+                response.resume(toResponseException(t));
+            }
+        }, executor);
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        Throwable cause = t;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Cancels a query, or the stage waiting for it, when its response completes or the client disconnects. The query
+     * has usually completed by then, in which case cancelling it does nothing.
+     */
+    private static class Cancellation implements CompletionCallback, ConnectionCallback {
+
+        private final Future<?> cancellable;
+
+        Cancellation(Future<?> cancellable) {
+            this.cancellable = cancellable;
+        }
+
+        @Override
+        public void onComplete(Throwable throwable) {
+            cancellable.cancel(true);
+        }
+
+        @Override
+        public void onDisconnect(AsyncResponse disconnected) {
+            cancellable.cancel(true);
+        }
+    }
+}
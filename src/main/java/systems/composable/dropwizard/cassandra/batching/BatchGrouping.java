@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.batching;
+
+/**
+ * How a {@link WriteBatcher} groups writes into batches.
+ */
+public enum BatchGrouping {
+
+    /**
+     * Writes to the same partition are batched together, so that each batch is applied by a single partition's
+     * replicas, atomically and in isolation.
+     */
+    PARTITION,
+
+    /**
+     * Writes to partitions with the same replicas, according to the cluster's token metadata, are batched together,
+     * which makes larger batches of writes to small partitions that each still only touch one set of replicas. Falls
+     * back to grouping by partition until the token metadata is known.
+     */
+    REPLICAS
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.batching;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.Configuration;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Coalesces writes into {@link BatchStatement.Type#UNLOGGED unlogged} batches, saving the round trip and the
+ * coordinator's work of sending each write on its own.
+ * <p/>
+ * Writes are {@link BatchGrouping grouped} by partition, or by the replicas of their partition, and by keyspace and
+ * consistency level. A group is sent as a batch once it holds {@code maxBatchSize} writes, or {@code maxDelay} after
+ * its first write was added, whichever comes first; a group of a single write is sent as it is. Each write's future
+ * completes with the result, or failure, of its batch.
+ * <p/>
+ * Writes without a routing key, such as simple statements without one set, and batches are sent straight away. So are
+ * counter updates, which cannot be batched with other writes, and conditional writes, as a batch of them is applied
+ * all or nothing, and only within a single partition. Whether a prepared statement can be batched is worked out once.
+ * <p/>
+ * Metrics are named after the DataStax {@link Cluster} class and the cluster name:
+ *
+ * <b>Histograms:</b>
+ * <ul>
+ *     <li>com.datastax.core.Cluster.clusterName.batching.batch-size</li>
+ * </ul>
+ *
+ * <b>Timers:</b>
+ * <ul>
+ *     <li>com.datastax.core.Cluster.clusterName.batching.flush-latency</li>
+ * </ul>
+ */
+public class WriteBatcher implements Managed {
+
+    private static final Pattern CONDITION = Pattern.compile("\\bIF\\b", Pattern.CASE_INSENSITIVE);
+    // c = c + 1, which also matches appends to collections; sending those straight away is merely slower
+    private static final Pattern INCREMENT = Pattern.compile("(\\w+)\\s*=\\s*\\1\\s*[+-]");
+
+    private final Supplier<Session> session;
+    private final BatchGrouping grouping;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Histogram batchSize;
+    private final Timer flushLatency;
+
+    private final Object lock = new Object();
+    private final Map<Object, Batch> batches = new HashMap<>();
+    // weakly keyed by identity, so that statements no longer prepared are collected
+    private final Cache<PreparedStatement, Boolean> batchable = CacheBuilder.newBuilder().weakKeys().build();
+
+    public WriteBatcher(Supplier<Session> session, BatchGrouping grouping, int maxBatchSize, Duration maxDelay,
+                        MetricRegistry metrics, String clusterName) {
+        this.session = session;
+        this.grouping = grouping;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanoseconds();
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                .setNameFormat("cassandra-batcher-" + clusterName + "-%d")
+                .setDaemon(true)
+                .build());
+        this.executor.setRemoveOnCancelPolicy(true);
+
+        final String prefix = name(Cluster.class, clusterName, "batching");
+        this.batchSize = metrics.histogram(name(prefix, "batch-size"));
+        this.flushLatency = metrics.timer(name(prefix, "flush-latency"));
+    }
+
+    /**
+     * Adds a write to the batch of its group.
+     *
+     * @param statement the write.
+     * @return a future completing with the result of the batch the write is sent in.
+     */
+    public ListenableFuture<ResultSet> add(Statement statement) {
+        final Session session = this.session.get();
+        final Write write = new Write(statement);
+        final Object key = key(session, statement);
+        if (key == null) {
+            send(session, Collections.singletonList(write));
+            return write.future;
+        }
+
+        final Batch created;
+        final Batch full;
+        synchronized (lock) {
+            Batch batch = batches.get(key);
+            created = (batch == null) ? new Batch(key) : null;
+            if (created != null) {
+                batch = created;
+                batches.put(key, batch);
+            }
+            batch.writes.add(write);
+            full = (batch.writes.size() >= maxBatchSize) ? batches.remove(key) : null;
+        }
+
+        if (full != null) {
+            full.cancelTimer();
+            send(session, full.writes);
+        } else if (created != null) {
+            try {
+                created.timer = executor.schedule(() -> flush(created), maxDelayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // stopped, so nothing will flush the batch later
+                flush(created);
+            }
+        }
+        return write.future;
+    }
+
+    /**
+     * @return the number of writes waiting to be sent.
+     */
+    public int getPending() {
+        synchronized (lock) {
+            return batches.values().stream().mapToInt(batch -> batch.writes.size()).sum();
+        }
+    }
+
+    @Override
+    public void start() throws Exception {
+    }
+
+    /**
+     * Sends the writes waiting to be sent, and stops sending writes later.
+     */
+    @Override
+    public void stop() throws Exception {
+        executor.shutdownNow();
+        final List<Batch> pending;
+        synchronized (lock) {
+            pending = new ArrayList<>(batches.values());
+            batches.clear();
+        }
+        pending.forEach(batch -> send(session.get(), batch.writes));
+    }
+
+    private Object key(Session session, Statement statement) {
+        if (statement instanceof BatchStatement || !isBatchable(statement)) {
+            return null;
+        }
+
+        final Cluster cluster = session.getCluster();
+        final Configuration configuration = cluster.getConfiguration();
+        final ProtocolVersion protocolVersion = configuration.getProtocolOptions().getProtocolVersion();
+        final ByteBuffer routingKey = statement.getRoutingKey(
+                protocolVersion == null ? ProtocolVersion.NEWEST_SUPPORTED : protocolVersion,
+                configuration.getCodecRegistry());
+        if (routingKey == null) {
+            return null;
+        }
+
+        final String keyspace = (statement.getKeyspace() != null)
+                ? statement.getKeyspace()
+                : session.getLoggedKeyspace();
+        Object target = routingKey;
+        if (grouping == BatchGrouping.REPLICAS && keyspace != null) {
+            final Set<Host> replicas = cluster.getMetadata().getReplicas(keyspace, routingKey);
+            if (!replicas.isEmpty()) {
+                target = replicas;
+            }
+        }
+        return Arrays.asList(keyspace, target, statement.getConsistencyLevel());
+    }
+
+    private boolean isBatchable(Statement statement) {
+        if (statement instanceof BoundStatement) {
+            final PreparedStatement prepared = ((BoundStatement) statement).preparedStatement();
+            Boolean result = batchable.getIfPresent(prepared);
+            if (result == null) {
+                result = !hasCounter(prepared.getVariables()) && isBatchable(prepared.getQueryString());
+                batchable.put(prepared, result);
+            }
+            return result;
+        } else if (statement instanceof RegularStatement) {
+            return isBatchable(((RegularStatement) statement).getQueryString());
+        }
+        return true;
+    }
+
+    private static boolean isBatchable(String query) {
+        return !CONDITION.matcher(query).find() && !INCREMENT.matcher(query).find();
+    }
+
+    private static boolean hasCounter(ColumnDefinitions variables) {
+        for (int i = 0; i < variables.size(); i++) {
+            if (variables.getType(i).getName() == DataType.Name.COUNTER) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void flush(Batch batch) {
+        synchronized (lock) {
+            // the batch may have filled up, and been sent, already
+            if (batches.get(batch.key) != batch) {
+                return;
+            }
+            batches.remove(batch.key);
+        }
+        send(session.get(), batch.writes);
+    }
+
+    private void send(Session session, List<Write> writes) {
+        final Statement statement;
+        if (writes.size() == 1) {
+            statement = writes.get(0).statement;
+        } else {
+            final BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+            writes.forEach(write -> batch.add(write.statement));
+            batch.setConsistencyLevel(writes.get(0).statement.getConsistencyLevel());
+            statement = batch;
+        }
+        batchSize.update(writes.size());
+
+        final Timer.Context context = flushLatency.time();
+        final ResultSetFuture future;
+        try {
+            future = session.executeAsync(statement);
+        } catch (RuntimeException | Error e) {
+            context.stop();
+            writes.forEach(write -> write.future.setException(e));
+            return;
+        }
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet result) {
+                context.stop();
+                writes.forEach(write -> write.future.set(result));
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                context.stop();
+                writes.forEach(write -> write.future.setException(t));
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private static class Write {
+
+        private final Statement statement;
+        private final SettableFuture<ResultSet> future = SettableFuture.create();
+
+        Write(Statement statement) {
+            this.statement = statement;
+        }
+    }
+
+    private static class Batch {
+
+        private final Object key;
+        private final List<Write> writes = new ArrayList<>();
+
+        private volatile ScheduledFuture<?> timer;
+
+        Batch(Object key) {
+            this.key = key;
+        }
+
+        void cancelTimer() {
+            final ScheduledFuture<?> timer = this.timer;
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.batching;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Session;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.function.Supplier;
+
+/**
+ * A factory for configuring and building {@link WriteBatcher} instances, which coalesce writes into unlogged batches.
+ * <p/>
+ * <b>Configuration Parameters:</b>
+ * <table>
+ *     <tr>
+ *         <td>Name</td>
+ *         <td>Default</td>
+ *         <td>Description</td>
+ *     </tr>
+ *     <tr>
+ *         <td>groupBy</td>
+ *         <td>partition</td>
+ *         <td>How writes are {@link BatchGrouping grouped} into batches: {@code partition} or {@code replicas}.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>maxBatchSize</td>
+ *         <td>32</td>
+ *         <td>The number of writes at which a batch is sent without waiting any longer.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>maxDelay</td>
+ *         <td>5 milliseconds</td>
+ *         <td>The longest a write waits for others to batch with before it is sent.</td>
+ *     </tr>
+ * </table>
+ */
+public class WriteBatcherFactory {
+
+    @NotNull
+    private BatchGrouping groupBy = BatchGrouping.PARTITION;
+
+    @Min(1)
+    private int maxBatchSize = 32;
+
+    @NotNull
+    private Duration maxDelay = Duration.milliseconds(5);
+
+    @JsonProperty
+    public BatchGrouping getGroupBy() {
+        return groupBy;
+    }
+
+    @JsonProperty
+    public void setGroupBy(BatchGrouping groupBy) {
+        this.groupBy = groupBy;
+    }
+
+    @JsonProperty
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    @JsonProperty
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @JsonProperty
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    @JsonProperty
+    public void setMaxDelay(Duration maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Builds a {@link WriteBatcher} which sends batches on the supplied session.
+     *
+     * @param session supplies the session to send batches on, when the first write is added.
+     * @param metrics the registry to register batching metrics with.
+     * @param clusterName the name of the cluster the session connects to.
+     * @return a write batcher, which must be stopped to send the writes waiting to be sent.
+     */
+    public WriteBatcher build(Supplier<Session> session, MetricRegistry metrics, String clusterName) {
+        return new WriteBatcher(session, groupBy, maxBatchSize, maxDelay, metrics, clusterName);
+    }
+}
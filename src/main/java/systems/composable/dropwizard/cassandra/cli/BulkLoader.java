@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.CodecRegistry;
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.exceptions.InvalidTypeException;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Writes rows to a table with prepared statements, keeping up to {@code concurrency} writes in flight at once.
+ * <p/>
+ * Rows are given as the textual value of each of their columns, and parsed to the type of the column. Statements are
+ * prepared once for each distinct set of columns, and their bound statements carry the routing key of their
+ * partition, so that a {@link com.datastax.driver.core.policies.TokenAwarePolicy token aware} policy sends each write
+ * straight to a replica. The latency of each write is recorded in a histogram.
+ */
+class BulkLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkLoader.class);
+
+    private final Session session;
+    private final TableMetadata table;
+    private final CodecRegistry codecs;
+    private final int concurrency;
+    private final long maxErrors;
+    private final Semaphore permits;
+    private final Map<List<String>, PreparedStatement> statements = new HashMap<>();
+    private final Recorder latencies = new Recorder(3);
+    private final Histogram histogram = new Histogram(3);
+    private final AtomicLong loaded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    BulkLoader(Session session, String keyspace, String table, int concurrency, long maxErrors) {
+        final Metadata metadata = session.getCluster().getMetadata();
+        final KeyspaceMetadata keyspaceMetadata = metadata.getKeyspace(keyspace);
+        this.table = (keyspaceMetadata == null) ? null : keyspaceMetadata.getTable(table);
+        if (this.table == null) {
+            throw new IllegalArgumentException("Unknown table " + keyspace + "." + table);
+        }
+        this.session = session;
+        this.codecs = session.getCluster().getConfiguration().getCodecRegistry();
+        this.concurrency = concurrency;
+        this.maxErrors = maxErrors;
+        this.permits = new Semaphore(concurrency);
+    }
+
+    /**
+     * Writes each row, waiting for a write to complete whenever {@code concurrency} writes are in flight, and waits
+     * for every write to complete. Stops early once more than {@code maxErrors} rows have failed.
+     *
+     * @param rows the rows to write, as the textual values of their columns, keyed by column name.
+     * @return {@code true} if no more than {@code maxErrors} rows failed.
+     * @throws InterruptedException if interrupted while waiting for writes to complete.
+     */
+    boolean load(Iterator<? extends Map<String, String>> rows) throws InterruptedException {
+        try {
+            while (rows.hasNext() && failed.get() <= maxErrors) {
+                final Map<String, String> row = rows.next();
+                final BoundStatement statement;
+                try {
+                    statement = bind(row);
+                } catch (InvalidTypeException e) {
+                    failed(row, e);
+                    continue;
+                }
+
+                permits.acquire();
+                final long start = System.nanoTime();
+                Futures.addCallback(session.executeAsync(statement), new FutureCallback<ResultSet>() {
+                    @Override
+                    public void onSuccess(ResultSet result) {
+                        latencies.recordValue(System.nanoTime() - start);
+                        loaded.incrementAndGet();
+                        permits.release();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        failed(row, t);
+                        permits.release();
+                    }
+                });
+            }
+        } finally {
+            permits.acquire(concurrency);
+            permits.release(concurrency);
+        }
+        return failed.get() <= maxErrors;
+    }
+
+    long getLoaded() {
+        return loaded.get();
+    }
+
+    long getFailed() {
+        return failed.get();
+    }
+
+    int getInFlight() {
+        return concurrency - permits.availablePermits();
+    }
+
+    /**
+     * @return the latencies of the writes completed so far, in nanoseconds.
+     */
+    synchronized Histogram getLatencies() {
+        histogram.add(latencies.getIntervalHistogram());
+        return histogram.copy();
+    }
+
+    private BoundStatement bind(Map<String, String> row) {
+        final List<String> columns = new ArrayList<>(row.keySet());
+        final PreparedStatement prepared = statements.computeIfAbsent(columns, this::prepare);
+
+        final Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = parse(prepared.getVariables().getType(i), row.get(columns.get(i)));
+        }
+        return prepared.bind(values);
+    }
+
+    private PreparedStatement prepare(List<String> columns) {
+        final List<String> names = columns.stream()
+                .map(column -> {
+                    final ColumnMetadata metadata = table.getColumn(column);
+                    if (metadata == null) {
+                        throw new IllegalArgumentException("Unknown column " + column + " of table " + table.getName());
+                    }
+                    return Metadata.quote(metadata.getName());
+                })
+                .collect(Collectors.toList());
+        return session.prepare("INSERT INTO " + Metadata.quote(table.getKeyspace().getName()) + "."
+                + Metadata.quote(table.getName()) + " (" + String.join(", ", names) + ") VALUES ("
+                + String.join(", ", names.stream().map(name -> "?").collect(Collectors.toList())) + ")");
+    }
+
+    private Object parse(DataType type, String value) {
+        if (value == null) {
+            return null;
+        }
+        final DataType.Name name = type.getName();
+        if (name == DataType.Name.TEXT || name == DataType.Name.VARCHAR || name == DataType.Name.ASCII) {
+            return value;
+        }
+        if (value.isEmpty()) {
+            return null;
+        }
+        try {
+            return codecs.codecFor(type).parse(value);
+        } catch (InvalidTypeException e) {
+            // dates, times and addresses are parsed from quoted literals
+            return codecs.codecFor(type).parse("'" + value.replace("'", "''") + "'");
+        }
+    }
+
+    private void failed(Map<String, String> row, Throwable t) {
+        if (failed.incrementAndGet() <= maxErrors + 1) {
+            LOG.warn("Failed to write row {}", row, t);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import com.datastax.driver.core.Session;
+import io.dropwizard.Configuration;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import systems.composable.dropwizard.cassandra.CassandraConfiguration;
+import systems.composable.dropwizard.cassandra.CassandraFactory;
+import systems.composable.dropwizard.cassandra.MultiCassandraConfiguration;
+import systems.composable.dropwizard.cassandra.SharedSession;
+
+import java.util.Map;
+
+/**
+ * A {@link ConfiguredCommand} run against the Cassandra cluster of an application, connecting to it with the
+ * application's {@link CassandraFactory}, so that commands use the same contact points, policies, pooling and SSL as
+ * the application does. The cluster is closed once the command has run.
+ *
+ * @param <T> the type of the application's configuration.
+ */
+public abstract class CassandraCommand<T extends Configuration> extends ConfiguredCommand<T> {
+
+    private final CassandraConfiguration<T> cassandraConfiguration;
+    private final MultiCassandraConfiguration<T> multiCassandraConfiguration;
+    private final Class<T> configurationClass;
+
+    protected CassandraCommand(String name, String description, CassandraConfiguration<T> cassandraConfiguration,
+                               Class<T> configurationClass) {
+        super(name, description);
+        this.cassandraConfiguration = cassandraConfiguration;
+        this.multiCassandraConfiguration = null;
+        this.configurationClass = configurationClass;
+    }
+
+    protected CassandraCommand(String name, String description,
+                               MultiCassandraConfiguration<T> multiCassandraConfiguration,
+                               Class<T> configurationClass) {
+        super(name, description);
+        this.cassandraConfiguration = null;
+        this.multiCassandraConfiguration = multiCassandraConfiguration;
+        this.configurationClass = configurationClass;
+    }
+
+    @Override
+    protected Class<T> getConfigurationClass() {
+        return configurationClass;
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        if (multiCassandraConfiguration != null) {
+            subparser.addArgument("--cluster")
+                    .dest("cluster")
+                    .required(true)
+                    .help("the name of the configured cluster to connect to");
+        }
+    }
+
+    @Override
+    protected void run(Bootstrap<T> bootstrap, Namespace namespace, T configuration) throws Exception {
+        final CassandraFactory factory = getCassandraFactory(namespace, configuration);
+        beforeConnecting(namespace, factory);
+        final SharedSession session = factory.buildSession(bootstrap.getMetricRegistry(),
+                bootstrap.getHealthCheckRegistry());
+        try {
+            run(bootstrap, namespace, factory, session.get());
+        } finally {
+            session.getCluster().close();
+        }
+    }
+
+    private CassandraFactory getCassandraFactory(Namespace namespace, T configuration) {
+        if (multiCassandraConfiguration == null) {
+            return cassandraConfiguration.getCassandraFactory(configuration);
+        }
+        final String cluster = namespace.getString("cluster");
+        final Map<String, CassandraFactory> factories =
+                multiCassandraConfiguration.getCassandraFactories(configuration);
+        if (!factories.containsKey(cluster)) {
+            throw new IllegalArgumentException("No cluster is configured as " + cluster + "; give one of "
+                    + factories.keySet() + " with --cluster");
+        }
+        return factories.get(cluster);
+    }
+
+    /**
+     * Adjusts the configuration of the cluster for the command before the cluster is built. Does nothing by default.
+     *
+     * @param namespace the parsed command line arguments.
+     * @param factory the factory the cluster will be built with.
+     */
+    protected void beforeConnecting(Namespace namespace, CassandraFactory factory) {
+    }
+
+    /**
+     * Runs the command.
+     *
+     * @param bootstrap the application's bootstrap.
+     * @param namespace the parsed command line arguments.
+     * @param factory the factory the cluster was built with.
+     * @param session a session of the cluster, connected to the configured keyspace, if any.
+     * @throws Exception if the command fails.
+     */
+    protected abstract void run(Bootstrap<T> bootstrap, Namespace namespace, CassandraFactory factory, Session session)
+            throws Exception;
+}
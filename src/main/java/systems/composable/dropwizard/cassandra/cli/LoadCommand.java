@@ -0,0 +1,309 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import com.datastax.driver.core.Session;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.Configuration;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.HdrHistogram.Histogram;
+import systems.composable.dropwizard.cassandra.CassandraConfiguration;
+import systems.composable.dropwizard.cassandra.CassandraFactory;
+import systems.composable.dropwizard.cassandra.MultiCassandraConfiguration;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the rows of a CSV or JSON lines file into a table, with the {@link BulkLoader}.
+ * <p/>
+ * The first line of a CSV file names the columns of each of the lines that follow; each line of a JSON lines file is
+ * an object whose fields are the columns of a row. Values are parsed as CQL literals of the type of their column, and
+ * empty values, other than those of text columns, are loaded as {@code null}. The file is read through a memory-mapped
+ * region of it, and progress is reported every {@code --report-interval} seconds, followed by the throughput and
+ * latency percentiles of the load once every row has been written.
+ * <p/>
+ * Run it with {@code java -jar app.jar cassandra-load config.yml --table users users.csv}.
+ *
+ * @param <T> the type of the application's configuration.
+ */
+public class LoadCommand<T extends Configuration> extends CassandraCommand<T> {
+
+    private final PrintStream out;
+
+    public LoadCommand(CassandraConfiguration<T> cassandraConfiguration, Class<T> configurationClass) {
+        this(cassandraConfiguration, configurationClass, System.out);
+    }
+
+    LoadCommand(CassandraConfiguration<T> cassandraConfiguration, Class<T> configurationClass, PrintStream out) {
+        super("cassandra-load", "Loads a CSV or JSON lines file into a Cassandra table", cassandraConfiguration,
+                configurationClass);
+        this.out = out;
+    }
+
+    private LoadCommand(MultiCassandraConfiguration<T> cassandraConfiguration, Class<T> configurationClass,
+                        PrintStream out) {
+        super("cassandra-load", "Loads a CSV or JSON lines file into a Cassandra table", cassandraConfiguration,
+                configurationClass);
+        this.out = out;
+    }
+
+    /**
+     * Creates the command for an application with several clusters, which connects to the one named with
+     * {@code --cluster}.
+     *
+     * @param cassandraConfiguration the configured clusters, by name.
+     * @param configurationClass the class of the application's configuration.
+     * @param <T> the type of the application's configuration.
+     * @return the command.
+     */
+    public static <T extends Configuration> LoadCommand<T> forClusters(
+            MultiCassandraConfiguration<T> cassandraConfiguration, Class<T> configurationClass) {
+        return new LoadCommand<>(cassandraConfiguration, configurationClass, System.out);
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("input")
+                .help("the CSV or JSON lines file to load");
+        subparser.addArgument("-t", "--table")
+                .dest("table")
+                .required(true)
+                .help("the table to load rows into");
+        subparser.addArgument("-k", "--keyspace")
+                .dest("keyspace")
+                .help("the keyspace of the table, if not the configured keyspace");
+        subparser.addArgument("--format")
+                .dest("format")
+                .choices("csv", "json")
+                .help("the format of the file; JSON lines for .json, .jsonl and .ndjson files, and CSV otherwise");
+        subparser.addArgument("--concurrency")
+                .dest("concurrency")
+                .type(Integer.class)
+                .setDefault(128)
+                .help("the maximum number of writes in flight");
+        subparser.addArgument("--max-errors")
+                .dest("maxErrors")
+                .type(Long.class)
+                .setDefault(0L)
+                .help("the number of rows that may fail to load before the load is abandoned");
+        subparser.addArgument("--report-interval")
+                .dest("reportInterval")
+                .type(Integer.class)
+                .setDefault(10)
+                .help("the number of seconds between progress reports");
+    }
+
+    @Override
+    protected void run(Bootstrap<T> bootstrap, Namespace namespace, CassandraFactory factory, Session session)
+            throws Exception {
+        final Path input = Paths.get(namespace.getString("input"));
+        final String keyspace = (namespace.getString("keyspace") != null)
+                ? namespace.getString("keyspace")
+                : factory.getKeyspace();
+        if (keyspace == null) {
+            throw new IllegalArgumentException("No keyspace is configured; give the keyspace of the table with "
+                    + "--keyspace");
+        }
+        final String table = namespace.getString("table");
+        final String format = (namespace.getString("format") != null)
+                ? namespace.getString("format")
+                : format(input);
+
+        final BulkLoader loader = new BulkLoader(session, keyspace, table, namespace.getInt("concurrency"),
+                namespace.getLong("maxErrors"));
+        final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("cassandra-load-reporter-%d")
+                .setDaemon(true)
+                .build());
+        final long start = System.nanoTime();
+
+        final boolean loaded;
+        try (MappedLines lines = new MappedLines(input)) {
+            final int interval = namespace.getInt("reportInterval");
+            reporter.scheduleAtFixedRate(() -> out.printf("Loaded %d rows (%.0f%% of %s), %d failed, %d in flight%n",
+                    loader.getLoaded(), 100.0 * lines.getPosition() / Math.max(1, lines.getSize()), input,
+                    loader.getFailed(), loader.getInFlight()), interval, interval, TimeUnit.SECONDS);
+
+            final Iterator<Map<String, String>> rows = "json".equals(format)
+                    ? jsonRows(lines, bootstrap.getObjectMapper())
+                    : csvRows(lines);
+            loaded = loader.load(rows);
+        } finally {
+            reporter.shutdownNow();
+        }
+
+        report(loader, keyspace + "." + table, System.nanoTime() - start);
+        if (!loaded) {
+            throw new IllegalStateException("Abandoned the load after " + loader.getFailed() + " rows failed");
+        }
+    }
+
+    private void report(BulkLoader loader, String table, long elapsedNanos) {
+        final double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        final Histogram latencies = loader.getLatencies();
+        out.printf("Loaded %d rows into %s in %.1f s (%.0f rows/s), %d failed%n", loader.getLoaded(), table, seconds,
+                loader.getLoaded() / Math.max(seconds, 0.001), loader.getFailed());
+        out.printf("Write latency (ms): p50 %.2f, p95 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+                millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(95)),
+                millis(latencies.getValueAtPercentile(99)), millis(latencies.getValueAtPercentile(99.9)),
+                millis(latencies.getMaxValue()));
+    }
+
+    static String format(Path input) {
+        final String name = input.getFileName().toString().toLowerCase();
+        return (name.endsWith(".json") || name.endsWith(".jsonl") || name.endsWith(".ndjson")) ? "json" : "csv";
+    }
+
+    static Iterator<Map<String, String>> csvRows(MappedLines lines) throws IOException {
+        final String header = lines.readLine();
+        if (header == null) {
+            return Collections.emptyIterator();
+        }
+        final List<String> columns = parseCsv(header);
+        return new LineIterator(lines) {
+            @Override
+            Map<String, String> parse(String line) {
+                final List<String> values = parseCsv(line);
+                if (values.size() != columns.size()) {
+                    throw new IllegalArgumentException("Expected " + columns.size() + " values, but found "
+                            + values.size() + " in line: " + line);
+                }
+                final Map<String, String> row = new LinkedHashMap<>();
+                for (int i = 0; i < values.size(); i++) {
+                    row.put(columns.get(i), values.get(i));
+                }
+                return row;
+            }
+        };
+    }
+
+    static Iterator<Map<String, String>> jsonRows(MappedLines lines, ObjectMapper mapper) {
+        return new LineIterator(lines) {
+            @Override
+            Map<String, String> parse(String line) throws IOException {
+                final JsonNode node = mapper.readTree(line);
+                if (!node.isObject()) {
+                    throw new IllegalArgumentException("Expected a JSON object in line: " + line);
+                }
+                final Map<String, String> row = new LinkedHashMap<>();
+                node.fields().forEachRemaining(field -> row.put(field.getKey(), field.getValue().isNull()
+                        ? null
+                        : field.getValue().isValueNode() ? field.getValue().asText() : field.getValue().toString()));
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Splits a line of CSV into its values, unquoting quoted values, in which commas and doubled quotes stand for
+     * themselves.
+     */
+    static List<String> parseCsv(String line) {
+        final List<String> values = new ArrayList<>();
+        final StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Iterates over the rows of the non-blank lines of a file.
+     */
+    private abstract static class LineIterator implements Iterator<Map<String, String>> {
+
+        private final MappedLines lines;
+        private String next;
+
+        LineIterator(MappedLines lines) {
+            this.lines = lines;
+        }
+
+        abstract Map<String, String> parse(String line) throws IOException;
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (next == null || next.trim().isEmpty()) {
+                    next = lines.readLine();
+                    if (next == null) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Map<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final String line = next;
+            next = null;
+            try {
+                return parse(line);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
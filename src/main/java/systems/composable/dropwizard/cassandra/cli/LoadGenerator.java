@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generates an open-loop mix of reads and writes of random partitions at a target rate.
+ * <p/>
+ * Each operation has an intended start time, spaced evenly at the target rate, and is sent at that time whether or
+ * not earlier operations have completed, up to {@code maxInFlight} operations at once. Latency is measured from the
+ * intended start time rather than the time the operation was sent, so that operations delayed by a slow cluster - or
+ * by the generator falling behind - count the delay against the cluster, correcting for coordinated omission. The time
+ * from sending each operation to its completion is recorded too, as its service time.
+ */
+class LoadGenerator {
+
+    enum Operation {
+        READ, WRITE
+    }
+
+    private final Session session;
+    private final PreparedStatement read;
+    private final PreparedStatement write;
+    private final double rate;
+    private final double readRatio;
+    private final long partitions;
+    private final ByteBuffer value;
+    private final int maxInFlight;
+    private final Semaphore permits;
+    private final Map<Operation, Recorder> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, Recorder> serviceTimes = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+
+    /**
+     * @param session the session to send operations with.
+     * @param read reads a partition, given its key.
+     * @param write writes a partition, given its key and a value.
+     * @param rate the number of operations to start each second.
+     * @param readRatio the fraction of operations that are reads.
+     * @param partitions the number of partitions operations are spread over.
+     * @param valueSize the size of the values written, in bytes.
+     * @param maxInFlight the maximum number of operations in flight at once.
+     */
+    LoadGenerator(Session session, PreparedStatement read, PreparedStatement write, double rate, double readRatio,
+                  long partitions, int valueSize, int maxInFlight) {
+        this.session = session;
+        this.read = read;
+        this.write = write;
+        this.rate = rate;
+        this.readRatio = readRatio;
+        this.partitions = partitions;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+
+        final byte[] bytes = new byte[valueSize];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        this.value = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new Recorder(3));
+            serviceTimes.put(operation, new Recorder(3));
+            errors.put(operation, new AtomicLong());
+        }
+    }
+
+    /**
+     * Generates operations for the given duration, then waits for those in flight to complete.
+     *
+     * @param duration the time to generate operations for.
+     * @param unit the unit of the duration.
+     * @throws InterruptedException if interrupted while generating operations.
+     */
+    void run(long duration, TimeUnit unit) throws InterruptedException {
+        final long start = System.nanoTime();
+        final long durationNanos = unit.toNanos(duration);
+        final double intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        for (long i = 0; ; i++) {
+            final long offset = (long) (i * intervalNanos);
+            if (offset >= durationNanos) {
+                break;
+            }
+            final long intended = start + offset;
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            permits.acquire();
+            send(intended);
+        }
+        permits.acquire(maxInFlight);
+        permits.release(maxInFlight);
+    }
+
+    /**
+     * @return the latencies of the operations completed since the last call, in nanoseconds, measured from their
+     * intended start times.
+     */
+    Histogram getIntervalLatencies(Operation operation) {
+        return latencies.get(operation).getIntervalHistogram();
+    }
+
+    /**
+     * @return the service times of the operations completed since the last call, in nanoseconds, measured from the
+     * times they were sent.
+     */
+    Histogram getIntervalServiceTimes(Operation operation) {
+        return serviceTimes.get(operation).getIntervalHistogram();
+    }
+
+    long getErrors(Operation operation) {
+        return errors.get(operation).get();
+    }
+
+    int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    private void send(long intended) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final Operation operation = (random.nextDouble() < readRatio) ? Operation.READ : Operation.WRITE;
+        final long key = random.nextLong(partitions);
+        final Statement statement = (operation == Operation.READ)
+                ? read.bind(key)
+                : write.bind(key, value.duplicate());
+
+        final long sent = System.nanoTime();
+        Futures.addCallback(session.executeAsync(statement), new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet result) {
+                final long now = System.nanoTime();
+                latencies.get(operation).recordValue(now - intended);
+                serviceTimes.get(operation).recordValue(now - sent);
+                permits.release();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                errors.get(operation).incrementAndGet();
+                permits.release();
+            }
+        });
+    }
+}
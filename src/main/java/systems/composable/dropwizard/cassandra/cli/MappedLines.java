@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the lines of a UTF-8 file through a memory-mapped region of it, so that large files are read without copying
+ * them through the heap a buffer at a time.
+ * <p/>
+ * The file is mapped one region at a time, each starting at the first line not yet read. Lines end with {@code \n} or
+ * {@code \r\n}, and may be no longer than a region.
+ */
+class MappedLines implements Closeable {
+
+    static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int regionSize;
+
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position;
+
+    MappedLines(Path path) throws IOException {
+        this(path, DEFAULT_REGION_SIZE);
+    }
+
+    MappedLines(Path path, int regionSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.regionSize = regionSize;
+    }
+
+    /**
+     * @return the number of bytes of the file read so far.
+     */
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the size of the file, in bytes.
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * Reads the next line of the file.
+     *
+     * @return the next line, without its line terminator, or {@code null} at the end of the file.
+     * @throws IOException if the file cannot be read, or the line is longer than a region.
+     */
+    String readLine() throws IOException {
+        if (position >= size) {
+            return null;
+        }
+        if (region == null || position - regionStart >= region.limit()) {
+            map();
+        }
+
+        int end = indexOfNewline();
+        if (end < 0 && regionStart + region.limit() < size) {
+            // the line continues past this region
+            map();
+            end = indexOfNewline();
+            if (end < 0 && regionStart + region.limit() < size) {
+                throw new IOException("Line at byte " + position + " is longer than " + regionSize + " bytes");
+            }
+        }
+
+        final int start = (int) (position - regionStart);
+        final int next = (end < 0) ? region.limit() : end + 1;
+        if (end < 0) {
+            end = region.limit();
+        }
+        if (end > start && region.get(end - 1) == '\r') {
+            end--;
+        }
+
+        final byte[] bytes = new byte[end - start];
+        final ByteBuffer line = region.duplicate();
+        line.position(start);
+        line.get(bytes);
+        position = regionStart + next;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int indexOfNewline() {
+        for (int i = (int) (position - regionStart); i < region.limit(); i++) {
+            if (region.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void map() throws IOException {
+        regionStart = position;
+        region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, Math.min(regionSize, size - regionStart));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
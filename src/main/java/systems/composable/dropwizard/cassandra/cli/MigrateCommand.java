@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import com.datastax.driver.core.ProtocolOptions;
+import com.datastax.driver.core.Session;
+import io.dropwizard.Configuration;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.util.Duration;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import systems.composable.dropwizard.cassandra.CassandraConfiguration;
+import systems.composable.dropwizard.cassandra.CassandraFactory;
+import systems.composable.dropwizard.cassandra.MultiCassandraConfiguration;
+
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the versioned CQL scripts of a directory that have not yet been applied, with the {@link SchemaMigrator}.
+ * <p/>
+ * Applied versions are recorded in a tracking table, {@code schema_migrations} by default, in the configured keyspace
+ * unless another is given; the table is created if need be, but the keyspace must exist. The cluster's agreement on
+ * the schema is awaited once per batch of independent statements, for up to the configured
+ * {@code maxSchemaAgreementWait}.
+ * <p/>
+ * Run it with {@code java -jar app.jar cassandra-migrate config.yml migrations/}.
+ *
+ * @param <T> the type of the application's configuration.
+ */
+public class MigrateCommand<T extends Configuration> extends CassandraCommand<T> {
+
+    /**
+     * The driver waits for agreement after each schema change for at least a second; batches wait once instead.
+     */
+    private static final Duration DRIVER_SCHEMA_AGREEMENT_WAIT = Duration.seconds(1);
+
+    private final PrintStream out;
+
+    private Duration schemaAgreementWait;
+
+    public MigrateCommand(CassandraConfiguration<T> cassandraConfiguration, Class<T> configurationClass) {
+        this(cassandraConfiguration, configurationClass, System.out);
+    }
+
+    MigrateCommand(CassandraConfiguration<T> cassandraConfiguration, Class<T> configurationClass, PrintStream out) {
+        super("cassandra-migrate", "Applies versioned CQL scripts to a Cassandra keyspace", cassandraConfiguration,
+                configurationClass);
+        this.out = out;
+    }
+
+    private MigrateCommand(MultiCassandraConfiguration<T> cassandraConfiguration, Class<T> configurationClass,
+                           PrintStream out) {
+        super("cassandra-migrate", "Applies versioned CQL scripts to a Cassandra keyspace", cassandraConfiguration,
+                configurationClass);
+        this.out = out;
+    }
+
+    /**
+     * Creates the command for an application with several clusters, which connects to the one named with
+     * {@code --cluster}.
+     *
+     * @param cassandraConfiguration the configured clusters, by name.
+     * @param configurationClass the class of the application's configuration.
+     * @param <T> the type of the application's configuration.
+     * @return the command.
+     */
+    public static <T extends Configuration> MigrateCommand<T> forClusters(
+            MultiCassandraConfiguration<T> cassandraConfiguration, Class<T> configurationClass) {
+        return new MigrateCommand<>(cassandraConfiguration, configurationClass, System.out);
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("scripts")
+                .help("the directory of the scripts, named V<version>__<description>.cql");
+        subparser.addArgument("-k", "--keyspace")
+                .dest("keyspace")
+                .help("the keyspace of the tracking table, if not the configured keyspace");
+        subparser.addArgument("--table")
+                .dest("table")
+                .setDefault("schema_migrations")
+                .help("the table recording the versions applied");
+        subparser.addArgument("--concurrency")
+                .dest("concurrency")
+                .type(Integer.class)
+                .setDefault(8)
+                .help("the maximum number of independent statements applied at once");
+    }
+
+    @Override
+    protected void beforeConnecting(Namespace namespace, CassandraFactory factory) {
+        schemaAgreementWait = factory.getMaxSchemaAgreementWait().orElse(
+                Duration.seconds(ProtocolOptions.DEFAULT_MAX_SCHEMA_AGREEMENT_WAIT_SECONDS));
+        factory.setMaxSchemaAgreementWait(Optional.of(DRIVER_SCHEMA_AGREEMENT_WAIT));
+    }
+
+    @Override
+    protected void run(Bootstrap<T> bootstrap, Namespace namespace, CassandraFactory factory, Session session)
+            throws Exception {
+        final String keyspace = (namespace.getString("keyspace") != null)
+                ? namespace.getString("keyspace")
+                : factory.getKeyspace();
+        if (keyspace == null) {
+            throw new IllegalArgumentException("No keyspace is configured; give the keyspace of the tracking table "
+                    + "with --keyspace");
+        }
+
+        final long start = System.nanoTime();
+        final SchemaMigrator migrator = new SchemaMigrator(session, keyspace, namespace.getString("table"),
+                namespace.getInt("concurrency"), schemaAgreementWait, out);
+        final List<Migration> applied = migrator.migrate(Migration.load(Paths.get(namespace.getString("scripts"))));
+        out.printf("Applied %d migrations in %d ms%n", applied.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * A versioned CQL script, named {@code V<version>__<description>.cql}, such as {@code V1_2__add_user_emails.cql}.
+ * <p/>
+ * Versions are compared numerically, part by part, so that {@code 1.10} follows {@code 1.9}. The statements of a script
+ * are separated by semicolons, and may contain comments.
+ */
+class Migration {
+
+    private static final Pattern NAME = Pattern.compile("V(\\d+(?:[._]\\d+)*)__(.+)\\.cql");
+
+    static final Comparator<Migration> BY_VERSION = (a, b) -> {
+        for (int i = 0; i < Math.min(a.parts.size(), b.parts.size()); i++) {
+            final int compared = a.parts.get(i).compareTo(b.parts.get(i));
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return Integer.compare(a.parts.size(), b.parts.size());
+    };
+
+    private final String version;
+    private final List<BigInteger> parts;
+    private final String description;
+    private final List<String> statements;
+    private final long checksum;
+
+    private Migration(String version, String description, List<String> statements, long checksum) {
+        this.version = version;
+        this.description = description;
+        this.statements = statements;
+        this.checksum = checksum;
+
+        final List<BigInteger> parts = new ArrayList<>();
+        for (String part : version.split("\\.")) {
+            parts.add(new BigInteger(part));
+        }
+        this.parts = parts;
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    String getDescription() {
+        return description;
+    }
+
+    List<String> getStatements() {
+        return statements;
+    }
+
+    long getChecksum() {
+        return checksum;
+    }
+
+    @Override
+    public String toString() {
+        return "V" + version + " (" + description + ")";
+    }
+
+    /**
+     * Loads the scripts of a directory, in version order. Files that are not CQL scripts are ignored.
+     *
+     * @param directory the directory of the scripts.
+     * @return the migrations of the scripts, in version order.
+     * @throws IOException if the scripts cannot be read.
+     * @throws IllegalArgumentException if a script is misnamed, or two scripts have the same version.
+     */
+    static List<Migration> load(Path directory) throws IOException {
+        final Map<String, Migration> migrations = new HashMap<>();
+        try (DirectoryStream<Path> scripts = Files.newDirectoryStream(directory, "*.cql")) {
+            for (Path script : scripts) {
+                final Migration migration = parse(script.getFileName().toString(),
+                        new String(Files.readAllBytes(script), StandardCharsets.UTF_8));
+                if (migrations.put(migration.getVersion(), migration) != null) {
+                    throw new IllegalArgumentException("More than one script has version " + migration.getVersion());
+                }
+            }
+        }
+        final List<Migration> sorted = new ArrayList<>(migrations.values());
+        Collections.sort(sorted, BY_VERSION);
+        return sorted;
+    }
+
+    static Migration parse(String fileName, String script) {
+        final Matcher matcher = NAME.matcher(fileName);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Script " + fileName + " is not named V<version>__<description>.cql");
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(script.getBytes(StandardCharsets.UTF_8));
+        return new Migration(matcher.group(1).replace('_', '.'), matcher.group(2).replace('_', ' '), split(script),
+                crc.getValue());
+    }
+
+    /**
+     * Splits a script into its statements, leaving out comments. Semicolons within string literals, quoted names and
+     * {@code $$}-quoted function bodies do not end a statement.
+     */
+    static List<String> split(String script) {
+        final List<String> statements = new ArrayList<>();
+        final StringBuilder statement = new StringBuilder();
+        int i = 0;
+        while (i < script.length()) {
+            final char c = script.charAt(i);
+            if (script.startsWith("--", i) || script.startsWith("//", i)) {
+                final int end = script.indexOf('\n', i);
+                i = (end < 0) ? script.length() : end;
+            } else if (script.startsWith("/*", i)) {
+                final int end = script.indexOf("*/", i + 2);
+                i = (end < 0) ? script.length() : end + 2;
+                statement.append(' ');
+            } else if (script.startsWith("$$", i)) {
+                final int end = script.indexOf("$$", i + 2);
+                final int next = (end < 0) ? script.length() : end + 2;
+                statement.append(script, i, next);
+                i = next;
+            } else if (c == '\'' || c == '"') {
+                final int next = endOfQuoted(script, i, c);
+                statement.append(script, i, next);
+                i = next;
+            } else if (c == ';') {
+                add(statements, statement);
+                i++;
+            } else {
+                statement.append(c);
+                i++;
+            }
+        }
+        add(statements, statement);
+        return statements;
+    }
+
+    private static int endOfQuoted(String script, int start, char quote) {
+        int i = start + 1;
+        while (i < script.length()) {
+            if (script.charAt(i) == quote) {
+                // a doubled quote stands for itself
+                if (i + 1 < script.length() && script.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return script.length();
+    }
+
+    private static void add(List<String> statements, StringBuilder statement) {
+        final String trimmed = statement.toString().trim();
+        if (!trimmed.isEmpty()) {
+            statements.add(trimmed);
+        }
+        statement.setLength(0);
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.dropwizard.util.Duration;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Applies the {@link Migration migrations} that have not yet been applied to a keyspace, recording each in a tracking
+ * table once all of its statements have been applied.
+ * <p/>
+ * Rather than waiting for the cluster to agree on the schema after every statement, statements are applied in batches
+ * of statements that are independent of each other - that neither refer to anything another changes - and the
+ * cluster's agreement is awaited once per batch. The statements of a batch are executed in parallel, up to
+ * {@code concurrency} at a time. Batches may span several migrations, so that migrations of a few statements each
+ * share the wait too.
+ * <p/>
+ * Statements are independent unless one of them creates, alters or drops a keyspace, table, type, index, view or
+ * function named anywhere in the other, such as a table and an index on it, or a type and a table using it.
+ */
+class SchemaMigrator {
+
+    private static final String NAME = "(\"(?:[^\"]|\"\")+\"|\\w+)";
+    private static final Pattern SCHEMA_CHANGE = Pattern.compile(
+            "^\\s*(?:CREATE|ALTER|DROP)\\s+(?:OR\\s+REPLACE\\s+)?(?:CUSTOM\\s+)?"
+                    + "(KEYSPACE|SCHEMA|TABLE|COLUMNFAMILY|TYPE|INDEX|MATERIALIZED\\s+VIEW|FUNCTION|AGGREGATE|TRIGGER)"
+                    + "\\s+(?:IF\\s+(?:NOT\\s+)?EXISTS\\s+)?(?:" + NAME + "\\s*\\.\\s*)?" + NAME,
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern IDENTIFIER = Pattern.compile(
+            "'(?:[^']|'')*'|\\$\\$.*?\\$\\$|\"(?:[^\"]|\"\")+\"|[A-Za-z_]\\w*", Pattern.DOTALL);
+    private static final long AGREEMENT_POLL_MILLIS = 200;
+
+    private final Session session;
+    private final String keyspace;
+    private final String table;
+    private final int concurrency;
+    private final Duration schemaAgreementWait;
+    private final PrintStream out;
+
+    SchemaMigrator(Session session, String keyspace, String table, int concurrency, Duration schemaAgreementWait,
+                   PrintStream out) {
+        this.session = session;
+        this.keyspace = keyspace;
+        this.table = table;
+        this.concurrency = concurrency;
+        this.schemaAgreementWait = schemaAgreementWait;
+        this.out = out;
+    }
+
+    /**
+     * Applies the migrations that have not been applied yet, in version order.
+     *
+     * @param migrations the migrations, in version order.
+     * @return the migrations applied.
+     * @throws IllegalStateException if a migration that has already been applied has changed since, or the cluster
+     * does not agree on the schema in time.
+     * @throws ExecutionException if a statement fails; the migrations applied before it remain recorded.
+     */
+    List<Migration> migrate(List<Migration> migrations) throws ExecutionException {
+        final KeyspaceMetadata keyspaceMetadata = session.getCluster().getMetadata().getKeyspace(keyspace);
+        if (keyspaceMetadata == null) {
+            throw new IllegalArgumentException("Unknown keyspace " + keyspace);
+        }
+        final String table = Metadata.quote(keyspaceMetadata.getName()) + "." + Metadata.quote(this.table);
+        session.execute("CREATE TABLE IF NOT EXISTS " + table
+                + " (version text PRIMARY KEY, description text, checksum bigint, applied_at timestamp)");
+        awaitSchemaAgreement();
+
+        final Map<String, Long> applied = new HashMap<>();
+        for (Row row : session.execute("SELECT version, checksum FROM " + table)) {
+            applied.put(row.getString("version"), row.getLong("checksum"));
+        }
+
+        final List<Migration> pending = new ArrayList<>();
+        for (Migration migration : migrations) {
+            final Long checksum = applied.get(migration.getVersion());
+            if (checksum == null) {
+                pending.add(migration);
+            } else if (checksum != migration.getChecksum()) {
+                throw new IllegalStateException("Migration " + migration + " has changed since it was applied");
+            }
+        }
+
+        final List<List<Step>> batches = plan(pending);
+        out.printf("Applying %d migrations in %d batches%n", pending.size(), batches.size());
+
+        final Map<Migration, Integer> unappliedSteps = new HashMap<>();
+        for (List<Step> batch : batches) {
+            for (Step step : batch) {
+                unappliedSteps.merge(step.migration, 1, Integer::sum);
+            }
+        }
+        final List<Migration> recorded = new ArrayList<>();
+        // migrations without statements have nothing to wait for
+        record(table, pending.stream().filter(m -> !unappliedSteps.containsKey(m)).collect(Collectors.toList()),
+                recorded);
+
+        for (int i = 0; i < batches.size(); i++) {
+            final List<Step> batch = batches.get(i);
+            final long start = System.nanoTime();
+            execute(batch);
+            if (batch.stream().anyMatch(step -> step.schemaChange)) {
+                awaitSchemaAgreement();
+            }
+            out.printf("Applied batch %d of %d: %d statements in %d ms%n", i + 1, batches.size(), batch.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            final List<Migration> complete = new ArrayList<>();
+            for (Step step : batch) {
+                if (unappliedSteps.merge(step.migration, -1, Integer::sum) == 0) {
+                    complete.add(step.migration);
+                }
+            }
+            complete.sort(Migration.BY_VERSION);
+            record(table, complete, recorded);
+        }
+        return recorded;
+    }
+
+    /**
+     * Groups the statements of the migrations into batches of independent statements, keeping dependent statements in
+     * the order of their migrations.
+     */
+    static List<List<Step>> plan(List<Migration> migrations) {
+        final List<List<Step>> batches = new ArrayList<>();
+        List<Step> batch = new ArrayList<>();
+        final Set<String> changed = new HashSet<>();
+        final Set<String> referenced = new HashSet<>();
+        for (Migration migration : migrations) {
+            for (String statement : migration.getStatements()) {
+                final Step step = new Step(migration, statement);
+                final boolean dependent = step.changes.stream().anyMatch(referenced::contains)
+                        || step.references.stream().anyMatch(changed::contains);
+                if (dependent) {
+                    batches.add(batch);
+                    batch = new ArrayList<>();
+                    changed.clear();
+                    referenced.clear();
+                }
+                batch.add(step);
+                changed.addAll(step.changes);
+                referenced.addAll(step.references);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private void execute(List<Step> batch) throws ExecutionException {
+        ExecutionException failure = null;
+        for (int i = 0; i < batch.size(); i += concurrency) {
+            final List<Step> steps = batch.subList(i, Math.min(batch.size(), i + concurrency));
+            final List<ResultSetFuture> futures = steps.stream()
+                    .map(step -> session.executeAsync(step.statement))
+                    .collect(Collectors.toList());
+            for (int j = 0; j < futures.size(); j++) {
+                try {
+                    Uninterruptibles.getUninterruptibly(futures.get(j));
+                } catch (ExecutionException e) {
+                    out.printf("Failed to apply %s: %s%n", steps.get(j).migration, steps.get(j).statement);
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void awaitSchemaAgreement() {
+        final Metadata metadata = session.getCluster().getMetadata();
+        final long deadline = System.nanoTime() + schemaAgreementWait.toNanoseconds();
+        while (!metadata.checkSchemaAgreement()) {
+            if (System.nanoTime() >= deadline) {
+                throw new IllegalStateException("The cluster did not agree on the schema within " + schemaAgreementWait
+                        + "; run the migrations again once it does");
+            }
+            Uninterruptibles.sleepUninterruptibly(AGREEMENT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void record(String table, List<Migration> migrations, List<Migration> recorded) {
+        for (Migration migration : migrations) {
+            session.execute("INSERT INTO " + table
+                            + " (version, description, checksum, applied_at) VALUES (?, ?, ?, ?)",
+                    migration.getVersion(), migration.getDescription(), migration.getChecksum(), new Date());
+            out.printf("Applied %s%n", migration);
+            recorded.add(migration);
+        }
+    }
+
+    private static String normalize(String identifier) {
+        return identifier.startsWith("\"")
+                ? identifier.substring(1, identifier.length() - 1).replace("\"\"", "\"")
+                : identifier.toLowerCase(Locale.ROOT);
+    }
+
+    static class Step {
+
+        private final Migration migration;
+        private final String statement;
+        private final boolean schemaChange;
+        private final Set<String> changes = new HashSet<>();
+        private final Set<String> references = new HashSet<>();
+
+        Step(Migration migration, String statement) {
+            this.migration = migration;
+            this.statement = statement;
+
+            final Matcher schemaChange = SCHEMA_CHANGE.matcher(statement);
+            this.schemaChange = schemaChange.find();
+            // unnamed indexes are changes to their table, which is referenced anyway
+            if (this.schemaChange && !"ON".equalsIgnoreCase(schemaChange.group(3))) {
+                changes.add(normalize(schemaChange.group(3)));
+            }
+
+            final Matcher identifiers = IDENTIFIER.matcher(statement);
+            while (identifiers.find()) {
+                final String identifier = identifiers.group();
+                if (!identifier.startsWith("'") && !identifier.startsWith("$$")) {
+                    references.add(normalize(identifier));
+                }
+            }
+        }
+
+        String getStatement() {
+            return statement;
+        }
+
+        Migration getMigration() {
+            return migration;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.Configuration;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.HdrHistogram.Histogram;
+import systems.composable.dropwizard.cassandra.CassandraConfiguration;
+import systems.composable.dropwizard.cassandra.CassandraFactory;
+import systems.composable.dropwizard.cassandra.MultiCassandraConfiguration;
+import systems.composable.dropwizard.cassandra.cli.LoadGenerator.Operation;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drives a mix of reads and writes against the cluster at a target rate, with the {@link LoadGenerator}, using the
+ * contact points, policies, pooling and SSL configured for the application, and reports the throughput achieved and
+ * HDR latency percentiles of each kind of operation.
+ * <p/>
+ * Operations read and write random partitions of a table of {@code bigint} keys and {@code blob} values,
+ * {@code stress} by default, which is created if need be. Latencies are corrected for coordinated omission, and
+ * measured after a warm-up, which is discarded. Progress is reported every {@code --report-interval} seconds.
+ * <p/>
+ * Run it with {@code java -jar app.jar cassandra-stress config.yml --rate 5000 --duration 300}.
+ *
+ * @param <T> the type of the application's configuration.
+ */
+public class StressCommand<T extends Configuration> extends CassandraCommand<T> {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final PrintStream out;
+
+    public StressCommand(CassandraConfiguration<T> cassandraConfiguration, Class<T> configurationClass) {
+        this(cassandraConfiguration, configurationClass, System.out);
+    }
+
+    StressCommand(CassandraConfiguration<T> cassandraConfiguration, Class<T> configurationClass, PrintStream out) {
+        super("cassandra-stress", "Drives a read and write load against Cassandra at a target rate",
+                cassandraConfiguration, configurationClass);
+        this.out = out;
+    }
+
+    private StressCommand(MultiCassandraConfiguration<T> cassandraConfiguration, Class<T> configurationClass,
+                          PrintStream out) {
+        super("cassandra-stress", "Drives a read and write load against Cassandra at a target rate",
+                cassandraConfiguration, configurationClass);
+        this.out = out;
+    }
+
+    /**
+     * Creates the command for an application with several clusters, which connects to the one named with
+     * {@code --cluster}.
+     *
+     * @param cassandraConfiguration the configured clusters, by name.
+     * @param configurationClass the class of the application's configuration.
+     * @param <T> the type of the application's configuration.
+     * @return the command.
+     */
+    public static <T extends Configuration> StressCommand<T> forClusters(
+            MultiCassandraConfiguration<T> cassandraConfiguration, Class<T> configurationClass) {
+        return new StressCommand<>(cassandraConfiguration, configurationClass, System.out);
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("-k", "--keyspace")
+                .dest("keyspace")
+                .help("the keyspace of the table, if not the configured keyspace");
+        subparser.addArgument("-t", "--table")
+                .dest("table")
+                .setDefault("stress")
+                .help("the table to read and write");
+        subparser.addArgument("--rate")
+                .dest("rate")
+                .type(Double.class)
+                .setDefault(1000.0)
+                .help("the number of operations to start each second");
+        subparser.addArgument("--duration")
+                .dest("duration")
+                .type(Integer.class)
+                .setDefault(60)
+                .help("the number of seconds to measure for, after the warm-up");
+        subparser.addArgument("--warmup")
+                .dest("warmup")
+                .type(Integer.class)
+                .setDefault(10)
+                .help("the number of seconds to run before measuring");
+        subparser.addArgument("--read-ratio")
+                .dest("readRatio")
+                .type(Double.class)
+                .setDefault(0.5)
+                .help("the fraction of operations that are reads");
+        subparser.addArgument("--partitions")
+                .dest("partitions")
+                .type(Long.class)
+                .setDefault(1000000L)
+                .help("the number of partitions operations are spread over");
+        subparser.addArgument("--value-size")
+                .dest("valueSize")
+                .type(Integer.class)
+                .setDefault(100)
+                .help("the size of the values written, in bytes");
+        subparser.addArgument("--concurrency")
+                .dest("concurrency")
+                .type(Integer.class)
+                .setDefault(1024)
+                .help("the maximum number of operations in flight; operations beyond it are delayed, "
+                        + "and their delay counted in their latency");
+        subparser.addArgument("--report-interval")
+                .dest("reportInterval")
+                .type(Integer.class)
+                .setDefault(10)
+                .help("the number of seconds between progress reports");
+    }
+
+    @Override
+    protected void run(Bootstrap<T> bootstrap, Namespace namespace, CassandraFactory factory, Session session)
+            throws Exception {
+        final String keyspace = (namespace.getString("keyspace") != null)
+                ? namespace.getString("keyspace")
+                : factory.getKeyspace();
+        if (keyspace == null) {
+            throw new IllegalArgumentException("No keyspace is configured; give the keyspace of the table with "
+                    + "--keyspace");
+        }
+        final String table = Metadata.quote(keyspace) + "." + Metadata.quote(namespace.getString("table"));
+        session.execute("CREATE TABLE IF NOT EXISTS " + table + " (key bigint PRIMARY KEY, value blob)");
+        final PreparedStatement read = session.prepare("SELECT value FROM " + table + " WHERE key = ?");
+        final PreparedStatement write = session.prepare("INSERT INTO " + table + " (key, value) VALUES (?, ?)");
+
+        final double rate = namespace.getDouble("rate");
+        final int warmup = namespace.getInt("warmup");
+        final int duration = namespace.getInt("duration");
+        final LoadGenerator generator = new LoadGenerator(session, read, write, rate, namespace.getDouble("readRatio"),
+                namespace.getLong("partitions"), namespace.getInt("valueSize"), namespace.getInt("concurrency"));
+
+        final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+        final Map<Operation, Histogram> serviceTimes = new EnumMap<>(Operation.class);
+        final Map<Operation, Long> warmupErrors = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new Histogram(3));
+            serviceTimes.put(operation, new Histogram(3));
+            warmupErrors.put(operation, 0L);
+        }
+
+        // the reporter accumulates every interval after the warm-up, on a single thread
+        final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("cassandra-stress-reporter-%d")
+                .setDaemon(true)
+                .build());
+        final AtomicBoolean measuring = new AtomicBoolean(warmup == 0);
+        reporter.schedule(() -> {
+            for (Operation operation : Operation.values()) {
+                generator.getIntervalLatencies(operation);
+                generator.getIntervalServiceTimes(operation);
+                warmupErrors.put(operation, generator.getErrors(operation));
+            }
+            measuring.set(true);
+            out.println("Warm-up complete");
+        }, warmup, TimeUnit.SECONDS);
+        final int interval = namespace.getInt("reportInterval");
+        reporter.scheduleAtFixedRate(() -> reportInterval(generator, interval, latencies, serviceTimes,
+                measuring.get()), interval, interval, TimeUnit.SECONDS);
+
+        out.printf(Locale.ROOT, "Running %.0f operations/s, %.0f%% reads, for %d s after a %d s warm-up%n", rate,
+                100 * namespace.getDouble("readRatio"), duration, warmup);
+        try {
+            generator.run(warmup + duration, TimeUnit.SECONDS);
+        } finally {
+            reporter.shutdownNow();
+            reporter.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        accumulate(generator, latencies, serviceTimes);
+
+        long operations = 0;
+        long errors = 0;
+        for (Operation operation : Operation.values()) {
+            operations += latencies.get(operation).getTotalCount();
+            errors += generator.getErrors(operation) - warmupErrors.get(operation);
+        }
+        out.printf(Locale.ROOT, "Completed %d operations in %d s: %.0f operations/s of a target %.0f, %d errors%n",
+                operations, duration, operations / (double) duration, rate, errors);
+        for (Operation operation : Operation.values()) {
+            final String name = operation.name().charAt(0) + operation.name().substring(1).toLowerCase(Locale.ROOT);
+            out.printf("%s latency (ms), corrected for coordinated omission: %s%n", name,
+                    percentiles(latencies.get(operation)));
+            out.printf("%s service time (ms): %s%n", name, percentiles(serviceTimes.get(operation)));
+        }
+    }
+
+    private void reportInterval(LoadGenerator generator, int interval, Map<Operation, Histogram> latencies,
+                                Map<Operation, Histogram> serviceTimes, boolean measuring) {
+        final Map<Operation, Histogram> intervalLatencies = new EnumMap<>(Operation.class);
+        long operations = 0;
+        for (Operation operation : Operation.values()) {
+            final Histogram latency = generator.getIntervalLatencies(operation);
+            final Histogram serviceTime = generator.getIntervalServiceTimes(operation);
+            if (measuring) {
+                latencies.get(operation).add(latency);
+                serviceTimes.get(operation).add(serviceTime);
+            }
+            intervalLatencies.put(operation, latency);
+            operations += latency.getTotalCount();
+        }
+        out.printf(Locale.ROOT, "%.0f operations/s, read p50 %.2f p99 %.2f ms, write p50 %.2f p99 %.2f ms, "
+                        + "%d errors, %d in flight%n",
+                operations / (double) interval,
+                millis(intervalLatencies.get(Operation.READ).getValueAtPercentile(50)),
+                millis(intervalLatencies.get(Operation.READ).getValueAtPercentile(99)),
+                millis(intervalLatencies.get(Operation.WRITE).getValueAtPercentile(50)),
+                millis(intervalLatencies.get(Operation.WRITE).getValueAtPercentile(99)),
+                generator.getErrors(Operation.READ) + generator.getErrors(Operation.WRITE), generator.getInFlight());
+    }
+
+    private static void accumulate(LoadGenerator generator, Map<Operation, Histogram> latencies,
+                                   Map<Operation, Histogram> serviceTimes) {
+        for (Operation operation : Operation.values()) {
+            latencies.get(operation).add(generator.getIntervalLatencies(operation));
+            serviceTimes.get(operation).add(generator.getIntervalServiceTimes(operation));
+        }
+    }
+
+    static String percentiles(Histogram histogram) {
+        final StringBuilder percentiles = new StringBuilder();
+        for (double percentile : PERCENTILES) {
+            final String label = (percentile % 1 == 0) ? Long.toString((long) percentile) : Double.toString(percentile);
+            percentiles.append(String.format(Locale.ROOT, "p%s %.2f, ", label,
+                    millis(histogram.getValueAtPercentile(percentile))));
+        }
+        return percentiles.append(String.format(Locale.ROOT, "max %.2f", millis(histogram.getMaxValue()))).toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
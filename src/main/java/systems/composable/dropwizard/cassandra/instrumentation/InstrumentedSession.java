@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.instrumentation;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.dropwizard.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import systems.composable.dropwizard.cassandra.ForwardingSession;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * A {@link Session} that records a timer and an error meter for each shape of query it executes.
+ * <p/>
+ * The shape of a query is its query string, with whitespace collapsed and literal values replaced by {@code ?}. Bound
+ * statements, whose values are bound rather than literal, take the shape of the query they were prepared from with only
+ * its whitespace collapsed, once per prepared statement. Batches share the {@code BATCH} shape. Metrics
+ * are named after the DataStax {@link Cluster} class, the cluster name and a hash of the shape, since the dots, spaces
+ * and punctuation of CQL are not valid in the names of most reporters:
+ * <ul>
+ *     <li>com.datastax.core.Cluster.clusterName.queries.hash.requests</li>
+ *     <li>com.datastax.core.Cluster.clusterName.queries.hash.errors</li>
+ * </ul>
+ *
+ * The shape each hash stands for is logged at INFO when its metrics are registered, and along with the hash when a
+ * query takes longer than {@code slowQueryThreshold}, if set, at WARN. At most {@code maxQueries} shapes are tracked:
+ * beyond that, the metrics of the least recently executed shapes are removed from the registry.
+ */
+public class InstrumentedSession extends ForwardingSession {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InstrumentedSession.class);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern UUID_LITERAL = Pattern.compile(
+            "\\b[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}\\b");
+    private static final Pattern NUMERIC_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?:[eE][+-]?\\d+)?\\b");
+
+    private final MetricRegistry registry;
+    private final String prefix;
+    private final long slowQueryThresholdNanos;
+    private final Cache<String, QueryMetrics> queries;
+    // weakly keyed by identity, so that the shapes of statements no longer prepared are collected with them
+    private final Cache<PreparedStatement, String> preparedShapes = CacheBuilder.newBuilder().weakKeys().build();
+
+    public InstrumentedSession(Session delegate, MetricRegistry registry, long maxQueries, Duration slowQueryThreshold) {
+        super(delegate);
+        this.registry = registry;
+        this.prefix = name(Cluster.class, delegate.getCluster().getClusterName(), "queries");
+        this.slowQueryThresholdNanos = (slowQueryThreshold == null) ? Long.MAX_VALUE : slowQueryThreshold.toNanoseconds();
+        this.queries = CacheBuilder.newBuilder()
+                .maximumSize(maxQueries)
+                .removalListener(this::onRemoval)
+                .build();
+    }
+
+    @Override
+    public ResultSetFuture executeAsync(Statement statement) {
+        final QueryMetrics metrics = metrics(shape(statement));
+        final long start = System.nanoTime();
+        final ResultSetFuture future = super.executeAsync(statement);
+
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet result) {
+                completed(metrics, start);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                metrics.errors.mark();
+                completed(metrics, start);
+            }
+        }, MoreExecutors.directExecutor());
+
+        return future;
+    }
+
+    /**
+     * @return the number of query shapes currently tracked.
+     */
+    public long size() {
+        return queries.size();
+    }
+
+    private void completed(QueryMetrics metrics, long start) {
+        final long elapsed = System.nanoTime() - start;
+        metrics.requests.update(elapsed, TimeUnit.NANOSECONDS);
+        if (elapsed >= slowQueryThresholdNanos) {
+            LOG.warn("Slow query {} took {}ms: {}", metrics.hash, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                    metrics.shape);
+        }
+    }
+
+    private QueryMetrics metrics(String shape) {
+        try {
+            return queries.get(shape, () -> {
+                final String hash = hash(shape);
+                LOG.info("Recording metrics of query {} as {}.{}", shape, prefix, hash);
+                return new QueryMetrics(shape, hash,
+                        register(name(prefix, hash, "requests"), new Timer()),
+                        register(name(prefix, hash, "errors"), new Meter()));
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new IllegalStateException("Unable to register metrics for query: " + shape, e.getCause());
+        }
+    }
+
+    private <T extends Metric> T register(String name, T metric) {
+        // the metrics of an evicted shape may not have been removed yet, if it is being executed again
+        registry.remove(name);
+        return registry.register(name, metric);
+    }
+
+    private void onRemoval(RemovalNotification<String, QueryMetrics> notification) {
+        final QueryMetrics metrics = notification.getValue();
+        registry.removeMatching((name, metric) -> metric == metrics.requests || metric == metrics.errors);
+    }
+
+    private String shape(Statement statement) {
+        if (statement instanceof RegularStatement) {
+            return normalize(((RegularStatement) statement).getQueryString());
+        } else if (statement instanceof BoundStatement) {
+            return shape(((BoundStatement) statement).preparedStatement());
+        } else if (statement instanceof BatchStatement) {
+            return "BATCH";
+        }
+        return statement.getClass().getSimpleName();
+    }
+
+    private String shape(PreparedStatement prepared) {
+        String shape = preparedShapes.getIfPresent(prepared);
+        if (shape == null) {
+            shape = WHITESPACE.matcher(prepared.getQueryString()).replaceAll(" ").trim();
+            preparedShapes.put(prepared, shape);
+        }
+        return shape;
+    }
+
+    // a fixed-length, hexadecimal name segment; 64 bits make collisions between tracked shapes vanishingly unlikely
+    static String hash(String shape) {
+        return Hashing.sipHash24().hashString(shape, StandardCharsets.UTF_8).toString();
+    }
+
+    static String normalize(String query) {
+        String result = STRING_LITERAL.matcher(query).replaceAll("?");
+        result = UUID_LITERAL.matcher(result).replaceAll("?");
+        result = NUMERIC_LITERAL.matcher(result).replaceAll("?");
+        return WHITESPACE.matcher(result).replaceAll(" ").trim();
+    }
+
+    private static class QueryMetrics {
+
+        private final String shape;
+        private final String hash;
+        private final Timer requests;
+        private final Meter errors;
+
+        QueryMetrics(String shape, String hash, Timer requests, Meter errors) {
+            this.shape = shape;
+            this.hash = hash;
+            this.requests = requests;
+            this.errors = errors;
+        }
+    }
+}
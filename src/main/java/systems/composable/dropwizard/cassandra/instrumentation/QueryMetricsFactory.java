@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.instrumentation;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Session;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+
+/**
+ * A factory for configuring and building {@link InstrumentedSession} instances, which record metrics per query shape.
+ * <p/>
+ * <b>Configuration Parameters:</b>
+ * <table>
+ *     <tr>
+ *         <td>Name</td>
+ *         <td>Default</td>
+ *         <td>Description</td>
+ *     </tr>
+ *     <tr>
+ *         <td>maxQueries</td>
+ *         <td>500</td>
+ *         <td>The maximum number of query shapes with metrics; the least recently executed are removed beyond this.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>slowQueryThreshold</td>
+ *         <td>No default. Slow queries are not logged.</td>
+ *         <td>Queries taking at least this long are logged at WARN, along with their shape.</td>
+ *     </tr>
+ * </table>
+ */
+public class QueryMetricsFactory {
+
+    @Min(1)
+    private long maxQueries = 500;
+
+    private Duration slowQueryThreshold;
+
+    @JsonProperty
+    public long getMaxQueries() {
+        return maxQueries;
+    }
+
+    @JsonProperty
+    public void setMaxQueries(long maxQueries) {
+        this.maxQueries = maxQueries;
+    }
+
+    @JsonProperty
+    public Duration getSlowQueryThreshold() {
+        return slowQueryThreshold;
+    }
+
+    @JsonProperty
+    public void setSlowQueryThreshold(Duration slowQueryThreshold) {
+        this.slowQueryThreshold = slowQueryThreshold;
+    }
+
+    /**
+     * Builds an {@link InstrumentedSession} which executes queries on the given session.
+     *
+     * @param session the session to instrument.
+     * @param metrics the registry to register query metrics with.
+     * @return an instrumented view of the session.
+     */
+    public InstrumentedSession build(Session session, MetricRegistry metrics) {
+        return new InstrumentedSession(session, metrics, maxQueries, slowQueryThreshold);
+    }
+}
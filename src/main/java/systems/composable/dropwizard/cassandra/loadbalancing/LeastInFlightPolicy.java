@@ -0,0 +1,173 @@
+package systems.composable.dropwizard.cassandra.loadbalancing;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.ChainableLoadBalancingPolicy;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.google.common.collect.Iterators;
+import systems.composable.dropwizard.cassandra.SharedSession;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A load balancing policy that puts the less loaded of two random local hosts first in each query plan, using the
+ * number of requests in flight to each host ("the power of two choices").
+ * <p/>
+ * The hosts that follow, and the distance of each host, are those of the child policy. In-flight counts are read from
+ * the connection pools of the {@link SharedSession shared session}, and sampled at most once every refresh interval,
+ * so that building a query plan stays cheap however many hosts there are. Until the session has connected, query
+ * plans are those of the child policy.
+ * <p/>
+ * When wrapped by a {@link com.datastax.driver.core.policies.TokenAwarePolicy}, replicas of the statement's partition
+ * come first, in the order chosen by the token aware policy.
+ */
+public class LeastInFlightPolicy implements ChainableLoadBalancingPolicy {
+
+    private final LoadBalancingPolicy childPolicy;
+    private final long refreshIntervalNanos;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile SharedSession session;
+    private volatile Snapshot snapshot;
+
+    public LeastInFlightPolicy(LoadBalancingPolicy childPolicy, long refreshInterval, TimeUnit unit) {
+        this.childPolicy = childPolicy;
+        this.refreshIntervalNanos = unit.toNanos(refreshInterval);
+        this.snapshot = empty(System.nanoTime() - refreshIntervalNanos);
+    }
+
+    /**
+     * Sets the session whose connection pools report the number of requests in flight to each host.
+     *
+     * @param session the shared session of the cluster this policy is configured on.
+     */
+    public void setSession(SharedSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public LoadBalancingPolicy getChildPolicy() {
+        return childPolicy;
+    }
+
+    @Override
+    public void init(Cluster cluster, Collection<Host> hosts) {
+        childPolicy.init(cluster, hosts);
+    }
+
+    @Override
+    public HostDistance distance(Host host) {
+        return childPolicy.distance(host);
+    }
+
+    @Override
+    public Iterator<Host> newQueryPlan(String loggedKeyspace, Statement statement) {
+        final Iterator<Host> plan = childPolicy.newQueryPlan(loggedKeyspace, statement);
+        final Host best = choose(currentSnapshot());
+        if (best == null) {
+            return plan;
+        }
+        return Iterators.concat(Iterators.singletonIterator(best), Iterators.filter(plan, host -> host != best));
+    }
+
+    @Override
+    public void onAdd(Host host) {
+        childPolicy.onAdd(host);
+    }
+
+    @Override
+    public void onUp(Host host) {
+        childPolicy.onUp(host);
+    }
+
+    @Override
+    public void onDown(Host host) {
+        childPolicy.onDown(host);
+    }
+
+    @Override
+    public void onRemove(Host host) {
+        childPolicy.onRemove(host);
+    }
+
+    @Override
+    public void close() {
+        childPolicy.close();
+    }
+
+    private static Host choose(Snapshot snapshot) {
+        final int size = snapshot.hosts.length;
+        if (size < 2) {
+            return null;
+        }
+
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int a = random.nextInt(size);
+        final int b = (a + 1 + random.nextInt(size - 1)) % size;
+        final int best = (snapshot.inFlight[b] < snapshot.inFlight[a]) ? b : a;
+        final Host host = snapshot.hosts[best];
+
+        // hosts may have gone down since the snapshot was taken
+        return host.isUp() ? host : null;
+    }
+
+    private Snapshot currentSnapshot() {
+        final Snapshot current = snapshot;
+        final long now = System.nanoTime();
+        if (now - current.timestamp < refreshIntervalNanos || !refreshing.compareAndSet(false, true)) {
+            return current;
+        }
+
+        try {
+            final SharedSession session = this.session;
+            final Snapshot refreshed = (session == null || !session.isConnected())
+                    ? empty(now)
+                    : snapshot(session.get().getState(), now);
+            snapshot = refreshed;
+            return refreshed;
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    private Snapshot snapshot(Session.State state, long timestamp) {
+        final List<Host> hosts = new ArrayList<>();
+        for (Host host : state.getConnectedHosts()) {
+            if (host.isUp() && childPolicy.distance(host) == HostDistance.LOCAL) {
+                hosts.add(host);
+            }
+        }
+
+        final int[] inFlight = new int[hosts.size()];
+        for (int i = 0; i < inFlight.length; i++) {
+            inFlight[i] = state.getInFlightQueries(hosts.get(i));
+        }
+        return new Snapshot(hosts.toArray(new Host[hosts.size()]), inFlight, timestamp);
+    }
+
+    private static Snapshot empty(long timestamp) {
+        return new Snapshot(new Host[0], new int[0], timestamp);
+    }
+
+    private static class Snapshot {
+
+        private final Host[] hosts;
+        private final int[] inFlight;
+        private final long timestamp;
+
+        Snapshot(Host[] hosts, int[] inFlight, long timestamp) {
+            this.hosts = hosts;
+            this.inFlight = inFlight;
+            this.timestamp = timestamp;
+        }
+    }
+}
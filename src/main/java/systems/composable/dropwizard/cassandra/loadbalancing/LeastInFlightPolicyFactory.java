@@ -0,0 +1,67 @@
+package systems.composable.dropwizard.cassandra.loadbalancing;
+
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import io.dropwizard.util.Duration;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+/**
+ * A factory for configuring and building {@link LeastInFlightPolicy} instances.
+ * <p/>
+ * <b>Configuration Parameters:</b>
+ * <table>
+ *     <tr>
+ *         <td>Name</td>
+ *         <td>Default</td>
+ *         <td>Description</td>
+ *     </tr>
+ *     <tr>
+ *         <td>subPolicy</td>
+ *         <td>No default. You must provide a child policy.</td>
+ *         <td>The child policy that the resulting policy wraps, which decides the distance of each host.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>refreshInterval</td>
+ *         <td>10 milliseconds</td>
+ *         <td>How often the number of requests in flight to each host is sampled.</td>
+ *     </tr>
+ * </table>
+ */
+@JsonTypeName("leastInFlight")
+public class LeastInFlightPolicyFactory implements LoadBalancingPolicyFactory {
+
+    @Valid
+    @NotNull
+    private LoadBalancingPolicyFactory subPolicy;
+
+    @NotNull
+    private Duration refreshInterval = Duration.milliseconds(10);
+
+    @JsonProperty
+    public LoadBalancingPolicyFactory getSubPolicy() {
+        return subPolicy;
+    }
+
+    @JsonProperty
+    public void setSubPolicy(LoadBalancingPolicyFactory subPolicy) {
+        this.subPolicy = subPolicy;
+    }
+
+    @JsonProperty
+    public Duration getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    @JsonProperty
+    public void setRefreshInterval(Duration refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    @Override
+    public LoadBalancingPolicy build() {
+        return new LeastInFlightPolicy(subPolicy.build(), refreshInterval.getQuantity(), refreshInterval.getUnit());
+    }
+}
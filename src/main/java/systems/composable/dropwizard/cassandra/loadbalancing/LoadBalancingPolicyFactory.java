@@ -17,6 +17,7 @@ import io.dropwizard.jackson.Discoverable;
  *
  * @see DCAwareRoundRobinPolicyFactory
  * @see LatencyAwarePolicyFactory
+ * @see LeastInFlightPolicyFactory
  * @see RoundRobinPolicyFactory
  * @see TokenAwarePolicyFactory
  * @see WhiteListPolicyFactory
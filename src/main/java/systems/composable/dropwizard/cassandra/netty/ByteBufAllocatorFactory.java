@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.netty;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+
+import javax.validation.constraints.Min;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A factory for configuring and building the {@link ByteBufAllocator} which allocates the buffers of every frame sent
+ * and received by a cluster.
+ * <p/>
+ * Direct buffers save copying frames between the Java heap and the network, but Netty falls back to heap buffers on
+ * platforms where it cannot manage direct memory.
+ * <p/>
+ * <b>Configuration Parameters:</b>
+ * <table>
+ *     <tr>
+ *         <td>Name</td>
+ *         <td>Default</td>
+ *         <td>Description</td>
+ *     </tr>
+ *     <tr>
+ *         <td>pooled</td>
+ *         <td>true</td>
+ *         <td>Whether buffers are pooled, rather than allocated for each frame.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>preferDirect</td>
+ *         <td>true</td>
+ *         <td>Whether to allocate direct buffers, rather than heap buffers.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>heapArenas</td>
+ *         <td>Netty's default, based on the number of cores and maximum heap size.</td>
+ *         <td>The number of arenas pooling heap buffers.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>directArenas</td>
+ *         <td>Netty's default, based on the number of cores and maximum direct memory.</td>
+ *         <td>The number of arenas pooling direct buffers.</td>
+ *     </tr>
+ * </table>
+ */
+public class ByteBufAllocatorFactory {
+
+    private boolean pooled = true;
+
+    private boolean preferDirect = true;
+
+    @Min(0)
+    private Integer heapArenas;
+
+    @Min(0)
+    private Integer directArenas;
+
+    @JsonProperty
+    public boolean isPooled() {
+        return pooled;
+    }
+
+    @JsonProperty
+    public void setPooled(boolean pooled) {
+        this.pooled = pooled;
+    }
+
+    @JsonProperty
+    public boolean isPreferDirect() {
+        return preferDirect;
+    }
+
+    @JsonProperty
+    public void setPreferDirect(boolean preferDirect) {
+        this.preferDirect = preferDirect;
+    }
+
+    @JsonProperty
+    public Integer getHeapArenas() {
+        return heapArenas;
+    }
+
+    @JsonProperty
+    public void setHeapArenas(Integer heapArenas) {
+        this.heapArenas = heapArenas;
+    }
+
+    @JsonProperty
+    public Integer getDirectArenas() {
+        return directArenas;
+    }
+
+    @JsonProperty
+    public void setDirectArenas(Integer directArenas) {
+        this.directArenas = directArenas;
+    }
+
+    public ByteBufAllocator build() {
+        if (!pooled) {
+            return new UnpooledByteBufAllocator(preferDirect);
+        }
+
+        if (preferDirect && heapArenas == null && directArenas == null) {
+            // the driver's default allocator
+            return PooledByteBufAllocator.DEFAULT;
+        }
+
+        return new PooledByteBufAllocator(preferDirect,
+                (heapArenas == null) ? PooledByteBufAllocator.defaultNumHeapArena() : heapArenas,
+                (directArenas == null) ? PooledByteBufAllocator.defaultNumDirectArena() : directArenas,
+                PooledByteBufAllocator.defaultPageSize(),
+                PooledByteBufAllocator.defaultMaxOrder());
+    }
+
+    List<Object> key() {
+        return Arrays.asList(pooled, preferDirect, heapArenas, directArenas);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.netty;
+
+import com.datastax.driver.core.NettyOptions;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NettyOptions} with a configurable transport, number of I/O threads, buffer allocator and timer tick.
+ *
+ * @see NettyOptionsFactory
+ */
+public class ConfiguredNettyOptions extends NettyOptions {
+
+    private final NettyTransport transport;
+    private final int ioThreads;
+    private final ByteBufAllocator allocator;
+    private final long timerTickMillis;
+
+    /**
+     * @param transport       the transport to use, falling back to NIO if it is unavailable.
+     * @param ioThreads       the number of I/O threads, or {@code 0} for Netty's default of twice the number of cores.
+     * @param allocator       the allocator of the buffers of every connection.
+     * @param timerTickMillis the duration of a tick of the timer, which times requests out.
+     */
+    public ConfiguredNettyOptions(TransportType transport, int ioThreads, ByteBufAllocator allocator,
+                                  long timerTickMillis) {
+        this.transport = NettyTransport.select(transport);
+        this.ioThreads = ioThreads;
+        this.allocator = allocator;
+        this.timerTickMillis = timerTickMillis;
+    }
+
+    @Override
+    public EventLoopGroup eventLoopGroup(ThreadFactory threadFactory) {
+        return transport.newEventLoopGroup(ioThreads, threadFactory);
+    }
+
+    @Override
+    public Class<? extends SocketChannel> channelClass() {
+        return transport.channelClass();
+    }
+
+    @Override
+    public void afterBootstrapInitialized(Bootstrap bootstrap) {
+        bootstrap.option(ChannelOption.ALLOCATOR, allocator);
+    }
+
+    @Override
+    public Timer timer(ThreadFactory threadFactory) {
+        return new HashedWheelTimer(threadFactory, timerTickMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.netty;
+
+import com.datastax.driver.core.NettyOptions;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A factory for configuring and building {@link NettyOptions} instances, which size the network layer of a cluster.
+ * <p/>
+ * By default, every cluster has its own event loop group and timer. Clusters configured with {@code shared} options
+ * share them instead - one per distinct configuration - which saves threads in applications connecting to several
+ * clusters.
+ * <p/>
+ * <b>Configuration Parameters:</b>
+ * <table>
+ *     <tr>
+ *         <td>Name</td>
+ *         <td>Default</td>
+ *         <td>Description</td>
+ *     </tr>
+ *     <tr>
+ *         <td>ioThreads</td>
+ *         <td>Twice the number of cores.</td>
+ *         <td>The number of threads handling network I/O.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>transport</td>
+ *         <td>epoll</td>
+ *         <td>The {@link TransportType transport}: {@code nio}, or {@code epoll} when {@code netty-transport-native-epoll}
+ *         is on the class path and supports the platform, falling back to {@code nio} otherwise.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>allocator</td>
+ *         <td>Pooled direct buffers.</td>
+ *         <td>The {@link ByteBufAllocatorFactory allocator} of the buffers of every frame.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>shared</td>
+ *         <td>false</td>
+ *         <td>Whether to share the event loop group and timer with every other cluster configured with the same
+ *         options.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>timerTick</td>
+ *         <td>100 milliseconds</td>
+ *         <td>The precision of the timer which times requests out.</td>
+ *     </tr>
+ * </table>
+ */
+public class NettyOptionsFactory {
+
+    private static final ConcurrentMap<List<Object>, NettyOptions> SHARED = new ConcurrentHashMap<>();
+
+    @Min(1)
+    private Integer ioThreads;
+
+    @NotNull
+    private TransportType transport = TransportType.EPOLL;
+
+    @Valid
+    @NotNull
+    private ByteBufAllocatorFactory allocator = new ByteBufAllocatorFactory();
+
+    private boolean shared = false;
+
+    @NotNull
+    private Duration timerTick = Duration.milliseconds(100);
+
+    @JsonProperty
+    public Integer getIoThreads() {
+        return ioThreads;
+    }
+
+    @JsonProperty
+    public void setIoThreads(Integer ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    @JsonProperty
+    public TransportType getTransport() {
+        return transport;
+    }
+
+    @JsonProperty
+    public void setTransport(TransportType transport) {
+        this.transport = transport;
+    }
+
+    @JsonProperty
+    public ByteBufAllocatorFactory getAllocator() {
+        return allocator;
+    }
+
+    @JsonProperty
+    public void setAllocator(ByteBufAllocatorFactory allocator) {
+        this.allocator = allocator;
+    }
+
+    @JsonProperty
+    public boolean isShared() {
+        return shared;
+    }
+
+    @JsonProperty
+    public void setShared(boolean shared) {
+        this.shared = shared;
+    }
+
+    @JsonProperty
+    public Duration getTimerTick() {
+        return timerTick;
+    }
+
+    @JsonProperty
+    public void setTimerTick(Duration timerTick) {
+        this.timerTick = timerTick;
+    }
+
+    public NettyOptions build() {
+        if (!shared) {
+            return newNettyOptions();
+        }
+        final List<Object> key = Arrays.asList(transport, threads(), allocator.key(), timerTick.toMilliseconds());
+        return SHARED.computeIfAbsent(key, k -> new SharedNettyOptions(newNettyOptions()));
+    }
+
+    private NettyOptions newNettyOptions() {
+        return new ConfiguredNettyOptions(transport, threads(), allocator.build(), timerTick.toMilliseconds());
+    }
+
+    private int threads() {
+        return (ioThreads == null) ? 0 : ioThreads;
+    }
+}
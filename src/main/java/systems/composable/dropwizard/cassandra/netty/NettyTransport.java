@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.netty;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The Netty transport used to connect to Cassandra: the native epoll transport where it is available, or NIO.
+ * <p/>
+ * The epoll transport is only on the class path when {@code io.netty:netty-transport-native-epoll} is a dependency of
+ * the application, and only works on Linux, so it is looked up reflectively.
+ */
+abstract class NettyTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NettyTransport.class);
+
+    static final NettyTransport NIO = new NettyTransport() {
+        @Override
+        EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+            return new NioEventLoopGroup(threads, threadFactory);
+        }
+
+        @Override
+        Class<? extends SocketChannel> channelClass() {
+            return NioSocketChannel.class;
+        }
+    };
+
+    private static final NettyTransport EPOLL = loadEpoll();
+
+    /**
+     * @param type the preferred transport.
+     * @return the epoll transport, if preferred and available; otherwise the NIO transport.
+     */
+    static NettyTransport select(TransportType type) {
+        if (type == TransportType.EPOLL) {
+            if (EPOLL != null) {
+                return EPOLL;
+            }
+            LOG.info("Netty's native epoll transport is unavailable; falling back to NIO");
+        }
+        return NIO;
+    }
+
+    /**
+     * @param threads       the number of threads, or {@code 0} for Netty's default.
+     * @param threadFactory creates the threads of the group.
+     * @return a new event loop group of this transport.
+     */
+    abstract EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory);
+
+    abstract Class<? extends SocketChannel> channelClass();
+
+    private static NettyTransport loadEpoll() {
+        try {
+            final Class<?> epoll = Class.forName("io.netty.channel.epoll.Epoll");
+            if (!(Boolean) epoll.getMethod("isAvailable").invoke(null)) {
+                LOG.debug("Netty's native epoll transport is unavailable; using NIO",
+                        (Throwable) epoll.getMethod("unavailabilityCause").invoke(null));
+                return null;
+            }
+
+            final Constructor<? extends EventLoopGroup> eventLoopGroup = Class
+                    .forName("io.netty.channel.epoll.EpollEventLoopGroup")
+                    .asSubclass(EventLoopGroup.class)
+                    .getConstructor(int.class, ThreadFactory.class);
+            final Class<? extends SocketChannel> channelClass = Class
+                    .forName("io.netty.channel.epoll.EpollSocketChannel")
+                    .asSubclass(SocketChannel.class);
+
+            return new NettyTransport() {
+                @Override
+                EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+                    try {
+                        return eventLoopGroup.newInstance(threads, threadFactory);
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException("Unable to create an epoll event loop group", e);
+                    }
+                }
+
+                @Override
+                Class<? extends SocketChannel> channelClass() {
+                    return channelClass;
+                }
+            };
+        } catch (ClassNotFoundException e) {
+            LOG.debug("Netty's native epoll transport is not on the class path; using NIO");
+            return null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            LOG.debug("Unable to load Netty's native epoll transport; using NIO", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.netty;
+
+import com.datastax.driver.core.NettyOptions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.util.Timer;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link NettyOptions} which share a single event loop group and timer between every cluster they are configured on,
+ * rather than each cluster creating its own.
+ * <p/>
+ * The event loop group and timer are created by the wrapped options when the first cluster initializes, and released
+ * when the last cluster closes; their threads are named after no particular cluster. Each cluster keeps its own
+ * connections, and the wrapped options still customize every bootstrap and channel.
+ */
+public class SharedNettyOptions extends NettyOptions {
+
+    private final NettyOptions delegate;
+
+    private EventLoopGroup eventLoopGroup;
+    private int eventLoopGroupReferences;
+    private Timer timer;
+    private int timerReferences;
+
+    public SharedNettyOptions() {
+        this(NettyOptions.DEFAULT_INSTANCE);
+    }
+
+    /**
+     * @param delegate the options creating the shared event loop group and timer, and customizing connections.
+     */
+    public SharedNettyOptions(NettyOptions delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public synchronized EventLoopGroup eventLoopGroup(ThreadFactory threadFactory) {
+        if (eventLoopGroupReferences++ == 0) {
+            eventLoopGroup = delegate.eventLoopGroup(named("cassandra-nio-worker-%d"));
+        }
+        return eventLoopGroup;
+    }
+
+    @Override
+    public synchronized void onClusterClose(EventLoopGroup eventLoopGroup) {
+        if (--eventLoopGroupReferences == 0) {
+            delegate.onClusterClose(eventLoopGroup);
+            this.eventLoopGroup = null;
+        }
+    }
+
+    @Override
+    public synchronized Timer timer(ThreadFactory threadFactory) {
+        if (timerReferences++ == 0) {
+            timer = delegate.timer(named("cassandra-timeouter-%d"));
+        }
+        return timer;
+    }
+
+    @Override
+    public synchronized void onClusterClose(Timer timer) {
+        if (--timerReferences == 0) {
+            delegate.onClusterClose(timer);
+            this.timer = null;
+        }
+    }
+
+    @Override
+    public Class<? extends SocketChannel> channelClass() {
+        return delegate.channelClass();
+    }
+
+    @Override
+    public void afterBootstrapInitialized(Bootstrap bootstrap) {
+        delegate.afterBootstrapInitialized(bootstrap);
+    }
+
+    @Override
+    public void afterChannelInitialized(SocketChannel channel) throws Exception {
+        delegate.afterChannelInitialized(channel);
+    }
+
+    private static ThreadFactory named(String nameFormat) {
+        return new ThreadFactoryBuilder().setNameFormat(nameFormat).build();
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.netty;
+
+/**
+ * The Netty transports that clusters can connect to Cassandra with.
+ */
+public enum TransportType {
+
+    /**
+     * Java NIO, available everywhere.
+     */
+    NIO,
+
+    /**
+     * Netty's native epoll transport, on Linux, when {@code io.netty:netty-transport-native-epoll} (with the
+     * {@code linux-x86_64} classifier) is on the class path. Falls back to NIO elsewhere.
+     */
+    EPOLL
+}
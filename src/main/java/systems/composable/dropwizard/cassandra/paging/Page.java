@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.paging;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * A page of results, and the cursor to the page that follows it, if there is one.
+ *
+ * @param <T> the type of the results.
+ */
+public class Page<T> {
+
+    private final List<T> items;
+    private final String next;
+
+    public Page(List<T> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    /**
+     * @return the results on this page.
+     */
+    @JsonProperty
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return the cursor to the next page, or {@code null} if this is the last page.
+     */
+    @JsonProperty
+    public String getNext() {
+        return next;
+    }
+}
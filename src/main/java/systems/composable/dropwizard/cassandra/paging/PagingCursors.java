@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.paging;
+
+import com.datastax.driver.core.CodecRegistry;
+import com.datastax.driver.core.PagingState;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.PagingStateException;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Pages through the results of queries with cursors: compact, URL-safe tokens carrying the driver's
+ * {@link PagingState}, so that a stateless endpoint can resume a query where the previous page ended, reading one page
+ * rather than every row before it:
+ * <pre>
+ * &#64;GET
+ * &#64;Path("/users")
+ * public Page&lt;User&gt; getUsers(&#64;QueryParam("cursor") String cursor) {
+ *     return cursors.page(new SimpleStatement("SELECT * FROM users"), cursor, 100, User::fromRow);
+ * }
+ * </pre>
+ * Cursors are signed with HMAC-SHA256, so that clients cannot forge or alter them, and the paging state they carry is
+ * only accepted by the statement, with the same values, that it came from. Both checks fail with a
+ * {@link PagingStateException}.
+ */
+public class PagingCursors {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int SIGNATURE_LENGTH = 16;
+
+    private final Supplier<Session> session;
+    private final Mac prototype;
+
+    public PagingCursors(Supplier<Session> session, byte[] key) {
+        this.session = session;
+        try {
+            this.prototype = Mac.getInstance(ALGORITHM);
+            this.prototype.init(new SecretKeySpec(key, ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    /**
+     * Encodes a paging state as a cursor.
+     *
+     * @param pagingState the paging state of a result set, or {@code null} if it has no more pages.
+     * @return a signed, URL-safe cursor, or {@code null} if the paging state is {@code null}.
+     */
+    public String encode(PagingState pagingState) {
+        if (pagingState == null) {
+            return null;
+        }
+        final byte[] state = pagingState.toBytes();
+        final byte[] token = Arrays.copyOf(state, state.length + SIGNATURE_LENGTH);
+        System.arraycopy(sign(state), 0, token, state.length, SIGNATURE_LENGTH);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    /**
+     * Decodes a cursor to the paging state it carries.
+     *
+     * @param cursor a cursor previously {@link #encode encoded} with the same key.
+     * @return the paging state.
+     * @throws PagingStateException if the cursor is malformed, or was not signed with the same key.
+     */
+    public PagingState decode(String cursor) {
+        final byte[] token;
+        try {
+            token = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new PagingStateException("Invalid cursor: not URL-safe Base64", e);
+        }
+        if (token.length <= SIGNATURE_LENGTH) {
+            throw new PagingStateException("Invalid cursor: too short");
+        }
+
+        final byte[] state = Arrays.copyOf(token, token.length - SIGNATURE_LENGTH);
+        final byte[] signature = Arrays.copyOfRange(token, state.length, token.length);
+        if (!MessageDigest.isEqual(signature, Arrays.copyOf(sign(state), SIGNATURE_LENGTH))) {
+            throw new PagingStateException("Invalid cursor: bad signature");
+        }
+        return PagingState.fromBytes(state);
+    }
+
+    /**
+     * Executes a statement, reading a single page of results.
+     * <p/>
+     * The fetch size and paging state of the statement are set, so it should not be shared with other requests.
+     *
+     * @param statement the statement to execute.
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page.
+     * @param pageSize the maximum number of results on the page.
+     * @param mapper maps each row to a result.
+     * @param <T> the type of the results.
+     * @return the page, with the cursor to the next page, if any.
+     * @throws PagingStateException if the cursor is invalid, or did not come from the same statement.
+     */
+    public <T> Page<T> page(Statement statement, String cursor, int pageSize,
+                            Function<? super Row, ? extends T> mapper) {
+        return toPage(session.get().execute(prepare(statement, cursor, pageSize)), mapper);
+    }
+
+    /**
+     * Executes a statement asynchronously, reading a single page of results.
+     *
+     * @param statement the statement to execute.
+     * @param cursor the cursor returned with the previous page, or {@code null} for the first page.
+     * @param pageSize the maximum number of results on the page.
+     * @param mapper maps each row to a result.
+     * @param <T> the type of the results.
+     * @return the future page, with the cursor to the next page, if any.
+     * @throws PagingStateException if the cursor is invalid, or did not come from the same statement.
+     * @see #page(Statement, String, int, Function)
+     */
+    public <T> ListenableFuture<Page<T>> pageAsync(Statement statement, String cursor, int pageSize,
+                                                   Function<? super Row, ? extends T> mapper) {
+        return Futures.transform(session.get().executeAsync(prepare(statement, cursor, pageSize)),
+                (com.google.common.base.Function<ResultSet, Page<T>>) resultSet -> toPage(resultSet, mapper));
+    }
+
+    private Statement prepare(Statement statement, String cursor, int pageSize) {
+        statement.setFetchSize(pageSize);
+        if (cursor != null && !cursor.isEmpty()) {
+            final CodecRegistry codecRegistry = session.get().getCluster().getConfiguration().getCodecRegistry();
+            statement.setPagingState(decode(cursor), codecRegistry);
+        }
+        return statement;
+    }
+
+    private <T> Page<T> toPage(ResultSet resultSet, Function<? super Row, ? extends T> mapper) {
+        // only the rows already fetched, as iterating further would fetch the next page
+        final int available = resultSet.getAvailableWithoutFetching();
+        final List<T> items = new ArrayList<>(available);
+        for (int i = 0; i < available; i++) {
+            items.add(mapper.apply(resultSet.one()));
+        }
+        return new Page<>(items, encode(resultSet.getExecutionInfo().getPagingState()));
+    }
+
+    private byte[] sign(byte[] state) {
+        final Mac mac;
+        try {
+            mac = (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+        return mac.doFinal(state);
+    }
+}
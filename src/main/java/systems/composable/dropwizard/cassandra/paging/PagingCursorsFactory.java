@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.paging;
+
+import com.datastax.driver.core.Session;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.hibernate.validator.constraints.Length;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.function.Supplier;
+
+/**
+ * A factory for configuring and building {@link PagingCursors} instances.
+ * <p/>
+ * <b>Configuration Parameters:</b>
+ * <table>
+ *     <tr>
+ *         <td>Name</td>
+ *         <td>Default</td>
+ *         <td>Description</td>
+ *     </tr>
+ *     <tr>
+ *         <td>secret</td>
+ *         <td>No default. A random key is generated on startup.</td>
+ *         <td>The key cursors are signed with. Cursors are only accepted by instances with the same key, so set this
+ *         when several instances serve the same clients, or cursors must outlive a restart. Must be at least 32
+ *         characters long, as long as the random key.</td>
+ *     </tr>
+ * </table>
+ */
+public class PagingCursorsFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PagingCursorsFactory.class);
+
+    @Length(min = 32)
+    private String secret;
+
+    @JsonProperty
+    public String getSecret() {
+        return secret;
+    }
+
+    @JsonProperty
+    public void setSecret(String secret) {
+        this.secret = secret;
+    }
+
+    /**
+     * Builds {@link PagingCursors} that execute queries on the supplied session.
+     *
+     * @param session supplies the session to execute queries on, when the first page is requested.
+     * @return cursors signed with the configured secret, or a random key if there is none.
+     */
+    public PagingCursors build(Supplier<Session> session) {
+        final byte[] key;
+        if (secret != null) {
+            key = secret.getBytes(StandardCharsets.UTF_8);
+        } else {
+            LOG.warn("No paging cursor secret configured, cursors will only be valid until this instance restarts");
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+        }
+        return new PagingCursors(session, key);
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.pooling;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import systems.composable.dropwizard.cassandra.SharedSession;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Adjusts the core number of connections per host of a cluster's live {@link PoolingOptions} to its load, within
+ * configured {@link ConnectionBounds bounds} for each {@link HostDistance host distance}.
+ * <p/>
+ * Once {@link #start() started}, the number of requests in flight to each host of the cluster's
+ * {@link SharedSession shared session} is sampled every {@code interval}. The utilization of a distance is that of its
+ * busiest host: the requests in flight to it, as a fraction of the capacity of its core connections - and so of the
+ * requests it can take before borrowers wait for a connection, and time out after the {@code poolTimeout}. After
+ * {@code samples} consecutive samples above {@code highUtilization}, the core connections are doubled; after as many
+ * below {@code lowUtilization}, they're reduced by one, unless that would take the utilization above
+ * {@code highUtilization}. The maximum connections per host is set to the upper bound, so that the driver can still
+ * open connections between samples.
+ * <p/>
+ * Pool sizes can also be {@link #override(HostDistance, Integer, Integer, Integer, Integer) overridden}, which
+ * suspends adjustment of that distance until it is {@link #setAdaptive(HostDistance, boolean) resumed}.
+ * <p/>
+ * Unless it is built without a {@link MetricRegistry}, metrics are named after the DataStax {@link Cluster} class, the
+ * cluster name and the host distance:
+ *
+ * <b>Gauges:</b>
+ * <ul>
+ *     <li>com.datastax.core.Cluster.clusterName.pooling.distance.core-connections</li>
+ *     <li>com.datastax.core.Cluster.clusterName.pooling.distance.max-connections</li>
+ *     <li>com.datastax.core.Cluster.clusterName.pooling.distance.utilization</li>
+ * </ul>
+ *
+ * <b>Meters:</b>
+ * <ul>
+ *     <li>com.datastax.core.Cluster.clusterName.pooling.distance.scale-ups</li>
+ *     <li>com.datastax.core.Cluster.clusterName.pooling.distance.scale-downs</li>
+ * </ul>
+ */
+public class AdaptivePoolingController implements Managed {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptivePoolingController.class);
+
+    private final SharedSession session;
+    private final double highUtilization;
+    private final double lowUtilization;
+    private final int samples;
+    private final Duration interval;
+    private final Map<HostDistance, Pool> pools = new EnumMap<>(HostDistance.class);
+
+    private volatile ScheduledExecutorService executor;
+
+    public AdaptivePoolingController(SharedSession session, Map<HostDistance, ConnectionBounds> bounds,
+                                     double highUtilization, double lowUtilization, int samples, Duration interval,
+                                     MetricRegistry metrics) {
+        this.session = session;
+        this.highUtilization = highUtilization;
+        this.lowUtilization = lowUtilization;
+        this.samples = samples;
+        this.interval = interval;
+
+        final String prefix = name(Cluster.class, session.getCluster().getClusterName(), "pooling");
+        for (HostDistance distance : new HostDistance[] {HostDistance.LOCAL, HostDistance.REMOTE}) {
+            pools.put(distance, new Pool(distance, bounds.get(distance), metrics,
+                    name(prefix, distance.name().toLowerCase())));
+        }
+    }
+
+    public String getClusterName() {
+        return session.getCluster().getClusterName();
+    }
+
+    /**
+     * @return the live pooling options of the cluster.
+     */
+    public PoolingOptions getPoolingOptions() {
+        return session.getCluster().getConfiguration().getPoolingOptions();
+    }
+
+    /**
+     * @param distance a host distance.
+     * @return whether the pools of hosts at the distance are being adjusted.
+     */
+    public boolean isAdaptive(HostDistance distance) {
+        return pool(distance).adaptive;
+    }
+
+    /**
+     * @param distance a host distance.
+     * @return the utilization of hosts at the distance, as of the last sample.
+     */
+    public double getUtilization(HostDistance distance) {
+        return pool(distance).utilization;
+    }
+
+    /**
+     * Resumes or suspends adjustment of the pools of hosts at a distance.
+     *
+     * @param distance a host distance.
+     * @param adaptive whether to adjust the pools.
+     * @throws IllegalArgumentException if resuming a distance without bounds.
+     */
+    public synchronized void setAdaptive(HostDistance distance, boolean adaptive) {
+        final Pool pool = pool(distance);
+        if (adaptive && pool.bounds == null) {
+            throw new IllegalArgumentException("No bounds are configured for " + distance + " hosts");
+        }
+        pool.adaptive = adaptive;
+        pool.resetSamples();
+    }
+
+    /**
+     * Overrides the pooling options of hosts at a distance, suspending adjustment of their pools.
+     *
+     * @param distance                 a host distance.
+     * @param coreConnections          the core connections per host, or {@code null} to leave it.
+     * @param maxConnections           the maximum connections per host, or {@code null} to leave it.
+     * @param maxRequestsPerConnection the maximum requests per connection, or {@code null} to leave it.
+     * @param newConnectionThreshold   the threshold for new connections, or {@code null} to leave it.
+     * @throws IllegalArgumentException if the options are invalid.
+     */
+    public synchronized void override(HostDistance distance, Integer coreConnections, Integer maxConnections,
+                                      Integer maxRequestsPerConnection, Integer newConnectionThreshold) {
+        final PoolingOptions options = getPoolingOptions();
+        final Pool pool = pool(distance);
+        pool.adaptive = false;
+
+        if (coreConnections != null || maxConnections != null) {
+            resize(options, distance,
+                    (coreConnections == null) ? options.getCoreConnectionsPerHost(distance) : coreConnections,
+                    (maxConnections == null) ? options.getMaxConnectionsPerHost(distance) : maxConnections);
+        }
+        if (maxRequestsPerConnection != null) {
+            options.setMaxRequestsPerConnection(distance, maxRequestsPerConnection);
+        }
+        if (newConnectionThreshold != null) {
+            options.setNewConnectionThreshold(distance, newConnectionThreshold);
+        }
+        LOG.info("Overrode pooling options of {} hosts of cluster [{}]", distance, getClusterName());
+    }
+
+    @Override
+    public void start() throws Exception {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("cassandra-pooling-" + getClusterName() + "-%d")
+                .setDaemon(true)
+                .build());
+        executor.scheduleWithFixedDelay(this::sampleSafely, interval.toMilliseconds(), interval.toMilliseconds(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Samples the load of every host, adjusting the pools of each distance if necessary.
+     */
+    synchronized void sample() {
+        if (!session.isConnected()) {
+            return;
+        }
+
+        final Session.State state = session.get().getState();
+        final LoadBalancingPolicy policy = session.getCluster().getConfiguration().getPolicies()
+                .getLoadBalancingPolicy();
+        final Map<HostDistance, Integer> busiest = new EnumMap<>(HostDistance.class);
+        for (Host host : state.getConnectedHosts()) {
+            busiest.merge(policy.distance(host), state.getInFlightQueries(host), Math::max);
+        }
+
+        final PoolingOptions options = getPoolingOptions();
+        pools.values().forEach(pool -> pool.sample(options, busiest.getOrDefault(pool.distance, 0)));
+    }
+
+    private void sampleSafely() {
+        try {
+            sample();
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to adjust the connection pools of cluster [{}]", getClusterName(), e);
+        }
+    }
+
+    private Pool pool(HostDistance distance) {
+        final Pool pool = pools.get(distance);
+        if (pool == null) {
+            throw new IllegalArgumentException("Pools of " + distance + " hosts cannot be configured");
+        }
+        return pool;
+    }
+
+    private static void resize(PoolingOptions options, HostDistance distance, int core, int max) {
+        // lowering the core connections first keeps them within the maximum, and raising them afterwards opens
+        // the new connections
+        options.setConnectionsPerHost(distance, Math.min(core, options.getCoreConnectionsPerHost(distance)), max);
+        options.setCoreConnectionsPerHost(distance, core);
+    }
+
+    private static double utilization(int inFlight, int connections, int maxRequestsPerConnection) {
+        final long capacity = (long) connections * maxRequestsPerConnection;
+        if (capacity == 0) {
+            return (inFlight == 0) ? 0 : Double.POSITIVE_INFINITY;
+        }
+        return (double) inFlight / capacity;
+    }
+
+    private class Pool {
+
+        private final HostDistance distance;
+        private final ConnectionBounds bounds;
+        private final Meter scaleUps;
+        private final Meter scaleDowns;
+
+        private volatile boolean adaptive;
+        private volatile double utilization;
+        private int above;
+        private int below;
+
+        Pool(HostDistance distance, ConnectionBounds bounds, MetricRegistry metrics, String prefix) {
+            this.distance = distance;
+            this.bounds = bounds;
+            this.adaptive = bounds != null;
+            this.scaleUps = new Meter();
+            this.scaleDowns = new Meter();
+
+            if (metrics != null) {
+                metrics.register(name(prefix, "scale-ups"), scaleUps);
+                metrics.register(name(prefix, "scale-downs"), scaleDowns);
+                metrics.register(name(prefix, "core-connections"),
+                        (Gauge<Integer>) () -> getPoolingOptions().getCoreConnectionsPerHost(distance));
+                metrics.register(name(prefix, "max-connections"),
+                        (Gauge<Integer>) () -> getPoolingOptions().getMaxConnectionsPerHost(distance));
+                metrics.register(name(prefix, "utilization"), (Gauge<Double>) () -> utilization);
+            }
+        }
+
+        void sample(PoolingOptions options, int inFlight) {
+            final int maxRequests = options.getMaxRequestsPerConnection(distance);
+            int core = options.getCoreConnectionsPerHost(distance);
+            if (adaptive) {
+                final int bounded = Math.max(bounds.getMinConnections(), Math.min(bounds.getMaxConnections(), core));
+                if (bounded != core || options.getMaxConnectionsPerHost(distance) != bounds.getMaxConnections()) {
+                    resize(options, distance, bounded, bounds.getMaxConnections());
+                    core = bounded;
+                }
+            }
+
+            utilization = utilization(inFlight, core, maxRequests);
+            if (!adaptive) {
+                return;
+            }
+
+            if (utilization >= highUtilization) {
+                above++;
+                below = 0;
+            } else if (utilization <= lowUtilization) {
+                below++;
+                above = 0;
+            } else {
+                resetSamples();
+            }
+
+            if (above >= samples && core < bounds.getMaxConnections()) {
+                adjust(options, core, Math.min(bounds.getMaxConnections(), core * 2), scaleUps);
+            } else if (below >= samples && core > bounds.getMinConnections()
+                    && utilization(inFlight, core - 1, maxRequests) < highUtilization) {
+                adjust(options, core, core - 1, scaleDowns);
+            }
+        }
+
+        void resetSamples() {
+            above = 0;
+            below = 0;
+        }
+
+        private void adjust(PoolingOptions options, int core, int adjusted, Meter meter) {
+            LOG.info("Adjusting core connections to {} hosts of cluster [{}] from {} to {}, at {} utilization",
+                    distance, getClusterName(), core, adjusted, String.format("%.2f", utilization));
+            resize(options, distance, adjusted, bounds.getMaxConnections());
+            meter.mark();
+            resetSamples();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.pooling;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.HostDistance;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.ValidationMethod;
+import systems.composable.dropwizard.cassandra.SharedSession;
+
+import javax.validation.Valid;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A factory for configuring and building {@link AdaptivePoolingController} instances, which adjust the connection
+ * pools of a cluster to its load.
+ * <p/>
+ * <b>Configuration Parameters:</b>
+ * <table>
+ *     <tr>
+ *         <td>Name</td>
+ *         <td>Default</td>
+ *         <td>Description</td>
+ *     </tr>
+ *     <tr>
+ *         <td>interval</td>
+ *         <td>10 seconds</td>
+ *         <td>How often the load of each host is sampled.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>highUtilization</td>
+ *         <td>0.75</td>
+ *         <td>The fraction of the capacity of the core connections to a host, in requests in flight, above which
+ *         more connections are opened.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>lowUtilization</td>
+ *         <td>0.25</td>
+ *         <td>The fraction of the capacity of the core connections to a host below which connections are closed.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>samples</td>
+ *         <td>3</td>
+ *         <td>The number of consecutive samples above or below the thresholds before connections are opened or
+ *         closed.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>local</td>
+ *         <td>No default. Pools of local hosts are not adjusted.</td>
+ *         <td>The {@link ConnectionBounds bounds} of the core connections to local hosts.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>remote</td>
+ *         <td>No default. Pools of remote hosts are not adjusted.</td>
+ *         <td>The {@link ConnectionBounds bounds} of the core connections to remote hosts.</td>
+ *     </tr>
+ * </table>
+ */
+public class AdaptivePoolingFactory {
+
+    @NotNull
+    private Duration interval = Duration.seconds(10);
+
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    private double highUtilization = 0.75;
+
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    private double lowUtilization = 0.25;
+
+    @Min(1)
+    private int samples = 3;
+
+    @Valid
+    private ConnectionBounds local;
+
+    @Valid
+    private ConnectionBounds remote;
+
+    @JsonProperty
+    public Duration getInterval() {
+        return interval;
+    }
+
+    @JsonProperty
+    public void setInterval(Duration interval) {
+        this.interval = interval;
+    }
+
+    @JsonProperty
+    public double getHighUtilization() {
+        return highUtilization;
+    }
+
+    @JsonProperty
+    public void setHighUtilization(double highUtilization) {
+        this.highUtilization = highUtilization;
+    }
+
+    @JsonProperty
+    public double getLowUtilization() {
+        return lowUtilization;
+    }
+
+    @JsonProperty
+    public void setLowUtilization(double lowUtilization) {
+        this.lowUtilization = lowUtilization;
+    }
+
+    @JsonProperty
+    public int getSamples() {
+        return samples;
+    }
+
+    @JsonProperty
+    public void setSamples(int samples) {
+        this.samples = samples;
+    }
+
+    @JsonProperty
+    public ConnectionBounds getLocal() {
+        return local;
+    }
+
+    @JsonProperty
+    public void setLocal(ConnectionBounds local) {
+        this.local = local;
+    }
+
+    @JsonProperty
+    public ConnectionBounds getRemote() {
+        return remote;
+    }
+
+    @JsonProperty
+    public void setRemote(ConnectionBounds remote) {
+        this.remote = remote;
+    }
+
+    @ValidationMethod(message = "lowUtilization must be less than highUtilization")
+    @JsonIgnore
+    public boolean isUtilizationValid() {
+        return lowUtilization < highUtilization;
+    }
+
+    /**
+     * Builds an {@link AdaptivePoolingController} which adjusts the connection pools of the given session.
+     *
+     * @param session the shared session of the cluster whose pools to adjust.
+     * @param metrics the registry to register the controller's metrics with, or {@code null} to register none.
+     * @return a controller, which must be started to adjust the pools.
+     */
+    public AdaptivePoolingController build(SharedSession session, MetricRegistry metrics) {
+        final Map<HostDistance, ConnectionBounds> bounds = new EnumMap<>(HostDistance.class);
+        if (local != null) {
+            bounds.put(HostDistance.LOCAL, local);
+        }
+        if (remote != null) {
+            bounds.put(HostDistance.REMOTE, remote);
+        }
+        return new AdaptivePoolingController(session, bounds, highUtilization, lowUtilization, samples, interval,
+                metrics);
+    }
+}
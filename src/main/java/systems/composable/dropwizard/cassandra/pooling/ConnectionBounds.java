@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.pooling;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.validation.ValidationMethod;
+
+import javax.validation.constraints.Min;
+
+/**
+ * The bounds within which the {@link AdaptivePoolingController} adjusts the core number of connections per host, for
+ * hosts at one distance.
+ * <p/>
+ * <b>Configuration Parameters:</b>
+ * <table>
+ *     <tr>
+ *         <td>Name</td>
+ *         <td>Default</td>
+ *         <td>Description</td>
+ *     </tr>
+ *     <tr>
+ *         <td>minConnections</td>
+ *         <td>1</td>
+ *         <td>The fewest connections kept open to each host, when load is low.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>maxConnections</td>
+ *         <td>8</td>
+ *         <td>The most connections opened to each host, when load is high.</td>
+ *     </tr>
+ * </table>
+ */
+public class ConnectionBounds {
+
+    @Min(1)
+    private int minConnections = 1;
+
+    @Min(1)
+    private int maxConnections = 8;
+
+    @JsonProperty
+    public int getMinConnections() {
+        return minConnections;
+    }
+
+    @JsonProperty
+    public void setMinConnections(int minConnections) {
+        this.minConnections = minConnections;
+    }
+
+    @JsonProperty
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    @JsonProperty
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    @ValidationMethod(message = "minConnections must not be more than maxConnections")
+    @JsonIgnore
+    public boolean isRangeValid() {
+        return minConnections <= maxConnections;
+    }
+}
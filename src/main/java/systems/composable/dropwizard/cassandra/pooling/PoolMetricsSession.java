@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.pooling;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.BusyConnectionException;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import systems.composable.dropwizard.cassandra.ForwardingSession;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link Session} that records the time spent waiting to borrow a connection from a host's pool, and the requests
+ * rejected because every connection to a host was busy.
+ * <p/>
+ * The driver borrows a connection in the thread that executes a request, waiting up to the {@code poolTimeout} when
+ * every connection is busy, so the time spent executing a request before its future is returned approximates the
+ * time spent waiting to borrow a connection. It is recorded in microseconds. A request is rejected by a busy pool
+ * when the wait times out, or the borrowed connection has no free streams; the driver then tries the next host, so
+ * only the rejections of requests for which no host was available are seen, one per busy host.
+ */
+public class PoolMetricsSession extends ForwardingSession {
+
+    private final Histogram borrowWait;
+    private final Meter busyRejections;
+
+    public PoolMetricsSession(Session delegate, Histogram borrowWait, Meter busyRejections) {
+        super(delegate);
+        this.borrowWait = borrowWait;
+        this.busyRejections = busyRejections;
+    }
+
+    @Override
+    public ResultSetFuture executeAsync(Statement statement) {
+        final long start = System.nanoTime();
+        final ResultSetFuture future = super.executeAsync(statement);
+        borrowWait.update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet result) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                final int rejections = busyRejections(t);
+                if (rejections > 0) {
+                    busyRejections.mark(rejections);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+
+        return future;
+    }
+
+    static int busyRejections(Throwable t) {
+        if (!(t instanceof NoHostAvailableException)) {
+            return 0;
+        }
+
+        int rejections = 0;
+        for (Throwable error : ((NoHostAvailableException) t).getErrors().values()) {
+            if (error instanceof BusyConnectionException || error.getCause() instanceof TimeoutException) {
+                rejections++;
+            }
+        }
+        return rejections;
+    }
+}
@@ -53,6 +53,12 @@ import javax.validation.Valid;
  *         <td>No default. You must specify remote pooling options.</td>
  *         <td>Specifies connection {@link HostDistanceOptions pooling options} for remote hosts.</td>
  *     </tr>
+ *     <tr>
+ *         <td>adaptive</td>
+ *         <td>No default. Pooling options are fixed.</td>
+ *         <td>Adjusts the core connections per host to the load of the cluster, within
+ *         {@link AdaptivePoolingFactory configured bounds}.</td>
+ *     </tr>
  * </table>
  */
 public class PoolingOptionsFactory {
@@ -67,6 +73,8 @@ public class PoolingOptionsFactory {
     private HostDistanceOptions remote;
     @Valid
     private HostDistanceOptions local;
+    @Valid
+    private AdaptivePoolingFactory adaptive;
 
     @JsonProperty
     public Duration getHeartbeatInterval() {
@@ -118,6 +126,16 @@ public class PoolingOptionsFactory {
         this.local = local;
     }
 
+    @JsonProperty
+    public AdaptivePoolingFactory getAdaptive() {
+        return adaptive;
+    }
+
+    @JsonProperty
+    public void setAdaptive(AdaptivePoolingFactory adaptive) {
+        this.adaptive = adaptive;
+    }
+
     public PoolingOptions build() {
         PoolingOptions poolingOptions = new PoolingOptions();
         if (local != null) {
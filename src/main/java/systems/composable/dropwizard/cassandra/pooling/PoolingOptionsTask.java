@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.pooling;
+
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.PoolingOptions;
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+import java.util.Collection;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * An admin task to view and override the pooling options adjusted by an {@link AdaptivePoolingController}.
+ * <p/>
+ * Without parameters, the task prints the current pooling options of each host distance. With a {@code distance}
+ * ({@code local} or {@code remote}), any of {@code coreConnections}, {@code maxConnections},
+ * {@code maxRequestsPerConnection} and {@code newConnectionThreshold} override the options of that distance,
+ * suspending their adjustment; {@code adaptive=true} resumes it. Invalid parameters are reported in the response, and
+ * change nothing. For example:
+ * <pre>
+ * curl -X POST 'http://localhost:8081/tasks/cassandra-pooling.clusterName?distance=local&amp;coreConnections=4'
+ * </pre>
+ */
+public class PoolingOptionsTask extends Task {
+
+    private final AdaptivePoolingController controller;
+
+    public PoolingOptionsTask(AdaptivePoolingController controller) {
+        super(name("cassandra-pooling", controller.getClusterName()));
+        this.controller = controller;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        if (!parameters.isEmpty()) {
+            try {
+                apply(parameters);
+            } catch (IllegalArgumentException e) {
+                // tasks cannot set the status of their response, so report the bad request rather than fail with a 500
+                output.println("Bad request: " + e.getMessage());
+                output.flush();
+                return;
+            }
+        }
+
+        final PoolingOptions options = controller.getPoolingOptions();
+        for (HostDistance distance : new HostDistance[] {HostDistance.LOCAL, HostDistance.REMOTE}) {
+            output.printf("%s: coreConnections=%d, maxConnections=%d, maxRequestsPerConnection=%d, "
+                            + "newConnectionThreshold=%d, utilization=%.2f, adaptive=%b%n",
+                    distance.name().toLowerCase(),
+                    options.getCoreConnectionsPerHost(distance),
+                    options.getMaxConnectionsPerHost(distance),
+                    options.getMaxRequestsPerConnection(distance),
+                    options.getNewConnectionThreshold(distance),
+                    controller.getUtilization(distance),
+                    controller.isAdaptive(distance));
+        }
+        output.flush();
+    }
+
+    private void apply(ImmutableMultimap<String, String> parameters) {
+        final HostDistance distance = distance(single(parameters, "distance"));
+        final Integer core = count(parameters, "coreConnections", 0);
+        final Integer max = count(parameters, "maxConnections", 1);
+        final Integer maxRequests = count(parameters, "maxRequestsPerConnection", 1);
+        final Integer threshold = count(parameters, "newConnectionThreshold", 0);
+        final Boolean adaptive = bool(single(parameters, "adaptive"));
+
+        if (core != null || max != null || maxRequests != null || threshold != null) {
+            controller.override(distance, core, max, maxRequests, threshold);
+        }
+        if (adaptive != null) {
+            controller.setAdaptive(distance, adaptive);
+        }
+    }
+
+    private static HostDistance distance(String value) {
+        if ("local".equalsIgnoreCase(value)) {
+            return HostDistance.LOCAL;
+        } else if ("remote".equalsIgnoreCase(value)) {
+            return HostDistance.REMOTE;
+        }
+        throw new IllegalArgumentException((value == null)
+                ? "A distance - local or remote - is required to override options"
+                : "Unknown distance '" + value + "', expected local or remote");
+    }
+
+    private static Integer count(ImmutableMultimap<String, String> parameters, String name, int min) {
+        final String value = single(parameters, name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            final int count = Integer.parseInt(value);
+            if (count >= min) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(name + " must be an integer of at least " + min + ", not '" + value + "'");
+    }
+
+    private static Boolean bool(String value) {
+        if (value == null) {
+            return null;
+        } else if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+            return Boolean.valueOf(value);
+        }
+        throw new IllegalArgumentException("adaptive must be true or false, not '" + value + "'");
+    }
+
+    private static String single(ImmutableMultimap<String, String> parameters, String name) {
+        final Collection<String> values = parameters.get(name);
+        return values.isEmpty() ? null : values.iterator().next();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.prepared;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.exceptions.DriverInternalError;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.dropwizard.util.Duration;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, concurrent cache of {@link PreparedStatement prepared statements}, keyed by query string and keyspace.
+ * <p/>
+ * Preparation is single-flight: concurrent requests to prepare the same query share one round trip to the cluster,
+ * however many threads ask for it. Failed preparations are not cached, so the next request will try again.
+ * <p/>
+ * When preparing a {@link RegularStatement}, only its query string and keyspace form the key; the statement options
+ * (consistency level, idempotence etc.) of whichever statement was prepared first are kept by the cached
+ * {@link PreparedStatement}.
+ * <p/>
+ * The cache exposes the following metrics:
+ * <ul>
+ *     <li>hits</li>
+ *     <li>misses</li>
+ *     <li>evictions</li>
+ *     <li>size</li>
+ * </ul>
+ */
+public class PreparedStatementCache implements MetricSet {
+
+    private final Supplier<Session> session;
+    private final Cache<Key, ListenableFuture<PreparedStatement>> cache;
+
+    public PreparedStatementCache(Supplier<Session> session, long maximumSize, Duration expireAfterAccess) {
+        this.session = session;
+
+        final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats();
+        if (expireAfterAccess != null) {
+            builder.expireAfterAccess(expireAfterAccess.getQuantity(), expireAfterAccess.getUnit());
+        }
+        this.cache = builder.build();
+    }
+
+    /**
+     * Returns the prepared statement for the given query, preparing it if it is not already cached.
+     *
+     * @param query the CQL query to prepare.
+     * @return the prepared statement.
+     */
+    public PreparedStatement prepare(String query) {
+        return getUninterruptibly(prepareAsync(query));
+    }
+
+    /**
+     * Returns the prepared statement for the given statement, preparing it if it is not already cached.
+     *
+     * @param statement the statement to prepare.
+     * @return the prepared statement.
+     */
+    public PreparedStatement prepare(RegularStatement statement) {
+        return getUninterruptibly(prepareAsync(statement));
+    }
+
+    /**
+     * Asynchronous version of {@link #prepare(String)}.
+     *
+     * @param query the CQL query to prepare.
+     * @return a future on the prepared statement.
+     */
+    public ListenableFuture<PreparedStatement> prepareAsync(String query) {
+        final Session session = this.session.get();
+        return get(new Key(session.getLoggedKeyspace(), query), () -> session.prepareAsync(query));
+    }
+
+    /**
+     * Asynchronous version of {@link #prepare(RegularStatement)}.
+     *
+     * @param statement the statement to prepare.
+     * @return a future on the prepared statement.
+     */
+    public ListenableFuture<PreparedStatement> prepareAsync(RegularStatement statement) {
+        final Session session = this.session.get();
+        final String keyspace = statement.getKeyspace() != null ? statement.getKeyspace() : session.getLoggedKeyspace();
+        return get(new Key(keyspace, statement.getQueryString()), () -> session.prepareAsync(statement));
+    }
+
+    /**
+     * @return the number of prepared statements currently cached.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Discards all cached prepared statements.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        return ImmutableMap.of(
+                "hits", (Gauge<Long>) () -> cache.stats().hitCount(),
+                "misses", (Gauge<Long>) () -> cache.stats().missCount(),
+                "evictions", (Gauge<Long>) () -> cache.stats().evictionCount(),
+                "size", (Gauge<Long>) cache::size);
+    }
+
+    private ListenableFuture<PreparedStatement> get(Key key, Supplier<ListenableFuture<PreparedStatement>> loader) {
+        final boolean[] loaded = new boolean[1];
+        final ListenableFuture<PreparedStatement> future;
+        try {
+            future = cache.get(key, () -> {
+                loaded[0] = true;
+                return loader.get();
+            });
+        } catch (ExecutionException e) {
+            return Futures.immediateFailedFuture(e.getCause());
+        }
+
+        // only the caller that triggered the preparation evicts it again on failure; this must happen after the
+        // future has been stored, otherwise a future that fails immediately would be cached regardless
+        if (loaded[0]) {
+            Futures.addCallback(future, new FutureCallback<PreparedStatement>() {
+                @Override
+                public void onSuccess(PreparedStatement result) {
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    cache.asMap().remove(key, future);
+                }
+            });
+        }
+        return future;
+    }
+
+    private static PreparedStatement getUninterruptibly(ListenableFuture<PreparedStatement> future) {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof DriverException) {
+                throw ((DriverException) cause).copy();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new DriverInternalError("Unexpected exception while preparing statement", cause);
+        }
+    }
+
+    private static final class Key {
+
+        private final String keyspace;
+        private final String query;
+
+        Key(String keyspace, String query) {
+            this.keyspace = keyspace;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return Objects.equals(keyspace, other.keyspace) && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(keyspace) + query.hashCode();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.prepared;
+
+import com.datastax.driver.core.Session;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import java.util.function.Supplier;
+
+/**
+ * A factory for configuring and building {@link PreparedStatementCache} instances.
+ * <p/>
+ * <b>Configuration Parameters:</b>
+ * <table>
+ *     <tr>
+ *         <td>Name</td>
+ *         <td>Default</td>
+ *         <td>Description</td>
+ *     </tr>
+ *     <tr>
+ *         <td>maximumSize</td>
+ *         <td>1000</td>
+ *         <td>The maximum number of prepared statements to keep; the least recently used are evicted beyond this.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>expireAfterAccess</td>
+ *         <td>No default. Statements are only evicted by size.</td>
+ *         <td>Evicts prepared statements that have not been used for the given duration.</td>
+ *     </tr>
+ * </table>
+ */
+public class PreparedStatementCacheFactory {
+
+    @Min(1)
+    private long maximumSize = 1000;
+
+    private Duration expireAfterAccess;
+
+    @JsonProperty
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    @JsonProperty
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    @JsonProperty
+    public Duration getExpireAfterAccess() {
+        return expireAfterAccess;
+    }
+
+    @JsonProperty
+    public void setExpireAfterAccess(Duration expireAfterAccess) {
+        this.expireAfterAccess = expireAfterAccess;
+    }
+
+    /**
+     * Builds a {@link PreparedStatementCache} that prepares statements on the supplied session.
+     * <p/>
+     * The session is only requested when the first statement is prepared, so a lazily-connected session
+     * may be used here.
+     *
+     * @param session supplies the session on which statements are prepared.
+     * @return a new, empty {@link PreparedStatementCache}.
+     */
+    public PreparedStatementCache build(Supplier<Session> session) {
+        return new PreparedStatementCache(session, maximumSize, expireAfterAccess);
+    }
+}
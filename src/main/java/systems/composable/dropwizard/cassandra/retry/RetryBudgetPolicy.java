@@ -0,0 +1,133 @@
+package systems.composable.dropwizard.cassandra.retry;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.LatencyTracker;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.WriteType;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.policies.RetryPolicy;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link RetryPolicy} that wraps another policy, limiting the fraction of requests that may be retried.
+ * <p/>
+ * Every request sent to a host earns {@code maxRetryRatio} of a token, up to a burst of {@value #BURST_REQUESTS}
+ * requests' worth, and every retry spends a whole token. While the budget is exhausted, errors that the wrapped policy
+ * would retry are rethrown instead, so that when hosts struggle, retries cannot multiply the load on the cluster. The
+ * budget is maintained with lock-free counters.
+ * <p/>
+ * Requests are counted as the driver reports their latency, so retries - which are requests too - earn tokens as well:
+ * the budget bounds retries to {@code maxRetryRatio} of all requests sent, including retries.
+ * <p/>
+ * The policy exposes the following metrics:
+ * <ul>
+ *     <li>{@code retries.budget-exhausted} - retries refused as the budget was spent</li>
+ *     <li>{@code retries.budget} - the number of retries currently affordable</li>
+ * </ul>
+ */
+public class RetryBudgetPolicy implements RetryPolicy, MetricSet {
+
+    static final int BURST_REQUESTS = 1000;
+
+    private static final long TOKEN = 1000000L;
+
+    private final RetryPolicy childPolicy;
+    private final long deposit;
+    private final long capacity;
+    private final AtomicLong budget = new AtomicLong();
+    private final Meter exhausted = new Meter();
+
+    private final LatencyTracker requests = new LatencyTracker() {
+        @Override
+        public void update(Host host, Statement statement, Exception exception, long newLatencyNanos) {
+            budget.accumulateAndGet(deposit, (current, amount) -> Math.min(current + amount, capacity));
+        }
+
+        @Override
+        public void onRegister(Cluster cluster) {
+        }
+
+        @Override
+        public void onUnregister(Cluster cluster) {
+        }
+    };
+
+    /**
+     * @param childPolicy   the policy deciding whether errors should be retried.
+     * @param maxRetryRatio the maximum number of retries per request, e.g. {@code 0.1}.
+     */
+    public RetryBudgetPolicy(RetryPolicy childPolicy, double maxRetryRatio) {
+        checkArgument(maxRetryRatio >= 0.0 && maxRetryRatio <= 1.0,
+                "maxRetryRatio must be between 0.0 and 1.0 (was %s)", maxRetryRatio);
+        this.childPolicy = childPolicy;
+        this.deposit = (long) (maxRetryRatio * TOKEN);
+        this.capacity = deposit * BURST_REQUESTS;
+    }
+
+    @Override
+    public void init(Cluster cluster) {
+        childPolicy.init(cluster);
+        cluster.register(requests);
+    }
+
+    @Override
+    public RetryDecision onReadTimeout(Statement statement, ConsistencyLevel cl, int requiredResponses,
+                                       int receivedResponses, boolean dataRetrieved, int nbRetry) {
+        return withinBudget(childPolicy.onReadTimeout(
+                statement, cl, requiredResponses, receivedResponses, dataRetrieved, nbRetry));
+    }
+
+    @Override
+    public RetryDecision onWriteTimeout(Statement statement, ConsistencyLevel cl, WriteType writeType,
+                                        int requiredAcks, int receivedAcks, int nbRetry) {
+        return withinBudget(childPolicy.onWriteTimeout(statement, cl, writeType, requiredAcks, receivedAcks, nbRetry));
+    }
+
+    @Override
+    public RetryDecision onUnavailable(Statement statement, ConsistencyLevel cl, int requiredReplica,
+                                       int aliveReplica, int nbRetry) {
+        return withinBudget(childPolicy.onUnavailable(statement, cl, requiredReplica, aliveReplica, nbRetry));
+    }
+
+    @Override
+    public RetryDecision onRequestError(Statement statement, ConsistencyLevel cl, DriverException e, int nbRetry) {
+        return withinBudget(childPolicy.onRequestError(statement, cl, e, nbRetry));
+    }
+
+    @Override
+    public void close() {
+        childPolicy.close();
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        return ImmutableMap.of(
+                "retries.budget-exhausted", exhausted,
+                "retries.budget", (Gauge<Long>) () -> Math.max(0, budget.get() / TOKEN));
+    }
+
+    private RetryDecision withinBudget(RetryDecision decision) {
+        if (decision.getType() != RetryDecision.Type.RETRY) {
+            return decision;
+        }
+
+        if (budget.addAndGet(-TOKEN) < 0) {
+            // give the token back, so that concurrent refusals don't push the budget further into debt
+            budget.addAndGet(TOKEN);
+            exhausted.mark();
+            return RetryDecision.rethrow();
+        }
+        return decision;
+    }
+}
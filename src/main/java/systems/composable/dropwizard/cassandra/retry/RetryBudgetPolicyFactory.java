@@ -0,0 +1,70 @@
+package systems.composable.dropwizard.cassandra.retry;
+
+import com.datastax.driver.core.policies.RetryPolicy;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import javax.validation.Valid;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.NotNull;
+
+/**
+ * A factory for configuring and building {@link RetryBudgetPolicy} instances.
+ * <p/>
+ * <b>Configuration Parameters:</b>
+ * <table>
+ *     <tr>
+ *         <td>Name</td>
+ *         <td>Default</td>
+ *         <td>Description</td>
+ *     </tr>
+ *     <tr>
+ *         <td>subPolicy</td>
+ *         <td>No default. You must specify a sub policy.</td>
+ *         <td>The policy to wrap. Its decisions to retry are followed while the retry budget allows.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>maxRetryRatio</td>
+ *         <td>0.1</td>
+ *         <td>The maximum number of retries per request, between 0.0 and 1.0.</td>
+ *     </tr>
+ * </table>
+ */
+@JsonTypeName("budget")
+public class RetryBudgetPolicyFactory implements RetryPolicyFactory {
+
+    @NotNull
+    @Valid
+    private RetryPolicyFactory subPolicy;
+
+    @NotNull
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    private Double maxRetryRatio = 0.1;
+
+    @JsonProperty
+    public RetryPolicyFactory getSubPolicy() {
+        return subPolicy;
+    }
+
+    @JsonProperty
+    public void setSubPolicy(RetryPolicyFactory subPolicy) {
+        this.subPolicy = subPolicy;
+    }
+
+    @JsonProperty
+    public Double getMaxRetryRatio() {
+        return maxRetryRatio;
+    }
+
+    @JsonProperty
+    public void setMaxRetryRatio(Double maxRetryRatio) {
+        this.maxRetryRatio = maxRetryRatio;
+    }
+
+    @Override
+    public RetryPolicy build() {
+        return new RetryBudgetPolicy(subPolicy.build(), maxRetryRatio);
+    }
+}
@@ -35,6 +35,7 @@ import io.dropwizard.jackson.Discoverable;
  * @see DowngradingConsistencyRetryPolicyFactory
  * @see FallthroughRetryPolicyFactory
  * @see LoggingRetryPolicyFactory
+ * @see RetryBudgetPolicyFactory
  */
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
 public interface RetryPolicyFactory extends Discoverable {
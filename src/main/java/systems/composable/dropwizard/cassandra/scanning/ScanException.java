@@ -0,0 +1,29 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.scanning;
+
+/**
+ * Thrown when a {@link TokenRangeScanner} fails to scan a token range, or its consumer fails to accept a row.
+ */
+public class ScanException extends RuntimeException {
+
+    private static final long serialVersionUID = 0;
+
+    public ScanException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.scanning;
+
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.Token;
+import com.datastax.driver.core.TokenRange;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.exceptions.QueryValidationException;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Scans whole tables in parallel, one token range at a time, rather than paging through them with a single query that
+ * one coordinator at a time has to serve.
+ * <p/>
+ * The ring is split into the {@link Metadata#getTokenRanges() token ranges} of the cluster, each split further into
+ * {@code splitsPerRange} ranges of equal size, and up to {@code concurrency} ranges are scanned at once, with queries
+ * of the form {@code SELECT * FROM table WHERE token(key) > ? AND token(key) <= ?}. Each query is routed to a replica
+ * of its range by a {@link com.datastax.driver.core.policies.TokenAwarePolicy token aware} load balancing policy, so
+ * that the scan spreads over the whole cluster and scales with it.
+ * <p/>
+ * A range whose query fails is resumed from the last page it read, up to {@code maxRetries} times in a row; a range
+ * that still fails, or a consumer that throws, fails the scan. Rows are passed to the consumer from up to
+ * {@code concurrency} threads at once, in no particular order.
+ */
+public class TokenRangeScanner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenRangeScanner.class);
+
+    /**
+     * The number of candidate routing keys hashed for each range before the remaining ranges are left unrouted.
+     */
+    private static final int ROUTING_ATTEMPTS_PER_RANGE = 64;
+
+    private final Session session;
+    private final int concurrency;
+    private final int splitsPerRange;
+    private final int fetchSize;
+    private final int maxRetries;
+
+    /**
+     * @param session the session to scan with.
+     * @param concurrency the number of ranges scanned at once.
+     * @param splitsPerRange the number of ranges each token range of the cluster is split into.
+     * @param fetchSize the number of rows read from a range at a time.
+     * @param maxRetries the number of times in a row a failed query of a range is retried.
+     */
+    public TokenRangeScanner(Session session, int concurrency, int splitsPerRange, int fetchSize, int maxRetries) {
+        this.session = session;
+        this.concurrency = concurrency;
+        this.splitsPerRange = splitsPerRange;
+        this.fetchSize = fetchSize;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Scans every row of a table.
+     *
+     * @param keyspace the keyspace of the table.
+     * @param table the table to scan.
+     * @param consumer accepts each row of the table, from several threads at once.
+     * @return a future completing with the number of rows scanned once every range has been scanned, or with the
+     * failure that stopped the scan. Cancelling it stops the scan once the ranges being scanned are complete.
+     */
+    public CompletableFuture<Long> scan(String keyspace, String table, Consumer<? super Row> consumer) {
+        final Metadata metadata = session.getCluster().getMetadata();
+        final String query = query(metadata, keyspace, table);
+        final Queue<ScanRange> ranges = new ConcurrentLinkedQueue<>(ranges(metadata));
+
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+        final AtomicLong rows = new AtomicLong();
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency, new ThreadFactoryBuilder()
+                .setNameFormat("cassandra-scanner-" + table + "-%d")
+                .setDaemon(true)
+                .build());
+
+        final List<CompletableFuture<Void>> workers = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                ScanRange range;
+                while (!result.isDone() && (range = ranges.poll()) != null) {
+                    rows.addAndGet(scan(keyspace, query, range, consumer));
+                }
+            }, executor));
+        }
+        executor.shutdown();
+
+        CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[workers.size()]))
+                .whenComplete((ignored, t) -> {
+                    if (t == null) {
+                        result.complete(rows.get());
+                    } else {
+                        result.completeExceptionally(t.getCause() != null ? t.getCause() : t);
+                    }
+                });
+        // fail fast, rather than once every other worker has finished
+        workers.forEach(worker -> worker.whenComplete((ignored, t) -> {
+            if (t != null) {
+                result.completeExceptionally(t.getCause() != null ? t.getCause() : t);
+            }
+        }));
+        return result;
+    }
+
+    private long scan(String keyspace, String query, ScanRange range, Consumer<? super Row> consumer) {
+        long rows = 0;
+        byte[] resumeFrom = null;
+        int failures = 0;
+        while (true) {
+            final SimpleStatement statement = new SimpleStatement(query,
+                    range.tokenRange.getStart().getValue(), range.tokenRange.getEnd().getValue());
+            statement.setKeyspace(keyspace);
+            statement.setFetchSize(fetchSize);
+            if (range.routingKey != null) {
+                statement.setRoutingKey(range.routingKey);
+            }
+            if (resumeFrom != null) {
+                statement.setPagingStateUnsafe(resumeFrom);
+            }
+
+            try {
+                final ResultSet resultSet = session.execute(statement);
+                while (true) {
+                    // the page after this one is fetched while this one is consumed
+                    final int available = resultSet.getAvailableWithoutFetching();
+                    final byte[] next = resultSet.getExecutionInfo().getPagingStateUnsafe();
+                    final ListenableFuture<ResultSet> nextPage = (next == null) ? null : resultSet.fetchMoreResults();
+
+                    for (int i = 0; i < available; i++) {
+                        consumer.accept(resultSet.one());
+                    }
+                    rows += available;
+                    resumeFrom = next;
+                    failures = 0;
+
+                    if (nextPage == null) {
+                        return rows;
+                    }
+                    Uninterruptibles.getUninterruptibly(nextPage);
+                }
+            } catch (ExecutionException e) {
+                failures = failed(range, e.getCause(), failures);
+            } catch (DriverException e) {
+                failures = failed(range, e, failures);
+            }
+        }
+    }
+
+    private int failed(ScanRange range, Throwable t, int failures) {
+        if (!(t instanceof DriverException) || t instanceof QueryValidationException || failures >= maxRetries) {
+            throw new ScanException("Failed to scan token range " + range.tokenRange, t);
+        }
+        LOG.warn("Failed to scan token range {}, resuming (retry {} of {})", range.tokenRange, failures + 1,
+                maxRetries, t);
+        return failures + 1;
+    }
+
+    private static String query(Metadata metadata, String keyspace, String table) {
+        final KeyspaceMetadata keyspaceMetadata = metadata.getKeyspace(keyspace);
+        final TableMetadata tableMetadata = (keyspaceMetadata == null) ? null : keyspaceMetadata.getTable(table);
+        if (tableMetadata == null) {
+            throw new IllegalArgumentException("Unknown table " + keyspace + "." + table);
+        }
+        final String partitionKey = tableMetadata.getPartitionKey().stream()
+                .map(ColumnMetadata::getName)
+                .map(Metadata::quote)
+                .collect(Collectors.joining(", "));
+        return "SELECT * FROM " + Metadata.quote(keyspace) + "." + Metadata.quote(table)
+                + " WHERE token(" + partitionKey + ") > ? AND token(" + partitionKey + ") <= ?";
+    }
+
+    private List<ScanRange> ranges(Metadata metadata) {
+        final List<TokenRange> tokenRanges = new ArrayList<>();
+        for (TokenRange range : metadata.getTokenRanges()) {
+            if (range.isEmpty()) {
+                continue;
+            }
+            for (TokenRange split : range.splitEvenly(splitsPerRange)) {
+                // splitting a small range may produce empty splits
+                if (!split.isEmpty()) {
+                    tokenRanges.addAll(split.unwrap());
+                }
+            }
+        }
+        Collections.sort(tokenRanges);
+
+        final ByteBuffer[] routingKeys = routingKeys(metadata, tokenRanges);
+        final List<ScanRange> ranges = new ArrayList<>(tokenRanges.size());
+        for (int i = 0; i < tokenRanges.size(); i++) {
+            ranges.add(new ScanRange(tokenRanges.get(i), routingKeys[i]));
+        }
+        // spread concurrent queries around the ring, rather than scanning neighbouring ranges at once
+        Collections.shuffle(ranges);
+        return ranges;
+    }
+
+    /**
+     * Finds a routing key in each range, as the driver routes statements by their routing key rather than by a token.
+     * Candidate keys are hashed in turn, each filling whichever range it falls into, so that the expected number of
+     * keys hashed grows with {@code n log n} for {@code n} ranges.
+     */
+    private static ByteBuffer[] routingKeys(Metadata metadata, List<TokenRange> sorted) {
+        final ByteBuffer[] keys = new ByteBuffer[sorted.size()];
+        int missing = keys.length;
+        final long attempts = (long) ROUTING_ATTEMPTS_PER_RANGE * keys.length;
+        for (long candidate = 0; candidate < attempts && missing > 0; candidate++) {
+            final ByteBuffer key = ByteBuffer.allocate(8);
+            key.putLong(0, candidate);
+            final int index = rangeOf(sorted, metadata.newToken(key));
+            if (index >= 0 && keys[index] == null) {
+                keys[index] = key;
+                missing--;
+            }
+        }
+        return keys;
+    }
+
+    private static int rangeOf(List<TokenRange> sorted, Token token) {
+        // the last range starting before the token is the only one that may contain it
+        int low = 0;
+        int high = sorted.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (sorted.get(middle).getStart().compareTo(token) < 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return (found >= 0 && sorted.get(found).contains(token)) ? found : -1;
+    }
+
+    private static class ScanRange {
+
+        private final TokenRange tokenRange;
+        private final ByteBuffer routingKey;
+
+        ScanRange(TokenRange tokenRange, ByteBuffer routingKey) {
+            this.tokenRange = tokenRange;
+            this.routingKey = routingKey;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package systems.composable.dropwizard.cassandra.speculativeexecution;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.SpeculativeExecutionPolicy;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link SpeculativeExecutionPolicy} that wraps another policy, metering the speculative executions it fires and,
+ * optionally, limiting the fraction of requests that may fire them.
+ * <p/>
+ * When capped, every request earns {@code maxSpeculativeRatio} of a token, up to a burst of {@value #BURST_REQUESTS}
+ * requests' worth, and every speculative execution that actually fires spends a whole token. While the budget is
+ * exhausted, no further speculative executions are scheduled, so a cluster-wide slowdown cannot multiply the load on
+ * the cluster. The budget is maintained with lock-free counters.
+ * <p/>
+ * The policy exposes the following metrics:
+ * <ul>
+ *     <li>{@code speculative-executions.fired} - speculative executions started by the driver</li>
+ *     <li>{@code speculative-executions.suppressed} - speculative executions not scheduled as the budget was spent,
+ *     when capped</li>
+ *     <li>{@code speculative-executions.budget} - the number of speculative executions currently affordable, when
+ *     capped</li>
+ * </ul>
+ */
+public class MeteredSpeculativeExecutionPolicy implements SpeculativeExecutionPolicy, MetricSet {
+
+    static final int BURST_REQUESTS = 1000;
+
+    private static final long TOKEN = 1000000L;
+
+    private final SpeculativeExecutionPolicy childPolicy;
+    private final boolean capped;
+    private final long deposit;
+    private final long capacity;
+    private final AtomicLong budget = new AtomicLong();
+    private final Meter fired = new Meter();
+    private final Meter suppressed = new Meter();
+
+    /**
+     * Creates a policy that meters, but does not limit, the speculative executions of another.
+     *
+     * @param childPolicy the policy deciding when speculative executions should be scheduled.
+     */
+    public MeteredSpeculativeExecutionPolicy(SpeculativeExecutionPolicy childPolicy) {
+        this.childPolicy = childPolicy;
+        this.capped = false;
+        this.deposit = 0;
+        this.capacity = 0;
+    }
+
+    /**
+     * @param childPolicy         the policy deciding when speculative executions should be scheduled.
+     * @param maxSpeculativeRatio the maximum number of speculative executions per request, e.g. {@code 0.1}.
+     */
+    public MeteredSpeculativeExecutionPolicy(SpeculativeExecutionPolicy childPolicy, double maxSpeculativeRatio) {
+        checkArgument(maxSpeculativeRatio >= 0.0 && maxSpeculativeRatio <= 1.0,
+                "maxSpeculativeRatio must be between 0.0 and 1.0 (was %s)", maxSpeculativeRatio);
+        this.childPolicy = childPolicy;
+        this.capped = true;
+        this.deposit = (long) (maxSpeculativeRatio * TOKEN);
+        this.capacity = deposit * BURST_REQUESTS;
+    }
+
+    @Override
+    public void init(Cluster cluster) {
+        childPolicy.init(cluster);
+    }
+
+    @Override
+    public SpeculativeExecutionPlan newPlan(String loggedKeyspace, Statement statement) {
+        if (capped) {
+            budget.accumulateAndGet(deposit, (current, amount) -> Math.min(current + amount, capacity));
+        }
+        final SpeculativeExecutionPlan plan = childPolicy.newPlan(loggedKeyspace, statement);
+
+        return new SpeculativeExecutionPlan() {
+            // the driver asks for the next delay as each execution starts, so every call after the
+            // first one means that a speculative execution has fired
+            private final AtomicInteger executions = new AtomicInteger();
+
+            @Override
+            public long nextExecution(Host lastQueried) {
+                if (executions.getAndIncrement() > 0) {
+                    if (capped) {
+                        budget.addAndGet(-TOKEN);
+                    }
+                    fired.mark();
+                }
+
+                final long delay = plan.nextExecution(lastQueried);
+                if (capped && delay >= 0 && budget.get() < TOKEN) {
+                    suppressed.mark();
+                    return -1;
+                }
+                return delay;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        childPolicy.close();
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        if (!capped) {
+            return ImmutableMap.of("speculative-executions.fired", fired);
+        }
+        return ImmutableMap.of(
+                "speculative-executions.fired", fired,
+                "speculative-executions.suppressed", suppressed,
+                "speculative-executions.budget", (Gauge<Long>) () -> Math.max(0, budget.get() / TOKEN));
+    }
+}
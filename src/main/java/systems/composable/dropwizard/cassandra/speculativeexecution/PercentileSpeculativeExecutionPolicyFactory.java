@@ -0,0 +1,208 @@
+package systems.composable.dropwizard.cassandra.speculativeexecution;
+
+import com.datastax.driver.core.ClusterWidePercentileTracker;
+import com.datastax.driver.core.PerHostPercentileTracker;
+import com.datastax.driver.core.PercentileTracker;
+import com.datastax.driver.core.policies.PercentileSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.SpeculativeExecutionPolicy;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * A factory for configuring and building {@link PercentileSpeculativeExecutionPolicy} instances, wrapped in a
+ * {@link MeteredSpeculativeExecutionPolicy} that meters the speculative executions fired and optionally caps them to a
+ * fraction of all requests.
+ * <p/>
+ * Latencies are recorded in HdrHistogram-based {@link PercentileTracker percentile trackers}, which requires
+ * {@code org.hdrhistogram:HdrHistogram} on the class path.
+ * <p/>
+ * <b>Configuration Parameters:</b>
+ * <table>
+ *     <tr>
+ *         <td>Name</td>
+ *         <td>Default</td>
+ *         <td>Description</td>
+ *     </tr>
+ *     <tr>
+ *         <td>percentile</td>
+ *         <td>No default. You must provide a value.</td>
+ *         <td>The latency percentile after which a speculative execution is fired, e.g. {@code 99.0}.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>maxSpeculativeExecutions</td>
+ *         <td>No default. You must provide a value.</td>
+ *         <td>The number of speculative executions. Must be strictly positive.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>maxSpeculativeRatio</td>
+ *         <td>No default. Speculative executions are not capped.</td>
+ *         <td>The maximum number of speculative executions per request, between 0.0 and 1.0.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>perHost</td>
+ *         <td>true</td>
+ *         <td>Whether latencies are tracked per host, or across the whole cluster.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>highestTrackableLatency</td>
+ *         <td>15 seconds</td>
+ *         <td>The highest latency that can be tracked; slower requests are ignored by the tracker.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>numberOfSignificantValueDigits</td>
+ *         <td>Inherits the default from {@link PercentileTracker.Builder}</td>
+ *         <td>The precision of the latency histograms, between 0 and 5.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>minRecordedValues</td>
+ *         <td>Inherits the default from {@link PercentileTracker.Builder}</td>
+ *         <td>The number of latencies to record in an interval before its percentiles are used.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>interval</td>
+ *         <td>Inherits the default from {@link PercentileTracker.Builder}</td>
+ *         <td>The interval after which the latency histograms are rotated.</td>
+ *     </tr>
+ * </table>
+ */
+@JsonTypeName("percentile")
+public class PercentileSpeculativeExecutionPolicyFactory implements SpeculativeExecutionPolicyFactory {
+
+    @NotNull
+    @DecimalMin("0.0")
+    @DecimalMax(value = "100.0", inclusive = false)
+    private Double percentile;
+
+    @NotNull
+    @Min(1)
+    private Integer maxSpeculativeExecutions;
+
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    private Double maxSpeculativeRatio;
+
+    private boolean perHost = true;
+
+    @NotNull
+    private Duration highestTrackableLatency = Duration.seconds(15);
+
+    private Integer numberOfSignificantValueDigits;
+    private Integer minRecordedValues;
+    private Duration interval;
+
+    @JsonProperty
+    public Double getPercentile() {
+        return percentile;
+    }
+
+    @JsonProperty
+    public void setPercentile(Double percentile) {
+        this.percentile = percentile;
+    }
+
+    @JsonProperty
+    public Integer getMaxSpeculativeExecutions() {
+        return maxSpeculativeExecutions;
+    }
+
+    @JsonProperty
+    public void setMaxSpeculativeExecutions(Integer maxSpeculativeExecutions) {
+        this.maxSpeculativeExecutions = maxSpeculativeExecutions;
+    }
+
+    @JsonProperty
+    public Double getMaxSpeculativeRatio() {
+        return maxSpeculativeRatio;
+    }
+
+    @JsonProperty
+    public void setMaxSpeculativeRatio(Double maxSpeculativeRatio) {
+        this.maxSpeculativeRatio = maxSpeculativeRatio;
+    }
+
+    @JsonProperty
+    public boolean isPerHost() {
+        return perHost;
+    }
+
+    @JsonProperty
+    public void setPerHost(boolean perHost) {
+        this.perHost = perHost;
+    }
+
+    @JsonProperty
+    public Duration getHighestTrackableLatency() {
+        return highestTrackableLatency;
+    }
+
+    @JsonProperty
+    public void setHighestTrackableLatency(Duration highestTrackableLatency) {
+        this.highestTrackableLatency = highestTrackableLatency;
+    }
+
+    @JsonProperty
+    public Integer getNumberOfSignificantValueDigits() {
+        return numberOfSignificantValueDigits;
+    }
+
+    @JsonProperty
+    public void setNumberOfSignificantValueDigits(Integer numberOfSignificantValueDigits) {
+        this.numberOfSignificantValueDigits = numberOfSignificantValueDigits;
+    }
+
+    @JsonProperty
+    public Integer getMinRecordedValues() {
+        return minRecordedValues;
+    }
+
+    @JsonProperty
+    public void setMinRecordedValues(Integer minRecordedValues) {
+        this.minRecordedValues = minRecordedValues;
+    }
+
+    @JsonProperty
+    public Duration getInterval() {
+        return interval;
+    }
+
+    @JsonProperty
+    public void setInterval(Duration interval) {
+        this.interval = interval;
+    }
+
+    @Override
+    public SpeculativeExecutionPolicy build() {
+        final SpeculativeExecutionPolicy policy =
+                new PercentileSpeculativeExecutionPolicy(buildTracker(), percentile, maxSpeculativeExecutions);
+
+        return (maxSpeculativeRatio == null)
+                ? new MeteredSpeculativeExecutionPolicy(policy)
+                : new MeteredSpeculativeExecutionPolicy(policy, maxSpeculativeRatio);
+    }
+
+    private PercentileTracker buildTracker() {
+        final PercentileTracker.Builder<?, ? extends PercentileTracker> builder = perHost
+                ? PerHostPercentileTracker.builder(highestTrackableLatency.toMilliseconds())
+                : ClusterWidePercentileTracker.builder(highestTrackableLatency.toMilliseconds());
+
+        if (numberOfSignificantValueDigits != null) {
+            builder.withNumberOfSignificantValueDigits(numberOfSignificantValueDigits);
+        }
+
+        if (minRecordedValues != null) {
+            builder.withMinRecordedValues(minRecordedValues);
+        }
+
+        if (interval != null) {
+            builder.withInterval(interval.getQuantity(), interval.getUnit());
+        }
+
+        return builder.build();
+    }
+}
@@ -17,6 +17,7 @@ import io.dropwizard.jackson.Discoverable;
  *
  * @see ConstantSpeculativeExecutionPolicyFactory
  * @see NoSpeculativeExecutionPolicyFactory
+ * @see PercentileSpeculativeExecutionPolicyFactory
  */
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
 public interface SpeculativeExecutionPolicyFactory extends Discoverable {
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.streaming;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+
+import java.util.function.Function;
+
+/**
+ * The rows of a {@link ResultSet}, mapped to the entities of a response, to be written as a JSON array one page at a
+ * time by the {@link StreamedRowsWriter} rather than loaded into memory at once:
+ * <pre>
+ * &#64;GET
+ * &#64;Path("/users")
+ * &#64;Produces(MediaType.APPLICATION_JSON)
+ * public StreamedRows&lt;User&gt; getUsers() {
+ *     return new StreamedRows&lt;&gt;(session.execute("SELECT * FROM users"), User::fromRow);
+ * }
+ * </pre>
+ * The next page of rows is fetched in the background while the rows of the current page are written, so that a
+ * response holds at most about two pages of rows in memory, however many rows it has. The page size is the fetch size
+ * of the statement, or of the cluster's {@code queryOptions}.
+ *
+ * @param <T> the type of the entity each row is mapped to.
+ */
+public class StreamedRows<T> {
+
+    private final ResultSet resultSet;
+    private final Function<? super Row, ? extends T> mapper;
+
+    public StreamedRows(ResultSet resultSet, Function<? super Row, ? extends T> mapper) {
+        this.resultSet = resultSet;
+        this.mapper = mapper;
+    }
+
+    public ResultSet getResultSet() {
+        return resultSet;
+    }
+
+    public Function<? super Row, ? extends T> getMapper() {
+        return mapper;
+    }
+}
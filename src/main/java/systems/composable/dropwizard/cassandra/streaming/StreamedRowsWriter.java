@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.streaming;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Writes {@link StreamedRows} as a JSON array, page by page, with the application's {@link ObjectMapper}.
+ * <p/>
+ * Once half of the rows of a page have been written, the next page is fetched asynchronously, so that it has usually
+ * arrived by the time the current page is written out. The response is flushed at the end of each page, so clients
+ * receive rows while later pages are fetched.
+ * <p/>
+ * Registered by the {@link systems.composable.dropwizard.cassandra.CassandraBundle} and
+ * {@link systems.composable.dropwizard.cassandra.MultiCassandraBundle}.
+ */
+@Produces(MediaType.APPLICATION_JSON)
+public class StreamedRowsWriter implements MessageBodyWriter<StreamedRows<?>> {
+
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter rowWriter;
+
+    public StreamedRowsWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        // rows are flushed a page at a time, not one by one
+        this.rowWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return StreamedRows.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(StreamedRows<?> rows, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(StreamedRows<?> rows, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+            throws IOException {
+        final ResultSet resultSet = rows.getResultSet();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(entityStream, JsonEncoding.UTF8)) {
+            // the container closes the entity stream
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+
+            // counting the rows written tells where each page ends, however many pages have been fetched since
+            int pageSize = resultSet.getAvailableWithoutFetching();
+            int written = 0;
+            for (Row row : resultSet) {
+                rowWriter.writeValue(generator, rows.getMapper().apply(row));
+                written++;
+
+                if (written == prefetchAt(pageSize) && !resultSet.isFullyFetched()) {
+                    resultSet.fetchMoreResults();
+                }
+                if (written == pageSize) {
+                    // the page goes out while the next page is fetched, or waited for
+                    generator.flush();
+                    pageSize = fetchedPageSize(resultSet);
+                    written = 0;
+                }
+            }
+
+            generator.writeEndArray();
+        }
+    }
+
+    private static int prefetchAt(int pageSize) {
+        return Math.max(1, pageSize / 2);
+    }
+
+    private static int fetchedPageSize(ResultSet resultSet) {
+        // at the end of a page, only the rows of the next page are available; this blocks until it has arrived, as
+        // iterating the result set would
+        return resultSet.isExhausted() ? 0 : resultSet.getAvailableWithoutFetching();
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.throttling;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.exceptions.BusyConnectionException;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.ReadTimeoutException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * A concurrency limit estimated from the latency and failures of the requests sent through a {@link ThrottledSession},
+ * so that the session finds the number of requests in flight a cluster can take without queueing them, and follows it
+ * as the cluster slows down and recovers.
+ * <p/>
+ * A limit is estimated for each data center, from the requests it coordinates, with the {@link LimitAlgorithm
+ * configured algorithm}, and always lies between the minimum and maximum limits. Requests are admitted under the limit
+ * of the data center that coordinated the most recent request, as the load balancing policy routes requests to the same
+ * data center until its hosts go down. Requests that time out, or are rejected as overloaded, lower the limit; other
+ * failures say nothing about the load of the cluster, and are ignored. So are requests for which no host was available
+ * only because hosts were down, rather than too busy to take them.
+ * <p/>
+ * The AIMD algorithm backs off at most once per round trip: the failures of requests sent before it last backed off
+ * were caused by the load it has already backed off from, so a burst of them lowers the limit only once.
+ * <p/>
+ * The limit of each data center is exported as a gauge named after the DataStax {@link Cluster} class, the cluster name
+ * and the data center:
+ *
+ * <b>Gauges:</b>
+ * <ul>
+ *     <li>com.datastax.core.Cluster.clusterName.throttling.limit.dataCenter</li>
+ * </ul>
+ */
+public class AdaptiveLimit {
+
+    /**
+     * Hosts without a known data center share the limit of this one.
+     */
+    static final String UNKNOWN_DATA_CENTER = "unknown";
+
+    /**
+     * The number of limits' worth of requests after which the Vegas algorithm forgets the lowest latency it has seen.
+     */
+    private static final int PROBE_MULTIPLIER = 30;
+
+    private final LimitAlgorithm algorithm;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final MetricRegistry metrics;
+    private final String prefix;
+    private final Clock clock;
+    private final ConcurrentMap<String, DataCenter> dataCenters = new ConcurrentHashMap<>();
+
+    private volatile DataCenter routed;
+
+    public AdaptiveLimit(LimitAlgorithm algorithm, int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                         MetricRegistry metrics, String clusterName) {
+        this(algorithm, initialLimit, minLimit, maxLimit, backoffRatio, metrics, clusterName, Clock.defaultClock());
+    }
+
+    AdaptiveLimit(LimitAlgorithm algorithm, int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                  MetricRegistry metrics, String clusterName, Clock clock) {
+        this.algorithm = algorithm;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.initialLimit = bound(initialLimit);
+        this.backoffRatio = backoffRatio;
+        this.metrics = metrics;
+        this.prefix = name(Cluster.class, clusterName, "throttling", "limit");
+        this.clock = clock;
+    }
+
+    /**
+     * @return the limit of the data center requests are routed to, or the initial limit until a request completes.
+     */
+    public int getLimit() {
+        final DataCenter dataCenter = routed;
+        return dataCenter == null ? initialLimit : dataCenter.getLimit();
+    }
+
+    /**
+     * @return the maximum limit.
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * @return the limit of each data center that has coordinated requests, by name.
+     */
+    public Map<String, Integer> getLimits() {
+        final Map<String, Integer> limits = new TreeMap<>();
+        dataCenters.forEach((name, dataCenter) -> limits.put(name, dataCenter.getLimit()));
+        return limits;
+    }
+
+    /**
+     * Records a request that completed successfully.
+     *
+     * @param result the result of the request.
+     * @param latencyNanos the time from sending the request to its completion.
+     * @param inFlight the number of requests in flight when it was sent.
+     */
+    void onSuccess(ResultSet result, long latencyNanos, int inFlight) {
+        final String name = dataCenterOf(result);
+        final DataCenter dataCenter = (name == null && routed != null) ? routed : dataCenter(name);
+        routed = dataCenter;
+        dataCenter.update(latencyNanos, inFlight, false);
+    }
+
+    /**
+     * Records a request that failed, lowering the limit of the data center requests are routed to if the cluster
+     * appears to be overloaded.
+     *
+     * @param t the failure.
+     * @param latencyNanos the time from sending the request to its failure.
+     * @param inFlight the number of requests in flight when it was sent.
+     */
+    void onFailure(Throwable t, long latencyNanos, int inFlight) {
+        if (!isOverloaded(t)) {
+            return;
+        }
+        DataCenter dataCenter = routed;
+        if (dataCenter == null) {
+            dataCenter = dataCenter(null);
+            routed = dataCenter;
+        }
+        dataCenter.update(latencyNanos, inFlight, true);
+    }
+
+    static boolean isOverloaded(Throwable t) {
+        if (t instanceof NoHostAvailableException) {
+            // also raised when every host tried is down, or has no connections while they are reestablished
+            final Map<?, Throwable> errors = ((NoHostAvailableException) t).getErrors();
+            return !errors.isEmpty() && errors.values().stream().allMatch(AdaptiveLimit::isBusy);
+        }
+        return t instanceof OperationTimedOutException
+                || t instanceof ReadTimeoutException
+                || t instanceof WriteTimeoutException
+                || t instanceof OverloadedException
+                || t instanceof BusyConnectionException;
+    }
+
+    // whether a host was skipped as too busy to take a request, rather than down
+    private static boolean isBusy(Throwable t) {
+        if (isOverloaded(t)) {
+            return true;
+        }
+        // the driver wraps timeouts borrowing a connection; only those of a full pool, rather than an empty one
+        final Throwable cause = t.getCause();
+        return t instanceof DriverException
+                && cause instanceof TimeoutException
+                && String.valueOf(cause.getMessage()).startsWith("All connections are busy");
+    }
+
+    private static String dataCenterOf(ResultSet result) {
+        final ExecutionInfo info = result.getExecutionInfo();
+        final Host host = (info == null) ? null : info.getQueriedHost();
+        return (host == null) ? null : host.getDatacenter();
+    }
+
+    private DataCenter dataCenter(String name) {
+        return dataCenters.computeIfAbsent(name == null ? UNKNOWN_DATA_CENTER : name, key -> {
+            final DataCenter dataCenter = (algorithm == LimitAlgorithm.AIMD) ? new Aimd() : new Vegas();
+            metrics.register(name(prefix, key), (Gauge<Integer>) dataCenter::getLimit);
+            return dataCenter;
+        });
+    }
+
+    private double bound(double limit) {
+        return Math.min(maxLimit, Math.max(minLimit, limit));
+    }
+
+    private int bound(int limit) {
+        return Math.min(maxLimit, Math.max(minLimit, limit));
+    }
+
+    private abstract class DataCenter {
+
+        private double limit = initialLimit;
+        private volatile int roundedLimit = initialLimit;
+
+        int getLimit() {
+            return roundedLimit;
+        }
+
+        synchronized void update(long latencyNanos, int inFlight, boolean overloaded) {
+            limit = bound(next(limit, latencyNanos, inFlight, overloaded));
+            roundedLimit = (int) limit;
+        }
+
+        abstract double next(double limit, long latencyNanos, int inFlight, boolean overloaded);
+    }
+
+    private class Aimd extends DataCenter {
+
+        private boolean backedOff;
+        private long backedOffNanos;
+
+        @Override
+        double next(double limit, long latencyNanos, int inFlight, boolean overloaded) {
+            if (overloaded) {
+                final long nowNanos = clock.getTick();
+                if (backedOff && nowNanos - latencyNanos - backedOffNanos < 0) {
+                    // sent before the last back off, under the limit already backed off from
+                    return limit;
+                }
+                backedOff = true;
+                backedOffNanos = nowNanos;
+                return limit * backoffRatio;
+            }
+            // grow only while the limit is what holds requests back
+            return (inFlight * 2 >= limit) ? limit + 1 / limit : limit;
+        }
+    }
+
+    private class Vegas extends DataCenter {
+
+        private long minLatencyNanos;
+        private long probeCountdown = PROBE_MULTIPLIER * (long) initialLimit;
+
+        @Override
+        double next(double limit, long latencyNanos, int inFlight, boolean overloaded) {
+            final double step = Math.max(1, Math.log10(limit));
+            if (overloaded) {
+                return limit - step;
+            }
+
+            if (--probeCountdown <= 0) {
+                // the latency of an idle cluster changes with its data, so the lowest latency is measured afresh
+                probeCountdown = PROBE_MULTIPLIER * (long) limit;
+                minLatencyNanos = latencyNanos;
+                return limit;
+            }
+            if (minLatencyNanos == 0 || latencyNanos < minLatencyNanos) {
+                minLatencyNanos = latencyNanos;
+                return limit;
+            }
+            if (inFlight * 2 < limit) {
+                return limit;
+            }
+
+            // the requests queued in the cluster, were it serving requests at the lowest latency seen
+            final double queued = limit * (1 - (double) minLatencyNanos / latencyNanos);
+            if (queued < 3 * step) {
+                return limit + step;
+            }
+            if (queued > 6 * step) {
+                return limit - step;
+            }
+            return limit;
+        }
+    }
+}
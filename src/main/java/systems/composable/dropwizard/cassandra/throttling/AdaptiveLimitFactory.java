@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.throttling;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.validation.ValidationMethod;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * A factory for configuring and building {@link AdaptiveLimit} instances, which estimate the number of requests in
+ * flight each data center can take from the latency of requests. The {@code maxConcurrentRequests} of the
+ * {@link ThrottlerFactory throttler} is the maximum limit.
+ * <p/>
+ * <b>Configuration Parameters:</b>
+ * <table>
+ *     <tr>
+ *         <td>Name</td>
+ *         <td>Default</td>
+ *         <td>Description</td>
+ *     </tr>
+ *     <tr>
+ *         <td>algorithm</td>
+ *         <td>vegas</td>
+ *         <td>The {@link LimitAlgorithm algorithm} estimating the limit: {@code vegas} or {@code aimd}.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>initialLimit</td>
+ *         <td>20</td>
+ *         <td>The limit until requests have completed.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>minLimit</td>
+ *         <td>1</td>
+ *         <td>The lowest the limit may fall to.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>backoffRatio</td>
+ *         <td>0.9</td>
+ *         <td>What the {@code aimd} limit is multiplied by when a request times out or is rejected as
+ *         overloaded.</td>
+ *     </tr>
+ * </table>
+ */
+public class AdaptiveLimitFactory {
+
+    @NotNull
+    private LimitAlgorithm algorithm = LimitAlgorithm.VEGAS;
+
+    @Min(1)
+    private int initialLimit = 20;
+
+    @Min(1)
+    private int minLimit = 1;
+
+    @DecimalMin("0.1")
+    @DecimalMax("0.99")
+    private double backoffRatio = 0.9;
+
+    @JsonProperty
+    public LimitAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    @JsonProperty
+    public void setAlgorithm(LimitAlgorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    @JsonProperty
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    @JsonProperty
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    @JsonProperty
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    @JsonProperty
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    @JsonProperty
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    @JsonProperty
+    public void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+
+    @ValidationMethod(message = "minLimit must not be greater than initialLimit")
+    @JsonIgnore
+    public boolean isLimitValid() {
+        return minLimit <= initialLimit;
+    }
+
+    /**
+     * Builds an {@link AdaptiveLimit} for the given cluster.
+     *
+     * @param maxLimit the highest the limit may rise to.
+     * @param metrics the registry to register the limit of each data center with.
+     * @param clusterName the name of the cluster whose requests are limited.
+     * @return an adaptive limit, starting at the initial limit.
+     */
+    public AdaptiveLimit build(int maxLimit, MetricRegistry metrics, String clusterName) {
+        return new AdaptiveLimit(algorithm, initialLimit, Math.min(minLimit, maxLimit), maxLimit, backoffRatio,
+                metrics, clusterName);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.throttling;
+
+/**
+ * The algorithms that an {@link AdaptiveLimit} can estimate the concurrency limit of a data center with.
+ */
+public enum LimitAlgorithm {
+
+    /**
+     * Additive increase, multiplicative decrease: the limit grows by about one per round trip while at least half of
+     * it is in use, and is multiplied by the {@code backoffRatio} for each request that times out or is rejected as
+     * overloaded.
+     */
+    AIMD,
+
+    /**
+     * Delay based, after TCP Vegas: the limit follows the number of requests queued in the cluster, estimated from the
+     * latency of each request compared to the lowest latency seen recently, growing while few are queued and shrinking
+     * as queues build up, so that it usually backs off before requests time out.
+     */
+    VEGAS
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.throttling;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.exceptions.DriverInternalError;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link ResultSetFuture} for a request that has not been sent yet, which completes with the result of the request
+ * once it is sent, or fails if it is rejected.
+ */
+class PendingResultSetFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+    static ResultSetFuture failed(Throwable t) {
+        final PendingResultSetFuture future = new PendingResultSetFuture();
+        future.setException(t);
+        return future;
+    }
+
+    @Override
+    protected boolean setFuture(ListenableFuture<? extends ResultSet> future) {
+        return super.setFuture(future);
+    }
+
+    @Override
+    protected boolean setException(Throwable throwable) {
+        return super.setException(throwable);
+    }
+
+    @Override
+    public ResultSet getUninterruptibly() {
+        try {
+            return Uninterruptibles.getUninterruptibly(this);
+        } catch (ExecutionException e) {
+            throw propagateCause(e);
+        }
+    }
+
+    @Override
+    public ResultSet getUninterruptibly(long timeout, TimeUnit unit) throws TimeoutException {
+        try {
+            return Uninterruptibles.getUninterruptibly(this, timeout, unit);
+        } catch (ExecutionException e) {
+            throw propagateCause(e);
+        }
+    }
+
+    // rethrows the cause of a failed request, as the driver's futures do
+    private static RuntimeException propagateCause(ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof DriverException) {
+            throw ((DriverException) cause).copy();
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        throw new DriverInternalError("Unexpected exception thrown", cause);
+    }
+}
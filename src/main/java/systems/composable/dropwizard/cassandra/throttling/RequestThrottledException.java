@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.throttling;
+
+import com.datastax.driver.core.exceptions.DriverException;
+
+/**
+ * Thrown when a request is rejected by the client, rather than sent to Cassandra, because too many requests are
+ * already in flight.
+ */
+public class RequestThrottledException extends DriverException {
+
+    private static final long serialVersionUID = 0;
+
+    public RequestThrottledException(String message) {
+        super(message);
+    }
+
+    private RequestThrottledException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    @Override
+    public RequestThrottledException copy() {
+        return new RequestThrottledException(getMessage(), this);
+    }
+}
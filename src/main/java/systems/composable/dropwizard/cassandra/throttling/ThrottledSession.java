@@ -0,0 +1,335 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.throttling;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.datastax.driver.core.CloseFuture;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.util.Duration;
+import systems.composable.dropwizard.cassandra.ForwardingSession;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * A {@link Session} that limits the number of requests in flight, queueing requests beyond the limit and rejecting
+ * them once the queue is full, so that a slow cluster applies backpressure to the application rather than tying up
+ * every one of its threads.
+ * <p/>
+ * A queued request is sent when a request in flight completes, or fails with a {@link RequestThrottledException} if it
+ * has waited for longer than the {@code queueTimeout}. Queued requests are sent, and time out, on a single thread of
+ * the session's own, as the driver may block the thread sending a request while it waits for a connection. Closing
+ * the session fails the requests still queued, and those sent after it, with a {@link RequestThrottledException}.
+ * <p/>
+ * The limit is either fixed, or an {@link AdaptiveLimit} estimated from the latency of the requests sent, in which case
+ * queued requests are sent only as the requests in flight drop below the current limit.
+ * <p/>
+ * Metrics are named after the DataStax {@link Cluster} class and the cluster name:
+ *
+ * <b>Gauges:</b>
+ * <ul>
+ *     <li>com.datastax.core.Cluster.clusterName.throttling.limit</li>
+ *     <li>com.datastax.core.Cluster.clusterName.throttling.in-flight</li>
+ *     <li>com.datastax.core.Cluster.clusterName.throttling.queue-depth</li>
+ * </ul>
+ *
+ * <b>Timers:</b>
+ * <ul>
+ *     <li>com.datastax.core.Cluster.clusterName.throttling.queue-wait</li>
+ * </ul>
+ *
+ * <b>Meters:</b>
+ * <ul>
+ *     <li>com.datastax.core.Cluster.clusterName.throttling.rejections</li>
+ * </ul>
+ */
+public class ThrottledSession extends ForwardingSession {
+
+    private final int maxConcurrentRequests;
+    private final AdaptiveLimit adaptiveLimit;
+    private final int maxQueueSize;
+    private final long queueTimeoutNanos;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Timer queueWait;
+    private final Meter rejections;
+
+    private final Object lock = new Object();
+    private final Queue<Pending> queue = new ArrayDeque<>();
+    private int inFlight;
+    private boolean closed;
+
+    public ThrottledSession(Session delegate, MetricRegistry metrics, int maxConcurrentRequests, int maxQueueSize,
+                            Duration queueTimeout) {
+        this(delegate, metrics, maxConcurrentRequests, null, maxQueueSize, queueTimeout);
+    }
+
+    public ThrottledSession(Session delegate, MetricRegistry metrics, AdaptiveLimit adaptiveLimit, int maxQueueSize,
+                            Duration queueTimeout) {
+        this(delegate, metrics, adaptiveLimit.getMaxLimit(), adaptiveLimit, maxQueueSize, queueTimeout);
+    }
+
+    private ThrottledSession(Session delegate, MetricRegistry metrics, int maxConcurrentRequests,
+                             AdaptiveLimit adaptiveLimit, int maxQueueSize, Duration queueTimeout) {
+        super(delegate);
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.adaptiveLimit = adaptiveLimit;
+        this.maxQueueSize = maxQueueSize;
+        this.queueTimeoutNanos = queueTimeout.toNanoseconds();
+
+        final String clusterName = delegate.getCluster().getClusterName();
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                .setNameFormat("cassandra-throttler-" + clusterName + "-%d")
+                .setDaemon(true)
+                .build());
+        this.executor.setRemoveOnCancelPolicy(true);
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        final String prefix = name(Cluster.class, clusterName, "throttling");
+        this.queueWait = metrics.timer(name(prefix, "queue-wait"));
+        this.rejections = metrics.meter(name(prefix, "rejections"));
+        metrics.register(name(prefix, "limit"), (Gauge<Integer>) this::getLimit);
+        metrics.register(name(prefix, "in-flight"), (Gauge<Integer>) this::getInFlight);
+        metrics.register(name(prefix, "queue-depth"), (Gauge<Integer>) this::getQueueDepth);
+    }
+
+    /**
+     * @return the maximum number of requests in flight, at present.
+     */
+    public int getLimit() {
+        return adaptiveLimit == null ? maxConcurrentRequests : adaptiveLimit.getLimit();
+    }
+
+    /**
+     * @return the number of requests sent and not yet completed.
+     */
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * @return the number of requests waiting to be sent.
+     */
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    @Override
+    public ResultSetFuture executeAsync(Statement statement) {
+        final Pending pending;
+        final int limit = getLimit();
+        synchronized (lock) {
+            if (closed) {
+                return PendingResultSetFuture.failed(new RequestThrottledException("Session is closed"));
+            } else if (inFlight < limit && queue.isEmpty()) {
+                inFlight++;
+                pending = null;
+            } else if (queue.size() < maxQueueSize) {
+                pending = new Pending(statement);
+                queue.add(pending);
+            } else {
+                rejections.mark();
+                return PendingResultSetFuture.failed(new RequestThrottledException(
+                        "Too many requests: " + limit + " in flight and " + maxQueueSize + " queued"));
+            }
+        }
+
+        if (pending == null) {
+            queueWait.update(0, TimeUnit.NANOSECONDS);
+            return send(statement);
+        }
+
+        try {
+            pending.timeout = executor.schedule(() -> expire(pending), queueTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // the session was closed since the request was queued, which failed it
+        }
+        return pending.future;
+    }
+
+    @Override
+    public CloseFuture closeAsync() {
+        failQueued();
+        return super.closeAsync();
+    }
+
+    @Override
+    public void close() {
+        failQueued();
+        super.close();
+    }
+
+    private void failQueued() {
+        final List<Pending> queued;
+        synchronized (lock) {
+            closed = true;
+            queued = new ArrayList<>(queue);
+            queue.clear();
+        }
+        for (Pending pending : queued) {
+            pending.cancelTimeout();
+            pending.future.setException(new RequestThrottledException("Session is closed"));
+        }
+        // requests already leaving the queue are still sent, and fail as the session closes
+        executor.shutdown();
+    }
+
+    private ResultSetFuture send(Statement statement) {
+        final ResultSetFuture future;
+        try {
+            future = super.executeAsync(statement);
+        } catch (RuntimeException | Error e) {
+            release();
+            throw e;
+        }
+        if (adaptiveLimit != null) {
+            sample(future, getInFlight());
+        }
+        future.addListener(this::release, MoreExecutors.directExecutor());
+        return future;
+    }
+
+    private void sample(ResultSetFuture future, int inFlight) {
+        final long sentNanos = System.nanoTime();
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet result) {
+                adaptiveLimit.onSuccess(result, System.nanoTime() - sentNanos, inFlight);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                adaptiveLimit.onFailure(t, System.nanoTime() - sentNanos, inFlight);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void release() {
+        final int limit = getLimit();
+        Pending next;
+        synchronized (lock) {
+            // the slot of the completed request passes to the next one in the queue, unless the limit has dropped
+            next = (inFlight <= limit) ? queue.poll() : null;
+            if (next == null) {
+                inFlight--;
+                return;
+            }
+        }
+
+        // a limit that has grown may make room for more than one queued request
+        while (next != null) {
+            dispatch(next);
+            synchronized (lock) {
+                next = (inFlight < limit) ? queue.poll() : null;
+                if (next != null) {
+                    inFlight++;
+                }
+            }
+        }
+    }
+
+    private void dispatch(Pending pending) {
+        try {
+            executor.execute(() -> sendQueued(pending));
+        } catch (RejectedExecutionException e) {
+            synchronized (lock) {
+                inFlight--;
+            }
+            pending.future.setException(new RequestThrottledException("Session is closed"));
+        }
+    }
+
+    private void sendQueued(Pending pending) {
+        pending.cancelTimeout();
+        if (pending.future.isCancelled()) {
+            release();
+            return;
+        }
+
+        queueWait.update(System.nanoTime() - pending.queuedNanos, TimeUnit.NANOSECONDS);
+        try {
+            pending.future.setFuture(send(pending.statement));
+        } catch (RuntimeException | Error e) {
+            pending.future.setException(e);
+        }
+    }
+
+    private void expire(Pending pending) {
+        synchronized (lock) {
+            if (!queue.remove(pending)) {
+                return;
+            }
+        }
+        rejections.mark();
+        pending.future.setException(new RequestThrottledException(
+                "Request was queued for longer than " + TimeUnit.NANOSECONDS.toMillis(queueTimeoutNanos) + "ms"));
+    }
+
+    private class Pending {
+
+        private final Statement statement;
+        private final long queuedNanos = System.nanoTime();
+        private final PendingResultSetFuture future = new PendingResultSetFuture() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                final boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled) {
+                    synchronized (lock) {
+                        queue.remove(Pending.this);
+                    }
+                    cancelTimeout();
+                }
+                return cancelled;
+            }
+        };
+
+        private volatile ScheduledFuture<?> timeout;
+
+        Pending(Statement statement) {
+            this.statement = statement;
+        }
+
+        void cancelTimeout() {
+            final ScheduledFuture<?> timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.throttling;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Session;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * A factory for configuring and building {@link ThrottledSession} instances, which limit the requests in flight from
+ * the application.
+ * <p/>
+ * <b>Configuration Parameters:</b>
+ * <table>
+ *     <tr>
+ *         <td>Name</td>
+ *         <td>Default</td>
+ *         <td>Description</td>
+ *     </tr>
+ *     <tr>
+ *         <td>maxConcurrentRequests</td>
+ *         <td>1024</td>
+ *         <td>The maximum number of requests in flight; requests beyond this are queued. The upper bound of the
+ *         limit, when it is adaptive.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>maxQueueSize</td>
+ *         <td>1024</td>
+ *         <td>The maximum number of queued requests; requests beyond this are rejected immediately.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>queueTimeout</td>
+ *         <td>1 second</td>
+ *         <td>The longest a request may be queued for before it is rejected.</td>
+ *     </tr>
+ *     <tr>
+ *         <td>adaptive</td>
+ *         <td>No default. The limit is fixed at maxConcurrentRequests.</td>
+ *         <td>Estimates the limit of each data center from the latency of requests, with an
+ *         {@link AdaptiveLimitFactory adaptive limit}.</td>
+ *     </tr>
+ * </table>
+ */
+public class ThrottlerFactory {
+
+    @Min(1)
+    private int maxConcurrentRequests = 1024;
+
+    @Min(0)
+    private int maxQueueSize = 1024;
+
+    @NotNull
+    private Duration queueTimeout = Duration.seconds(1);
+
+    @Valid
+    private AdaptiveLimitFactory adaptive;
+
+    @JsonProperty
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    @JsonProperty
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    @JsonProperty
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    @JsonProperty
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    @JsonProperty
+    public Duration getQueueTimeout() {
+        return queueTimeout;
+    }
+
+    @JsonProperty
+    public void setQueueTimeout(Duration queueTimeout) {
+        this.queueTimeout = queueTimeout;
+    }
+
+    @JsonProperty
+    public AdaptiveLimitFactory getAdaptive() {
+        return adaptive;
+    }
+
+    @JsonProperty
+    public void setAdaptive(AdaptiveLimitFactory adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Builds a {@link ThrottledSession} which executes queries on the given session.
+     *
+     * @param session the session to throttle.
+     * @param metrics the registry to register throttling metrics with.
+     * @return a throttled view of the session.
+     */
+    public ThrottledSession build(Session session, MetricRegistry metrics) {
+        if (adaptive == null) {
+            return new ThrottledSession(session, metrics, maxConcurrentRequests, maxQueueSize, queueTimeout);
+        }
+        final AdaptiveLimit limit = adaptive.build(maxConcurrentRequests, metrics,
+                session.getCluster().getClusterName());
+        return new ThrottledSession(session, metrics, limit, maxQueueSize, queueTimeout);
+    }
+}
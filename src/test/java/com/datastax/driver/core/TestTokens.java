@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.datastax.driver.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Creates Murmur3 tokens and token ranges for tests, as they can only be created from the driver's package.
+ */
+public final class TestTokens {
+
+    private static final Token.Factory FACTORY = Token.getFactory("Murmur3Partitioner");
+
+    private TestTokens() {
+    }
+
+    public static Token token(long value) {
+        return FACTORY.fromString(Long.toString(value));
+    }
+
+    public static Token hash(ByteBuffer partitionKey) {
+        return FACTORY.hash(partitionKey);
+    }
+
+    public static TokenRange range(long start, long end) {
+        return new TokenRange(token(start), token(end), FACTORY);
+    }
+}
@@ -97,6 +97,7 @@ public class CassandraFactoryTest {
         when(cluster.getMetrics()).thenReturn(clusterMetrics);
         when(clusterMetrics.getRegistry()).thenReturn(driverRegistry);
         when(driverRegistry.getMetrics()).thenReturn(driverMetrics);
+        when(cluster.getConfiguration()).thenReturn(Configuration.builder().build());
     }
 
     @Test
@@ -163,6 +164,8 @@ public class CassandraFactoryTest {
         final Cluster result = configuration.build(environment);
         assertThat(result).isNotNull();
         verify(metrics).registerAll(isA(CassandraMetricSet.class));
+        verify(cluster).register(isA(Host.StateListener.class));
+        verify(cluster).register(isA(LatencyTracker.class));
     }
 
     @Test
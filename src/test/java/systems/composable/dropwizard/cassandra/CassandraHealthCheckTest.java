@@ -16,19 +16,26 @@
 
 package systems.composable.dropwizard.cassandra;
 
+import com.codahale.metrics.Clock;
 import com.codahale.metrics.health.HealthCheck;
 import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.Futures;
 import io.dropwizard.util.Duration;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class CassandraHealthCheckTest {
@@ -36,12 +43,21 @@ public class CassandraHealthCheckTest {
     private final String validationQuery = "some validation query";
     private final Cluster cluster = mock(Cluster.class);
     private final Session session = mock(Session.class);
+    private final Clock clock = mock(Clock.class);
+    private final ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
     private CassandraHealthCheck healthCheck;
 
     @Before
     public void setUp() throws Exception {
-        when(cluster.connect()).thenReturn(session);
-        healthCheck = new CassandraHealthCheck(cluster, validationQuery, Duration.seconds(1));
+        when(cluster.connectAsync()).thenReturn(Futures.immediateFuture(session));
+        when(cluster.getClusterName()).thenReturn("test-cluster");
+        healthCheck = new CassandraHealthCheck(new SharedSession(cluster, null), validationQuery, Duration.seconds(1),
+                Duration.minutes(1), Duration.minutes(5), clock, () -> executor);
+    }
+
+    @Test
+    public void doesNotConnectUntilChecked() throws Exception {
+        verify(cluster, never()).connectAsync();
     }
 
     @Test
@@ -63,4 +79,44 @@ public class CassandraHealthCheckTest {
 
         assertThat(result.isHealthy()).isFalse();
     }
+
+    @Test
+    public void reportsLastBackgroundResultOnceStarted() throws Exception {
+        final ResultSetFuture mockResultSetFuture = mock(ResultSetFuture.class);
+        when(session.executeAsync(validationQuery)).thenReturn(mockResultSetFuture);
+
+        healthCheck.start();
+        assertThat(healthCheck.execute().isHealthy()).isFalse();
+
+        runScheduledValidation();
+
+        assertThat(healthCheck.execute().isHealthy()).isTrue();
+        assertThat(healthCheck.execute().isHealthy()).isTrue();
+        verify(session).executeAsync(validationQuery);
+        healthCheck.stop();
+        verify(executor).shutdownNow();
+    }
+
+    @Test
+    public void isUnhealthyIfLastResultIsStale() throws Exception {
+        final ResultSetFuture mockResultSetFuture = mock(ResultSetFuture.class);
+        when(session.executeAsync(validationQuery)).thenReturn(mockResultSetFuture);
+
+        healthCheck.start();
+        runScheduledValidation();
+        when(clock.getTick()).thenReturn(Duration.minutes(6).toNanoseconds());
+
+        final HealthCheck.Result result = healthCheck.execute();
+
+        assertThat(result.isHealthy()).isFalse();
+        assertThat(result.getMessage()).startsWith("Validation query has not completed for");
+    }
+
+    // runs the validation the health check scheduled when started, as its executor would
+    private void runScheduledValidation() {
+        final ArgumentCaptor<Runnable> validation = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).scheduleWithFixedDelay(validation.capture(), eq(0L), eq(Duration.minutes(1).toMilliseconds()),
+                eq(TimeUnit.MILLISECONDS));
+        validation.getValue().run();
+    }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.LatencyTracker;
+import com.datastax.driver.core.Metrics;
+import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.Futures;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CassandraHostMetricsTest {
+
+    private static final String PREFIX = "com.datastax.driver.core.Cluster.test-cluster.hosts.";
+
+    private final Cluster cluster = mock(Cluster.class);
+    private final Session session = mock(Session.class);
+    private final Session.State state = mock(Session.State.class);
+    private final Host hostA = mock(Host.class);
+    private final Host hostB = mock(Host.class);
+    private final MetricRegistry registry = new MetricRegistry();
+
+    private final SharedSession sharedSession = new SharedSession(cluster, null);
+    private CassandraHostMetrics hostMetrics;
+
+    @Before
+    public void setUp() throws Exception {
+        when(cluster.getClusterName()).thenReturn("test-cluster");
+        when(cluster.connectAsync()).thenReturn(Futures.immediateFuture(session));
+        when(session.getState()).thenReturn(state);
+        when(hostA.getAddress()).thenReturn(InetAddress.getByName("10.0.0.1"));
+        when(hostB.getAddress()).thenReturn(InetAddress.getByName("10.0.0.2"));
+
+        hostMetrics = new CassandraHostMetrics(sharedSession, registry);
+    }
+
+    @Test
+    public void registersWithTheCluster() throws Exception {
+        hostMetrics.register();
+
+        verify(cluster).register((Host.StateListener) hostMetrics);
+        verify(cluster).register((LatencyTracker) hostMetrics);
+    }
+
+    @Test
+    public void doesNotConnectToTheClusterWhenRegistered() throws Exception {
+        final MetricRegistry metrics = new MetricRegistry();
+        final CassandraFactory factory = new CassandraFactory();
+        factory.setContactPoints(new String[] {"127.0.0.1"});
+        factory.setPort(1);
+        factory.setMetricsEnabled(true);
+
+        final SharedSession unreachable = factory.buildSession(metrics, new HealthCheckRegistry());
+        try {
+            assertThat(unreachable.isConnected()).isFalse();
+            assertThat(unreachable.getCluster().getMetrics()).isNull();
+        } finally {
+            unreachable.getCluster().close();
+        }
+    }
+
+    @Test
+    public void registersTheMetricsOfTheDriverOnceTheClusterHasInitialized() throws Exception {
+        final Metrics driverMetrics = mock(Metrics.class);
+        final MetricRegistry driverRegistry = new MetricRegistry();
+        final Counter retries = driverRegistry.counter("retries");
+        when(driverMetrics.getRegistry()).thenReturn(driverRegistry);
+
+        hostMetrics.onRegister(cluster);
+        assertThat(registry.getNames()).isEmpty();
+
+        when(cluster.getMetrics()).thenReturn(driverMetrics);
+        hostMetrics.onRegister(cluster);
+        hostMetrics.onRegister(cluster);
+
+        assertThat(registry.getCounters()).containsEntry("com.datastax.driver.core.Cluster.test-cluster.retries", retries);
+    }
+
+    @Test
+    public void addsMetricsForJoiningHosts() throws Exception {
+        hostMetrics.onRegister(cluster);
+        hostMetrics.onAdd(hostA);
+        hostMetrics.onAdd(hostB);
+
+        verify(cluster, never()).getMetadata();
+
+        assertThat(registry.getNames()).contains(
+                PREFIX + "10_0_0_1.in-flight",
+                PREFIX + "10_0_0_1.open-connections",
+                PREFIX + "10_0_0_1.trashed-connections",
+                PREFIX + "10_0_0_1.requests",
+                PREFIX + "10_0_0_2.requests");
+    }
+
+    @Test
+    public void removesMetricsForLeavingHosts() throws Exception {
+        hostMetrics.onAdd(hostA);
+        hostMetrics.onAdd(hostB);
+        hostMetrics.onRemove(hostA);
+
+        assertThat(registry.getNames())
+                .doesNotContain(
+                        PREFIX + "10_0_0_1.in-flight",
+                        PREFIX + "10_0_0_1.open-connections",
+                        PREFIX + "10_0_0_1.trashed-connections",
+                        PREFIX + "10_0_0_1.requests")
+                .contains(PREFIX + "10_0_0_2.requests");
+    }
+
+    @Test
+    public void reportsSessionStateOnceConnected() throws Exception {
+        when(state.getInFlightQueries(hostA)).thenReturn(7);
+        hostMetrics.onAdd(hostA);
+        final Gauge<?> inFlight = registry.getGauges().get(PREFIX + "10_0_0_1.in-flight");
+
+        assertThat(inFlight.getValue()).isEqualTo(0);
+
+        sharedSession.get();
+
+        assertThat(inFlight.getValue()).isEqualTo(7);
+    }
+
+    @Test
+    public void recordsLatenciesOfTrackedHosts() throws Exception {
+        hostMetrics.onAdd(hostA);
+        hostMetrics.update(hostA, null, null, TimeUnit.MILLISECONDS.toNanos(5));
+        hostMetrics.update(hostB, null, null, TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertThat(registry.timer(PREFIX + "10_0_0_1.requests").getCount()).isEqualTo(1);
+        assertThat(registry.getTimers()).doesNotContainKey(PREFIX + "10_0_0_2.requests");
+    }
+}
@@ -18,6 +18,7 @@ package systems.composable.dropwizard.cassandra;
 import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Session;
+import systems.composable.dropwizard.cassandra.streaming.StreamedRows;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -41,6 +42,10 @@ public class CassandraInjectedResource {
 				.collect(Collectors.toList());
 	}
 
+	private StreamedRows<String> stream(Session session) {
+		return new StreamedRows<>(session.execute("SELECT * FROM system_schema.columns"), r -> r.getString(0));
+	}
+
 	@GET
 	@Path("/querySessionField")
 	public List<String> querySessionField() {
@@ -53,6 +58,18 @@ public class CassandraInjectedResource {
 		return query(session);
 	}
 
+	@GET
+	@Path("/streamSessionField")
+	public StreamedRows<String> streamSessionField() {
+		return stream(session);
+	}
+
+	@GET
+	@Path("/streamSessionParameter")
+	public StreamedRows<String> streamSessionParameter(@Context Session session) {
+		return stream(session);
+	}
+
 	@GET
 	@Path("/queryClusterField")
 	public List<String> queryClusterField() {
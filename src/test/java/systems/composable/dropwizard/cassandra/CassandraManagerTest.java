@@ -60,4 +60,13 @@ public class CassandraManagerTest {
         verify(closeFuture).get(5000L, TimeUnit.MILLISECONDS);
         verify(closeFuture).force();
     }
+
+    @Test
+    public void warmsUpSessionOnStart() throws Exception {
+        final CassandraWarmUp warmUp = mock(CassandraWarmUp.class);
+
+        new CassandraManager(cluster, Duration.seconds(5), warmUp).start();
+
+        verify(warmUp).run();
+    }
 }
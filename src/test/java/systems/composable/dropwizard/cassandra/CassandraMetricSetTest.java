@@ -16,11 +16,25 @@
 
 package systems.composable.dropwizard.cassandra;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
 import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Configuration;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.HostDistance;
 import com.datastax.driver.core.Metrics;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.datastax.driver.core.policies.Policies;
+import com.datastax.driver.core.policies.SpeculativeExecutionPolicy;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -28,6 +42,7 @@ import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
 import static org.mockito.Mockito.when;
 
 public class CassandraMetricSetTest {
@@ -47,6 +62,7 @@ public class CassandraMetricSetTest {
         when(cluster.getMetrics()).thenReturn(metrics);
         when(metrics.getRegistry()).thenReturn(registry);
         when(registry.getMetrics()).thenReturn(driverMetrics);
+        when(cluster.getConfiguration()).thenReturn(Configuration.builder().build());
     }
 
     @Test
@@ -59,4 +75,69 @@ public class CassandraMetricSetTest {
                 .containsEntry("com.datastax.driver.core.Cluster.test-cluster.metricA", metricA)
                 .containsEntry("com.datastax.driver.core.Cluster.test-cluster.metricB", metricB);
     }
+
+    @Test
+    public void includesMetricsOfPolicies() throws Exception {
+        final Metric policyMetric = mock(Metric.class);
+        final SpeculativeExecutionPolicy policy = mock(SpeculativeExecutionPolicy.class,
+                withSettings().extraInterfaces(MetricSet.class));
+        when(((MetricSet) policy).getMetrics()).thenReturn(ImmutableMap.of("speculative-executions.fired", policyMetric));
+        when(cluster.getConfiguration()).thenReturn(Configuration.builder()
+                .withPolicies(Policies.builder().withSpeculativeExecutionPolicy(policy).build())
+                .build());
+
+        final CassandraMetricSet metricSet = new CassandraMetricSet(cluster);
+
+        assertThat(metricSet.getMetrics())
+                .containsEntry("com.datastax.driver.core.Cluster.test-cluster.speculative-executions.fired", policyMetric)
+                .containsEntry("com.datastax.driver.core.Cluster.test-cluster.metricA", metricA);
+    }
+
+    @Test
+    public void includesTheLoadOfTheConnectionPoolsOfTheSession() throws Exception {
+        final Session session = mock(Session.class);
+        final Session.State state = mock(Session.State.class);
+        final LoadBalancingPolicy policy = mock(LoadBalancingPolicy.class);
+        final Host localA = mock(Host.class);
+        final Host localB = mock(Host.class);
+        final Host remote = mock(Host.class);
+        when(cluster.getConfiguration()).thenReturn(Configuration.builder()
+                .withPolicies(Policies.builder().withLoadBalancingPolicy(policy).build())
+                .withPoolingOptions(new PoolingOptions()
+                        .setConnectionsPerHost(HostDistance.LOCAL, 1, 2)
+                        .setConnectionsPerHost(HostDistance.REMOTE, 1, 1)
+                        .setMaxRequestsPerConnection(HostDistance.LOCAL, 100)
+                        .setMaxRequestsPerConnection(HostDistance.REMOTE, 100))
+                .build());
+        when(cluster.connectAsync()).thenReturn(Futures.immediateFuture(session));
+        when(session.getState()).thenReturn(state);
+        when(state.getConnectedHosts()).thenReturn(ImmutableList.of(localA, localB, remote));
+        when(state.getInFlightQueries(localA)).thenReturn(50);
+        when(state.getInFlightQueries(localB)).thenReturn(150);
+        when(policy.distance(localA)).thenReturn(HostDistance.LOCAL);
+        when(policy.distance(localB)).thenReturn(HostDistance.LOCAL);
+        when(policy.distance(remote)).thenReturn(HostDistance.REMOTE);
+        final SharedSession sharedSession = new SharedSession(cluster, null);
+        sharedSession.connectAsync();
+
+        final Map<String, Metric> result = new CassandraMetricSet(sharedSession).getMetrics();
+
+        final String prefix = "com.datastax.driver.core.Cluster.test-cluster.pooling.";
+        assertThat(((Gauge<?>) result.get(prefix + "local.in-flight")).getValue()).isEqualTo(200);
+        assertThat(((Gauge<?>) result.get(prefix + "local.capacity")).getValue()).isEqualTo(400L);
+        assertThat(((Gauge<?>) result.get(prefix + "local.saturation")).getValue()).isEqualTo(0.75);
+        assertThat(((Gauge<?>) result.get(prefix + "remote.in-flight")).getValue()).isEqualTo(0);
+        assertThat(result.get(prefix + "borrow-wait")).isInstanceOf(Histogram.class);
+        assertThat(result.get(prefix + "busy-rejections")).isInstanceOf(Meter.class);
+        assertThat(result).containsEntry("com.datastax.driver.core.Cluster.test-cluster.metricA", metricA);
+    }
+
+    @Test
+    public void excludesTheLoadOfConnectionPoolsWithoutASession() throws Exception {
+        final CassandraMetricSet metricSet = new CassandraMetricSet(cluster);
+
+        assertThat(metricSet.getMetrics())
+                .doesNotContainKey("com.datastax.driver.core.Cluster.test-cluster.pooling.local.in-flight")
+                .doesNotContainKey("com.datastax.driver.core.Cluster.test-cluster.pooling.borrow-wait");
+    }
 }
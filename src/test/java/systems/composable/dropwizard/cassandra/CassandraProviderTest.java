@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package systems.composable.dropwizard.cassandra;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.dropwizard.setup.Environment;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.TypeLiteral;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CassandraProviderTest {
+
+    private final Cluster cluster = mock(Cluster.class);
+    private final Session session = mock(Session.class);
+    private final Environment environment = mock(Environment.class);
+
+    private ServiceLocator locator;
+
+    @Before
+    public void setUp() throws Exception {
+        when(cluster.getClusterName()).thenReturn("test-cluster");
+        when(cluster.connectAsync())
+                .thenReturn(Futures.immediateFailedFuture(new NoHostAvailableException(Collections.emptyMap())))
+                .thenReturn(Futures.immediateFuture(session));
+        when(environment.metrics()).thenReturn(new MetricRegistry());
+
+        final CassandraFactory factory = new CassandraFactory();
+        factory.setMetricsEnabled(false);
+        locator = ServiceLocatorUtilities.bind(new CassandraProvider.Binder(
+                new CassandraProvider(factory, new SharedSession(cluster, null), environment), null));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        locator.shutdown();
+    }
+
+    @Test
+    public void connectsAgainForEachInjectedSessionFuture() throws Exception {
+        final TypeLiteral<ListenableFuture<Session>> type = new TypeLiteral<ListenableFuture<Session>>() {};
+
+        final Throwable failure = catchThrowable(() ->
+                locator.<ListenableFuture<Session>>getService(type.getType()).get(1, TimeUnit.SECONDS));
+        assertThat(failure).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(NoHostAvailableException.class);
+
+        assertThat(locator.<ListenableFuture<Session>>getService(type.getType()).get(1, TimeUnit.SECONDS))
+                .isSameAs(session);
+        verify(cluster, times(2)).connectAsync();
+    }
+
+    @Test
+    public void connectsAgainForEachInjectedSessionStage() throws Exception {
+        final TypeLiteral<CompletionStage<Session>> type = new TypeLiteral<CompletionStage<Session>>() {};
+
+        final Throwable failure = catchThrowable(() -> locator.<CompletionStage<Session>>getService(type.getType())
+                .toCompletableFuture().get(1, TimeUnit.SECONDS));
+        assertThat(failure).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(NoHostAvailableException.class);
+
+        assertThat(locator.<CompletionStage<Session>>getService(type.getType())
+                .toCompletableFuture().get(1, TimeUnit.SECONDS)).isSameAs(session);
+        verify(cluster, times(2)).connectAsync();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra;
+
+import com.codahale.metrics.Timer;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Configuration;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.datastax.driver.core.policies.Policies;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Futures;
+import io.dropwizard.util.Duration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class CassandraWarmUpTest {
+
+    private final Cluster cluster = mock(Cluster.class);
+    private final Session session = mock(Session.class);
+    private final Host host = mock(Host.class);
+    private final Timer timer = new Timer();
+    private final SharedSession sharedSession = new SharedSession(cluster, null);
+
+    @Before
+    public void setUp() throws Exception {
+        final LoadBalancingPolicy loadBalancingPolicy = mock(LoadBalancingPolicy.class);
+        when(loadBalancingPolicy.distance(host)).thenReturn(HostDistance.LOCAL);
+        final Configuration configuration = Configuration.builder()
+                .withPolicies(Policies.builder().withLoadBalancingPolicy(loadBalancingPolicy).build())
+                .withPoolingOptions(new PoolingOptions().setCoreConnectionsPerHost(HostDistance.LOCAL, 2))
+                .build();
+        final Metadata metadata = mock(Metadata.class);
+        final Session.State state = mock(Session.State.class);
+
+        when(cluster.getClusterName()).thenReturn("test-cluster");
+        when(cluster.connectAsync()).thenReturn(Futures.immediateFuture(session));
+        when(cluster.getConfiguration()).thenReturn(configuration);
+        when(cluster.getMetadata()).thenReturn(metadata);
+        when(metadata.getAllHosts()).thenReturn(ImmutableSet.of(host));
+        when(host.isUp()).thenReturn(true);
+        when(session.getState()).thenReturn(state);
+        when(state.getOpenConnections(host)).thenReturn(2);
+        when(session.prepareAsync(any(String.class))).thenReturn(Futures.immediateFuture(mock(PreparedStatement.class)));
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> completed());
+    }
+
+    @Test
+    public void connectsPreparesAndRunsWarmUpQueries() throws Exception {
+        final CassandraWarmUp warmUp = new CassandraWarmUp(sharedSession,
+                ImmutableList.of("SELECT * FROM users WHERE id = ?", "SELECT * FROM groups WHERE id = ?"),
+                "SELECT key FROM system.local", CassandraWarmUp.MAX_IN_FLIGHT + 1, Duration.seconds(5), timer);
+
+        warmUp.run();
+
+        assertThat(sharedSession.isConnected()).isTrue();
+        verify(session).prepareAsync("SELECT * FROM users WHERE id = ?");
+        verify(session).prepareAsync("SELECT * FROM groups WHERE id = ?");
+        verify(session, times(CassandraWarmUp.MAX_IN_FLIGHT + 1)).executeAsync(any(Statement.class));
+        assertThat(timer.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void leavesPreparedStatementsInTheSessionCache() throws Exception {
+        final CassandraWarmUp warmUp = new CassandraWarmUp(sharedSession,
+                ImmutableList.of("SELECT * FROM users WHERE id = ?"), "SELECT key FROM system.local", 1,
+                Duration.seconds(5), timer);
+
+        warmUp.run();
+        sharedSession.getPreparedStatementCache().prepare("SELECT * FROM users WHERE id = ?");
+
+        verify(session, times(1)).prepareAsync("SELECT * FROM users WHERE id = ?");
+        assertThat(sharedSession.getPreparedStatementCache().size()).isEqualTo(1);
+    }
+
+    @Test
+    public void continuesStartingWhenWarmUpFails() throws Exception {
+        when(session.executeAsync(any(Statement.class))).thenAnswer(
+                invocation -> failed(new NoHostAvailableException(Collections.emptyMap())));
+        final CassandraWarmUp warmUp = new CassandraWarmUp(sharedSession, ImmutableList.of(),
+                "SELECT key FROM system.local", CassandraWarmUp.MAX_IN_FLIGHT * 2, Duration.seconds(5), timer);
+
+        warmUp.run();
+
+        // the first failed batch ends the warm-up
+        verify(session, times(CassandraWarmUp.MAX_IN_FLIGHT)).executeAsync(any(Statement.class));
+        assertThat(timer.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void continuesStartingWhenClusterCannotBeReached() throws Exception {
+        when(cluster.connectAsync()).thenReturn(
+                Futures.immediateFailedFuture(new NoHostAvailableException(Collections.emptyMap())));
+        final CassandraWarmUp warmUp = new CassandraWarmUp(sharedSession, ImmutableList.of(),
+                "SELECT key FROM system.local", 10, Duration.seconds(5), timer);
+
+        warmUp.run();
+
+        assertThat(sharedSession.isConnected()).isFalse();
+        verify(session, never()).executeAsync(any(Statement.class));
+    }
+
+    private static ResultSetFuture completed() {
+        final CompletedFuture future = new CompletedFuture();
+        future.set(mock(ResultSet.class));
+        return future;
+    }
+
+    private static ResultSetFuture failed(Throwable t) {
+        final CompletedFuture future = new CompletedFuture();
+        future.setException(t);
+        return future;
+    }
+
+    private static class CompletedFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+        @Override
+        public boolean set(ResultSet value) {
+            return super.set(value);
+        }
+
+        @Override
+        public boolean setException(Throwable throwable) {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
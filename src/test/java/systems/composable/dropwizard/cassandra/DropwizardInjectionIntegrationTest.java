@@ -60,4 +60,14 @@ public class DropwizardInjectionIntegrationTest {
 	public void canQueryClusterField() throws Exception {
 		canQuery("queryClusterField");
 	}
+
+	@Test
+	public void canStreamSessionField() throws Exception {
+		canQuery("streamSessionField");
+	}
+
+	@Test
+	public void canStreamSessionParameter() throws Exception {
+		canQuery("streamSessionParameter");
+	}
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SharedSessionTest {
+
+    private final Cluster cluster = mock(Cluster.class);
+    private final Session session = mock(Session.class);
+
+    @Test
+    public void connectsOnceForConcurrentRequests() throws Exception {
+        final SettableFuture<Session> connecting = SettableFuture.create();
+        when(cluster.connectAsync()).thenReturn(connecting);
+        final SharedSession sharedSession = new SharedSession(cluster, null);
+
+        final ListenableFuture<Session> first = sharedSession.connectAsync();
+        final ListenableFuture<Session> second = sharedSession.connectAsync();
+        assertThat(sharedSession.isConnected()).isFalse();
+
+        connecting.set(session);
+
+        assertThat(first.get()).isSameAs(session);
+        assertThat(second.get()).isSameAs(session);
+        assertThat(sharedSession.get()).isSameAs(session);
+        assertThat(sharedSession.isConnected()).isTrue();
+        verify(cluster, times(1)).connectAsync();
+    }
+
+    @Test
+    public void connectsToConfiguredKeyspace() throws Exception {
+        when(cluster.connectAsync("ks")).thenReturn(Futures.immediateFuture(session));
+
+        assertThat(new SharedSession(cluster, "ks").get()).isSameAs(session);
+    }
+
+    @Test
+    public void triesAgainAfterFailingToConnect() throws Exception {
+        when(cluster.connectAsync())
+                .thenReturn(Futures.immediateFailedFuture(new NoHostAvailableException(Collections.emptyMap())))
+                .thenReturn(Futures.immediateFuture(session));
+        final SharedSession sharedSession = new SharedSession(cluster, null);
+
+        assertThat(catchThrowable(sharedSession::get)).isInstanceOf(NoHostAvailableException.class);
+        assertThat(sharedSession.isConnected()).isFalse();
+
+        assertThat(sharedSession.get()).isSameAs(session);
+        verify(cluster, times(2)).connectAsync();
+    }
+
+    @Test
+    public void cancellingARequestDoesNotCancelTheConnection() throws Exception {
+        final SettableFuture<Session> connecting = SettableFuture.create();
+        when(cluster.connectAsync()).thenReturn(connecting);
+        final SharedSession sharedSession = new SharedSession(cluster, null);
+
+        sharedSession.connectAsync().cancel(true);
+        connecting.set(session);
+
+        assertThat(sharedSession.connectAsync().get()).isSameAs(session);
+    }
+}
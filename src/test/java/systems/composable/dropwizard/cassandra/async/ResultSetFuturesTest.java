@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.async;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import com.datastax.driver.core.exceptions.ReadTimeoutException;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.dropwizard.util.Duration;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import systems.composable.dropwizard.cassandra.throttling.RequestThrottledException;
+
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.TimeoutHandler;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ResultSetFuturesTest {
+
+    private final AsyncResponse response = mock(AsyncResponse.class);
+    private final QueryFuture future = new QueryFuture();
+    private final Executor executor = MoreExecutors.directExecutor();
+
+    @Test
+    public void completesStagesWithTheResultOfTheQuery() throws Exception {
+        final ResultSet result = mock(ResultSet.class);
+        final CompletionStage<ResultSet> stage = ResultSetFutures.toCompletionStage(future);
+
+        future.set(result);
+
+        assertThat(stage.toCompletableFuture().get(1, TimeUnit.SECONDS)).isSameAs(result);
+    }
+
+    @Test
+    public void cancelsTheQueryWhenTheStageIsCancelled() throws Exception {
+        ResultSetFutures.toCompletionStage(future).toCompletableFuture().cancel(true);
+
+        assertThat(future.isCancelled()).isTrue();
+    }
+
+    @Test
+    public void resumesResponsesWithTheMappedResult() throws Exception {
+        final ResultSet result = mock(ResultSet.class);
+
+        ResultSetFutures.resume(response, future, rs -> "users", executor, Duration.seconds(5));
+        future.set(result);
+
+        verify(response).setTimeout(5, TimeUnit.SECONDS);
+        verify(response).resume("users");
+    }
+
+    @Test
+    public void resumesResponsesWithAServiceUnavailableErrorWhenThrottled() throws Exception {
+        ResultSetFutures.resume(response, future, rs -> "users", executor);
+        future.setException(new RequestThrottledException("Too many requests"));
+
+        final ArgumentCaptor<Throwable> error = ArgumentCaptor.forClass(Throwable.class);
+        verify(response).resume(error.capture());
+        assertThat(error.getValue()).isInstanceOf(ServiceUnavailableException.class);
+    }
+
+    @Test
+    public void cancelsTheQueryWhenTheResponseTimesOut() throws Exception {
+        ResultSetFutures.resume(response, future, rs -> "users", executor, Duration.seconds(5));
+
+        final ArgumentCaptor<TimeoutHandler> handler = ArgumentCaptor.forClass(TimeoutHandler.class);
+        verify(response).setTimeoutHandler(handler.capture());
+        handler.getValue().handleTimeout(response);
+
+        assertThat(future.isCancelled()).isTrue();
+        // resuming again with the cancellation of the query is ignored by the already resumed response
+        final ArgumentCaptor<Throwable> error = ArgumentCaptor.forClass(Throwable.class);
+        verify(response, atLeastOnce()).resume(error.capture());
+        assertThat(error.getAllValues().get(0)).isInstanceOf(WebApplicationException.class);
+        assertThat(((WebApplicationException) error.getAllValues().get(0)).getResponse().getStatus()).isEqualTo(504);
+    }
+
+    @Test
+    public void readsEveryPageOfTheResultOffTheThreadTheQueryCompletesOn() throws Exception {
+        // later pages are fetched by the same I/O thread the query completes on, so reading them there deadlocks
+        final ExecutorService io = Executors.newSingleThreadExecutor();
+        final ExecutorService resources = Executors.newSingleThreadExecutor();
+        try {
+            final Row row = mock(Row.class);
+            final ResultSet result = mock(ResultSet.class);
+            final AtomicInteger read = new AtomicInteger();
+            when(result.one()).thenAnswer(invocation -> {
+                switch (read.incrementAndGet()) {
+                    case 1:
+                    case 2:
+                        return row;
+                    case 3:
+                        final QueryFuture nextPage = new QueryFuture();
+                        io.execute(() -> nextPage.set(result));
+                        Uninterruptibles.getUninterruptibly(nextPage, 5, TimeUnit.SECONDS);
+                        return row;
+                    default:
+                        return null;
+                }
+            });
+
+            ResultSetFutures.resume(response, future, rs -> {
+                int rows = 0;
+                while (rs.one() != null) {
+                    rows++;
+                }
+                return rows;
+            }, resources, Duration.seconds(5));
+            io.execute(() -> future.set(result));
+
+            verify(response, timeout(5000)).resume(3);
+        } finally {
+            io.shutdownNow();
+            resources.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cancelsTheQueryWhenTheResponseCompletesFirst() throws Exception {
+        ResultSetFutures.resume(response, future, rs -> "users", executor);
+
+        final ArgumentCaptor<Object> callback = ArgumentCaptor.forClass(Object.class);
+        verify(response).register(callback.capture());
+        ((CompletionCallback) callback.getValue()).onComplete(null);
+
+        assertThat(future.isCancelled()).isTrue();
+    }
+
+    @Test
+    public void mapsQueryTimeoutsToGatewayTimeouts() throws Exception {
+        final Throwable mapped = ResultSetFutures.toResponseException(new CompletionException(
+                new ReadTimeoutException(new InetSocketAddress(9042), ConsistencyLevel.QUORUM, 1, 2, false)));
+
+        assertThat(mapped).isInstanceOf(WebApplicationException.class);
+        assertThat(((WebApplicationException) mapped).getResponse().getStatus()).isEqualTo(504);
+    }
+
+    @Test
+    public void leavesOtherFailuresToExceptionMappers() throws Exception {
+        final InvalidQueryException failure = new InvalidQueryException("unconfigured table users");
+
+        assertThat(ResultSetFutures.toResponseException(new CompletionException(failure))).isSameAs(failure);
+    }
+
+    private static class QueryFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+        @Override
+        public boolean set(ResultSet value) {
+            return super.set(value);
+        }
+
+        @Override
+        public boolean setException(Throwable throwable) {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.batching;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.Configuration;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.dropwizard.util.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WriteBatcherTest {
+
+    private static final String PREFIX = "com.datastax.driver.core.Cluster.test-cluster.batching.";
+
+    private final Session session = mock(Session.class);
+    private final Cluster cluster = mock(Cluster.class);
+    private final Metadata metadata = mock(Metadata.class);
+    private final MetricRegistry registry = new MetricRegistry();
+    private final List<Statement> sent = new CopyOnWriteArrayList<>();
+    private final List<WriteFuture> futures = new CopyOnWriteArrayList<>();
+
+    private WriteBatcher batcher;
+
+    @Before
+    public void setUp() throws Exception {
+        when(session.getCluster()).thenReturn(cluster);
+        when(session.getLoggedKeyspace()).thenReturn("ks");
+        when(cluster.getConfiguration()).thenReturn(Configuration.builder().build());
+        when(cluster.getMetadata()).thenReturn(metadata);
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            final WriteFuture future = new WriteFuture();
+            sent.add((Statement) invocation.getArguments()[0]);
+            futures.add(future);
+            return future;
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        batcher.stop();
+    }
+
+    @Test
+    public void sendsAnUnloggedBatchOnceItIsFull() throws Exception {
+        batcher = batcher(BatchGrouping.PARTITION, 3, Duration.minutes(1));
+
+        batcher.add(write(1));
+        batcher.add(write(1));
+        assertThat(sent).isEmpty();
+        assertThat(batcher.getPending()).isEqualTo(2);
+
+        batcher.add(write(1));
+
+        assertThat(sent).hasSize(1);
+        assertThat(sent.get(0)).isInstanceOf(BatchStatement.class);
+        assertThat(((BatchStatement) sent.get(0)).size()).isEqualTo(3);
+        assertThat(batcher.getPending()).isZero();
+        assertThat(registry.histogram(PREFIX + "batch-size").getSnapshot().getMax()).isEqualTo(3);
+    }
+
+    @Test
+    public void sendsBatchesAfterTheMaxDelay() throws Exception {
+        batcher = batcher(BatchGrouping.PARTITION, 100, Duration.milliseconds(10));
+
+        batcher.add(write(1));
+        batcher.add(write(1));
+
+        assertThat(((BatchStatement) awaitSent()).size()).isEqualTo(2);
+    }
+
+    @Test
+    public void batchesEachPartitionSeparately() throws Exception {
+        batcher = batcher(BatchGrouping.PARTITION, 2, Duration.minutes(1));
+
+        batcher.add(write(1));
+        batcher.add(write(2));
+        batcher.add(write(1));
+
+        assertThat(sent).hasSize(1);
+        assertThat(batcher.getPending()).isEqualTo(1);
+    }
+
+    @Test
+    public void batchesPartitionsWithTheSameReplicasTogether() throws Exception {
+        final Host host = mock(Host.class);
+        when(metadata.getReplicas(anyString(), any(ByteBuffer.class))).thenReturn(ImmutableSet.of(host));
+        batcher = batcher(BatchGrouping.REPLICAS, 2, Duration.minutes(1));
+
+        batcher.add(write(1));
+        batcher.add(write(2));
+
+        assertThat(sent).hasSize(1);
+        assertThat(((BatchStatement) sent.get(0)).size()).isEqualTo(2);
+    }
+
+    @Test
+    public void sendsSingleWritesAsTheyAre() throws Exception {
+        batcher = batcher(BatchGrouping.PARTITION, 2, Duration.milliseconds(10));
+
+        final Statement write = write(1);
+        batcher.add(write);
+
+        assertThat(awaitSent()).isSameAs(write);
+    }
+
+    @Test
+    public void sendsWritesWithoutARoutingKeyStraightAway() throws Exception {
+        batcher = batcher(BatchGrouping.PARTITION, 10, Duration.minutes(1));
+
+        batcher.add(new SimpleStatement("INSERT INTO t (k) VALUES (1)"));
+
+        assertThat(sent).hasSize(1);
+    }
+
+    @Test
+    public void sendsConditionalWritesStraightAway() throws Exception {
+        batcher = batcher(BatchGrouping.PARTITION, 10, Duration.minutes(1));
+
+        final Statement write = routed(
+                new SimpleStatement("INSERT INTO t (k, v) VALUES (?, ?) IF NOT EXISTS", 1, 0), 1);
+        batcher.add(write);
+
+        assertThat(sent).containsExactly(write);
+        assertThat(batcher.getPending()).isZero();
+    }
+
+    @Test
+    public void sendsCounterUpdatesStraightAway() throws Exception {
+        batcher = batcher(BatchGrouping.PARTITION, 10, Duration.minutes(1));
+
+        batcher.add(routed(new SimpleStatement("UPDATE t SET c = c + 1 WHERE k = ?", 1), 1));
+
+        assertThat(sent).hasSize(1);
+        assertThat(batcher.getPending()).isZero();
+    }
+
+    @Test
+    public void sendsPreparedCounterUpdatesStraightAway() throws Exception {
+        final ColumnDefinitions variables = mock(ColumnDefinitions.class);
+        when(variables.size()).thenReturn(2);
+        when(variables.getType(0)).thenReturn(DataType.counter());
+        when(variables.getType(1)).thenReturn(DataType.cint());
+        final PreparedStatement prepared = mock(PreparedStatement.class);
+        when(prepared.getVariables()).thenReturn(variables);
+        when(prepared.getQueryString()).thenReturn("UPDATE t SET c = c + ? WHERE k = ?");
+        final BoundStatement bound = mock(BoundStatement.class);
+        when(bound.preparedStatement()).thenReturn(prepared);
+        batcher = batcher(BatchGrouping.PARTITION, 10, Duration.minutes(1));
+
+        batcher.add(bound);
+        batcher.add(bound);
+
+        assertThat(sent).hasSize(2);
+        verify(prepared, times(1)).getVariables();
+    }
+
+    @Test
+    public void completesEachWriteWithItsBatch() throws Exception {
+        batcher = batcher(BatchGrouping.PARTITION, 2, Duration.minutes(1));
+
+        final ListenableFuture<ResultSet> first = batcher.add(write(1));
+        final ListenableFuture<ResultSet> second = batcher.add(write(1));
+        final ResultSet result = mock(ResultSet.class);
+        futures.get(0).set(result);
+
+        assertThat(first.get()).isSameAs(result);
+        assertThat(second.get()).isSameAs(result);
+        assertThat(registry.timer(PREFIX + "flush-latency").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void failsEachWriteWithItsBatch() throws Exception {
+        batcher = batcher(BatchGrouping.PARTITION, 2, Duration.minutes(1));
+
+        final ListenableFuture<ResultSet> first = batcher.add(write(1));
+        batcher.add(write(1));
+        futures.get(0).setException(new OverloadedException(new InetSocketAddress(9042), "overloaded"));
+
+        try {
+            first.get();
+            fail("Write did not fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(OverloadedException.class);
+        }
+    }
+
+    @Test
+    public void sendsPendingWritesWhenStopped() throws Exception {
+        batcher = batcher(BatchGrouping.PARTITION, 10, Duration.minutes(1));
+
+        batcher.add(write(1));
+        batcher.add(write(2));
+        batcher.stop();
+
+        assertThat(sent).hasSize(2);
+        assertThat(batcher.getPending()).isZero();
+    }
+
+    private WriteBatcher batcher(BatchGrouping grouping, int maxBatchSize, Duration maxDelay) {
+        return new WriteBatcher(() -> session, grouping, maxBatchSize, maxDelay, registry, "test-cluster");
+    }
+
+    private static Statement write(int partition) {
+        return routed(new SimpleStatement("INSERT INTO t (k, v) VALUES (?, ?)", partition, 0), partition);
+    }
+
+    private static Statement routed(SimpleStatement statement, int partition) {
+        statement.setRoutingKey(ByteBuffer.allocate(4).putInt(0, partition));
+        return statement;
+    }
+
+    // waits for the one statement sent by the batcher's flush thread
+    private Statement awaitSent() {
+        final ArgumentCaptor<Statement> statement = ArgumentCaptor.forClass(Statement.class);
+        verify(session, timeout(1000)).executeAsync(statement.capture());
+        return statement.getValue();
+    }
+
+    private static class WriteFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+        @Override
+        public boolean set(ResultSet value) {
+            return super.set(value);
+        }
+
+        @Override
+        public boolean setException(Throwable throwable) {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.Configuration;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BulkLoaderTest {
+
+    private static final UUID ID = UUID.fromString("123e4567-e89b-12d3-a456-426655440000");
+
+    private final Session session = mock(Session.class);
+    private final Cluster cluster = mock(Cluster.class);
+    private final Metadata metadata = mock(Metadata.class);
+    private final KeyspaceMetadata keyspace = mock(KeyspaceMetadata.class);
+    private final TableMetadata table = mock(TableMetadata.class);
+    private final PreparedStatement prepared = mock(PreparedStatement.class);
+    private final ColumnDefinitions variables = mock(ColumnDefinitions.class);
+    private final List<Object[]> bound = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        when(session.getCluster()).thenReturn(cluster);
+        when(cluster.getMetadata()).thenReturn(metadata);
+        when(cluster.getConfiguration()).thenReturn(Configuration.builder().build());
+        when(metadata.getKeyspace("ks")).thenReturn(keyspace);
+        when(keyspace.getName()).thenReturn("ks");
+        when(keyspace.getTable("users")).thenReturn(table);
+        when(table.getName()).thenReturn("users");
+        when(table.getKeyspace()).thenReturn(keyspace);
+        for (String name : Arrays.asList("id", "age", "name")) {
+            final ColumnMetadata column = mock(ColumnMetadata.class);
+            when(column.getName()).thenReturn(name);
+            when(table.getColumn(name)).thenReturn(column);
+        }
+
+        when(session.prepare(anyString())).thenReturn(prepared);
+        when(prepared.getVariables()).thenReturn(variables);
+        when(variables.getType(0)).thenReturn(DataType.uuid());
+        when(variables.getType(1)).thenReturn(DataType.cint());
+        when(variables.getType(2)).thenReturn(DataType.text());
+        when(prepared.bind(Matchers.<Object>anyVararg())).thenAnswer(invocation -> {
+            bound.add(invocation.getArguments());
+            return mock(BoundStatement.class);
+        });
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> completed());
+    }
+
+    @Test
+    public void writesRowsParsedToTheTypesOfTheirColumns() throws Exception {
+        final BulkLoader loader = new BulkLoader(session, "ks", "users", 4, 0);
+
+        assertThat(loader.load(Arrays.asList(
+                row(ID.toString(), "42", "Alice"),
+                row(ID.toString(), "", "")).iterator())).isTrue();
+
+        verify(session).prepare("INSERT INTO \"ks\".\"users\" (\"id\", \"age\", \"name\") VALUES (?, ?, ?)");
+        assertThat(bound).hasSize(2);
+        assertThat(bound.get(0)).containsExactly(ID, 42, "Alice");
+        assertThat(bound.get(1)).containsExactly(ID, null, "");
+        assertThat(loader.getLoaded()).isEqualTo(2);
+        assertThat(loader.getLatencies().getTotalCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void keepsAtMostConcurrencyWritesInFlight() throws Exception {
+        final BlockingQueue<CompletedFuture> sent = new LinkedBlockingQueue<>();
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicInteger maxOutstanding = new AtomicInteger();
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            maxOutstanding.accumulateAndGet(outstanding.incrementAndGet(), Math::max);
+            final CompletedFuture future = new CompletedFuture();
+            sent.add(future);
+            return future;
+        });
+        final BulkLoader loader = new BulkLoader(session, "ks", "users", 2, 0);
+        final List<Map<String, String>> rows = Collections.nCopies(5, row(ID.toString(), "42", "Alice"));
+
+        final CompletableFuture<Boolean> load = CompletableFuture.supplyAsync(() -> {
+            try {
+                return loader.load(rows.iterator());
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        // the next write can only be sent once the oldest of the two in flight has completed
+        final Queue<CompletedFuture> inFlight = new ArrayDeque<>();
+        for (int i = 0; i < 5; i++) {
+            inFlight.add(nextSent(sent));
+            if (inFlight.size() == 2) {
+                assertThat(loader.getInFlight()).isEqualTo(2);
+                outstanding.decrementAndGet();
+                inFlight.poll().set(mock(ResultSet.class));
+            }
+        }
+        outstanding.decrementAndGet();
+        inFlight.poll().set(mock(ResultSet.class));
+
+        assertThat(load.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(maxOutstanding.get()).isEqualTo(2);
+        assertThat(loader.getLoaded()).isEqualTo(5);
+        assertThat(loader.getInFlight()).isZero();
+    }
+
+    @Test
+    public void abandonsTheLoadOnceTooManyRowsHaveFailed() throws Exception {
+        when(session.executeAsync(any(Statement.class)))
+                .thenAnswer(invocation -> failed(new NoHostAvailableException(Collections.emptyMap())));
+        final BulkLoader loader = new BulkLoader(session, "ks", "users", 1, 1);
+
+        assertThat(loader.load(Collections.nCopies(10, row(ID.toString(), "42", "Alice")).iterator())).isFalse();
+
+        verify(session, times(2)).executeAsync(any(Statement.class));
+        assertThat(loader.getFailed()).isEqualTo(2);
+        assertThat(loader.getLoaded()).isZero();
+    }
+
+    @Test
+    public void countsRowsWithInvalidValuesAsFailures() throws Exception {
+        final BulkLoader loader = new BulkLoader(session, "ks", "users", 1, 1);
+
+        assertThat(loader.load(Collections.singletonList(row(ID.toString(), "forty-two", "Alice")).iterator()))
+                .isTrue();
+
+        verify(session, never()).executeAsync(any(Statement.class));
+        assertThat(loader.getFailed()).isEqualTo(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownColumns() throws Exception {
+        new BulkLoader(session, "ks", "users", 1, 0)
+                .load(Collections.singletonList(ImmutableMap.of("email", "alice@example.com")).iterator());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownTables() throws Exception {
+        new BulkLoader(session, "ks", "groups", 1, 0);
+    }
+
+    private static Map<String, String> row(String id, String age, String name) {
+        return ImmutableMap.of("id", id, "age", age, "name", name);
+    }
+
+    private static CompletedFuture nextSent(BlockingQueue<CompletedFuture> sent) throws InterruptedException {
+        final CompletedFuture future = sent.poll(5, TimeUnit.SECONDS);
+        assertThat(future).as("sent write").isNotNull();
+        return future;
+    }
+
+    private static ResultSetFuture completed() {
+        final CompletedFuture future = new CompletedFuture();
+        future.set(mock(ResultSet.class));
+        return future;
+    }
+
+    private static ResultSetFuture failed(Throwable t) {
+        final CompletedFuture future = new CompletedFuture();
+        future.setException(t);
+        return future;
+    }
+
+    private static class CompletedFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+        @Override
+        public boolean set(ResultSet value) {
+            return super.set(value);
+        }
+
+        @Override
+        public boolean setException(Throwable throwable) {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            try {
+                return Uninterruptibles.getUninterruptibly(this);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+            return getUninterruptibly();
+        }
+    }
+}
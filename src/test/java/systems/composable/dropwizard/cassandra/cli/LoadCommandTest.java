@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import io.dropwizard.Configuration;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadCommandTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parsesItsArguments() throws Exception {
+        final LoadCommand<Configuration> command = new LoadCommand<>(configuration -> null, Configuration.class);
+        final ArgumentParser parser = ArgumentParsers.newArgumentParser("app");
+        command.configure(parser.addSubparsers().addParser(command.getName()));
+
+        final Namespace namespace = parser.parseArgs(new String[]{
+                "cassandra-load", "config.yml", "users.csv", "--table", "users", "--concurrency", "64"});
+
+        assertThat(namespace.getString("file")).isEqualTo("config.yml");
+        assertThat(namespace.getString("input")).isEqualTo("users.csv");
+        assertThat(namespace.getString("table")).isEqualTo("users");
+        assertThat(namespace.getString("keyspace")).isNull();
+        assertThat(namespace.getInt("concurrency")).isEqualTo(64);
+        assertThat(namespace.getLong("maxErrors")).isZero();
+    }
+
+    @Test
+    public void splitsQuotedCsvValues() throws Exception {
+        assertThat(LoadCommand.parseCsv("1,\"Smith, John\",\"say \"\"hi\"\"\",")).containsExactly(
+                "1", "Smith, John", "say \"hi\"", "");
+    }
+
+    @Test
+    public void readsCsvRowsNamedByTheirHeader() throws Exception {
+        try (MappedLines lines = lines("id,name\n1,Alice\n\n2,Bob\n")) {
+            assertThat(Lists.newArrayList(LoadCommand.csvRows(lines))).isEqualTo(ImmutableList.of(
+                    ImmutableMap.of("id", "1", "name", "Alice"),
+                    ImmutableMap.of("id", "2", "name", "Bob")));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCsvRowsWithMissingValues() throws Exception {
+        try (MappedLines lines = lines("id,name\n1\n")) {
+            Lists.newArrayList(LoadCommand.csvRows(lines));
+        }
+    }
+
+    @Test
+    public void readsJsonRows() throws Exception {
+        try (MappedLines lines = lines("{\"id\": 1, \"name\": \"Alice\", \"tags\": [1, 2], \"email\": null}\n")) {
+            final Map<String, String> row = LoadCommand.jsonRows(lines, new ObjectMapper()).next();
+            assertThat(row).containsExactly(
+                    entry("id", "1"), entry("name", "Alice"), entry("tags", "[1,2]"), entry("email", null));
+        }
+    }
+
+    @Test
+    public void detectsTheFormatOfFiles() throws Exception {
+        assertThat(LoadCommand.format(Paths.get("users.csv"))).isEqualTo("csv");
+        assertThat(LoadCommand.format(Paths.get("users.JSONL"))).isEqualTo("json");
+        assertThat(LoadCommand.format(Paths.get("users.ndjson"))).isEqualTo("json");
+    }
+
+    private MappedLines lines(String contents) throws Exception {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return new MappedLines(file.toPath());
+    }
+
+    private static Map.Entry<String, String> entry(String key, String value) {
+        return Collections.singletonMap(key, value).entrySet().iterator().next();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.HdrHistogram.Histogram;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import systems.composable.dropwizard.cassandra.cli.LoadGenerator.Operation;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LoadGeneratorTest {
+
+    private final Session session = mock(Session.class);
+    private final PreparedStatement read = mock(PreparedStatement.class);
+    private final PreparedStatement write = mock(PreparedStatement.class);
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @Before
+    public void setUp() throws Exception {
+        when(read.bind(Matchers.<Object>anyVararg())).thenAnswer(invocation -> mock(BoundStatement.class));
+        when(write.bind(Matchers.<Object>anyVararg())).thenAnswer(invocation -> mock(BoundStatement.class));
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> completed());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void startsOperationsAtTheTargetRate() throws Exception {
+        final LoadGenerator generator = new LoadGenerator(session, read, write, 1000, 0.5, 100, 10, 16);
+
+        final long start = System.nanoTime();
+        generator.run(200, TimeUnit.MILLISECONDS);
+
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(199));
+        assertThat(generator.getIntervalLatencies(Operation.READ).getTotalCount()
+                + generator.getIntervalLatencies(Operation.WRITE).getTotalCount()).isEqualTo(200);
+        assertThat(generator.getInFlight()).isZero();
+    }
+
+    @Test
+    public void mixesReadsAndWritesByTheReadRatio() throws Exception {
+        new LoadGenerator(session, read, write, 1000, 1.0, 100, 10, 16).run(20, TimeUnit.MILLISECONDS);
+
+        verify(read, atLeastOnce()).bind(Matchers.<Object>anyVararg());
+        verify(write, never()).bind(Matchers.<Object>anyVararg());
+    }
+
+    @Test
+    public void correctsLatenciesForCoordinatedOmission() throws Exception {
+        // each operation takes 30ms, but one is meant to start every 10ms
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            final CompletedFuture future = new CompletedFuture();
+            executor.schedule(() -> future.set(mock(ResultSet.class)), 30, TimeUnit.MILLISECONDS);
+            return future;
+        });
+        final LoadGenerator generator = new LoadGenerator(session, read, write, 100, 0, 100, 10, 1);
+
+        generator.run(200, TimeUnit.MILLISECONDS);
+
+        final Histogram latencies = generator.getIntervalLatencies(Operation.WRITE);
+        final Histogram serviceTimes = generator.getIntervalServiceTimes(Operation.WRITE);
+        assertThat(latencies.getTotalCount()).isEqualTo(20);
+        assertThat(serviceTimes.getMaxValue()).isLessThan(TimeUnit.MILLISECONDS.toNanos(200));
+        // the last operation is meant to start at 190ms, but only completes once all 20 have taken 30ms each
+        assertThat(latencies.getMaxValue()).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(350));
+    }
+
+    @Test
+    public void countsFailedOperations() throws Exception {
+        when(session.executeAsync(any(Statement.class)))
+                .thenAnswer(invocation -> failed(new NoHostAvailableException(Collections.emptyMap())));
+        final LoadGenerator generator = new LoadGenerator(session, read, write, 1000, 0, 100, 10, 1);
+
+        generator.run(10, TimeUnit.MILLISECONDS);
+
+        assertThat(generator.getErrors(Operation.WRITE)).isEqualTo(10);
+        assertThat(generator.getErrors(Operation.READ)).isZero();
+        assertThat(generator.getIntervalLatencies(Operation.WRITE).getTotalCount()).isZero();
+    }
+
+    private static ResultSetFuture completed() {
+        final CompletedFuture future = new CompletedFuture();
+        future.set(mock(ResultSet.class));
+        return future;
+    }
+
+    private static ResultSetFuture failed(Throwable t) {
+        final CompletedFuture future = new CompletedFuture();
+        future.setException(t);
+        return future;
+    }
+
+    private static class CompletedFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+        @Override
+        public boolean set(ResultSet value) {
+            return super.set(value);
+        }
+
+        @Override
+        public boolean setException(Throwable throwable) {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            try {
+                return Uninterruptibles.getUninterruptibly(this);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+            return getUninterruptibly();
+        }
+    }
+}
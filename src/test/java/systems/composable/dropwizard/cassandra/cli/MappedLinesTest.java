@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedLinesTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsEachLine() throws Exception {
+        assertThat(read("first\r\nsecond\n\nthird\n", 1024)).containsExactly("first", "second", "", "third");
+    }
+
+    @Test
+    public void readsTheLastLineWithoutATerminator() throws Exception {
+        assertThat(read("first\nsecond", 1024)).containsExactly("first", "second");
+    }
+
+    @Test
+    public void readsLinesSpanningRegions() throws Exception {
+        assertThat(read("first\nsecond\nthird\nfourth", 8)).containsExactly("first", "second", "third", "fourth");
+    }
+
+    @Test
+    public void readsMultiByteCharacters() throws Exception {
+        assertThat(read("café\nüber\n", 6)).containsExactly("café", "über");
+    }
+
+    @Test
+    public void reportsTheBytesRead() throws Exception {
+        final File file = write("first\nsecond\n");
+        try (MappedLines lines = new MappedLines(file.toPath())) {
+            lines.readLine();
+            assertThat(lines.getPosition()).isEqualTo(6);
+            assertThat(lines.getSize()).isEqualTo(13);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsLinesLongerThanARegion() throws Exception {
+        read("a line longer than a region\nand more", 8);
+    }
+
+    private List<String> read(String contents, int regionSize) throws IOException {
+        final List<String> read = new ArrayList<>();
+        try (MappedLines lines = new MappedLines(write(contents).toPath(), regionSize)) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                read.add(line);
+            }
+        }
+        return read;
+    }
+
+    private File write(String contents) throws IOException {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
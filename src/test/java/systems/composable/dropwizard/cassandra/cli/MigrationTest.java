@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MigrationTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parsesTheVersionAndDescriptionOfScripts() throws Exception {
+        final Migration migration = Migration.parse("V1_2__add_user_emails.cql",
+                "ALTER TABLE users ADD email text;");
+
+        assertThat(migration.getVersion()).isEqualTo("1.2");
+        assertThat(migration.getDescription()).isEqualTo("add user emails");
+        assertThat(migration.getStatements()).containsExactly("ALTER TABLE users ADD email text");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMisnamedScripts() throws Exception {
+        Migration.parse("add_user_emails.cql", "ALTER TABLE users ADD email text;");
+    }
+
+    @Test
+    public void splitsScriptsIntoStatementsWithoutComments() throws Exception {
+        final List<String> statements = Migration.split("-- users\n"
+                + "CREATE TABLE users (id uuid PRIMARY KEY, name text); // the users\n"
+                + "/* seed; data */ INSERT INTO users (id, name) VALUES (uuid(), 'O''Brien; Pat');\n"
+                + "CREATE FUNCTION f (x int) CALLED ON NULL INPUT RETURNS int LANGUAGE java AS $$ return x; $$;\n"
+                + "CREATE TABLE \"Semi;colon\" (id int PRIMARY KEY)");
+
+        assertThat(statements).containsExactly(
+                "CREATE TABLE users (id uuid PRIMARY KEY, name text)",
+                "INSERT INTO users (id, name) VALUES (uuid(), 'O''Brien; Pat')",
+                "CREATE FUNCTION f (x int) CALLED ON NULL INPUT RETURNS int LANGUAGE java AS $$ return x; $$",
+                "CREATE TABLE \"Semi;colon\" (id int PRIMARY KEY)");
+    }
+
+    @Test
+    public void loadsScriptsInVersionOrder() throws Exception {
+        write("V1_10__third.cql", "SELECT * FROM c;");
+        write("V1_9__second.cql", "SELECT * FROM b;");
+        write("V1__first.cql", "SELECT * FROM a;");
+        write("README.md", "not a script");
+
+        assertThat(Migration.load(folder.getRoot().toPath()).stream()
+                .map(Migration::getVersion)
+                .collect(Collectors.toList()))
+                .containsExactly("1", "1.9", "1.10");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsScriptsWithTheSameVersion() throws Exception {
+        write("V1__first.cql", "SELECT * FROM a;");
+        write("V1__again.cql", "SELECT * FROM b;");
+
+        Migration.load(folder.getRoot().toPath());
+    }
+
+    @Test
+    public void checksumsTheContentsOfScripts() throws Exception {
+        assertThat(Migration.parse("V1__a.cql", "SELECT * FROM a;").getChecksum())
+                .isEqualTo(Migration.parse("V1__b.cql", "SELECT * FROM a;").getChecksum())
+                .isNotEqualTo(Migration.parse("V1__a.cql", "SELECT * FROM b;").getChecksum());
+    }
+
+    private void write(String name, String contents) throws Exception {
+        Files.write(folder.getRoot().toPath().resolve(name), contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.dropwizard.util.Duration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SchemaMigratorTest {
+
+    private static final String INSERT =
+            "INSERT INTO \"ks\".\"schema_migrations\" (version, description, checksum, applied_at) VALUES (?, ?, ?, ?)";
+
+    private final Session session = mock(Session.class);
+    private final Cluster cluster = mock(Cluster.class);
+    private final Metadata metadata = mock(Metadata.class);
+    private final KeyspaceMetadata keyspace = mock(KeyspaceMetadata.class);
+    private final List<Row> applied = new ArrayList<>();
+    private final List<String> executed = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        when(session.getCluster()).thenReturn(cluster);
+        when(cluster.getMetadata()).thenReturn(metadata);
+        when(metadata.getKeyspace("ks")).thenReturn(keyspace);
+        when(metadata.checkSchemaAgreement()).thenReturn(true);
+        when(keyspace.getName()).thenReturn("ks");
+
+        final ResultSet appliedResultSet = mock(ResultSet.class);
+        when(appliedResultSet.iterator()).thenAnswer(invocation -> applied.iterator());
+        when(session.execute(startsWith("SELECT"))).thenReturn(appliedResultSet);
+        when(session.executeAsync(anyString())).thenAnswer(invocation -> {
+            executed.add((String) invocation.getArguments()[0]);
+            return completed();
+        });
+    }
+
+    @Test
+    public void batchesIndependentStatements() throws Exception {
+        final List<List<SchemaMigrator.Step>> batches = SchemaMigrator.plan(Arrays.asList(
+                Migration.parse("V1__users.cql", "CREATE TABLE users (id uuid PRIMARY KEY, name text);"
+                        + "CREATE TYPE address (street text, city text);"),
+                Migration.parse("V2__groups.cql", "CREATE TABLE groups (id uuid PRIMARY KEY, name text);"
+                        + "CREATE INDEX ON users (name);"
+                        + "CREATE TABLE places (id uuid PRIMARY KEY, address frozen<address>);"),
+                Migration.parse("V3__seed.cql", "INSERT INTO groups (id, name) VALUES (uuid(), 'admins');"
+                        + "ALTER TABLE groups ADD description text;")));
+
+        assertThat(statements(batches)).isEqualTo(ImmutableList.of(
+                Arrays.asList("CREATE TABLE users (id uuid PRIMARY KEY, name text)",
+                        "CREATE TYPE address (street text, city text)",
+                        "CREATE TABLE groups (id uuid PRIMARY KEY, name text)"),
+                Arrays.asList("CREATE INDEX ON users (name)",
+                        "CREATE TABLE places (id uuid PRIMARY KEY, address frozen<address>)",
+                        "INSERT INTO groups (id, name) VALUES (uuid(), 'admins')"),
+                Collections.singletonList("ALTER TABLE groups ADD description text")));
+    }
+
+    @Test
+    public void comparesQuotedNamesCaseSensitively() throws Exception {
+        final List<List<SchemaMigrator.Step>> batches = SchemaMigrator.plan(Collections.singletonList(
+                Migration.parse("V1__users.cql", "CREATE TABLE \"Users\" (id uuid PRIMARY KEY);"
+                        + "CREATE TABLE users (id uuid PRIMARY KEY);"
+                        + "CREATE INDEX ON Users (id);")));
+
+        assertThat(batches).hasSize(2);
+        assertThat(batches.get(1)).hasSize(1);
+    }
+
+    @Test
+    public void appliesPendingMigrationsAndAwaitsAgreementOncePerBatch() throws Exception {
+        applied.add(row("1", Migration.parse("V1__users.cql", "CREATE TABLE users (id uuid PRIMARY KEY);")));
+
+        final List<Migration> migrated = migrator().migrate(Arrays.asList(
+                Migration.parse("V1__users.cql", "CREATE TABLE users (id uuid PRIMARY KEY);"),
+                Migration.parse("V2__groups.cql", "CREATE TABLE groups (id uuid PRIMARY KEY);"),
+                Migration.parse("V3__places.cql", "CREATE TABLE places (id uuid PRIMARY KEY);"
+                        + "CREATE INDEX ON places (id);")));
+
+        assertThat(migrated.stream().map(Migration::getVersion).collect(Collectors.toList()))
+                .containsExactly("2", "3");
+        assertThat(executed).containsExactly(
+                "CREATE TABLE groups (id uuid PRIMARY KEY)",
+                "CREATE TABLE places (id uuid PRIMARY KEY)",
+                "CREATE INDEX ON places (id)");
+        verify(session).execute("CREATE TABLE IF NOT EXISTS \"ks\".\"schema_migrations\""
+                + " (version text PRIMARY KEY, description text, checksum bigint, applied_at timestamp)");
+        // once for the tracking table, and once for each of the two batches
+        verify(metadata, times(3)).checkSchemaAgreement();
+        verify(session).execute(eq(INSERT), eq("2"), eq("groups"), anyLong(), any(Date.class));
+        verify(session).execute(eq(INSERT), eq("3"), eq("places"), anyLong(), any(Date.class));
+        verify(session, never()).execute(eq(INSERT), eq("1"), anyString(), anyLong(), any(Date.class));
+    }
+
+    @Test
+    public void recordsMigrationsAppliedBeforeAFailure() throws Exception {
+        when(session.executeAsync("CREATE INDEX ON places (id)"))
+                .thenReturn(failed(new InvalidQueryException("Undefined column name id")));
+
+        try {
+            migrator().migrate(Arrays.asList(
+                    Migration.parse("V1__places.cql", "CREATE TABLE places (id uuid PRIMARY KEY);"),
+                    Migration.parse("V2__index.cql", "CREATE INDEX ON places (id);")));
+            fail("expected the migration to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(InvalidQueryException.class);
+        }
+
+        verify(session).execute(eq(INSERT), eq("1"), eq("places"), anyLong(), any(Date.class));
+        verify(session, never()).execute(eq(INSERT), eq("2"), anyString(), anyLong(), any(Date.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsMigrationsChangedSinceTheyWereApplied() throws Exception {
+        applied.add(row("1", Migration.parse("V1__users.cql", "CREATE TABLE users (id uuid PRIMARY KEY);")));
+
+        migrator().migrate(Collections.singletonList(
+                Migration.parse("V1__users.cql", "CREATE TABLE users (id uuid PRIMARY KEY, name text);")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsWhenTheSchemaDoesNotAgreeInTime() throws Exception {
+        when(metadata.checkSchemaAgreement()).thenReturn(false);
+
+        new SchemaMigrator(session, "ks", "schema_migrations", 8, Duration.milliseconds(1), out())
+                .migrate(Collections.emptyList());
+    }
+
+    private SchemaMigrator migrator() {
+        return new SchemaMigrator(session, "ks", "schema_migrations", 8, Duration.seconds(1), out());
+    }
+
+    private static PrintStream out() {
+        return new PrintStream(new ByteArrayOutputStream());
+    }
+
+    private static List<List<String>> statements(List<List<SchemaMigrator.Step>> batches) {
+        return batches.stream()
+                .map(batch -> batch.stream().map(SchemaMigrator.Step::getStatement).collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+
+    private static Row row(String version, Migration migration) {
+        final Row row = mock(Row.class);
+        when(row.getString("version")).thenReturn(version);
+        when(row.getLong("checksum")).thenReturn(migration.getChecksum());
+        return row;
+    }
+
+    private static ResultSetFuture completed() {
+        final CompletedFuture future = new CompletedFuture();
+        future.set(mock(ResultSet.class));
+        return future;
+    }
+
+    private static ResultSetFuture failed(Throwable t) {
+        final CompletedFuture future = new CompletedFuture();
+        future.setException(t);
+        return future;
+    }
+
+    private static class CompletedFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+        @Override
+        public boolean set(ResultSet value) {
+            return super.set(value);
+        }
+
+        @Override
+        public boolean setException(Throwable throwable) {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            try {
+                return Uninterruptibles.getUninterruptibly(this);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+            return getUninterruptibly();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.cli;
+
+import io.dropwizard.Configuration;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class StressCommandTest {
+
+    @Test
+    public void parsesItsArguments() throws Exception {
+        final StressCommand<Configuration> command = new StressCommand<>(configuration -> null, Configuration.class);
+        final ArgumentParser parser = ArgumentParsers.newArgumentParser("app");
+        command.configure(parser.addSubparsers().addParser(command.getName()));
+
+        final Namespace namespace = parser.parseArgs(new String[]{
+                "cassandra-stress", "config.yml", "--rate", "2500", "--read-ratio", "0.9"});
+
+        assertThat(namespace.getString("file")).isEqualTo("config.yml");
+        assertThat(namespace.getDouble("rate")).isEqualTo(2500.0);
+        assertThat(namespace.getDouble("readRatio")).isEqualTo(0.9);
+        assertThat(namespace.getString("table")).isEqualTo("stress");
+        assertThat(namespace.getInt("duration")).isEqualTo(60);
+    }
+
+    @Test
+    public void parsesTheClusterOfAnApplicationWithSeveralClusters() throws Exception {
+        final StressCommand<Configuration> command = StressCommand.forClusters(configuration -> null,
+                Configuration.class);
+        final ArgumentParser parser = ArgumentParsers.newArgumentParser("app");
+        command.configure(parser.addSubparsers().addParser(command.getName()));
+
+        final Namespace namespace = parser.parseArgs(new String[]{
+                "cassandra-stress", "config.yml", "--cluster", "hot"});
+
+        assertThat(namespace.getString("cluster")).isEqualTo("hot");
+        assertThat(catchThrowable(() -> parser.parseArgs(new String[]{"cassandra-stress", "config.yml"})))
+                .isInstanceOf(ArgumentParserException.class);
+    }
+
+    @Test
+    public void formatsPercentilesInMilliseconds() throws Exception {
+        final Histogram histogram = new Histogram(3);
+        for (int i = 1; i <= 100; i++) {
+            histogram.recordValue(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertThat(StressCommand.percentiles(histogram))
+                .startsWith("p50 50.")
+                .contains(", p99.9 100.")
+                .contains(", max 100.");
+    }
+}
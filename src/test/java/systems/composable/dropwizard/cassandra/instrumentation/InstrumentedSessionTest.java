@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.instrumentation;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InstrumentedSessionTest {
+
+    private static final String PREFIX = "com.datastax.driver.core.Cluster.test-cluster.queries.";
+
+    private final Session delegate = mock(Session.class);
+    private final Cluster cluster = mock(Cluster.class);
+    private final MetricRegistry registry = new MetricRegistry();
+
+    @Before
+    public void setUp() throws Exception {
+        when(delegate.getCluster()).thenReturn(cluster);
+        when(cluster.getClusterName()).thenReturn("test-cluster");
+        when(delegate.executeAsync(any(Statement.class))).thenAnswer(invocation -> completed(mock(ResultSet.class)));
+    }
+
+    @Test
+    public void recordsATimerPerQueryShape() throws Exception {
+        final InstrumentedSession session = new InstrumentedSession(delegate, registry, 10, null);
+
+        session.execute("SELECT * FROM users WHERE id = 1");
+        session.execute("SELECT *  FROM users\n WHERE id = 2");
+        session.executeAsync(new SimpleStatement("SELECT * FROM users WHERE id = ?", 3)).get();
+
+        assertThat(session.size()).isEqualTo(1);
+        assertThat(registry.timer(name("SELECT * FROM users WHERE id = ?", "requests")).getCount()).isEqualTo(3);
+        assertThat(registry.meter(name("SELECT * FROM users WHERE id = ?", "errors")).getCount()).isZero();
+    }
+
+    @Test
+    public void marksErrorsOfFailedQueries() throws Exception {
+        when(delegate.executeAsync(any(Statement.class)))
+                .thenReturn(failed(new NoHostAvailableException(Collections.emptyMap())));
+        final InstrumentedSession session = new InstrumentedSession(delegate, registry, 10, null);
+
+        session.executeAsync("SELECT * FROM users");
+
+        assertThat(registry.timer(name("SELECT * FROM users", "requests")).getCount()).isEqualTo(1);
+        assertThat(registry.meter(name("SELECT * FROM users", "errors")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void worksOutTheShapeOfAPreparedStatementOnce() throws Exception {
+        final PreparedStatement prepared = mock(PreparedStatement.class);
+        when(prepared.getQueryString()).thenReturn("SELECT * FROM users\n WHERE id = ?");
+        final BoundStatement bound = mock(BoundStatement.class);
+        when(bound.preparedStatement()).thenReturn(prepared);
+        final InstrumentedSession session = new InstrumentedSession(delegate, registry, 10, null);
+
+        session.execute(bound);
+        session.execute(bound);
+
+        assertThat(registry.timer(name("SELECT * FROM users WHERE id = ?", "requests")).getCount()).isEqualTo(2);
+        verify(prepared, times(1)).getQueryString();
+    }
+
+    @Test
+    public void removesMetricsOfLeastRecentlyUsedShapes() throws Exception {
+        final InstrumentedSession session = new InstrumentedSession(delegate, registry, 1, null);
+
+        session.execute("SELECT * FROM users");
+        session.execute("SELECT * FROM groups");
+
+        assertThat(session.size()).isEqualTo(1);
+        assertThat(registry.getNames()).containsOnly(
+                name("SELECT * FROM groups", "requests"),
+                name("SELECT * FROM groups", "errors"));
+    }
+
+    @Test
+    public void reregistersMetricsOfShapesExecutedAgain() throws Exception {
+        final InstrumentedSession session = new InstrumentedSession(delegate, registry, 1, null);
+
+        session.execute("SELECT * FROM users");
+        session.execute("SELECT * FROM groups");
+        session.execute("SELECT * FROM users");
+
+        assertThat(registry.timer(name("SELECT * FROM users", "requests")).getCount()).isEqualTo(1);
+        assertThat(registry.getNames()).doesNotContain(name("SELECT * FROM groups", "requests"));
+    }
+
+    @Test
+    public void namesMetricsWithAHashOfTheShape() throws Exception {
+        final InstrumentedSession session = new InstrumentedSession(delegate, registry, 10, null);
+
+        session.execute("SELECT count(*) FROM ks.users WHERE name = 'O''Brien'");
+
+        assertThat(registry.getNames()).hasSize(2);
+        for (String name : registry.getNames()) {
+            assertThat(name).matches("\\Q" + PREFIX + "\\E[0-9a-f]{16}\\.(requests|errors)");
+        }
+        assertThat(InstrumentedSession.hash("SELECT count(*) FROM ks.users WHERE name = ?"))
+                .isNotEqualTo(InstrumentedSession.hash("SELECT count(*) FROM ks.groups WHERE name = ?"));
+    }
+
+    @Test
+    public void normalizesLiteralValues() throws Exception {
+        assertThat(InstrumentedSession.normalize(
+                "UPDATE ks.t1 SET name = 'O''Brien', score = -1.5e3\n WHERE id = 123e4567-e89b-12d3-a456-426655440000"))
+                .isEqualTo("UPDATE ks.t1 SET name = ?, score = ? WHERE id = ?");
+    }
+
+    private static String name(String shape, String metric) {
+        return PREFIX + InstrumentedSession.hash(shape) + "." + metric;
+    }
+
+    private static ResultSetFuture completed(ResultSet result) {
+        final CompletedFuture future = new CompletedFuture();
+        future.set(result);
+        return future;
+    }
+
+    private static ResultSetFuture failed(Throwable t) {
+        final CompletedFuture future = new CompletedFuture();
+        future.setException(t);
+        return future;
+    }
+
+    private static class CompletedFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+        @Override
+        public boolean set(ResultSet value) {
+            return super.set(value);
+        }
+
+        @Override
+        public boolean setException(Throwable throwable) {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            try {
+                return Uninterruptibles.getUninterruptibly(this);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+            return getUninterruptibly();
+        }
+    }
+}
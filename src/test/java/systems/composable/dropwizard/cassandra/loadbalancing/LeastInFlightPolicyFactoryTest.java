@@ -0,0 +1,26 @@
+package systems.composable.dropwizard.cassandra.loadbalancing;
+
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LeastInFlightPolicyFactoryTest {
+
+    private final LoadBalancingPolicyFactory subPolicyFactory = mock(LoadBalancingPolicyFactory.class);
+    private final LoadBalancingPolicy subPolicy = mock(LoadBalancingPolicy.class);
+
+    @Test
+    public void buildsPolicyWrappingSubPolicy() throws Exception {
+        when(subPolicyFactory.build()).thenReturn(subPolicy);
+        final LeastInFlightPolicyFactory factory = new LeastInFlightPolicyFactory();
+        factory.setSubPolicy(subPolicyFactory);
+
+        final LoadBalancingPolicy policy = factory.build();
+
+        assertThat(policy).isInstanceOf(LeastInFlightPolicy.class);
+        assertThat(((LeastInFlightPolicy) policy).getChildPolicy()).isSameAs(subPolicy);
+    }
+}
@@ -0,0 +1,79 @@
+package systems.composable.dropwizard.cassandra.loadbalancing;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import org.junit.Before;
+import org.junit.Test;
+import systems.composable.dropwizard.cassandra.SharedSession;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LeastInFlightPolicyTest {
+
+    private final LoadBalancingPolicy childPolicy = mock(LoadBalancingPolicy.class);
+    private final Cluster cluster = mock(Cluster.class);
+    private final Session session = mock(Session.class);
+    private final Session.State state = mock(Session.State.class);
+    private final Host busy = mock(Host.class);
+    private final Host idle = mock(Host.class);
+    private final Host remote = mock(Host.class);
+
+    private final SharedSession sharedSession = new SharedSession(cluster, null);
+    private final LeastInFlightPolicy policy = new LeastInFlightPolicy(childPolicy, 0, TimeUnit.MILLISECONDS);
+
+    @Before
+    public void setUp() throws Exception {
+        when(cluster.connectAsync()).thenReturn(Futures.immediateFuture(session));
+        when(session.getState()).thenReturn(state);
+        when(state.getConnectedHosts()).thenReturn(ImmutableList.of(busy, idle, remote));
+        when(state.getInFlightQueries(busy)).thenReturn(100);
+        when(state.getInFlightQueries(idle)).thenReturn(1);
+        when(state.getInFlightQueries(remote)).thenReturn(0);
+        for (Host host : ImmutableList.of(busy, idle, remote)) {
+            when(host.isUp()).thenReturn(true);
+        }
+        when(childPolicy.distance(busy)).thenReturn(HostDistance.LOCAL);
+        when(childPolicy.distance(idle)).thenReturn(HostDistance.LOCAL);
+        when(childPolicy.distance(remote)).thenReturn(HostDistance.REMOTE);
+        when(childPolicy.newQueryPlan(anyString(), any(Statement.class)))
+                .thenAnswer(invocation -> ImmutableList.of(busy, idle, remote).iterator());
+    }
+
+    @Test
+    public void usesChildPlanUntilSessionIsConnected() throws Exception {
+        policy.setSession(sharedSession);
+
+        assertThat(policy.newQueryPlan("ks", mock(Statement.class))).containsExactly(busy, idle, remote);
+    }
+
+    @Test
+    public void putsLessLoadedLocalHostFirst() throws Exception {
+        policy.setSession(sharedSession);
+        sharedSession.get();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(policy.newQueryPlan("ks", mock(Statement.class))).containsExactly(idle, busy, remote);
+        }
+    }
+
+    @Test
+    public void skipsHostsThatAreDown() throws Exception {
+        policy.setSession(sharedSession);
+        sharedSession.get();
+        when(idle.isUp()).thenReturn(false);
+
+        assertThat(policy.newQueryPlan("ks", mock(Statement.class))).containsExactly(busy, idle, remote);
+    }
+}
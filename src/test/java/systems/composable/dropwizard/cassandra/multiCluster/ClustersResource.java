@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.multiCluster;
+
+import com.datastax.driver.core.Session;
+import com.google.common.collect.ImmutableMap;
+import systems.composable.dropwizard.cassandra.CassandraCluster;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import java.util.Map;
+
+@Path("/clusters")
+@Produces(MediaType.APPLICATION_JSON)
+public class ClustersResource {
+
+    @Inject
+    @CassandraCluster("hot")
+    private Session hot;
+
+    @Inject
+    @CassandraCluster("cold")
+    private Session cold;
+
+    @GET
+    public Map<String, String> keyspaces() {
+        return ImmutableMap.of("hot", hot.getLoggedKeyspace(), "cold", cold.getLoggedKeyspace());
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.multiCluster;
+
+import com.google.common.io.Resources;
+import io.dropwizard.testing.junit.DropwizardAppRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.GenericType;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MultiBundleIntegrationTest {
+
+    @Rule
+    public final DropwizardAppRule<MultiBundleTestConfiguration> app =
+            new DropwizardAppRule<>(MultiBundleTestApp.class, Resources.getResource("multiCluster/multiBundle.yml").getPath());
+
+    @Test
+    public void registersEveryCluster() throws Exception {
+        assertThat(app.getEnvironment().healthChecks().getNames())
+                .contains("cassandra.hot-cluster")
+                .contains("cassandra.cold-cluster");
+    }
+
+    @Test
+    public void injectsTheSessionOfEachCluster() throws Exception {
+        final Map<String, String> keyspaces = ClientBuilder.newClient()
+                .target(String.format("http://localhost:%d/clusters", app.getLocalPort()))
+                .request()
+                .get(new GenericType<Map<String, String>>() {});
+
+        assertThat(keyspaces).containsEntry("hot", "system").containsEntry("cold", "system_auth");
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.multiCluster;
+
+import io.dropwizard.Application;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+import systems.composable.dropwizard.cassandra.CassandraFactory;
+import systems.composable.dropwizard.cassandra.MultiCassandraBundle;
+
+import java.util.Map;
+
+public class MultiBundleTestApp extends Application<MultiBundleTestConfiguration> {
+
+    @Override
+    public void initialize(Bootstrap<MultiBundleTestConfiguration> bootstrap) {
+        bootstrap.addBundle(new MultiCassandraBundle<MultiBundleTestConfiguration>() {
+            @Override
+            public Map<String, CassandraFactory> getCassandraFactories(MultiBundleTestConfiguration configuration) {
+                return configuration.getCassandra();
+            }
+        });
+    }
+
+    @Override
+    public void run(MultiBundleTestConfiguration configuration, Environment environment) throws Exception {
+        environment.jersey().register(ClustersResource.class);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.multiCluster;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.Configuration;
+import org.hibernate.validator.constraints.NotEmpty;
+import systems.composable.dropwizard.cassandra.CassandraFactory;
+
+import javax.validation.Valid;
+import java.util.Map;
+
+public class MultiBundleTestConfiguration extends Configuration {
+
+    @Valid
+    @NotEmpty
+    private Map<String, CassandraFactory> cassandra;
+
+    @JsonProperty
+    public Map<String, CassandraFactory> getCassandra() {
+        return cassandra;
+    }
+
+    @JsonProperty
+    public void setCassandra(Map<String, CassandraFactory> cassandra) {
+        this.cassandra = cassandra;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.netty;
+
+import com.datastax.driver.core.NettyOptions;
+import io.dropwizard.util.Duration;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class NettyOptionsFactoryTest {
+
+    private final NettyOptionsFactory factory = new NettyOptionsFactory();
+
+    @Test
+    public void buildsOptionsOfEachClusterByDefault() throws Exception {
+        final NettyOptions options = factory.build();
+
+        assertThat(options).isInstanceOf(ConfiguredNettyOptions.class);
+        assertThat(factory.build()).isNotSameAs(options);
+    }
+
+    @Test
+    public void usesNioWhenConfigured() throws Exception {
+        factory.setTransport(TransportType.NIO);
+
+        assertThat(factory.build().channelClass()).isEqualTo(NioSocketChannel.class);
+    }
+
+    @Test
+    public void fallsBackToNioWithoutNativeTransport() throws Exception {
+        // netty-transport-native-epoll is not a dependency of this project
+        factory.setTransport(TransportType.EPOLL);
+
+        assertThat(factory.build().channelClass()).isEqualTo(NioSocketChannel.class);
+    }
+
+    @Test
+    public void setsTheConfiguredAllocatorOnEachBootstrap() throws Exception {
+        factory.getAllocator().setPooled(false);
+        factory.getAllocator().setPreferDirect(false);
+        final Bootstrap bootstrap = mock(Bootstrap.class);
+        final ArgumentCaptor<ByteBufAllocator> allocator = ArgumentCaptor.forClass(ByteBufAllocator.class);
+
+        factory.build().afterBootstrapInitialized(bootstrap);
+
+        verify(bootstrap).option(eq(ChannelOption.ALLOCATOR), allocator.capture());
+        assertThat(allocator.getValue()).isInstanceOf(UnpooledByteBufAllocator.class);
+        assertThat(allocator.getValue().buffer().isDirect()).isFalse();
+    }
+
+    @Test
+    public void sharesOptionsBetweenClustersWithTheSameConfiguration() throws Exception {
+        factory.setShared(true);
+        factory.setIoThreads(4);
+        final NettyOptionsFactory other = new NettyOptionsFactory();
+        other.setShared(true);
+        other.setIoThreads(4);
+        final NettyOptionsFactory different = new NettyOptionsFactory();
+        different.setShared(true);
+        different.setIoThreads(4);
+        different.setTimerTick(Duration.milliseconds(10));
+        final NettyOptionsFactory differentAllocator = new NettyOptionsFactory();
+        differentAllocator.setShared(true);
+        differentAllocator.setIoThreads(4);
+        differentAllocator.getAllocator().setDirectArenas(1);
+
+        final NettyOptions options = factory.build();
+
+        assertThat(options).isInstanceOf(SharedNettyOptions.class);
+        assertThat(other.build()).isSameAs(options);
+        assertThat(different.build()).isNotSameAs(options);
+        assertThat(differentAllocator.build()).isNotSameAs(options);
+    }
+}
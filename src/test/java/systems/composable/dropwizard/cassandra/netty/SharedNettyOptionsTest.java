@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.netty;
+
+import com.datastax.driver.core.NettyOptions;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.Timer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ThreadFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class SharedNettyOptionsTest {
+
+    private final NettyOptions delegate = mock(NettyOptions.class);
+    private final EventLoopGroup eventLoopGroup = mock(EventLoopGroup.class);
+    private final Timer timer = mock(Timer.class);
+    private final ThreadFactory threadFactory = mock(ThreadFactory.class);
+    private final SharedNettyOptions options = new SharedNettyOptions(delegate);
+
+    @Before
+    public void setUp() throws Exception {
+        when(delegate.eventLoopGroup(any(ThreadFactory.class))).thenReturn(eventLoopGroup);
+        when(delegate.timer(any(ThreadFactory.class))).thenReturn(timer);
+    }
+
+    @Test
+    public void sharesEventLoopGroupUntilLastClusterCloses() throws Exception {
+        assertThat(options.eventLoopGroup(threadFactory)).isSameAs(eventLoopGroup);
+        assertThat(options.eventLoopGroup(threadFactory)).isSameAs(eventLoopGroup);
+        verify(delegate, times(1)).eventLoopGroup(any(ThreadFactory.class));
+
+        options.onClusterClose(eventLoopGroup);
+        verify(delegate, never()).onClusterClose(eventLoopGroup);
+
+        options.onClusterClose(eventLoopGroup);
+        verify(delegate).onClusterClose(eventLoopGroup);
+    }
+
+    @Test
+    public void sharesTimerUntilLastClusterCloses() throws Exception {
+        assertThat(options.timer(threadFactory)).isSameAs(timer);
+        assertThat(options.timer(threadFactory)).isSameAs(timer);
+        verify(delegate, times(1)).timer(any(ThreadFactory.class));
+
+        options.onClusterClose(timer);
+        verify(delegate, never()).onClusterClose(timer);
+
+        options.onClusterClose(timer);
+        verify(delegate).onClusterClose(timer);
+    }
+
+    @Test
+    public void createsNewEventLoopGroupForClustersAfterTheLastOneClosed() throws Exception {
+        options.onClusterClose(options.eventLoopGroup(threadFactory));
+        options.eventLoopGroup(threadFactory);
+
+        verify(delegate, times(2)).eventLoopGroup(any(ThreadFactory.class));
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package systems.composable.dropwizard.cassandra.paging;
+
+import io.dropwizard.jersey.validation.Validators;
+import org.junit.Test;
+
+import javax.validation.Validator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PagingCursorsFactoryTest {
+
+    private final Validator validator = Validators.newValidator();
+    private final PagingCursorsFactory factory = new PagingCursorsFactory();
+
+    @Test
+    public void generatesAKeyWithoutASecret() throws Exception {
+        assertThat(validator.validate(factory)).isEmpty();
+    }
+
+    @Test
+    public void acceptsSecretsAsLongAsTheGeneratedKey() throws Exception {
+        factory.setSecret("0123456789abcdef0123456789abcdef");
+
+        assertThat(validator.validate(factory)).isEmpty();
+    }
+
+    @Test
+    public void rejectsShortSecrets() throws Exception {
+        factory.setSecret("changeme");
+
+        assertThat(validator.validate(factory)).hasSize(1);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.paging;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.CodecRegistry;
+import com.datastax.driver.core.Configuration;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.PagingState;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.PagingStateException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PagingCursorsTest {
+
+    private final Session session = mock(Session.class);
+    private final PagingCursors cursors = new PagingCursors(() -> session, key("secret"));
+    private final PagingState pagingState = pagingState();
+
+    @Before
+    public void setUp() throws Exception {
+        final Cluster cluster = mock(Cluster.class);
+        when(session.getCluster()).thenReturn(cluster);
+        when(cluster.getConfiguration()).thenReturn(Configuration.builder().build());
+    }
+
+    @Test
+    public void decodesTheCursorsItEncodes() throws Exception {
+        final String cursor = cursors.encode(pagingState);
+
+        assertThat(cursor).matches("[A-Za-z0-9_-]+");
+        assertThat(cursors.decode(cursor).toBytes()).isEqualTo(pagingState.toBytes());
+    }
+
+    @Test
+    public void encodesTheEndOfResultsAsNull() throws Exception {
+        assertThat(cursors.encode(null)).isNull();
+    }
+
+    @Test
+    public void rejectsAlteredCursors() throws Exception {
+        final char[] cursor = cursors.encode(pagingState).toCharArray();
+        cursor[4] = (cursor[4] == 'A') ? 'B' : 'A';
+
+        assertThatThrownBy(() -> cursors.decode(new String(cursor))).isInstanceOf(PagingStateException.class);
+    }
+
+    @Test
+    public void rejectsCursorsSignedWithAnotherKey() throws Exception {
+        final String cursor = new PagingCursors(() -> session, key("other")).encode(pagingState);
+
+        assertThatThrownBy(() -> cursors.decode(cursor)).isInstanceOf(PagingStateException.class);
+    }
+
+    @Test
+    public void rejectsMalformedCursors() throws Exception {
+        assertThatThrownBy(() -> cursors.decode("not a cursor")).isInstanceOf(PagingStateException.class);
+        assertThatThrownBy(() -> cursors.decode("AAAA")).isInstanceOf(PagingStateException.class);
+    }
+
+    @Test
+    public void readsOnePageAndReturnsTheCursorToTheNext() throws Exception {
+        final Statement statement = mock(Statement.class);
+        final ResultSet resultSet = resultSet(pagingState, "a", "b");
+        when(session.execute(statement)).thenReturn(resultSet);
+
+        final Page<String> page = cursors.page(statement, null, 2, row -> row.getString(0));
+
+        verify(statement).setFetchSize(2);
+        assertThat(page.getItems()).containsExactly("a", "b");
+        assertThat(page.getNext()).isEqualTo(cursors.encode(pagingState));
+    }
+
+    @Test
+    public void resumesFromTheCursor() throws Exception {
+        final Statement statement = mock(Statement.class);
+        final ResultSet resultSet = resultSet(null, "c");
+        when(session.execute(statement)).thenReturn(resultSet);
+
+        final Page<String> page = cursors.page(statement, cursors.encode(pagingState), 2, row -> row.getString(0));
+
+        verify(statement).setPagingState(any(PagingState.class), any(CodecRegistry.class));
+        assertThat(page.getItems()).containsExactly("c");
+        assertThat(page.getNext()).isNull();
+    }
+
+    private static ResultSet resultSet(PagingState next, String... values) {
+        final ResultSet resultSet = mock(ResultSet.class);
+        final ExecutionInfo info = mock(ExecutionInfo.class);
+        when(info.getPagingState()).thenReturn(next);
+        when(resultSet.getExecutionInfo()).thenReturn(info);
+        when(resultSet.getAvailableWithoutFetching()).thenReturn(values.length);
+
+        Row first = null;
+        final Row[] rest = new Row[Math.max(0, values.length - 1)];
+        for (int i = 0; i < values.length; i++) {
+            final Row row = mock(Row.class);
+            when(row.getString(0)).thenReturn(values[i]);
+            if (i == 0) {
+                first = row;
+            } else {
+                rest[i - 1] = row;
+            }
+        }
+        when(resultSet.one()).thenReturn(first, rest);
+        return resultSet;
+    }
+
+    private static PagingState pagingState() {
+        // the serialized form: size of raw state, size of hash, raw state, hash, protocol version
+        final ByteBuffer bytes = ByteBuffer.allocate(2 + 2 + 3 + 16 + 2);
+        bytes.putShort((short) 3).putShort((short) 16).put(new byte[]{1, 2, 3}).put(new byte[16]).putShort((short) 4);
+        return PagingState.fromBytes(bytes.array());
+    }
+
+    private static byte[] key(String secret) {
+        return secret.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.pooling;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Configuration;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.datastax.driver.core.policies.Policies;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import io.dropwizard.util.Duration;
+import org.junit.Before;
+import org.junit.Test;
+import systems.composable.dropwizard.cassandra.SharedSession;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AdaptivePoolingControllerTest {
+
+    private static final String PREFIX = "com.datastax.driver.core.Cluster.test-cluster.pooling.local.";
+
+    private final Cluster cluster = mock(Cluster.class);
+    private final Session session = mock(Session.class);
+    private final Session.State state = mock(Session.State.class);
+    private final LoadBalancingPolicy policy = mock(LoadBalancingPolicy.class);
+    private final Host local = mock(Host.class);
+    private final Host remote = mock(Host.class);
+    private final PoolingOptions options = new PoolingOptions()
+            .setConnectionsPerHost(HostDistance.LOCAL, 1, 1)
+            .setConnectionsPerHost(HostDistance.REMOTE, 1, 1)
+            .setMaxRequestsPerConnection(HostDistance.LOCAL, 100)
+            .setMaxRequestsPerConnection(HostDistance.REMOTE, 100);
+    private final MetricRegistry registry = new MetricRegistry();
+
+    private AdaptivePoolingController controller;
+
+    @Before
+    public void setUp() throws Exception {
+        when(cluster.getClusterName()).thenReturn("test-cluster");
+        when(cluster.getConfiguration()).thenReturn(Configuration.builder()
+                .withPoolingOptions(options)
+                .withPolicies(Policies.builder().withLoadBalancingPolicy(policy).build())
+                .build());
+        when(cluster.connectAsync()).thenReturn(Futures.immediateFuture(session));
+        when(session.getState()).thenReturn(state);
+        when(state.getConnectedHosts()).thenReturn(ImmutableList.of(local, remote));
+        when(policy.distance(local)).thenReturn(HostDistance.LOCAL);
+        when(policy.distance(remote)).thenReturn(HostDistance.REMOTE);
+
+        final ConnectionBounds bounds = new ConnectionBounds();
+        bounds.setMinConnections(1);
+        bounds.setMaxConnections(4);
+        final SharedSession sharedSession = new SharedSession(cluster, null);
+        sharedSession.connectAsync();
+        controller = new AdaptivePoolingController(sharedSession, ImmutableMap.of(HostDistance.LOCAL, bounds),
+                0.75, 0.25, 2, Duration.seconds(10), registry);
+    }
+
+    @Test
+    public void raisesTheMaximumToTheUpperBound() throws Exception {
+        inFlight(50);
+
+        controller.sample();
+
+        assertThat(options.getCoreConnectionsPerHost(HostDistance.LOCAL)).isEqualTo(1);
+        assertThat(options.getMaxConnectionsPerHost(HostDistance.LOCAL)).isEqualTo(4);
+        assertThat(options.getMaxConnectionsPerHost(HostDistance.REMOTE)).isEqualTo(1);
+        assertThat(registry.getGauges().get(PREFIX + "utilization").getValue()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void adjustsPoolsWithoutRegisteringMetricsWhenDisabled() throws Exception {
+        final ConnectionBounds bounds = new ConnectionBounds();
+        bounds.setMinConnections(1);
+        bounds.setMaxConnections(4);
+        final SharedSession sharedSession = new SharedSession(cluster, null);
+        sharedSession.connectAsync();
+        final AdaptivePoolingController unmetered = new AdaptivePoolingController(sharedSession,
+                ImmutableMap.of(HostDistance.LOCAL, bounds), 0.75, 0.25, 2, Duration.seconds(10), null);
+        inFlight(50);
+
+        unmetered.sample();
+
+        assertThat(options.getMaxConnectionsPerHost(HostDistance.LOCAL)).isEqualTo(4);
+        assertThat(unmetered.getUtilization(HostDistance.LOCAL)).isEqualTo(0.5);
+    }
+
+    @Test
+    public void doublesCoreConnectionsAfterConsecutiveSamplesOfHighUtilization() throws Exception {
+        inFlight(90);
+        controller.sample();
+        inFlight(10);
+        controller.sample();
+        inFlight(90);
+        controller.sample();
+
+        assertThat(options.getCoreConnectionsPerHost(HostDistance.LOCAL)).isEqualTo(1);
+
+        controller.sample();
+
+        assertThat(options.getCoreConnectionsPerHost(HostDistance.LOCAL)).isEqualTo(2);
+        assertThat(registry.meter(PREFIX + "scale-ups").getCount()).isEqualTo(1);
+
+        controller.sample();
+        controller.sample();
+
+        // the same load is moderate for two connections
+        assertThat(options.getCoreConnectionsPerHost(HostDistance.LOCAL)).isEqualTo(2);
+
+        inFlight(180);
+        controller.sample();
+        controller.sample();
+
+        assertThat(options.getCoreConnectionsPerHost(HostDistance.LOCAL)).isEqualTo(4);
+    }
+
+    @Test
+    public void removesCoreConnectionsAfterConsecutiveSamplesOfLowUtilization() throws Exception {
+        options.setConnectionsPerHost(HostDistance.LOCAL, 3, 4);
+        inFlight(60);
+
+        controller.sample();
+        controller.sample();
+
+        assertThat(options.getCoreConnectionsPerHost(HostDistance.LOCAL)).isEqualTo(2);
+        assertThat(registry.meter(PREFIX + "scale-downs").getCount()).isEqualTo(1);
+
+        controller.sample();
+        controller.sample();
+
+        // one fewer connection would be highly utilized
+        assertThat(options.getCoreConnectionsPerHost(HostDistance.LOCAL)).isEqualTo(2);
+    }
+
+    @Test
+    public void suspendsAdjustmentWhenOverridden() throws Exception {
+        controller.override(HostDistance.LOCAL, 2, 6, 50, null);
+        inFlight(0);
+
+        controller.sample();
+        controller.sample();
+
+        assertThat(controller.isAdaptive(HostDistance.LOCAL)).isFalse();
+        assertThat(options.getCoreConnectionsPerHost(HostDistance.LOCAL)).isEqualTo(2);
+        assertThat(options.getMaxConnectionsPerHost(HostDistance.LOCAL)).isEqualTo(6);
+        assertThat(options.getMaxRequestsPerConnection(HostDistance.LOCAL)).isEqualTo(50);
+
+        controller.setAdaptive(HostDistance.LOCAL, true);
+        controller.sample();
+        controller.sample();
+
+        assertThat(options.getCoreConnectionsPerHost(HostDistance.LOCAL)).isEqualTo(1);
+        assertThat(options.getMaxConnectionsPerHost(HostDistance.LOCAL)).isEqualTo(4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotResumeDistancesWithoutBounds() throws Exception {
+        controller.setAdaptive(HostDistance.REMOTE, true);
+    }
+
+    private void inFlight(int requests) {
+        when(state.getInFlightQueries(local)).thenReturn(requests);
+        when(state.getInFlightQueries(remote)).thenReturn(requests);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.pooling;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.BusyConnectionException;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.ReadTimeoutException;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PoolMetricsSessionTest {
+
+    private static final InetSocketAddress HOST_A = new InetSocketAddress("10.0.0.1", 9042);
+    private static final InetSocketAddress HOST_B = new InetSocketAddress("10.0.0.2", 9042);
+    private static final InetSocketAddress HOST_C = new InetSocketAddress("10.0.0.3", 9042);
+
+    private final Session delegate = mock(Session.class);
+    private final Histogram borrowWait = new Histogram(new ExponentiallyDecayingReservoir());
+    private final Meter busyRejections = new Meter();
+    private final PoolMetricsSession session = new PoolMetricsSession(delegate, borrowWait, busyRejections);
+
+    @Test
+    public void recordsTheTimeToExecuteEachRequest() throws Exception {
+        when(delegate.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            Thread.sleep(5);
+            return completed(mock(ResultSet.class));
+        });
+
+        session.execute("SELECT * FROM users");
+        session.executeAsync(new SimpleStatement("SELECT * FROM groups"));
+
+        assertThat(borrowWait.getCount()).isEqualTo(2);
+        assertThat(borrowWait.getSnapshot().getMin()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toMicros(5));
+        assertThat(busyRejections.getCount()).isZero();
+    }
+
+    @Test
+    public void marksARejectionForEachBusyHost() throws Exception {
+        when(delegate.executeAsync(any(Statement.class))).thenReturn(failed(new NoHostAvailableException(
+                ImmutableMap.of(
+                        HOST_A, new DriverException("Timeout while trying to acquire available connection",
+                                new TimeoutException("All connections are busy")),
+                        HOST_B, new BusyConnectionException(HOST_B),
+                        HOST_C, new DriverException("Unexpected error")))));
+
+        session.executeAsync("SELECT * FROM users");
+
+        assertThat(busyRejections.getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void ignoresOtherFailures() throws Exception {
+        when(delegate.executeAsync(any(Statement.class))).thenReturn(failed(
+                new ReadTimeoutException(HOST_A, ConsistencyLevel.ONE, 0, 1, false)));
+
+        session.executeAsync("SELECT * FROM users");
+
+        assertThat(busyRejections.getCount()).isZero();
+    }
+
+    private static ResultSetFuture completed(ResultSet result) {
+        final CompletedFuture future = new CompletedFuture();
+        future.set(result);
+        return future;
+    }
+
+    private static ResultSetFuture failed(Throwable t) {
+        final CompletedFuture future = new CompletedFuture();
+        future.setException(t);
+        return future;
+    }
+
+    private static class CompletedFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+        @Override
+        public boolean set(ResultSet value) {
+            return super.set(value);
+        }
+
+        @Override
+        public boolean setException(Throwable throwable) {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            try {
+                return Uninterruptibles.getUninterruptibly(this);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+            return getUninterruptibly();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.pooling;
+
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.PoolingOptions;
+import com.google.common.collect.ImmutableMultimap;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PoolingOptionsTaskTest {
+
+    private final AdaptivePoolingController controller = mock(AdaptivePoolingController.class);
+    private final StringWriter output = new StringWriter();
+
+    private PoolingOptionsTask task;
+
+    @Before
+    public void setUp() throws Exception {
+        when(controller.getClusterName()).thenReturn("test-cluster");
+        when(controller.getPoolingOptions()).thenReturn(new PoolingOptions()
+                .setConnectionsPerHost(HostDistance.LOCAL, 2, 8)
+                .setConnectionsPerHost(HostDistance.REMOTE, 1, 1)
+                .setMaxRequestsPerConnection(HostDistance.LOCAL, 1024)
+                .setMaxRequestsPerConnection(HostDistance.REMOTE, 256)
+                .setNewConnectionThreshold(HostDistance.LOCAL, 800)
+                .setNewConnectionThreshold(HostDistance.REMOTE, 200));
+        when(controller.getUtilization(HostDistance.LOCAL)).thenReturn(0.5);
+        when(controller.isAdaptive(HostDistance.LOCAL)).thenReturn(true);
+
+        task = new PoolingOptionsTask(controller);
+    }
+
+    @Test
+    public void isNamedAfterTheCluster() throws Exception {
+        assertThat(task.getName()).isEqualTo("cassandra-pooling.test-cluster");
+    }
+
+    @Test
+    public void printsThePoolingOptionsOfEachDistance() throws Exception {
+        task.execute(ImmutableMultimap.of(), new PrintWriter(output));
+
+        assertThat(output.toString()).contains(
+                "local: coreConnections=2, maxConnections=8, maxRequestsPerConnection=1024, "
+                        + "newConnectionThreshold=800, utilization=0.50, adaptive=true",
+                "remote: coreConnections=1, maxConnections=1, maxRequestsPerConnection=256, "
+                        + "newConnectionThreshold=200, utilization=0.00, adaptive=false");
+    }
+
+    @Test
+    public void overridesThePoolingOptionsOfADistance() throws Exception {
+        task.execute(ImmutableMultimap.of("distance", "local", "coreConnections", "4"), new PrintWriter(output));
+
+        verify(controller).override(HostDistance.LOCAL, 4, null, null, null);
+    }
+
+    @Test
+    public void resumesAdjustmentOfADistance() throws Exception {
+        task.execute(ImmutableMultimap.of("distance", "remote", "adaptive", "true"), new PrintWriter(output));
+
+        verify(controller).setAdaptive(HostDistance.REMOTE, true);
+    }
+
+    @Test
+    public void requiresADistanceToOverride() throws Exception {
+        task.execute(ImmutableMultimap.of("coreConnections", "4"), new PrintWriter(output));
+
+        assertThat(output.toString()).startsWith("Bad request: A distance - local or remote - is required");
+        verify(controller, never()).override(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void reportsInvalidParametersWithoutOverridingAnything() throws Exception {
+        task.execute(ImmutableMultimap.of("distance", "nearby", "coreConnections", "4"), new PrintWriter(output));
+        task.execute(ImmutableMultimap.of("distance", "local", "maxConnections", "lots"), new PrintWriter(output));
+        task.execute(ImmutableMultimap.of("distance", "local", "maxConnections", "0"), new PrintWriter(output));
+        task.execute(ImmutableMultimap.of("distance", "local", "adaptive", "yes"), new PrintWriter(output));
+
+        assertThat(output.toString()).containsSequence(
+                "Bad request: Unknown distance 'nearby', expected local or remote",
+                "Bad request: maxConnections must be an integer of at least 1, not 'lots'",
+                "Bad request: maxConnections must be an integer of at least 1, not '0'",
+                "Bad request: adaptive must be true or false, not 'yes'");
+        verify(controller, never()).override(any(), any(), any(), any(), any());
+        verify(controller, never()).setAdaptive(any(), anyBoolean());
+    }
+}
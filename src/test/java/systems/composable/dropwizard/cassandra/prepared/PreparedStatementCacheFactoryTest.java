@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.prepared;
+
+import com.datastax.driver.core.Session;
+import io.dropwizard.util.Duration;
+import org.junit.Test;
+
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class PreparedStatementCacheFactoryTest {
+
+    @SuppressWarnings("unchecked")
+    private final Supplier<Session> session = mock(Supplier.class);
+
+    @Test
+    public void buildsAnEmptyCacheWithoutConnecting() throws Exception {
+        final PreparedStatementCacheFactory factory = new PreparedStatementCacheFactory();
+        factory.setMaximumSize(10);
+        factory.setExpireAfterAccess(Duration.minutes(5));
+
+        final PreparedStatementCache cache = factory.build(session);
+
+        assertThat(cache.size()).isZero();
+        assertThat(cache.getMetrics()).containsOnlyKeys("hits", "misses", "evictions", "size");
+        verifyZeroInteractions(session);
+    }
+}
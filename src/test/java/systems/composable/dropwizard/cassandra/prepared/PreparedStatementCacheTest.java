@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.prepared;
+
+import com.codahale.metrics.Gauge;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.exceptions.SyntaxError;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PreparedStatementCacheTest {
+
+    private final Session session = mock(Session.class);
+    private final PreparedStatement prepared = mock(PreparedStatement.class);
+    private final PreparedStatementCache cache = new PreparedStatementCache(() -> session, 2, null);
+
+    @Before
+    public void setUp() throws Exception {
+        when(session.getLoggedKeyspace()).thenReturn("ks");
+        when(session.prepareAsync(anyString())).thenReturn(Futures.immediateFuture(prepared));
+    }
+
+    @Test
+    public void preparesEachQueryOnlyOnce() throws Exception {
+        assertThat(cache.prepare("SELECT * FROM t")).isSameAs(prepared);
+        assertThat(cache.prepare("SELECT * FROM t")).isSameAs(prepared);
+
+        verify(session, times(1)).prepareAsync("SELECT * FROM t");
+        assertThat(gauge("hits")).isEqualTo(1L);
+        assertThat(gauge("misses")).isEqualTo(1L);
+    }
+
+    @Test
+    public void keysStatementsByKeyspace() throws Exception {
+        when(session.prepareAsync(any(SimpleStatement.class))).thenReturn(Futures.immediateFuture(prepared));
+
+        cache.prepare("SELECT * FROM t");
+        cache.prepare(new SimpleStatement("SELECT * FROM t").setKeyspace("other"));
+
+        verify(session).prepareAsync("SELECT * FROM t");
+        verify(session).prepareAsync(any(SimpleStatement.class));
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void doesNotCacheFailedPreparations() throws Exception {
+        final SyntaxError error = new SyntaxError(new InetSocketAddress(9042), "bad query");
+        when(session.prepareAsync("SELEKT")).thenReturn(Futures.immediateFailedFuture(error));
+
+        try {
+            cache.prepare("SELEKT");
+            fail("expected a SyntaxError");
+        } catch (SyntaxError e) {
+            assertThat(e).hasMessage("bad query");
+        }
+
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void evictsBeyondMaximumSize() throws Exception {
+        cache.prepare("SELECT a FROM t");
+        cache.prepare("SELECT b FROM t");
+        cache.prepare("SELECT c FROM t");
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(gauge("evictions")).isEqualTo(1L);
+    }
+
+    @Test
+    public void sharesConcurrentPreparationsOfTheSameQuery() throws Exception {
+        final SettableFuture<PreparedStatement> pending = SettableFuture.create();
+        when(session.prepareAsync("SELECT * FROM slow")).thenReturn(pending);
+
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<ListenableFuture<PreparedStatement>>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.prepareAsync("SELECT * FROM slow");
+                }));
+            }
+            start.countDown();
+            pending.set(prepared);
+
+            for (Future<ListenableFuture<PreparedStatement>> result : results) {
+                assertThat(result.get().get()).isSameAs(prepared);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(session, times(1)).prepareAsync("SELECT * FROM slow");
+    }
+
+    private Object gauge(String name) {
+        return ((Gauge<?>) cache.getMetrics().get(name)).getValue();
+    }
+}
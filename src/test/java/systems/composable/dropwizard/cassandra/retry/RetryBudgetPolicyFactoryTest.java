@@ -0,0 +1,30 @@
+package systems.composable.dropwizard.cassandra.retry;
+
+import com.datastax.driver.core.policies.RetryPolicy;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class RetryBudgetPolicyFactoryTest {
+
+    private RetryPolicyFactory subPolicyFactory = mock(RetryPolicyFactory.class);
+    private RetryPolicy subPolicy = mock(RetryPolicy.class);
+
+    @Before
+    public void setUp() throws Exception {
+        when(subPolicyFactory.build()).thenReturn(subPolicy);
+    }
+
+    @Test
+    public void buildsChildPolicyWhenBuildingRetryBudgetPolicy() throws Exception {
+        final RetryBudgetPolicyFactory factory = new RetryBudgetPolicyFactory();
+        factory.setSubPolicy(subPolicyFactory);
+
+        final RetryPolicy policy = factory.build();
+
+        verify(subPolicyFactory).build();
+        assertThat(policy).isInstanceOf(RetryBudgetPolicy.class);
+    }
+}
@@ -0,0 +1,84 @@
+package systems.composable.dropwizard.cassandra.retry;
+
+import com.codahale.metrics.Meter;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.LatencyTracker;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.FallthroughRetryPolicy;
+import com.datastax.driver.core.policies.RetryPolicy;
+import com.datastax.driver.core.policies.RetryPolicy.RetryDecision;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class RetryBudgetPolicyTest {
+
+    private final Cluster cluster = mock(Cluster.class);
+    private final Host host = mock(Host.class);
+    private final Statement statement = mock(Statement.class);
+    private final RetryPolicy childPolicy = mock(RetryPolicy.class);
+    private final RetryBudgetPolicy policy = new RetryBudgetPolicy(childPolicy, 0.1);
+
+    private LatencyTracker requests;
+
+    @Before
+    public void setUp() throws Exception {
+        when(childPolicy.onUnavailable(statement, ConsistencyLevel.QUORUM, 2, 1, 0))
+                .thenReturn(RetryDecision.tryNextHost(ConsistencyLevel.QUORUM));
+
+        policy.init(cluster);
+
+        final ArgumentCaptor<LatencyTracker> tracker = ArgumentCaptor.forClass(LatencyTracker.class);
+        verify(childPolicy).init(cluster);
+        verify(cluster).register(tracker.capture());
+        requests = tracker.getValue();
+    }
+
+    @Test
+    public void rethrowsUntilBudgetIsEarned() throws Exception {
+        sendRequests(9);
+        assertThat(unavailable().getType()).isEqualTo(RetryDecision.Type.RETHROW);
+
+        sendRequests(1);
+        assertThat(unavailable().getType()).isEqualTo(RetryDecision.Type.RETRY);
+        assertThat(meter("retries.budget-exhausted").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void spendsBudgetOnEachRetry() throws Exception {
+        sendRequests(20);
+
+        assertThat(unavailable().getType()).isEqualTo(RetryDecision.Type.RETRY);
+        assertThat(unavailable().getType()).isEqualTo(RetryDecision.Type.RETRY);
+        assertThat(unavailable().getType()).isEqualTo(RetryDecision.Type.RETHROW);
+        assertThat(policy.getMetrics().get("retries.budget")).hasFieldOrPropertyWithValue("value", 0L);
+    }
+
+    @Test
+    public void neverSpendsBudgetOnDecisionsNotToRetry() throws Exception {
+        final RetryBudgetPolicy fallthrough = new RetryBudgetPolicy(FallthroughRetryPolicy.INSTANCE, 0.1);
+
+        assertThat(fallthrough.onUnavailable(statement, ConsistencyLevel.QUORUM, 2, 1, 0).getType())
+                .isEqualTo(RetryDecision.Type.RETHROW);
+        assertThat(((Meter) fallthrough.getMetrics().get("retries.budget-exhausted")).getCount()).isZero();
+    }
+
+    private void sendRequests(int count) {
+        for (int i = 0; i < count; i++) {
+            requests.update(host, statement, null, 1000000L);
+        }
+    }
+
+    private RetryDecision unavailable() {
+        return policy.onUnavailable(statement, ConsistencyLevel.QUORUM, 2, 1, 0);
+    }
+
+    private Meter meter(String name) {
+        return (Meter) policy.getMetrics().get(name);
+    }
+}
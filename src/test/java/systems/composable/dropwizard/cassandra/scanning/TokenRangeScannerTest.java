@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.scanning;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.TestTokens;
+import com.datastax.driver.core.TokenRange;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TokenRangeScannerTest {
+
+    private final Session session = mock(Session.class);
+    private final Cluster cluster = mock(Cluster.class);
+    private final Metadata metadata = mock(Metadata.class);
+    private final KeyspaceMetadata keyspace = mock(KeyspaceMetadata.class);
+    private final TableMetadata table = mock(TableMetadata.class);
+    private final ColumnMetadata column = mock(ColumnMetadata.class);
+
+    @Before
+    public void setUp() throws Exception {
+        when(session.getCluster()).thenReturn(cluster);
+        when(cluster.getMetadata()).thenReturn(metadata);
+        when(metadata.getKeyspace("ks")).thenReturn(keyspace);
+        when(keyspace.getTable("users")).thenReturn(table);
+        when(table.getPartitionKey()).thenReturn(Collections.singletonList(column));
+        when(column.getName()).thenReturn("id");
+        when(metadata.newToken(any(ByteBuffer.class)))
+                .thenAnswer(invocation -> TestTokens.hash((ByteBuffer) invocation.getArguments()[0]));
+        when(metadata.getTokenRanges()).thenReturn(ImmutableSet.of(
+                TestTokens.range(Long.MIN_VALUE / 2, 0),
+                TestTokens.range(0, Long.MIN_VALUE / 2)));
+    }
+
+    @Test
+    public void scansEveryRangeOfTheRing() throws Exception {
+        final Queue<Row> rows = new ConcurrentLinkedQueue<>();
+        when(session.execute(any(Statement.class))).thenAnswer(invocation -> page(3, null));
+
+        final long scanned = new TokenRangeScanner(session, 2, 2, 100, 0)
+                .scan("ks", "users", rows::add)
+                .get(5, TimeUnit.SECONDS);
+
+        // each range is split into two, and the split wrapping around the ring unwrapped into two more
+        final ArgumentCaptor<Statement> statements = ArgumentCaptor.forClass(Statement.class);
+        verify(session, times(5)).execute(statements.capture());
+        assertThat(scanned).isEqualTo(15);
+        assertThat(rows).hasSize(15);
+
+        final List<TokenRange> queried = new ArrayList<>();
+        for (Statement statement : statements.getAllValues()) {
+            final SimpleStatement simple = (SimpleStatement) statement;
+            assertThat(simple.getQueryString())
+                    .isEqualTo("SELECT * FROM \"ks\".\"users\" WHERE token(\"id\") > ? AND token(\"id\") <= ?");
+            assertThat(simple.getKeyspace()).isEqualTo("ks");
+            assertThat(simple.getFetchSize()).isEqualTo(100);
+            queried.add(TestTokens.range((Long) simple.getObject(0), (Long) simple.getObject(1)));
+        }
+        assertThat(queried).doesNotHaveDuplicates().contains(
+                TestTokens.range(Long.MIN_VALUE / 2, Long.MIN_VALUE / 4),
+                TestTokens.range(Long.MIN_VALUE / 4, 0),
+                TestTokens.range(Long.MIN_VALUE, Long.MIN_VALUE / 2));
+    }
+
+    @Test
+    public void routesEachRangeToAReplica() throws Exception {
+        when(session.execute(any(Statement.class))).thenAnswer(invocation -> page(0, null));
+
+        new TokenRangeScanner(session, 1, 4, 100, 0).scan("ks", "users", row -> { }).get(5, TimeUnit.SECONDS);
+
+        final ArgumentCaptor<Statement> statements = ArgumentCaptor.forClass(Statement.class);
+        verify(session, atLeastOnce()).execute(statements.capture());
+        for (Statement statement : statements.getAllValues()) {
+            final SimpleStatement simple = (SimpleStatement) statement;
+            final TokenRange range = TestTokens.range((Long) simple.getObject(0), (Long) simple.getObject(1));
+            final ByteBuffer routingKey = simple.getRoutingKey(ProtocolVersion.NEWEST_SUPPORTED, null);
+            assertThat(routingKey).isNotNull();
+            assertThat(range.contains(TestTokens.hash(routingKey))).isTrue();
+        }
+    }
+
+    @Test
+    public void resumesARangeFromItsLastPageAfterAFailure() throws Exception {
+        when(metadata.getTokenRanges()).thenReturn(ImmutableSet.of(TestTokens.range(Long.MIN_VALUE, Long.MIN_VALUE)));
+        final ResultSet first = page(2, new byte[]{1});
+        when(first.fetchMoreResults()).thenReturn(Futures.immediateFailedFuture(timedOut()));
+        final ResultSet resumed = page(1, null);
+        when(session.execute(any(Statement.class))).thenReturn(first, resumed);
+
+        final List<Row> rows = new ArrayList<>();
+        final long scanned = new TokenRangeScanner(session, 1, 1, 2, 1)
+                .scan("ks", "users", rows::add)
+                .get(5, TimeUnit.SECONDS);
+
+        verify(session, times(2)).execute(any(Statement.class));
+        assertThat(scanned).isEqualTo(3);
+        assertThat(rows).hasSize(3);
+    }
+
+    @Test
+    public void failsOnceARangeHasFailedTooManyTimes() throws Exception {
+        when(metadata.getTokenRanges()).thenReturn(ImmutableSet.of(TestTokens.range(Long.MIN_VALUE, Long.MIN_VALUE)));
+        when(session.execute(any(Statement.class))).thenThrow(timedOut());
+
+        try {
+            new TokenRangeScanner(session, 1, 1, 100, 2).scan("ks", "users", row -> { }).get(5, TimeUnit.SECONDS);
+            fail("expected the scan to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(ScanException.class)
+                    .hasCauseInstanceOf(OperationTimedOutException.class);
+        }
+        verify(session, times(3)).execute(any(Statement.class));
+    }
+
+    @Test
+    public void doesNotRetryInvalidQueries() throws Exception {
+        when(session.execute(any(Statement.class))).thenThrow(new InvalidQueryException("invalid"));
+
+        try {
+            new TokenRangeScanner(session, 1, 1, 100, 5).scan("ks", "users", row -> { }).get(5, TimeUnit.SECONDS);
+            fail("expected the scan to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).hasCauseInstanceOf(InvalidQueryException.class);
+        }
+        verify(session, times(1)).execute(any(Statement.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownTables() throws Exception {
+        new TokenRangeScanner(session, 1, 1, 100, 0).scan("ks", "groups", row -> { });
+    }
+
+    private static ResultSet page(int rows, byte[] pagingState) {
+        final ResultSet resultSet = mock(ResultSet.class);
+        final ExecutionInfo executionInfo = mock(ExecutionInfo.class);
+        when(resultSet.getAvailableWithoutFetching()).thenReturn(rows);
+        when(resultSet.one()).thenAnswer(invocation -> mock(Row.class));
+        when(resultSet.getExecutionInfo()).thenReturn(executionInfo);
+        when(executionInfo.getPagingStateUnsafe()).thenReturn(pagingState);
+        return resultSet;
+    }
+
+    private static OperationTimedOutException timedOut() {
+        return new OperationTimedOutException(new InetSocketAddress("127.0.0.1", 9042));
+    }
+}
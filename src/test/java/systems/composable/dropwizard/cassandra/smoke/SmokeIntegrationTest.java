@@ -49,6 +49,15 @@ public class SmokeIntegrationTest {
         return Arrays.asList(new Object[][] {
                 { "smoke/basic.yml" },
                 { "smoke/poolingOptions.yml" },
+                { "smoke/poolingOptions-adaptive.yml" },
+                { "smoke/preparedStatementCache.yml" },
+                { "smoke/pagingCursors.yml" },
+                { "smoke/queryMetrics.yml" },
+                { "smoke/warmUp.yml" },
+                { "smoke/nettyOptions.yml" },
+                { "smoke/throttler.yml" },
+                { "smoke/throttler-adaptive.yml" },
+                { "smoke/writeBatcher.yml" },
                 { "smoke/queryOptions.yml" },
                 { "smoke/socketOptions.yml" },
                 { "smoke/auth/authProvider-plainText.yml" },
@@ -56,6 +65,7 @@ public class SmokeIntegrationTest {
                 { "smoke/loadbalancing/loadBalancingPolicy-dcAwareRoundRobin.yml" },
                 { "smoke/loadbalancing/loadBalancingPolicy-errorAware.yml" },
                 { "smoke/loadbalancing/loadBalancingPolicy-latencyAware.yml" },
+                { "smoke/loadbalancing/loadBalancingPolicy-leastInFlight.yml" },
                 { "smoke/loadbalancing/loadBalancingPolicy-roundRobin.yml" },
                 { "smoke/loadbalancing/loadBalancingPolicy-tokenAware.yml" },
                 { "smoke/loadbalancing/loadBalancingPolicy-whiteList.yml" },
@@ -65,8 +75,10 @@ public class SmokeIntegrationTest {
                 { "smoke/retry/retryPolicy-downgradingConsistency.yml" },
                 { "smoke/retry/retryPolicy-fallthrough.yml" },
                 { "smoke/retry/retryPolicy-log.yml" },
+                { "smoke/retry/retryPolicy-budget.yml" },
                 { "smoke/speculativeexecution/speculativeExecutionPolicy-constant.yml" },
                 { "smoke/speculativeexecution/speculativeExecutionPolicy-none.yml" },
+                { "smoke/speculativeexecution/speculativeExecutionPolicy-percentile.yml" },
                 { "smoke/ssl/ssl-jdk.yml" },
                 { "smoke/ssl/ssl-netty.yml" }
         });
@@ -0,0 +1,77 @@
+package systems.composable.dropwizard.cassandra.speculativeexecution;
+
+import com.codahale.metrics.Meter;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.ConstantSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.SpeculativeExecutionPolicy.SpeculativeExecutionPlan;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class MeteredSpeculativeExecutionPolicyTest {
+
+    private final Host host = mock(Host.class);
+    private final Statement statement = mock(Statement.class);
+    private final MeteredSpeculativeExecutionPolicy policy =
+            new MeteredSpeculativeExecutionPolicy(new ConstantSpeculativeExecutionPolicy(100, 1), 0.1);
+
+    @Test
+    public void suppressesSpeculativeExecutionsUntilBudgetIsEarned() throws Exception {
+        for (int i = 0; i < 9; i++) {
+            assertThat(policy.newPlan("ks", statement).nextExecution(host)).isEqualTo(-1);
+        }
+
+        assertThat(policy.newPlan("ks", statement).nextExecution(host)).isEqualTo(100);
+        assertThat(meter("speculative-executions.suppressed").getCount()).isEqualTo(9);
+    }
+
+    @Test
+    public void spendsBudgetOnlyWhenSpeculativeExecutionsFire() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            policy.newPlan("ks", statement);
+        }
+
+        // scheduled, but answered before the speculative execution fired
+        assertThat(policy.newPlan("ks", statement).nextExecution(host)).isEqualTo(100);
+        assertThat(policy.newPlan("ks", statement).nextExecution(host)).isEqualTo(100);
+
+        final SpeculativeExecutionPlan plan = policy.newPlan("ks", statement);
+        assertThat(plan.nextExecution(host)).isEqualTo(100);
+        assertThat(plan.nextExecution(host)).isEqualTo(-1);
+        assertThat(meter("speculative-executions.fired").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void stopsSchedulingOnceBudgetIsSpent() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            policy.newPlan("ks", statement);
+        }
+
+        for (int i = 0; i < 3; i++) {
+            final SpeculativeExecutionPlan plan = policy.newPlan("ks", statement);
+            plan.nextExecution(host);
+            plan.nextExecution(host);
+        }
+
+        assertThat(policy.newPlan("ks", statement).nextExecution(host)).isEqualTo(-1);
+    }
+
+    @Test
+    public void metersWithoutLimitingWhenUncapped() throws Exception {
+        final MeteredSpeculativeExecutionPolicy uncapped =
+                new MeteredSpeculativeExecutionPolicy(new ConstantSpeculativeExecutionPolicy(100, 1));
+
+        final SpeculativeExecutionPlan plan = uncapped.newPlan("ks", statement);
+        assertThat(plan.nextExecution(host)).isEqualTo(100);
+        assertThat(plan.nextExecution(host)).isEqualTo(-1);
+
+        assertThat(uncapped.getMetrics()).containsOnlyKeys("speculative-executions.fired");
+        assertThat(((Meter) uncapped.getMetrics().get("speculative-executions.fired")).getCount()).isEqualTo(1);
+    }
+
+    private Meter meter(String name) {
+        return (Meter) policy.getMetrics().get(name);
+    }
+}
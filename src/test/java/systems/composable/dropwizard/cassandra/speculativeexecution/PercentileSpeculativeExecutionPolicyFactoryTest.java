@@ -0,0 +1,42 @@
+package systems.composable.dropwizard.cassandra.speculativeexecution;
+
+import com.datastax.driver.core.policies.SpeculativeExecutionPolicy;
+import io.dropwizard.util.Duration;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PercentileSpeculativeExecutionPolicyFactoryTest {
+
+    @Test
+    public void buildsPolicyWithConfiguredValues() throws Exception {
+        final PercentileSpeculativeExecutionPolicyFactory factory = new PercentileSpeculativeExecutionPolicyFactory();
+        factory.setPercentile(99.0);
+        factory.setMaxSpeculativeExecutions(2);
+        factory.setPerHost(false);
+        factory.setHighestTrackableLatency(Duration.seconds(5));
+        factory.setNumberOfSignificantValueDigits(2);
+        factory.setMinRecordedValues(50);
+        factory.setInterval(Duration.seconds(10));
+
+        final SpeculativeExecutionPolicy policy = factory.build();
+
+        assertThat(policy).isExactlyInstanceOf(MeteredSpeculativeExecutionPolicy.class);
+        assertThat(((MeteredSpeculativeExecutionPolicy) policy).getMetrics())
+                .containsOnlyKeys("speculative-executions.fired");
+    }
+
+    @Test
+    public void capsPolicyWhenMaxSpeculativeRatioIsConfigured() throws Exception {
+        final PercentileSpeculativeExecutionPolicyFactory factory = new PercentileSpeculativeExecutionPolicyFactory();
+        factory.setPercentile(99.0);
+        factory.setMaxSpeculativeExecutions(1);
+        factory.setMaxSpeculativeRatio(0.1);
+
+        final SpeculativeExecutionPolicy policy = factory.build();
+
+        assertThat(policy).isExactlyInstanceOf(MeteredSpeculativeExecutionPolicy.class);
+        assertThat(((MeteredSpeculativeExecutionPolicy) policy).getMetrics())
+                .containsKey("speculative-executions.suppressed");
+    }
+}
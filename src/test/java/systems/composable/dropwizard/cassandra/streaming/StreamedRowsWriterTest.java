@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.streaming;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.dropwizard.jackson.Jackson;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class StreamedRowsWriterTest {
+
+    private final StreamedRowsWriter writer = new StreamedRowsWriter(Jackson.newObjectMapper());
+
+    @Test
+    public void writesRowsAsAJsonArray() throws Exception {
+        final PagedResultSet resultSet = resultSet(rows(0, 2), rows(2, 2), rows(4, 1));
+
+        assertThat(write(resultSet)).isEqualTo("[\"row0\",\"row1\",\"row2\",\"row3\",\"row4\"]");
+    }
+
+    @Test
+    public void fetchesTheNextPageWhileWritingTheCurrentOne() throws Exception {
+        final PagedResultSet resultSet = resultSet(rows(0, 10), rows(10, 10), rows(20, 10));
+
+        write(resultSet);
+
+        assertThat(resultSet.prefetches).isEqualTo(2);
+        assertThat(resultSet.blockingFetches).isZero();
+    }
+
+    @Test
+    public void flushesAtTheEndOfEachPage() throws Exception {
+        final FlushRecordingStream output = new FlushRecordingStream();
+
+        write(resultSet(rows(0, 4), rows(4, 4), rows(8, 1)), output);
+
+        // and once more when the array has been closed
+        assertThat(output.flushed).containsExactly(
+                "[\"row0\",\"row1\",\"row2\",\"row3\"",
+                "[\"row0\",\"row1\",\"row2\",\"row3\",\"row4\",\"row5\",\"row6\",\"row7\"",
+                "[\"row0\",\"row1\",\"row2\",\"row3\",\"row4\",\"row5\",\"row6\",\"row7\",\"row8\"",
+                "[\"row0\",\"row1\",\"row2\",\"row3\",\"row4\",\"row5\",\"row6\",\"row7\",\"row8\"]");
+    }
+
+    @Test
+    public void writesEmptyResultSets() throws Exception {
+        assertThat(write(resultSet(Collections.emptyList()))).isEqualTo("[]");
+    }
+
+    @Test
+    public void onlyWritesStreamedRows() throws Exception {
+        assertThat(writer.isWriteable(StreamedRows.class, null, null, MediaType.APPLICATION_JSON_TYPE)).isTrue();
+        assertThat(writer.isWriteable(List.class, null, null, MediaType.APPLICATION_JSON_TYPE)).isFalse();
+    }
+
+    private String write(ResultSet resultSet) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        write(resultSet, output);
+        return new String(output.toByteArray(), UTF_8);
+    }
+
+    private void write(ResultSet resultSet, ByteArrayOutputStream output) throws Exception {
+        writer.writeTo(new StreamedRows<>(resultSet, row -> row.getString(0)), StreamedRows.class, null, null,
+                MediaType.APPLICATION_JSON_TYPE, null, output);
+    }
+
+    private static List<Row> rows(int first, int count) {
+        final List<Row> rows = new ArrayList<>();
+        for (int i = first; i < first + count; i++) {
+            final Row row = mock(Row.class);
+            when(row.getString(0)).thenReturn("row" + i);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @SafeVarargs
+    private static PagedResultSet resultSet(List<Row>... pages) {
+        final PagedResultSet resultSet = mock(PagedResultSet.class, withSettings().defaultAnswer(CALLS_REAL_METHODS));
+        resultSet.pages = new ArrayDeque<>();
+        for (List<Row> page : pages) {
+            resultSet.pages.add(page);
+        }
+        resultSet.fetched = new ArrayDeque<>(resultSet.pages.poll());
+        return resultSet;
+    }
+
+    /**
+     * Records what had been written each time it is flushed.
+     */
+    private static class FlushRecordingStream extends ByteArrayOutputStream {
+
+        final List<String> flushed = new ArrayList<>();
+
+        @Override
+        public void flush() {
+            flushed.add(new String(toByteArray(), UTF_8));
+        }
+    }
+
+    /**
+     * A result set whose pages are fetched as the driver would: in the background when asked to, or otherwise while
+     * blocking once every fetched row has been read.
+     */
+    abstract static class PagedResultSet implements ResultSet {
+
+        Deque<List<Row>> pages;
+        Deque<Row> fetched;
+        int prefetches;
+        int blockingFetches;
+
+        @Override
+        public int getAvailableWithoutFetching() {
+            return fetched.size();
+        }
+
+        @Override
+        public boolean isFullyFetched() {
+            return pages.isEmpty();
+        }
+
+        @Override
+        public ListenableFuture<ResultSet> fetchMoreResults() {
+            if (!pages.isEmpty()) {
+                fetched.addAll(pages.poll());
+                prefetches++;
+            }
+            return null;
+        }
+
+        @Override
+        public boolean isExhausted() {
+            if (fetched.isEmpty() && !pages.isEmpty()) {
+                fetched.addAll(pages.poll());
+                blockingFetches++;
+            }
+            return fetched.isEmpty();
+        }
+
+        @Override
+        public Row one() {
+            return isExhausted() ? null : fetched.poll();
+        }
+
+        @Override
+        public Iterator<Row> iterator() {
+            return new Iterator<Row>() {
+                @Override
+                public boolean hasNext() {
+                    return !isExhausted();
+                }
+
+                @Override
+                public Row next() {
+                    return one();
+                }
+            };
+        }
+    }
+}
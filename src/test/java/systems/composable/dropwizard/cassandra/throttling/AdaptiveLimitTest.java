@@ -0,0 +1,222 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.throttling;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.exceptions.ConnectionException;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AdaptiveLimitTest {
+
+    private static final String PREFIX = "com.datastax.driver.core.Cluster.test-cluster.throttling.limit.";
+    private static final long LOW_LATENCY = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long HIGH_LATENCY = TimeUnit.MILLISECONDS.toNanos(40);
+
+    private final MetricRegistry registry = new MetricRegistry();
+    private final ManualClock clock = new ManualClock();
+    private final ResultSet dc1 = result("dc1");
+    private final ResultSet dc2 = result("dc2");
+
+    @Test
+    public void startsAtTheInitialLimit() throws Exception {
+        final AdaptiveLimit limit = limit(LimitAlgorithm.VEGAS);
+
+        assertThat(limit.getLimit()).isEqualTo(20);
+        assertThat(limit.getLimits()).isEmpty();
+    }
+
+    @Test
+    public void aimdGrowsWhileTheLimitIsInUse() throws Exception {
+        final AdaptiveLimit limit = limit(LimitAlgorithm.AIMD);
+
+        for (int i = 0; i < 100; i++) {
+            limit.onSuccess(dc1, HIGH_LATENCY, limit.getLimit());
+        }
+
+        assertThat(limit.getLimit()).isGreaterThan(20);
+    }
+
+    @Test
+    public void aimdHoldsWhileMostOfTheLimitIsUnused() throws Exception {
+        final AdaptiveLimit limit = limit(LimitAlgorithm.AIMD);
+
+        for (int i = 0; i < 100; i++) {
+            limit.onSuccess(dc1, LOW_LATENCY, 5);
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    public void aimdBacksOffWhenRequestsTimeOut() throws Exception {
+        final AdaptiveLimit limit = limit(LimitAlgorithm.AIMD);
+
+        limit.onSuccess(dc1, LOW_LATENCY, 1);
+        limit.onFailure(new OperationTimedOutException(new InetSocketAddress(9042)), HIGH_LATENCY, 20);
+
+        assertThat(limit.getLimit()).isEqualTo(18);
+    }
+
+    @Test
+    public void aimdBacksOffOncePerRoundTrip() throws Exception {
+        final AdaptiveLimit limit = limit(LimitAlgorithm.AIMD);
+        final OperationTimedOutException timeout = new OperationTimedOutException(new InetSocketAddress(9042));
+
+        limit.onSuccess(dc1, LOW_LATENCY, 1);
+        clock.advance(HIGH_LATENCY);
+        for (int i = 0; i < 10; i++) {
+            limit.onFailure(timeout, HIGH_LATENCY, 20);
+        }
+        assertThat(limit.getLimit()).isEqualTo(18);
+
+        // sent after the limit was lowered
+        clock.advance(HIGH_LATENCY + 1);
+        limit.onFailure(timeout, HIGH_LATENCY, 18);
+        assertThat(limit.getLimit()).isEqualTo(16);
+    }
+
+    @Test
+    public void backsOffWhenNoHostIsAvailableAsEveryHostIsBusy() throws Exception {
+        final AdaptiveLimit limit = limit(LimitAlgorithm.AIMD);
+        final InetSocketAddress host = new InetSocketAddress(9042);
+
+        limit.onFailure(new NoHostAvailableException(Collections.singletonMap(host,
+                new DriverException("Timeout while trying to acquire available connection",
+                        new TimeoutException("All connections are busy")))), HIGH_LATENCY, 20);
+
+        assertThat(limit.getLimit()).isEqualTo(18);
+    }
+
+    @Test
+    public void ignoresNoHostAvailableAsHostsAreDown() throws Exception {
+        final AdaptiveLimit limit = limit(LimitAlgorithm.AIMD);
+        final InetSocketAddress host = new InetSocketAddress(9042);
+
+        limit.onFailure(new NoHostAvailableException(Collections.emptyMap()), HIGH_LATENCY, 20);
+        limit.onFailure(new NoHostAvailableException(Collections.singletonMap(host,
+                new ConnectionException(host, "Connection refused"))), HIGH_LATENCY, 20);
+        limit.onFailure(new NoHostAvailableException(Collections.singletonMap(host,
+                new DriverException("Timeout while trying to acquire available connection",
+                        new TimeoutException("Connection pool is empty, currently trying to reestablish connections")))),
+                HIGH_LATENCY, 20);
+
+        assertThat(limit.getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    public void vegasGrowsWhileLatencyIsLowAndShrinksAsItRises() throws Exception {
+        final AdaptiveLimit limit = limit(LimitAlgorithm.VEGAS);
+
+        for (int i = 0; i < 10; i++) {
+            limit.onSuccess(dc1, LOW_LATENCY, limit.getLimit());
+        }
+        final int grown = limit.getLimit();
+        assertThat(grown).isGreaterThan(20);
+
+        for (int i = 0; i < 10; i++) {
+            limit.onSuccess(dc1, HIGH_LATENCY, limit.getLimit());
+        }
+        assertThat(limit.getLimit()).isLessThan(grown);
+    }
+
+    @Test
+    public void staysWithinTheMinimumAndMaximumLimits() throws Exception {
+        final AdaptiveLimit limit = limit(LimitAlgorithm.AIMD);
+
+        for (int i = 0; i < 100; i++) {
+            clock.advance(HIGH_LATENCY);
+            limit.onFailure(new OperationTimedOutException(new InetSocketAddress(9042)), HIGH_LATENCY, 20);
+        }
+        assertThat(limit.getLimit()).isEqualTo(2);
+
+        for (int i = 0; i < 100_000; i++) {
+            limit.onSuccess(dc1, LOW_LATENCY, 100);
+        }
+        assertThat(limit.getLimit()).isEqualTo(100);
+    }
+
+    @Test
+    public void ignoresFailuresUnrelatedToLoad() throws Exception {
+        final AdaptiveLimit limit = limit(LimitAlgorithm.AIMD);
+
+        limit.onFailure(new InvalidQueryException("unconfigured table"), LOW_LATENCY, 20);
+
+        assertThat(limit.getLimit()).isEqualTo(20);
+        assertThat(limit.getLimits()).isEmpty();
+    }
+
+    @Test
+    public void estimatesALimitForEachDataCenter() throws Exception {
+        final AdaptiveLimit limit = limit(LimitAlgorithm.AIMD);
+
+        for (int i = 0; i < 100; i++) {
+            limit.onSuccess(dc1, LOW_LATENCY, 100);
+        }
+        limit.onSuccess(dc2, LOW_LATENCY, 1);
+
+        assertThat(limit.getLimits()).containsOnly(entry("dc1", 24), entry("dc2", 20));
+        assertThat(limit.getLimit()).isEqualTo(20);
+        assertThat(registry.getGauges().get(PREFIX + "dc1").getValue()).isEqualTo(24);
+        assertThat(registry.getGauges().get(PREFIX + "dc2").getValue()).isEqualTo(20);
+    }
+
+    private AdaptiveLimit limit(LimitAlgorithm algorithm) {
+        return new AdaptiveLimit(algorithm, 20, 2, 100, 0.9, registry, "test-cluster", clock);
+    }
+
+    private static ResultSet result(String dataCenter) {
+        final Host host = mock(Host.class);
+        when(host.getDatacenter()).thenReturn(dataCenter);
+        final ExecutionInfo info = mock(ExecutionInfo.class);
+        when(info.getQueriedHost()).thenReturn(host);
+        final ResultSet result = mock(ResultSet.class);
+        when(result.getExecutionInfo()).thenReturn(info);
+        return result;
+    }
+
+    private static class ManualClock extends Clock {
+
+        private long tick;
+
+        void advance(long nanos) {
+            tick += nanos;
+        }
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2016 Composable Systems Limited
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package systems.composable.dropwizard.cassandra.throttling;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.google.common.util.concurrent.AbstractFuture;
+import io.dropwizard.util.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ThrottledSessionTest {
+
+    private static final String PREFIX = "com.datastax.driver.core.Cluster.test-cluster.throttling.";
+
+    private final Session delegate = mock(Session.class);
+    private final Cluster cluster = mock(Cluster.class);
+    private final MetricRegistry registry = new MetricRegistry();
+    // queued requests are sent by the throttler's own thread
+    private final BlockingQueue<RequestFuture> sent = new LinkedBlockingQueue<>();
+
+    private ThrottledSession session;
+
+    @Before
+    public void setUp() throws Exception {
+        when(delegate.getCluster()).thenReturn(cluster);
+        when(cluster.getClusterName()).thenReturn("test-cluster");
+        when(delegate.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            final RequestFuture future = new RequestFuture();
+            sent.add(future);
+            return future;
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        session.close();
+    }
+
+    @Test
+    public void queuesRequestsBeyondTheLimitUntilRequestsComplete() throws Exception {
+        session = new ThrottledSession(delegate, registry, 2, 1, Duration.seconds(10));
+
+        session.executeAsync("SELECT * FROM a");
+        session.executeAsync("SELECT * FROM b");
+        final ResultSetFuture queued = session.executeAsync("SELECT * FROM c");
+
+        verify(delegate, times(2)).executeAsync(any(Statement.class));
+        assertThat(session.getInFlight()).isEqualTo(2);
+        assertThat(session.getQueueDepth()).isEqualTo(1);
+
+        nextSent().complete();
+        nextSent();
+
+        final ResultSet result = mock(ResultSet.class);
+        nextSent().set(result);
+
+        assertThat(queued.getUninterruptibly(1, TimeUnit.SECONDS)).isSameAs(result);
+        assertThat(session.getInFlight()).isEqualTo(1);
+        assertThat(session.getQueueDepth()).isZero();
+        assertThat(registry.timer(PREFIX + "queue-wait").getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void rejectsRequestsWhenTheQueueIsFull() throws Exception {
+        session = new ThrottledSession(delegate, registry, 1, 0, Duration.seconds(10));
+
+        session.executeAsync("SELECT * FROM a");
+        final ResultSetFuture rejected = session.executeAsync("SELECT * FROM b");
+
+        assertThat(rejected.isDone()).isTrue();
+        assertThrottled(rejected);
+        verify(delegate, times(1)).executeAsync(any(Statement.class));
+        assertThat(registry.meter(PREFIX + "rejections").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void rejectsRequestsQueuedForLongerThanTheQueueTimeout() throws Exception {
+        session = new ThrottledSession(delegate, registry, 1, 1, Duration.milliseconds(10));
+
+        session.executeAsync("SELECT * FROM a");
+        final ResultSetFuture expired = session.executeAsync("SELECT * FROM b");
+
+        assertThrottled(expired);
+        assertThat(session.getQueueDepth()).isZero();
+        assertThat(registry.meter(PREFIX + "rejections").getCount()).isEqualTo(1);
+
+        nextSent().complete();
+
+        assertThat(session.getInFlight()).isZero();
+        verify(delegate, times(1)).executeAsync(any(Statement.class));
+    }
+
+    @Test
+    public void neverSendsCancelledRequests() throws Exception {
+        session = new ThrottledSession(delegate, registry, 1, 1, Duration.seconds(10));
+
+        session.executeAsync("SELECT * FROM a");
+        session.executeAsync("SELECT * FROM b").cancel(true);
+
+        assertThat(session.getQueueDepth()).isZero();
+
+        nextSent().complete();
+
+        assertThat(session.getInFlight()).isZero();
+        verify(delegate, times(1)).executeAsync(any(Statement.class));
+    }
+
+    @Test
+    public void failsQueuedRequestsWhenClosed() throws Exception {
+        session = new ThrottledSession(delegate, registry, 1, 2, Duration.seconds(10));
+
+        session.executeAsync("SELECT * FROM a");
+        final ResultSetFuture first = session.executeAsync("SELECT * FROM b");
+        final ResultSetFuture second = session.executeAsync("SELECT * FROM c");
+
+        session.close();
+
+        assertThrottled(first);
+        assertThrottled(second);
+        assertThat(session.getQueueDepth()).isZero();
+
+        final ResultSetFuture afterClose = session.executeAsync("SELECT * FROM d");
+        assertThat(afterClose.isDone()).isTrue();
+        assertThrottled(afterClose);
+
+        nextSent().complete();
+
+        assertThat(session.getInFlight()).isZero();
+        verify(delegate, times(1)).executeAsync(any(Statement.class));
+    }
+
+    @Test
+    public void registersGauges() throws Exception {
+        session = new ThrottledSession(delegate, registry, 1, 1, Duration.seconds(10));
+
+        session.executeAsync("SELECT * FROM a");
+        session.executeAsync("SELECT * FROM b");
+
+        assertThat(registry.getGauges().get(PREFIX + "in-flight").getValue()).isEqualTo(1);
+        assertThat(registry.getGauges().get(PREFIX + "queue-depth").getValue()).isEqualTo(1);
+    }
+
+    @Test
+    public void sendsQueuedRequestsOnlyBelowAnAdaptiveLimit() throws Exception {
+        final AdaptiveLimit limit = new AdaptiveLimit(LimitAlgorithm.AIMD, 2, 1, 2, 0.5, registry, "test-cluster");
+        session = new ThrottledSession(delegate, registry, limit, 1, Duration.seconds(10));
+
+        session.executeAsync("SELECT * FROM a");
+        session.executeAsync("SELECT * FROM b");
+        final ResultSetFuture queued = session.executeAsync("SELECT * FROM c");
+
+        nextSent().setException(new OperationTimedOutException(new InetSocketAddress(9042)));
+
+        assertThat(session.getLimit()).isEqualTo(1);
+        assertThat(session.getInFlight()).isEqualTo(1);
+        assertThat(session.getQueueDepth()).isEqualTo(1);
+        assertThat(registry.getGauges().get(PREFIX + "limit").getValue()).isEqualTo(1);
+
+        nextSent().complete();
+
+        nextSent().complete();
+        assertThat(queued.get(1, TimeUnit.SECONDS)).isNotNull();
+        assertThat(session.getLimit()).isEqualTo(2);
+    }
+
+    private RequestFuture nextSent() throws InterruptedException {
+        final RequestFuture request = sent.poll(1, TimeUnit.SECONDS);
+        assertThat(request).as("sent request").isNotNull();
+        return request;
+    }
+
+    private static void assertThrottled(ResultSetFuture future) throws InterruptedException {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("Request was not rejected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(RequestThrottledException.class);
+        } catch (TimeoutException e) {
+            fail("Request was not rejected in time");
+        }
+    }
+
+    private static class RequestFuture extends AbstractFuture<ResultSet> implements ResultSetFuture {
+
+        void complete() {
+            set(mock(ResultSet.class));
+        }
+
+        @Override
+        public boolean set(ResultSet value) {
+            return super.set(value);
+        }
+
+        @Override
+        public boolean setException(Throwable throwable) {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(long timeout, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}